@@ -0,0 +1,111 @@
+package no.ssb.vtl.dependencies;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableList;
+import no.ssb.vtl.parser.VTLBaseListener;
+import no.ssb.vtl.parser.VTLParser;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collects the reads and writes of the top level statements of a script.
+ * <p>
+ * Statements nested in a foreach block are part of the enclosing statement.
+ */
+public class AssignmentListener extends VTLBaseListener {
+
+    private final List<Statement> statements = new ArrayList<>();
+
+    private VTLParser.StatementContext current;
+    private VTLParser.VariableContext target;
+    private Set<String> reads;
+    private Set<String> sources;
+    private Set<String> sinks;
+
+    /**
+     * Returns the statements of the script.
+     */
+    public static List<Statement> getStatements(VTLParser.StartContext start) {
+        AssignmentListener listener = new AssignmentListener();
+        ParseTreeWalker.DEFAULT.walk(listener, start);
+        return listener.getStatements();
+    }
+
+    public List<Statement> getStatements() {
+        return ImmutableList.copyOf(statements);
+    }
+
+    @Override
+    public void enterStatement(VTLParser.StatementContext ctx) {
+        if (current != null) {
+            return;
+        }
+        current = ctx;
+        // The assignment is missing when the script has syntax errors.
+        target = ctx.assignment() != null ? ctx.assignment().variable() : null;
+        reads = new LinkedHashSet<>();
+        sources = new LinkedHashSet<>();
+        sinks = new LinkedHashSet<>();
+    }
+
+    @Override
+    public void exitStatement(VTLParser.StatementContext ctx) {
+        if (current != ctx) {
+            return;
+        }
+        String name = target != null ? unEscape(target.getText()) : "";
+        statements.add(new Statement(statements.size(), ctx, name, reads, sources, sinks));
+        current = null;
+    }
+
+    @Override
+    public void enterVariable(VTLParser.VariableContext ctx) {
+        if (ctx != target) {
+            reads.add(unEscape(ctx.getText()));
+        }
+    }
+
+    @Override
+    public void enterGetFunction(VTLParser.GetFunctionContext ctx) {
+        sources.add(unQuote(ctx.stringLiteral().getText()));
+    }
+
+    @Override
+    public void enterPutFunction(VTLParser.PutFunctionContext ctx) {
+        sinks.add(unQuote(ctx.stringLiteral().getText()));
+    }
+
+    static String unEscape(String identifier) {
+        if (identifier.startsWith("'") && identifier.endsWith("'")) {
+            return identifier.substring(1, identifier.length() - 1);
+        }
+        return identifier;
+    }
+
+    static String unQuote(String literal) {
+        return literal.substring(1, literal.length() - 1).replace("\"\"", "\"");
+    }
+}
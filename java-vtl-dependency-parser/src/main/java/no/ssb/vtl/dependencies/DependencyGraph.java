@@ -0,0 +1,231 @@
+package no.ssb.vtl.dependencies;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.GraphBuilder;
+import com.google.common.graph.ImmutableGraph;
+import com.google.common.graph.MutableGraph;
+import no.ssb.vtl.parser.VTLParser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The dependencies between the statements of a script.
+ * <p>
+ * A statement depends on:
+ * <ul>
+ * <li>the last previous statement assigning each variable it reads,</li>
+ * <li>the last previous statement assigning the same variable,</li>
+ * <li>the previous statements that get or put a dataset it puts, and the last previous statement that
+ * puts a dataset it gets.</li>
+ * </ul>
+ * Statements that do not depend on each other, even transitively, can be executed in any order.
+ */
+public final class DependencyGraph {
+
+    private final ImmutableList<Statement> statements;
+    private final ImmutableGraph<Statement> graph;
+
+    private DependencyGraph(List<Statement> statements) {
+        this.statements = ImmutableList.copyOf(statements);
+
+        MutableGraph<Statement> graph = GraphBuilder.directed().allowsSelfLoops(false)
+                .expectedNodeCount(statements.size()).build();
+        Map<String, Statement> writers = new HashMap<>();
+        Map<String, Statement> puts = new HashMap<>();
+        Map<String, List<Statement>> accesses = new HashMap<>();
+        for (Statement statement : statements) {
+            checkArgument(statement.getIndex() == graph.nodes().size(), "statements are not in order");
+            graph.addNode(statement);
+
+            for (String read : statement.getReads()) {
+                addEdge(graph, writers.get(read), statement);
+            }
+            addEdge(graph, writers.get(statement.getTarget()), statement);
+
+            for (String source : statement.getSources()) {
+                addEdge(graph, puts.get(source), statement);
+            }
+            for (String sink : statement.getSinks()) {
+                for (Statement access : accesses.getOrDefault(sink, ImmutableList.of())) {
+                    addEdge(graph, access, statement);
+                }
+            }
+
+            writers.put(statement.getTarget(), statement);
+            for (String source : statement.getSources()) {
+                accesses.computeIfAbsent(source, name -> new ArrayList<>()).add(statement);
+            }
+            for (String sink : statement.getSinks()) {
+                puts.put(sink, statement);
+                List<Statement> previous = new ArrayList<>();
+                previous.add(statement);
+                accesses.put(sink, previous);
+            }
+        }
+        this.graph = ImmutableGraph.copyOf(graph);
+    }
+
+    private static void addEdge(MutableGraph<Statement> graph, Statement from, Statement to) {
+        if (from != null && from != to) {
+            graph.putEdge(from, to);
+        }
+    }
+
+    public static DependencyGraph of(List<Statement> statements) {
+        return new DependencyGraph(statements);
+    }
+
+    public static DependencyGraph of(VTLParser.StartContext start) {
+        return new DependencyGraph(AssignmentListener.getStatements(start));
+    }
+
+    /**
+     * Returns the statements, in script order.
+     */
+    public ImmutableList<Statement> getStatements() {
+        return statements;
+    }
+
+    /**
+     * Returns the statements that must be executed before the given one.
+     */
+    public ImmutableSet<Statement> getDependencies(Statement statement) {
+        return ImmutableSet.copyOf(graph.predecessors(statement));
+    }
+
+    /**
+     * Returns the statements that must be executed after the given one.
+     */
+    public ImmutableSet<Statement> getDependents(Statement statement) {
+        return ImmutableSet.copyOf(graph.successors(statement));
+    }
+
+    /**
+     * Returns the last statement before the given one that assigns the variable.
+     */
+    public Optional<Statement> getWriter(String variable, Statement before) {
+        for (int i = before.getIndex() - 1; i >= 0; i--) {
+            Statement statement = statements.get(i);
+            if (statement.getTarget().equals(variable)) {
+                return Optional.of(statement);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Returns the statements that read the variable the given statement assigns.
+     */
+    public ImmutableSet<Statement> getConsumers(Statement statement) {
+        String target = statement.getTarget();
+        ImmutableSet.Builder<Statement> consumers = ImmutableSet.builder();
+        for (Statement dependent : graph.successors(statement)) {
+            if (dependent.getReads().contains(target)
+                    && getLastDependency(dependent, writer -> writer.getTarget().equals(target)).orElse(null) == statement) {
+                consumers.add(dependent);
+            }
+        }
+        return consumers.build();
+    }
+
+    /**
+     * Returns the statements needed to compute the final value of the given variables, in script order.
+     * <p>
+     * The statements that put datasets are always needed. The other statements are needed only if
+     * they assign the final value of a variable or if a needed statement uses the variable or the
+     * dataset they assign.
+     */
+    public ImmutableList<Statement> getRequiredStatements(Collection<String> variables) {
+        Deque<Statement> pending = new ArrayDeque<>();
+        for (String variable : variables) {
+            for (Statement statement : statements.reverse()) {
+                if (statement.getTarget().equals(variable)) {
+                    pending.add(statement);
+                    break;
+                }
+            }
+        }
+        for (Statement statement : statements) {
+            if (!statement.getSinks().isEmpty()) {
+                pending.add(statement);
+            }
+        }
+
+        Set<Statement> required = new HashSet<>();
+        while (!pending.isEmpty()) {
+            Statement statement = pending.pop();
+            if (!required.add(statement)) {
+                continue;
+            }
+            for (String read : statement.getReads()) {
+                getLastDependency(statement, dependency -> dependency.getTarget().equals(read))
+                        .ifPresent(pending::add);
+            }
+            for (String source : statement.getSources()) {
+                getLastDependency(statement, dependency -> dependency.getSinks().contains(source))
+                        .ifPresent(pending::add);
+            }
+        }
+
+        ImmutableList.Builder<Statement> builder = ImmutableList.builder();
+        for (Statement statement : statements) {
+            if (required.contains(statement)) {
+                builder.add(statement);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the last dependency of the statement that matches the predicate.
+     * <p>
+     * The last previous statement assigning a variable (or putting a dataset) the statement reads
+     * is always one of its dependencies.
+     */
+    private Optional<Statement> getLastDependency(Statement statement, Predicate<Statement> predicate) {
+        Statement last = null;
+        for (Statement dependency : graph.predecessors(statement)) {
+            if (predicate.test(dependency) && (last == null || dependency.getIndex() > last.getIndex())) {
+                last = dependency;
+            }
+        }
+        return Optional.ofNullable(last);
+    }
+
+    public ImmutableGraph<Statement> getGraph() {
+        return graph;
+    }
+}
@@ -0,0 +1,98 @@
+package no.ssb.vtl.dependencies;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableSet;
+import no.ssb.vtl.parser.VTLParser;
+
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The variables and connector datasets a top level statement of a script reads and writes.
+ * <p>
+ * Reads are computed from the variable names found in the statement. Names that refer to components
+ * (in joins for instance) are included as well; the dependencies are then conservative.
+ */
+public final class Statement {
+
+    private final int index;
+    private final VTLParser.StatementContext context;
+    private final String target;
+    private final ImmutableSet<String> reads;
+    private final ImmutableSet<String> sources;
+    private final ImmutableSet<String> sinks;
+
+    Statement(int index, VTLParser.StatementContext context, String target,
+              Set<String> reads, Set<String> sources, Set<String> sinks) {
+        this.index = index;
+        this.context = checkNotNull(context);
+        this.target = checkNotNull(target);
+        this.reads = ImmutableSet.copyOf(reads);
+        this.sources = ImmutableSet.copyOf(sources);
+        this.sinks = ImmutableSet.copyOf(sinks);
+    }
+
+    /**
+     * Returns the position of the statement in the script.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public VTLParser.StatementContext getContext() {
+        return context;
+    }
+
+    /**
+     * Returns the name of the assigned variable.
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * Returns the names of the variables the statement reads.
+     */
+    public ImmutableSet<String> getReads() {
+        return reads;
+    }
+
+    /**
+     * Returns the identifiers of the datasets read with get.
+     */
+    public ImmutableSet<String> getSources() {
+        return sources;
+    }
+
+    /**
+     * Returns the identifiers of the datasets written with put.
+     */
+    public ImmutableSet<String> getSinks() {
+        return sinks;
+    }
+
+    @Override
+    public String toString() {
+        return index + ": " + target + " <- " + reads;
+    }
+}
@@ -0,0 +1,148 @@
+package no.ssb.vtl.dependencies;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableList;
+import no.ssb.vtl.parser.VTLLexer;
+import no.ssb.vtl.parser.VTLParser;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DependencyGraphTest {
+
+    private static DependencyGraph parse(String script) {
+        VTLLexer lexer = new VTLLexer(CharStreams.fromString(script));
+        VTLParser parser = new VTLParser(new CommonTokenStream(lexer));
+        return DependencyGraph.of(parser.start());
+    }
+
+    @Test
+    public void testReadsAndWrites() {
+        List<Statement> statements = parse("" +
+                "ds1 := get(\"source\")\n" +
+                "ds2 := 'ds1'[filter m1 > limit]\n" +
+                "ds3 := put(\"target\")"
+        ).getStatements();
+
+        assertThat(statements).extracting(Statement::getTarget).containsExactly("ds1", "ds2", "ds3");
+        assertThat(statements.get(0).getSources()).containsExactly("source");
+        assertThat(statements.get(1).getReads()).containsExactly("ds1", "m1", "limit");
+        assertThat(statements.get(2).getSinks()).containsExactly("target");
+    }
+
+    @Test
+    public void testIndependentStatements() {
+        DependencyGraph graph = parse("" +
+                "a := get(\"a\")\n" +
+                "b := get(\"b\")\n" +
+                "checkA := check(a, not_valid)\n" +
+                "checkB := check(b, not_valid)\n" +
+                "result := union(checkA, checkB)"
+        );
+        List<Statement> statements = graph.getStatements();
+
+        assertThat(graph.getDependencies(statements.get(0))).isEmpty();
+        assertThat(graph.getDependencies(statements.get(1))).isEmpty();
+        assertThat(graph.getDependencies(statements.get(2))).containsExactly(statements.get(0));
+        assertThat(graph.getDependencies(statements.get(3))).containsExactly(statements.get(1));
+        assertThat(graph.getDependencies(statements.get(4))).containsExactlyInAnyOrder(
+                statements.get(2), statements.get(3)
+        );
+        assertThat(graph.getDependents(statements.get(0))).containsExactly(statements.get(2));
+    }
+
+    @Test
+    public void testReassignment() {
+        DependencyGraph graph = parse("" +
+                "x := 1\n" +
+                "y := x\n" +
+                "x := 2\n" +
+                "z := x"
+        );
+        List<Statement> statements = graph.getStatements();
+
+        assertThat(graph.getDependencies(statements.get(1))).containsExactly(statements.get(0));
+        // Assignments of the same variable stay ordered.
+        assertThat(graph.getDependencies(statements.get(2))).containsExactly(statements.get(0));
+        assertThat(graph.getDependencies(statements.get(3))).containsExactly(statements.get(2));
+        assertThat(graph.getWriter("x", statements.get(3))).contains(statements.get(2));
+        assertThat(graph.getWriter("x", statements.get(2))).contains(statements.get(0));
+        assertThat(graph.getWriter("x", statements.get(0))).isEmpty();
+    }
+
+    @Test
+    public void testConnectorDatasets() {
+        DependencyGraph graph = parse("" +
+                "a := get(\"a\")\n" +
+                "b := put(\"a\")\n" +
+                "c := get(\"a\")"
+        );
+        List<Statement> statements = graph.getStatements();
+
+        assertThat(graph.getDependencies(statements.get(1))).containsExactly(statements.get(0));
+        assertThat(graph.getDependencies(statements.get(2))).containsExactly(statements.get(1));
+    }
+
+    @Test
+    public void testRequiredStatements() {
+        DependencyGraph graph = parse("" +
+                "a := get(\"a\")\n" +
+                "unused := get(\"unused\")\n" +
+                "b := check(a, not_valid)\n" +
+                "a := get(\"other\")\n" +
+                "c := union(b, b)\n" +
+                "stored := put(\"stored\")\n" +
+                "d := get(\"stored\")"
+        );
+        List<Statement> statements = graph.getStatements();
+
+        assertThat(graph.getRequiredStatements(ImmutableList.of("c")))
+                .extracting(Statement::getIndex)
+                .containsExactly(0, 2, 4, 5);
+        assertThat(graph.getRequiredStatements(ImmutableList.of("a", "d")))
+                .containsExactly(statements.get(3), statements.get(5), statements.get(6));
+        assertThat(graph.getRequiredStatements(ImmutableList.of("missing")))
+                .containsExactly(statements.get(5));
+    }
+
+    @Test
+    public void testConsumers() {
+        DependencyGraph graph = parse("" +
+                "a := get(\"a\")\n" +
+                "b := check(a, not_valid)\n" +
+                "c := union(a, b)\n" +
+                "a := get(\"other\")\n" +
+                "d := a"
+        );
+        List<Statement> statements = graph.getStatements();
+
+        assertThat(graph.getConsumers(statements.get(0))).containsExactlyInAnyOrder(
+                statements.get(1), statements.get(2)
+        );
+        assertThat(graph.getConsumers(statements.get(3))).containsExactly(statements.get(4));
+        assertThat(graph.getConsumers(statements.get(4))).isEmpty();
+    }
+}
@@ -0,0 +1,121 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Evaluates the operands of a conjunction or a disjunction, ordered by how likely they are to decide
+ * the result and by how long they take.
+ * <p>
+ * One row out of {@value #SAMPLE_INTERVAL} is sampled: all the operands are evaluated and timed. Every
+ * {@value #REORDER_INTERVAL} samples, the operands are sorted by their average time divided by the share of
+ * the sampled rows for which they decided the result (false for a conjunction, true for a disjunction). The
+ * other rows evaluate the operands in the current order and stop at the first one that decides.
+ */
+final class AdaptiveOperands {
+
+    static final int SAMPLE_INTERVAL = 64;
+    static final int REORDER_INTERVAL = 16;
+
+    private final VtlFiltering[] operands;
+    private final long[] evaluations;
+    private final long[] decisions;
+    private final long[] nanos;
+    private volatile int[] order;
+    private long samples;
+
+    // Approximate, only used to pick the sampled rows.
+    private int rows;
+
+    AdaptiveOperands(Collection<VtlFiltering> operands) {
+        this.operands = operands.toArray(new VtlFiltering[0]);
+        this.evaluations = new long[this.operands.length];
+        this.decisions = new long[this.operands.length];
+        this.nanos = new long[this.operands.length];
+        this.order = IntStream.range(0, this.operands.length).toArray();
+    }
+
+    /**
+     * Returns true if one of the operands returns the given value for the data point.
+     */
+    boolean anyMatch(DataPoint dataPoint, boolean value) {
+        if (++rows % SAMPLE_INTERVAL == 0) {
+            return sample(dataPoint, value);
+        }
+        for (int index : order) {
+            if (operands[index].test(dataPoint) == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized boolean sample(DataPoint dataPoint, boolean value) {
+        boolean match = false;
+        for (int i = 0; i < operands.length; i++) {
+            long start = System.nanoTime();
+            boolean result = operands[i].test(dataPoint);
+            nanos[i] += System.nanoTime() - start;
+            evaluations[i]++;
+            if (result == value) {
+                decisions[i]++;
+                match = true;
+            }
+        }
+        if (++samples % REORDER_INTERVAL == 0) {
+            order = IntStream.range(0, operands.length).boxed()
+                    .sorted(Comparator.comparingDouble(this::rank))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        }
+        return match;
+    }
+
+    /**
+     * Expected time spent before an operand decides the result.
+     */
+    private double rank(int index) {
+        if (decisions[index] == 0) {
+            return Double.MAX_VALUE;
+        }
+        return (double) nanos[index] / decisions[index];
+    }
+
+    /**
+     * Describes the operands in evaluation order, with the share of the sampled rows they decided and
+     * their average time.
+     */
+    synchronized String describe(String separator) {
+        if (samples == 0) {
+            return null;
+        }
+        return Arrays.stream(order).mapToObj(index -> String.format("%s [%d%%, %dns]",
+                operands[index].describeEvaluation().orElse(operands[index].toString()),
+                100 * decisions[index] / evaluations[index],
+                nanos[index] / evaluations[index]
+        )).collect(Collectors.joining(separator, "(", ")"));
+    }
+}
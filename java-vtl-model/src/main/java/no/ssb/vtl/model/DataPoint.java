@@ -23,7 +23,6 @@ package no.ssb.vtl.model;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -42,7 +41,11 @@ public class DataPoint extends ArrayList<VTLObject> {
     }
 
     public static DataPoint create(int initialCapacity) {
-        return new DataPoint(Collections.nCopies(initialCapacity, VTLObject.NULL));
+        DataPoint dataPoint = new DataPoint(initialCapacity);
+        for (int i = 0; i < initialCapacity; i++) {
+            dataPoint.add(VTLObject.NULL);
+        }
+        return dataPoint;
     }
 
     public static DataPoint create(Collection<? extends VTLObject> components) {
@@ -77,6 +77,14 @@ public interface Dataset {
      * </ul>
      * <p>
      * Other characteristics are left at the discretion of the implementers.
+     * <p>
+     * Ownership of the data points:
+     * <p>
+     * By default every {@link DataPoint} of the stream is a new instance that belongs to the consumer. Implementations
+     * can be configured to recycle rows, that is, to reuse the same {@link DataPoint} instance between two calls to
+     * {@link Spliterator#tryAdvance(java.util.function.Consumer)}. A recycled data point is only valid until the next
+     * element is requested; consumers that retain data points (collecting, sorting, grouping, buffering) must copy
+     * them first, for instance using {@link DataPoint#create(java.util.Collection)}.
      */
     Stream<DataPoint> getData();
 
@@ -104,12 +112,29 @@ public interface Dataset {
      * @return a <b>sorted</b> stream of {@link DataPoint}s if sorting is supported.
      */
     default Optional<Stream<DataPoint>> getData(Ordering orders, Filtering filtering, Set<String> components) {
-        return Optional.of(getData().sorted(orders).filter(filtering).map(o -> {
+        // Sorting without columns would only prevent the stream from stopping early.
+        Stream<DataPoint> data = orders.columns().isEmpty() ? getData() : getData().sorted(orders);
+        return Optional.of(data.filter(filtering).map(o -> {
             // TODO
             return o;
         }));
     }
 
+    /**
+     * Creates a new independent, immutable stream of DataPoints of which only the first <code>limit</code>
+     * elements will be consumed.
+     * <p>
+     * The limit is a hint: implementations that can stop reading their source early should override this
+     * method. The returned stream can contain more elements, the caller applies the limit again.
+     *
+     * @param limit the number of {@link DataPoint}s that will be consumed.
+     * @see Dataset#getData(Ordering, Filtering, Set)
+     */
+    default Optional<Stream<DataPoint>> getData(Ordering orders, Filtering filtering, Set<String> components,
+                                                long limit) {
+        return getData(orders, filtering, components).map(stream -> stream.limit(limit));
+    }
+
     /**
      * Creates a new independent, immutable stream of DataPoints.
      * <p>
@@ -154,4 +179,14 @@ public interface Dataset {
      */
     DataStructure getDataStructure();
 
+    /**
+     * Returns a version of the data, an ETag for instance.
+     * <p>
+     * Two instances with the same version must return the same data. The engine can then reuse the
+     * results computed from a previous instance. Datasets without version are always recomputed.
+     */
+    default Optional<String> getVersion() {
+        return Optional.empty();
+    }
+
 }
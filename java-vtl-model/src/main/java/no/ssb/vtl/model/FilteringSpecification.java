@@ -21,6 +21,8 @@ package no.ssb.vtl.model;
  */
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 public interface FilteringSpecification {
 
@@ -32,10 +34,31 @@ public interface FilteringSpecification {
 
     VTLObject getValue();
 
+    /**
+     * Returns the values of the literal: the list of an {@link Operator#IN}, the bounds of a
+     * {@link Operator#BETWEEN} and the value of the other operators, if any.
+     */
+    default List<VTLObject> getValues() {
+        VTLObject value = getValue();
+        return value == null ? Collections.emptyList() : Collections.singletonList(value);
+    }
+
     Boolean isNegated();
 
     enum Operator {
-        EQ, GT, LT, AND, OR, TRUE
+        EQ, GT, LT, AND, OR, TRUE,
+        /**
+         * The column is equal to one of the {@link #getValues() values}.
+         */
+        IN,
+        /**
+         * The column is null.
+         */
+        IS_NULL,
+        /**
+         * The column is between the two {@link #getValues() values}, inclusive.
+         */
+        BETWEEN
     }
 
 }
@@ -20,16 +20,39 @@ package no.ssb.vtl.model;
  * =========================LICENSE_END==================================
  */
 
+import com.google.common.collect.ImmutableMap;
+
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.Year;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.Map;
 import java.util.TimeZone;
 
 import static java.lang.String.*;
 
+/**
+ * A date value.
+ * <p>
+ * Dates are stored as milliseconds since epoch so that they can be compared
+ * without allocating {@link Instant}s. As a consequence, two dates are ordered with
+ * millisecond precision.
+ */
 // TODO: The spec specifies that date format should be configurable.
 public abstract class VTLDate extends VTLObject<Instant> implements VTLTyped<VTLDate> {
 
+    /**
+     * VTL date formats and their java equivalent.
+     */
+    private static final Map<String, String> PATTERNS = ImmutableMap.of(
+            "YYYY", "yyyy"
+    );
+
     private VTLDate() {
         // private
     }
@@ -39,21 +62,92 @@ public abstract class VTLDate extends VTLObject<Instant> implements VTLTyped<VTL
         return VTLDate.class;
     }
 
-    public static VTLDate of(String input, String dateFormat, TimeZone timeZone) {
+    /**
+     * Returns the number of milliseconds since epoch.
+     *
+     * @throws NullPointerException if the date is null.
+     */
+    public abstract long toEpochMilli();
 
+    abstract boolean isNull();
+
+    /**
+     * Compares two non null dates using their epoch values.
+     */
+    @Override
+    public int compareTo(Object o) {
+        if (o instanceof VTLDate) {
+            VTLDate other = (VTLDate) o;
+            if (!isNull() && !other.isNull()) {
+                return Long.compare(toEpochMilli(), other.toEpochMilli());
+            }
+        }
+        return super.compareTo(o);
+    }
+
+    /**
+     * Returns a formatter for the given VTL date format.
+     * <p>
+     * Creating a formatter is relatively expensive; callers that parse many values
+     * should keep the returned instance.
+     *
+     * @throws IllegalArgumentException if the format is not supported.
+     */
+    public static DateTimeFormatter getFormatter(String dateFormat) {
         if (!canParse(dateFormat)) {
-            throw new RuntimeException(
+            throw new IllegalArgumentException(
                     format("Date format %s unsupported", dateFormat));
         }
+        return DateTimeFormatter.ofPattern(PATTERNS.get(dateFormat));
+    }
+
+    public static VTLDate of(String input, String dateFormat, TimeZone timeZone) {
+        return of(input, getFormatter(dateFormat), timeZone);
+    }
+
+    /**
+     * Parses the input using the formatter. Missing fields default to the start of
+     * the period (first day of the year, midnight) in the given time zone.
+     */
+    public static VTLDate of(String input, DateTimeFormatter formatter, TimeZone timeZone) {
+        ZoneId zone = timeZone.toZoneId();
+        TemporalAccessor parsed = formatter.parseBest(input,
+                ZonedDateTime::from, LocalDateTime::from, LocalDate::from,
+                YearMonth::from, Year::from
+        );
+
+        ZonedDateTime dateTime;
+        if (parsed instanceof ZonedDateTime) {
+            dateTime = (ZonedDateTime) parsed;
+        } else if (parsed instanceof LocalDateTime) {
+            dateTime = ((LocalDateTime) parsed).atZone(zone);
+        } else if (parsed instanceof LocalDate) {
+            dateTime = ((LocalDate) parsed).atStartOfDay(zone);
+        } else if (parsed instanceof YearMonth) {
+            dateTime = ((YearMonth) parsed).atDay(1).atStartOfDay(zone);
+        } else {
+            dateTime = ((Year) parsed).atDay(1).atStartOfDay(zone);
+        }
+        return ofEpochMilli(dateTime.toInstant().toEpochMilli());
+    }
+
+    public static VTLDate ofEpochMilli(long epochMilli) {
 
         return new VTLDate() {
 
             @Override
             public Instant get() {
-                DateTimeFormatter formatter =
-                        DateTimeFormatter.ofPattern("yyyy");
-                Year year = Year.parse(input, formatter);
-                return year.atDay(1).atStartOfDay(timeZone.toZoneId()).toInstant();
+                return Instant.ofEpochMilli(epochMilli);
+            }
+
+            @Override
+            public long toEpochMilli() {
+                return epochMilli;
+            }
+
+            @Override
+            boolean isNull() {
+                return false;
             }
         };
 
@@ -67,12 +161,22 @@ public abstract class VTLDate extends VTLObject<Instant> implements VTLTyped<VTL
             public Instant get() {
                 return instant;
             }
+
+            @Override
+            public long toEpochMilli() {
+                return instant.toEpochMilli();
+            }
+
+            @Override
+            boolean isNull() {
+                return instant == null;
+            }
         };
 
     }
 
     public static boolean canParse(String dateFormat) {
-        return "YYYY".equals(dateFormat);
+        return PATTERNS.containsKey(dateFormat);
     }
 
 }
@@ -36,6 +36,8 @@ import java.util.function.BinaryOperator;
 import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 /**
  * Representation of a filter
  */
@@ -70,7 +72,7 @@ public abstract class VtlFiltering implements Filtering {
             VTLObject value
     ) {
         if (operator == Operator.AND || operator == Operator.OR) {
-            throw new IllegalArgumentException("This constructor support only EQ, LT, GT");
+            throw new IllegalArgumentException("This constructor support only literals");
         }
         this.negated = negated;
         this.operator = operator;
@@ -91,7 +93,7 @@ public abstract class VtlFiltering implements Filtering {
         if (filtering.getOperator() == Operator.AND || filtering.getOperator() == Operator.OR) {
             return nary(!filtering.isNegated(), filtering.getOperator(), filtering.getOperands());
         } else {
-            return literal(!filtering.isNegated(), filtering.getOperator(), filtering.getColumn(), filtering.getValue());
+            return Literal.copy(filtering, !filtering.isNegated());
         }
     }
 
@@ -119,6 +121,34 @@ public abstract class VtlFiltering implements Filtering {
         return new Literal(true, column, VTLObject.of(value), Operator.GT);
     }
 
+    /**
+     * The column is equal to one of the values.
+     */
+    public static VtlFiltering in(String column, Collection<?> values) {
+        checkArgument(!values.isEmpty(), "the values were empty");
+        List<VTLObject> list = values.stream().map(VTLObject::of).collect(Collectors.toList());
+        return new Literal(false, column, Operator.IN, list);
+    }
+
+    public static VtlFiltering in(String column, Object... values) {
+        return in(column, Arrays.asList(values));
+    }
+
+    public static VtlFiltering isNull(String column) {
+        return new Literal(false, column, VTLObject.NULL, Operator.IS_NULL);
+    }
+
+    public static VtlFiltering isNotNull(String column) {
+        return new Literal(true, column, VTLObject.NULL, Operator.IS_NULL);
+    }
+
+    /**
+     * The column is greater or equal to lower and lesser or equal to upper.
+     */
+    public static VtlFiltering between(String column, Object lower, Object upper) {
+        return new Literal(false, column, Operator.BETWEEN, Arrays.asList(VTLObject.of(lower), VTLObject.of(upper)));
+    }
+
     public static VtlFiltering and(VtlFiltering... operands) {
         return new And(false, operands);
     }
@@ -141,6 +171,9 @@ public abstract class VtlFiltering implements Filtering {
             case GT:
             case LT:
             case TRUE:
+            case IN:
+            case IS_NULL:
+            case BETWEEN:
             default:
                 throw new IllegalArgumentException("unsupported operator: " + operator);
         }
@@ -156,7 +189,11 @@ public abstract class VtlFiltering implements Filtering {
             case GT:
             case LT:
             case TRUE:
+            case IS_NULL:
                 return new Literal(negated, column, value, operator);
+            case IN:
+            case BETWEEN:
+                // Use in() and between().
             case AND:
             case OR:
             default:
@@ -168,6 +205,15 @@ public abstract class VtlFiltering implements Filtering {
         return literal(negated, operator, column, VTLObject.of(value));
     }
 
+    /**
+     * Copies a literal on another column, keeping its operator, negation and values.
+     */
+    public static VtlFiltering literal(FilteringSpecification literal, String column) {
+        checkArgument(literal.getOperator() != Operator.AND && literal.getOperator() != Operator.OR,
+                "%s was not a literal", literal);
+        return Literal.copy(literal, literal.isNegated(), column);
+    }
+
     public static VtlFiltering transform(VtlFiltering orders, BinaryOperator<VtlFiltering> transform) {
         if (orders.getOperator() == Operator.AND || orders.getOperator() == Operator.OR) {
             List<VtlFiltering> ops = new ArrayList<>();
@@ -181,7 +227,7 @@ public abstract class VtlFiltering implements Filtering {
         }
     }
 
-    private void setHashFunction(ToIntFunction<String> function) {
+    void setHashFunction(ToIntFunction<String> function) {
         this.hashFunction = function;
         for (FilteringSpecification operand : getOperands()) {
             if (operand instanceof VtlFiltering) {
@@ -195,6 +241,15 @@ public abstract class VtlFiltering implements Filtering {
         return this.operands;
     }
 
+    /**
+     * Describes how the rows were evaluated: the operands of the conjunctions and disjunctions in the order
+     * they are evaluated, with the share of the sampled rows for which they decided the result and their
+     * average time. Empty if no row was sampled.
+     */
+    public Optional<String> describeEvaluation() {
+        return Optional.empty();
+    }
+
     @Override
     public Operator getOperator() {
         return this.operator;
@@ -259,7 +314,7 @@ public abstract class VtlFiltering implements Filtering {
 
             if (original.getOperands().isEmpty()) {
                 if (hashFunction.applyAsInt(original.getColumn()) >= 0) {
-                    return new Literal(negated, original.getColumn(), original.getValue(), operator);
+                    return Literal.copy(original, negated);
                 } else {
                     return new Literal(false, original.getColumn(), original.getValue(), Operator.TRUE);
                 }
@@ -308,8 +363,47 @@ public abstract class VtlFiltering implements Filtering {
 
     static public class Literal extends VtlFiltering {
 
+        private final List<VTLObject> values;
+        private int index = -1;
+
         Literal(boolean negated, String column, VTLObject value, Operator operator) {
             super(negated, column, operator, value);
+            this.values = value == null ? Collections.emptyList() : Collections.singletonList(value);
+        }
+
+        Literal(boolean negated, String column, Operator operator, List<VTLObject> values) {
+            super(negated, column, operator, null);
+            this.values = ImmutableList.copyOf(values);
+        }
+
+        /**
+         * Compares the values of a column with the values of the filter. Nulls are first and numbers of
+         * different types are compared as doubles.
+         */
+        @SuppressWarnings("unchecked")
+        private static int compare(Object actual, Object expected) {
+            if (actual == null || expected == null) {
+                return actual == null ? (expected == null ? 0 : -1) : 1;
+            }
+            if (actual instanceof Long && expected instanceof Long) {
+                return Long.compare((Long) actual, (Long) expected);
+            }
+            if (actual instanceof Number && expected instanceof Number && actual.getClass() != expected.getClass()) {
+                return Double.compare(((Number) actual).doubleValue(), ((Number) expected).doubleValue());
+            }
+            return ((Comparable<Object>) actual).compareTo(expected);
+        }
+
+        static Literal copy(FilteringSpecification literal, boolean negated) {
+            return copy(literal, negated, literal.getColumn());
+        }
+
+        static Literal copy(FilteringSpecification literal, boolean negated, String column) {
+            Operator operator = literal.getOperator();
+            if (operator == Operator.IN || operator == Operator.BETWEEN) {
+                return new Literal(negated, column, operator, literal.getValues());
+            }
+            return new Literal(negated, column, literal.getValue(), operator);
         }
 
         public boolean equals(Object o) {
@@ -326,6 +420,7 @@ public abstract class VtlFiltering implements Filtering {
             if (!Objects.equals(this.isNegated(), that.isNegated())) return false;
             if (!Objects.equals(this.getColumn(), that.getColumn())) return false;
             if (!Objects.equals(this.getValue(), that.getValue())) return false;
+            if (!Objects.equals(this.getValues(), that.getValues())) return false;
 
             return true;
         }
@@ -335,7 +430,7 @@ public abstract class VtlFiltering implements Filtering {
                     this.getOperator(),
                     this.isNegated(),
                     this.getColumn(),
-                    this.getValue()
+                    this.getValues()
             );
         }
 
@@ -344,6 +439,18 @@ public abstract class VtlFiltering implements Filtering {
             return this.operator;
         }
 
+        @Override
+        public List<VTLObject> getValues() {
+            return values;
+        }
+
+        @Override
+        void setHashFunction(ToIntFunction<String> function) {
+            super.setHashFunction(function);
+            // Resolve the index once instead of for every row.
+            index = column == null ? -1 : function.applyAsInt(column);
+        }
+
         @Override
         public String getColumn() {
             return column;
@@ -360,15 +467,26 @@ public abstract class VtlFiltering implements Filtering {
             if (operator == Operator.TRUE) {
                 return !isNegated();
             }
-            VTLObject columnValue = dataPoint.get(hashFunction.applyAsInt(getColumn()));
-            int compare = columnValue.compareTo(value);
+            Object columnValue = dataPoint.get(index).get();
             switch (operator) {
                 case EQ:
-                    return compare == 0 ^ isNegated();
+                    return compare(columnValue, value.get()) == 0 ^ isNegated();
                 case GT:
-                    return compare > 0 ^ isNegated();
+                    return compare(columnValue, value.get()) > 0 ^ isNegated();
                 case LT:
-                    return compare < 0 ^ isNegated();
+                    return compare(columnValue, value.get()) < 0 ^ isNegated();
+                case IS_NULL:
+                    return columnValue == null ^ isNegated();
+                case IN:
+                    for (VTLObject candidate : values) {
+                        if (compare(columnValue, candidate.get()) == 0) {
+                            return !isNegated();
+                        }
+                    }
+                    return isNegated();
+                case BETWEEN:
+                    return (compare(columnValue, values.get(0).get()) >= 0
+                            && compare(columnValue, values.get(1).get()) <= 0) ^ isNegated();
             }
             throw new IllegalArgumentException();
         }
@@ -384,6 +502,14 @@ public abstract class VtlFiltering implements Filtering {
                     return String.format("%s%s%s", column, isNegated() ? ">=" : "<", getValue());
                 case TRUE:
                     return isNegated() ? "FALSE" : "TRUE";
+                case IS_NULL:
+                    return String.format("%s%s", column, isNegated() ? " is not null" : " is null");
+                case IN:
+                    return String.format("%s%s%s", column, isNegated() ? " !in " : " in ",
+                            values.stream().map(Objects::toString).collect(Collectors.joining(",", "(", ")")));
+                case BETWEEN:
+                    return String.format("%s%s[%s,%s]", column, isNegated() ? " !in " : " in ",
+                            values.get(0), values.get(1));
                 default:
                     return "unknown";
             }
@@ -392,12 +518,15 @@ public abstract class VtlFiltering implements Filtering {
 
     static public class And extends VtlFiltering {
 
+        private final AdaptiveOperands adaptiveOperands;
+
         And(boolean negated, VtlFiltering... operands) {
-            super(negated, Operator.AND, Arrays.asList(operands));
+            this(negated, Arrays.asList(operands));
         }
 
         And(boolean negated, Collection<VtlFiltering> operands) {
             super(negated, Operator.AND, operands);
+            this.adaptiveOperands = new AdaptiveOperands(this.operands);
         }
 
         public boolean equals(Object o) {
@@ -442,22 +571,13 @@ public abstract class VtlFiltering implements Filtering {
 
         @Override
         public boolean test(DataPoint dataPoint) {
-            if (isNegated()) {
-                // De Morgan's law
-                for (VtlFiltering operand : operands) {
-                    if (!operand.test(dataPoint)) {
-                        return true;
-                    }
-                }
-                return false;
-            } else {
-                for (VtlFiltering operand : operands) {
-                    if (!operand.test(dataPoint)) {
-                        return false;
-                    }
-                }
-                return true;
-            }
+            // De Morgan's law if negated.
+            return adaptiveOperands.anyMatch(dataPoint, false) == isNegated();
+        }
+
+        @Override
+        public Optional<String> describeEvaluation() {
+            return Optional.ofNullable(adaptiveOperands.describe("&")).map(d -> isNegated() ? "~" + d : d);
         }
 
         @Override
@@ -491,12 +611,15 @@ public abstract class VtlFiltering implements Filtering {
 
     static public class Or extends VtlFiltering {
 
+        private final AdaptiveOperands adaptiveOperands;
+
         Or(boolean negated, VtlFiltering... operands) {
-            super(negated, Operator.OR, Arrays.asList(operands));
+            this(negated, Arrays.asList(operands));
         }
 
         Or(boolean negated, Collection<VtlFiltering> operands) {
             super(negated, Operator.OR, operands);
+            this.adaptiveOperands = new AdaptiveOperands(this.operands);
         }
 
         public boolean equals(Object o) {
@@ -541,22 +664,13 @@ public abstract class VtlFiltering implements Filtering {
 
         @Override
         public boolean test(DataPoint dataPoint) {
-            if (isNegated()) {
-                // De Morgan's law
-                for (VtlFiltering operand : operands) {
-                    if (!operand.test(dataPoint)) {
-                        return false;
-                    }
-                }
-                return true;
-            } else {
-                for (VtlFiltering operand : operands) {
-                    if (operand.test(dataPoint)) {
-                        return true;
-                    }
-                }
-                return false;
-            }
+            // De Morgan's law if negated.
+            return adaptiveOperands.anyMatch(dataPoint, true) != isNegated();
+        }
+
+        @Override
+        public Optional<String> describeEvaluation() {
+            return Optional.ofNullable(adaptiveOperands.describe("|")).map(d -> isNegated() ? "~" + d : d);
         }
 
         @Override
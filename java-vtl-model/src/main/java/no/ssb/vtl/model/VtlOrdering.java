@@ -26,8 +26,10 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.primitives.Booleans;
 import com.google.common.primitives.Ints;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Iterator;
@@ -55,6 +57,7 @@ public final class VtlOrdering implements Ordering {
     private final ImmutableMap<String, Direction> delegate;
     private final int[] indices;
     private final Direction[] directions;
+    private final boolean[] dates;
 
     public VtlOrdering(OrderingSpecification specification, DataStructure structure) {
         this(toMap(specification), structure);
@@ -65,6 +68,7 @@ public final class VtlOrdering implements Ordering {
 
         ArrayList<Integer> indices = Lists.newArrayList();
         ArrayList<Direction> directions = Lists.newArrayList();
+        ArrayList<Boolean> dates = Lists.newArrayList();
 
         Sets.SetView<String> difference = Sets.difference(specification.keySet(), structure.keySet());
         if (!difference.isEmpty()) {
@@ -78,10 +82,12 @@ public final class VtlOrdering implements Ordering {
         for (String column : specification.keySet()) {
             indices.add(columns.indexOf(column));
             directions.add(specification.get(column));
+            dates.add(Instant.class.equals(structure.get(column).getType()));
         }
 
         this.indices = Ints.toArray(indices);
         this.directions = directions.toArray(new Direction[]{});
+        this.dates = Booleans.toArray(dates);
     }
 
     private static ImmutableMap<String, Direction> toMap(OrderingSpecification specification) {
@@ -158,6 +164,14 @@ public final class VtlOrdering implements Ordering {
 
         for (int i = 0; i < indices.length; i++) {
 
+            if (dates[i]) {
+                result = compareDates(dp1.get(indices[i]), dp2.get(indices[i]));
+                if (result != 0) {
+                    return directions[i] == Direction.ASC ? result : -result;
+                }
+                continue;
+            }
+
             Comparable o1 = (Comparable) dp1.get(indices[i]).get();
             Comparable o2 = (Comparable) dp2.get(indices[i]).get();
 
@@ -178,6 +192,30 @@ public final class VtlOrdering implements Ordering {
         return 0;
     }
 
+    /**
+     * Compares dates using their epoch values, nulls last.
+     */
+    private static int compareDates(VTLObject v1, VTLObject v2) {
+        if (v1 instanceof VTLDate && v2 instanceof VTLDate) {
+            VTLDate d1 = (VTLDate) v1;
+            VTLDate d2 = (VTLDate) v2;
+            if (d1.isNull()) {
+                return d2.isNull() ? 0 : 1;
+            } else if (d2.isNull()) {
+                return -1;
+            }
+            return Long.compare(d1.toEpochMilli(), d2.toEpochMilli());
+        }
+        Instant o1 = (Instant) v1.get();
+        Instant o2 = (Instant) v2.get();
+        if (o1 == null) {
+            return o2 == null ? 0 : 1;
+        } else if (o2 == null) {
+            return -1;
+        }
+        return o1.compareTo(o2);
+    }
+
     public static class Builder {
 
         private ImmutableMap.Builder<String, Direction> map = ImmutableMap.builder();
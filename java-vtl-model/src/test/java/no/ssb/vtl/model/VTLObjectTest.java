@@ -27,9 +27,12 @@ import org.assertj.core.api.SoftAssertions;
 import org.junit.Test;
 
 import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.TimeZone;
 
 import static org.assertj.core.api.Java6Assertions.assertThat;
 import static org.assertj.core.api.Java6Assertions.assertThatThrownBy;
@@ -84,6 +87,39 @@ public class VTLObjectTest {
         assertThat(aString.getVTLType()).isEqualTo(VTLString.class);
     }
 
+    @Test
+    public void testDate() {
+        TimeZone timeZone = TimeZone.getTimeZone("Europe/Oslo");
+        Instant instant = ZonedDateTime.of(2017, 1, 1, 0, 0, 0, 0, ZoneId.of("Europe/Oslo")).toInstant();
+
+        VTLDate parsed = VTLDate.of("2017", "YYYY", timeZone);
+        assertThat(parsed.get()).isEqualTo(instant);
+        assertThat(parsed.toEpochMilli()).isEqualTo(instant.toEpochMilli());
+        assertThat(parsed).isEqualTo(VTLDate.of(instant));
+        assertThat(parsed).isEqualTo(VTLDate.ofEpochMilli(instant.toEpochMilli()));
+        assertThat(VTLDate.of("2017", VTLDate.getFormatter("YYYY"), timeZone)).isEqualTo(parsed);
+
+        assertThatThrownBy(() -> VTLDate.getFormatter("YYYYSN"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("unsupported");
+    }
+
+    @Test
+    public void testDateCompare() {
+        VTLDate epoch = VTLDate.ofEpochMilli(0);
+        VTLDate later = VTLDate.of(Instant.ofEpochMilli(1000));
+        VTLDate nullDate = VTLDate.of((Instant) null);
+
+        try (AutoCloseableSoftAssertions softly = new AutoCloseableSoftAssertions()) {
+            softly.assertThat(epoch.compareTo(later)).isLessThan(0);
+            softly.assertThat(later.compareTo(epoch)).isGreaterThan(0);
+            softly.assertThat(epoch.compareTo(VTLDate.of(Instant.EPOCH))).isEqualTo(0);
+            softly.assertThat(nullDate.compareTo(epoch)).isLessThan(0);
+            softly.assertThat(epoch.compareTo(nullDate)).isGreaterThan(0);
+            softly.assertThat(epoch.compareTo(VTLObject.NULL)).isGreaterThan(0);
+        }
+    }
+
     @Test
     public void testEquals() {
         VTLInteger vtlInteger = VTLObject.of(1L);
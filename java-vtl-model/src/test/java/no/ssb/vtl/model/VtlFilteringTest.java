@@ -28,9 +28,11 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import static no.ssb.vtl.model.VtlFiltering.between;
 import static no.ssb.vtl.model.VtlFiltering.eq;
 import static no.ssb.vtl.model.VtlFiltering.ge;
 import static no.ssb.vtl.model.VtlFiltering.gt;
+import static no.ssb.vtl.model.VtlFiltering.in;
 import static no.ssb.vtl.model.VtlFiltering.le;
 import static no.ssb.vtl.model.VtlFiltering.lt;
 import static no.ssb.vtl.model.VtlFiltering.neq;
@@ -171,4 +173,111 @@ public class VtlFilteringTest {
 
         assertThat(filtering.toString()).isEqualTo("(1=a&2<=c)");
     }
+
+    @Test
+    public void testIn() {
+        VtlFiltering filtering = VtlFiltering.using(structure).and(
+                eq("1", "a"),
+                in("2", "b", "d")
+        ).build();
+
+        List<DataPoint> result = data.stream().filter(filtering).collect(Collectors.toList());
+        assertThat(result).containsExactly(
+                DataPoint.create("a", "b"),
+                DataPoint.create("a", "d")
+        );
+        assertThat(filtering.toString()).isEqualTo("(1=a&2 in (b,d))");
+
+        VtlFiltering notIn = VtlFiltering.using(structure).with(VtlFiltering.not(in("1", "a", "b", "c", "d")));
+        assertThat(data.stream().filter(notIn).count()).isEqualTo(5);
+        assertThat(notIn.getValues()).hasSize(4);
+    }
+
+    @Test
+    public void testBetween() {
+        VtlFiltering filtering = VtlFiltering.using(structure).and(
+                eq("1", "a"),
+                between("2", "b", "d")
+        ).build();
+
+        List<DataPoint> result = data.stream().filter(filtering).collect(Collectors.toList());
+        assertThat(result).containsExactly(
+                DataPoint.create("a", "b"),
+                DataPoint.create("a", "c"),
+                DataPoint.create("a", "d")
+        );
+        assertThat(filtering.toString()).isEqualTo("(1=a&2 in [b,d])");
+    }
+
+    @Test
+    public void testIsNull() {
+        List<DataPoint> withNulls = Lists.newArrayList(
+                DataPoint.create("a", null),
+                DataPoint.create("b", "b")
+        );
+
+        VtlFiltering isNull = VtlFiltering.using(structure).with(VtlFiltering.isNull("2"));
+        assertThat(withNulls.stream().filter(isNull)).containsExactly(DataPoint.create("a", null));
+
+        VtlFiltering isNotNull = VtlFiltering.using(structure).with(VtlFiltering.isNotNull("2"));
+        assertThat(withNulls.stream().filter(isNotNull)).containsExactly(DataPoint.create("b", "b"));
+        assertThat(isNotNull.toString()).isEqualTo("2 is not null");
+    }
+
+    @Test
+    public void testNotOr() {
+        // not (1 = a or 2 = a)
+        VtlFiltering filtering = VtlFiltering.using(structure).with(
+                VtlFiltering.not(VtlFiltering.or(eq("1", "a"), eq("2", "a")))
+        );
+
+        List<DataPoint> result = data.stream().filter(filtering).collect(Collectors.toList());
+        assertThat(result).hasSize(16).noneMatch(dataPoint -> dataPoint.contains(VTLObject.of("a")));
+    }
+
+    @Test
+    public void testTransposeKeepsValues() {
+        VtlFiltering filtering = VtlFiltering.using(structure).transpose(
+                VtlFiltering.and(in("1", "a", "b"), between("2", "b", "c"), eq("3", "a"))
+        );
+
+        assertThat(filtering.toString()).isEqualTo("(1 in (a,b)&2 in [b,c]&TRUE)");
+        assertThat(data.stream().filter(filtering).count()).isEqualTo(4);
+    }
+
+    @Test
+    public void testAdaptiveOrder() {
+        // 2 != z never decides the conjunction, 1 = a decides it for most rows.
+        VtlFiltering filtering = VtlFiltering.using(structure).and(
+                neq("2", "z"),
+                eq("1", "a")
+        ).build();
+        assertThat(filtering.describeEvaluation()).isEmpty();
+
+        long count = 0;
+        for (int i = 0; i < 200; i++) {
+            count += data.stream().filter(filtering).count();
+        }
+
+        assertThat(count).isEqualTo(200 * 5);
+        assertThat(filtering.toString()).isEqualTo("(2!=z&1=a)");
+        assertThat(filtering.describeEvaluation()).hasValueSatisfying(description -> {
+            assertThat(description).startsWith("(1=a [");
+            assertThat(description).contains("&2!=z [0%, ");
+        });
+    }
+
+    @Test
+    public void testMixedNumbers() {
+        DataStructure numbers = DataStructure.of("n", Component.Role.IDENTIFIER, Long.class);
+        List<DataPoint> values = Lists.newArrayList(
+                DataPoint.create(1L), DataPoint.create(2L), DataPoint.create(3L), DataPoint.create((Object) null)
+        );
+
+        VtlFiltering greater = VtlFiltering.using(numbers).with(gt("n", 1.5));
+        assertThat(values.stream().filter(greater)).containsExactly(DataPoint.create(2L), DataPoint.create(3L));
+
+        VtlFiltering lower = VtlFiltering.using(numbers).with(lt("n", 2L));
+        assertThat(values.stream().filter(lower)).containsExactly(DataPoint.create(1L), DataPoint.create((Object) null));
+    }
 }
@@ -24,6 +24,7 @@ import org.assertj.core.util.Lists;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.time.Instant;
 import java.util.ArrayList;
 
 import static no.ssb.vtl.model.Component.Role;
@@ -67,6 +68,28 @@ public class VtlOrderingTest {
         );
     }
 
+    @Test
+    public void testSortedDates() {
+        DataStructure dateStructure = DataStructure.builder()
+                .put("A", Role.IDENTIFIER, Instant.class)
+                .put("B", Role.IDENTIFIER, String.class)
+                .build();
+        ArrayList<DataPoint> dates = Lists.newArrayList(
+                DataPoint.create(VTLDate.ofEpochMilli(2000), VTLObject.of("b")),
+                DataPoint.create(VTLObject.NULL, VTLObject.of("c")),
+                DataPoint.create(VTLDate.of(Instant.ofEpochMilli(1000)), VTLObject.of("a")),
+                DataPoint.create(VTLDate.of((Instant) null), VTLObject.of("d"))
+        );
+
+        dates.sort(VtlOrdering.using(dateStructure).asc("A").asc("B").build());
+        assertThat(dates).extracting(dataPoint -> dataPoint.get(1).get())
+                .containsExactly("a", "b", "c", "d");
+
+        dates.sort(VtlOrdering.using(dateStructure).desc("A").asc("B").build());
+        assertThat(dates).extracting(dataPoint -> dataPoint.get(1).get())
+                .containsExactly("c", "d", "b", "a");
+    }
+
     @Test
     public void testSortedEdgeCases() {
         ArrayList<DataPoint> emptySort = new ArrayList<>(data);
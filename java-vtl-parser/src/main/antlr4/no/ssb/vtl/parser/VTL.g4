@@ -63,7 +63,8 @@ expression : LPAR expression RPAR
 membershipExpression : left=variable op=MEMBERSHIP right=variable ;
 
 // TODO: Rename to variableName.
-variable : ( ESCAPED_IDENTIFIER | REG_IDENTIFIER ) ;
+// The keywords of the limit clause can still be used as names.
+variable : ( ESCAPED_IDENTIFIER | REG_IDENTIFIER | LIMIT | ASC | DESC ) ;
 
 // Literal.
 literal : nullLiteral
@@ -96,10 +97,12 @@ function : getFunction               #withGet
          | putFunction               #withPut
          | checkFunction             #withCheck
          | aggregationFunction       #withAggregation
+         | persistFunction           #withPersist
          ;
 
 getFunction : 'get' LPAR stringLiteral RPAR;
 putFunction : 'put' LPAR stringLiteral RPAR;
+persistFunction : 'persist' LPAR datasetExpression RPAR;
 
 aggregationFunction
        : 'sum' '(' variableExpression ')' aggregationParams       #aggregateSum
@@ -130,6 +133,7 @@ clause       : 'rename' renameParam (',' renameParam)*     #renameClause
              | calc       #calcClause
              | attrcalc   #attrcalcClause
              | aggregate  #aggregateClause
+             | limit      #limitClause
              ;
 
 // [ rename component as string,
@@ -149,6 +153,15 @@ attrcalc    : 'attrcalc' ;
 
 aggregate   : 'aggregate' ;
 
+// [ limit 100 ] or [ limit 100 order by component, component desc ]
+limit       : LIMIT integerLiteral ( ORDER_BY limitOrder (',' limitOrder)* )? ;
+limitOrder  : variable direction=( ASC | DESC )? ;
+
+LIMIT : 'limit' ;
+ORDER_BY : 'order' [ \t\r\n\u000C]+ 'by' ;
+ASC : 'asc' ;
+DESC : 'desc' ;
+
 ASSIGNMENT : ':=' ;
 
 /* Operators */
@@ -230,10 +243,12 @@ FUNC_F_F_S   : 'float_from_string' ;
 FUNC_S_F_N   : 'string_from_number' ;
 FUNC_REPLACE : 'replace' ;
 
-relationalExpression : unionExpression | joinExpression ;
+relationalExpression : unionExpression | setExpression | joinExpression ;
 
 unionExpression : 'union' '(' datasetExpression (',' datasetExpression )* ')' ;
 
+setExpression : op=( 'intersect' | 'setdiff' | 'symdiff' ) '(' left=datasetExpression ',' right=datasetExpression ')' ;
+
 joinExpression : '[' joinDefinition ']' '{' joinBody '}';
 
 joinDefinition : type=( INNER | OUTER | CROSS )? datasets=joinDefinitionVariables ( 'on' identifiers=joinDefinitionVariables)? ;
@@ -64,4 +64,13 @@ public class ClausesParserTest extends GrammarTest {
                 "clauseExpression");
     }
 
+    @Test
+    public void testLimit() throws Exception {
+        parse("[limit 100]", "clauseExpression");
+        parse("[limit 10 order by varId]", "clauseExpression");
+        parse("[limit 10 order by varId desc, varId asc]", "clauseExpression");
+        parse("[limit 10 order by limit desc]", "clauseExpression");
+        parse("[limit 10 order  by varId]", "clauseExpression");
+        parse("[limit 10 order\n    by varId]", "clauseExpression");
+    }
 }
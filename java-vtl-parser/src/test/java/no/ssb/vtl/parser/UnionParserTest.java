@@ -35,4 +35,11 @@ public class UnionParserTest extends GrammarTest {
     public void testUnionWithOnlyOneDataset() throws Exception {
         parse("union( datasetExpr1 )", "unionExpression");
     }
+
+    @Test
+    public void testSetOperations() throws Exception {
+        parse("intersect( datasetExpr1, datasetExpr2 )", "setExpression");
+        parse("setdiff( datasetExpr1, datasetExpr2 )", "setExpression");
+        parse("symdiff( datasetExpr1, datasetExpr2 )", "setExpression");
+    }
 }
@@ -0,0 +1,246 @@
+package no.ssb.vtl.script;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.base.MoreObjects;
+import no.ssb.vtl.script.error.ExecutionCancelledException;
+import no.ssb.vtl.script.error.ExecutionLimitExceededException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Handle on the execution of a script, used to cancel it and to limit the work it does.
+ * <p>
+ * An execution is created with {@link VTLScriptEngine#newExecution()} and given to
+ * {@link VTLScriptEngine#eval(String, javax.script.Bindings, Execution)}. The datasets the script
+ * returns keep the execution: the limits apply, and {@link #cancel()} works, while they are read.
+ * <p>
+ * Cancellation is cooperative. The operations check the execution for each row they produce, the
+ * rows and the time are checked every {@value #CHECK_INTERVAL} rows, and the engine checks it before
+ * each statement. Once a limit is exceeded the execution is cancelled, so all the operations reading
+ * its data stop.
+ * <p>
+ * Closing the execution releases what its operations keep until it ends, the materialized datasets for
+ * instance. The datasets it returned cannot be read anymore.
+ *
+ * @see VtlConfiguration#setExecution(Execution)
+ */
+public final class Execution implements AutoCloseable {
+
+    /**
+     * Number of rows an operation produces between the checks of the limits.
+     */
+    public static final int CHECK_INTERVAL = 128;
+
+    private final AtomicLong rows = new AtomicLong();
+    private volatile ExecutionCancelledException cancellation;
+    private volatile long start;
+    private volatile boolean started;
+    private volatile long timeout = Long.MAX_VALUE;
+    private volatile long rowLimit = Long.MAX_VALUE;
+    private volatile long memoryBudget = Long.MAX_VALUE;
+    private final List<Closeable> resources = new ArrayList<>();
+    private boolean closed;
+
+    Execution() {
+    }
+
+    /**
+     * Limits the wall time of the execution, counted from the moment it starts and including the
+     * time spent reading the datasets it returns.
+     */
+    public Execution setTimeout(long timeout, TimeUnit unit) {
+        checkArgument(timeout > 0, "the timeout must be positive");
+        this.timeout = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Limits the number of rows the operations of the execution produce, all together. This includes
+     * the intermediate rows (a join that produces many rows that are then filtered out for instance)
+     * but not the rows read from the connectors.
+     */
+    public Execution setRowLimit(long rowLimit) {
+        checkArgument(rowLimit > 0, "the row limit must be positive");
+        this.rowLimit = rowLimit;
+        return this;
+    }
+
+    /**
+     * Limits the memory, in bytes, the operations of the execution can use to buffer rows.
+     *
+     * @see VtlConfiguration#setMemoryBudget(long)
+     */
+    public Execution setMemoryBudget(long memoryBudget) {
+        checkArgument(memoryBudget > 0, "the memory budget must be positive");
+        this.memoryBudget = memoryBudget;
+        return this;
+    }
+
+    public long getTimeout(TimeUnit unit) {
+        return timeout == Long.MAX_VALUE ? Long.MAX_VALUE : unit.convert(timeout, TimeUnit.NANOSECONDS);
+    }
+
+    public long getRowLimit() {
+        return rowLimit;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Starts the clock of the timeout. Only the first call has an effect.
+     */
+    synchronized void start() {
+        if (!started) {
+            start = System.nanoTime();
+            started = true;
+        }
+    }
+
+    /**
+     * Cancels the execution. The operations reading its data fail with an
+     * {@link ExecutionCancelledException}.
+     */
+    public void cancel() {
+        cancel(new ExecutionCancelledException("the execution was cancelled"));
+    }
+
+    private synchronized void cancel(ExecutionCancelledException cause) {
+        if (cancellation == null) {
+            cancellation = cause;
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancellation != null;
+    }
+
+    /**
+     * Returns the number of rows produced so far. The operations report their rows every
+     * {@value #CHECK_INTERVAL} rows.
+     */
+    public long getRowCount() {
+        return rows.get();
+    }
+
+    /**
+     * Returns the time elapsed since the start of the execution.
+     */
+    public long getElapsed(TimeUnit unit) {
+        return started ? unit.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS) : 0;
+    }
+
+    /**
+     * Throws if the execution was cancelled.
+     *
+     * @throws ExecutionCancelledException if the execution was cancelled or exceeded a limit
+     */
+    public void checkCancelled() {
+        ExecutionCancelledException cancellation = this.cancellation;
+        if (cancellation != null) {
+            throw new ExecutionCancelledException(cancellation.getMessage(), cancellation);
+        }
+    }
+
+    /**
+     * Reports rows produced and checks the limits.
+     *
+     * @throws ExecutionLimitExceededException if a limit is exceeded
+     * @throws ExecutionCancelledException     if the execution was cancelled
+     */
+    public void checkpoint(long producedRows) {
+        checkCancelled();
+        long total = rows.addAndGet(producedRows);
+        if (total > rowLimit) {
+            throw exceeded(String.format("row limit of %d rows exceeded", rowLimit));
+        }
+        if (started && timeout != Long.MAX_VALUE && System.nanoTime() - start > timeout) {
+            throw exceeded(String.format("timeout of %d ms exceeded", TimeUnit.NANOSECONDS.toMillis(timeout)));
+        }
+    }
+
+    private ExecutionLimitExceededException exceeded(String message) {
+        ExecutionLimitExceededException exception = new ExecutionLimitExceededException(message);
+        cancel(exception);
+        return exception;
+    }
+
+    /**
+     * Registers a resource that is closed with the execution. The resource is closed right away if the
+     * execution is already closed.
+     */
+    public void register(Closeable resource) {
+        checkNotNull(resource);
+        synchronized (resources) {
+            if (!closed) {
+                resources.add(resource);
+                return;
+            }
+        }
+        closeQuietly(resource);
+    }
+
+    /**
+     * Cancels the execution and closes the resources its operations registered.
+     */
+    @Override
+    public void close() {
+        cancel(new ExecutionCancelledException("the execution was closed"));
+        List<Closeable> resources;
+        synchronized (this.resources) {
+            closed = true;
+            resources = new ArrayList<>(this.resources);
+            this.resources.clear();
+        }
+        for (Closeable resource : resources) {
+            closeQuietly(resource);
+        }
+    }
+
+    private static void closeQuietly(Closeable resource) {
+        try {
+            resource.close();
+        } catch (IOException ioe) {
+            // ignore.
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("rows", rows)
+                .add("cancelled", isCancelled())
+                .omitNullValues()
+                .add("rowLimit", rowLimit == Long.MAX_VALUE ? null : rowLimit)
+                .add("timeout", timeout == Long.MAX_VALUE ? null : TimeUnit.NANOSECONDS.toMillis(timeout) + "ms")
+                .toString();
+    }
+}
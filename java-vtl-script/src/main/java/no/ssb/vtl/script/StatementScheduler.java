@@ -0,0 +1,144 @@
+package no.ssb.vtl.script;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.base.Throwables;
+import no.ssb.vtl.connectors.Connector;
+import no.ssb.vtl.dependencies.DependencyGraph;
+import no.ssb.vtl.dependencies.Statement;
+import no.ssb.vtl.script.error.ContextualRuntimeException;
+import no.ssb.vtl.script.error.VTLScriptException;
+import no.ssb.vtl.script.store.ResultCache;
+import no.ssb.vtl.script.visitors.AssignmentVisitor;
+
+import javax.script.Bindings;
+import javax.script.SimpleBindings;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Executes the statements of a script as soon as the statements they depend on are executed.
+ * <p>
+ * Each statement is evaluated with its own copy of the bindings, containing the values its
+ * dependencies assigned. The values are then published in the bindings and the errors reported by
+ * the calling thread in the order of the script, so the result does not depend on the scheduling.
+ */
+final class StatementScheduler {
+
+    private final DependencyGraph graph;
+    private final List<Connector> connectors;
+    private final Executor executor;
+    private final ResultCache cache;
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param cache the results of the previous executions, or null.
+     */
+    StatementScheduler(DependencyGraph graph, List<Connector> connectors, Executor executor, ResultCache cache) {
+        this.graph = checkNotNull(graph);
+        this.connectors = checkNotNull(connectors);
+        this.cache = cache;
+        Executor delegate = checkNotNull(executor);
+        this.executor = task -> delegate.execute(VtlConfiguration.inherit(task));
+    }
+
+    /**
+     * Executes the statements and returns the value of the last one that succeeded.
+     */
+    Object run(Bindings bindings, Consumer<VTLScriptException> errorConsumer) {
+        Map<String, Object> initial = new LinkedHashMap<>(bindings);
+        List<Statement> statements = graph.getStatements();
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Result>[] results = new CompletableFuture[statements.size()];
+        for (Statement statement : statements) {
+            CompletableFuture<?>[] dependencies = graph.getDependencies(statement).stream()
+                    .map(dependency -> results[dependency.getIndex()])
+                    .toArray(CompletableFuture[]::new);
+            results[statement.getIndex()] = CompletableFuture.allOf(dependencies).thenApplyAsync(
+                    ignored -> execute(statement, initial, results), executor
+            );
+        }
+
+        Object last = null;
+        for (int i = 0; i < statements.size(); i++) {
+            Result result;
+            try {
+                result = results[i].join();
+            } catch (CompletionException ce) {
+                Throwables.throwIfUnchecked(ce.getCause());
+                throw ce;
+            }
+            if (result.error != null) {
+                errorConsumer.accept(result.error);
+            } else {
+                bindings.put(statements.get(i).getTarget(), result.value);
+                last = result.value;
+            }
+        }
+        return last;
+    }
+
+    private Result execute(Statement statement, Map<String, Object> initial, CompletableFuture<Result>[] results) {
+        VTLScriptEngine.checkExecution();
+        Bindings bindings = new SimpleBindings(new LinkedHashMap<>(initial));
+        for (String variable : statement.getReads()) {
+            // The writers are dependencies, or dependencies of the failed ones.
+            Optional<Statement> writer = graph.getWriter(variable, statement);
+            while (writer.isPresent()) {
+                Result result = results[writer.get().getIndex()].join();
+                if (result.error == null) {
+                    bindings.put(variable, result.value);
+                    break;
+                }
+                writer = graph.getWriter(variable, writer.get());
+            }
+        }
+
+        AssignmentVisitor visitor = new AssignmentVisitor(bindings, connectors);
+        try {
+            Object value = cache == null
+                    ? visitor.visit(statement.getContext())
+                    : cache.evaluate(statement, bindings, () -> visitor.visit(statement.getContext()));
+            return new Result(VTLScriptEngine.materialize(graph, statement, bindings, value), null);
+        } catch (ContextualRuntimeException cre) {
+            return new Result(null, VTLScriptEngine.toScriptException(cre));
+        }
+    }
+
+    private static final class Result {
+        private final Object value;
+        private final VTLScriptException error;
+
+        private Result(Object value, VTLScriptException error) {
+            this.value = value;
+            this.error = error;
+        }
+    }
+}
@@ -24,11 +24,18 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import no.ssb.vtl.connectors.Connector;
+import no.ssb.vtl.dependencies.DependencyGraph;
+import no.ssb.vtl.dependencies.Statement;
+import no.ssb.vtl.model.Dataset;
 import no.ssb.vtl.parser.VTLLexer;
 import no.ssb.vtl.parser.VTLParser;
 import no.ssb.vtl.script.error.ContextualRuntimeException;
 import no.ssb.vtl.script.error.VTLCompileException;
 import no.ssb.vtl.script.error.VTLScriptException;
+import no.ssb.vtl.script.operations.DatasetOperationWrapper;
+import no.ssb.vtl.script.operations.MaterializedOperation;
+import no.ssb.vtl.script.store.ResultCache;
+import no.ssb.vtl.script.store.ResultStore;
 import no.ssb.vtl.script.support.SyntaxErrorListener;
 import no.ssb.vtl.script.visitors.AssignmentVisitor;
 import org.antlr.v4.runtime.ANTLRInputStream;
@@ -51,18 +58,30 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * A VTL {@link ScriptEngine} implementation.
+ * <p>
+ * An engine can execute scripts for several threads at the same time as long as each execution has its
+ * own bindings ({@link #eval(String, Bindings)} for instance). The datasets it returns can be read from
+ * any thread.
  */
 public class VTLScriptEngine extends AbstractScriptEngine {
 
     private final ImmutableList<Connector> connectors;
-    private TimeZone timeZone = TimeZone.getDefault();
+    private volatile TimeZone timeZone = TimeZone.getDefault();
+    private volatile Executor executor;
+    private volatile ResultStore resultStore;
+    private volatile VtlConfiguration configuration;
 
     /**
      * Create a new engine instance.
@@ -116,6 +135,56 @@ public class VTLScriptEngine extends AbstractScriptEngine {
         timeZone = tz;
     }
 
+    /**
+     * Sets the configuration of the executions.
+     * <p>
+     * Each execution then uses its own copy of the configuration, and the datasets it creates keep
+     * it. The configuration of the calling thread ({@link VtlConfiguration#getConfig()}) is used when
+     * no configuration is set (default).
+     *
+     * @param configuration the configuration, or null
+     */
+    public void setConfiguration(VtlConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+    public VtlConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * Sets the executor used to execute the statements of the scripts.
+     * <p>
+     * The statements that do not depend on each other are then executed concurrently. The
+     * variables are still assigned in the order of the script. The statements are executed in
+     * the calling thread when no executor is set (default).
+     *
+     * @param executor the executor, or null
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the store used to keep the datasets computed by the statements.
+     * <p>
+     * The statements whose text and inputs did not change since a previous execution are then
+     * not executed again; see {@link ResultCache}. Nothing is stored when no store is set (default).
+     *
+     * @param resultStore the store, or null
+     */
+    public void setResultStore(ResultStore resultStore) {
+        this.resultStore = resultStore;
+    }
+
+    public ResultStore getResultStore() {
+        return resultStore;
+    }
+
     @Override
     public Object eval(String script, ScriptContext context) throws ScriptException {
         return eval(new StringReader(script), context);
@@ -140,10 +209,80 @@ public class VTLScriptEngine extends AbstractScriptEngine {
 
     @Override
     public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        return eval(reader, context, null);
+    }
+
+    /**
+     * Evaluates only the statements needed to compute the given variables.
+     * <p>
+     * The other statements are neither executed nor checked, except the ones that put datasets.
+     * The dataset operations of the statements are created the first time they are used; the
+     * operations of the given variables are created before returning so their errors are reported.
+     *
+     * @param script  the script.
+     * @param outputs the variables to compute.
+     * @return the value of the last evaluated statement.
+     * @see DependencyGraph#getRequiredStatements(java.util.Collection)
+     */
+    public Object eval(String script, Set<String> outputs) throws ScriptException {
+        return eval(new StringReader(script), context, outputs);
+    }
+
+    /**
+     * Evaluates only the statements needed to compute the given variables, or all of them if
+     * outputs is null.
+     *
+     * @see #eval(String, Set)
+     */
+    public Object eval(Reader reader, ScriptContext context, Set<String> outputs) throws ScriptException {
+        return eval(reader, context, outputs, null);
+    }
+
+    /**
+     * Creates a handle to give to {@link #eval(String, Bindings, Execution)} in order to cancel the
+     * execution or to limit it.
+     */
+    public Execution newExecution() {
+        return new Execution();
+    }
+
+    /**
+     * Evaluates the script as part of the given execution. The operations, including the ones of the
+     * returned datasets, fail with an {@link no.ssb.vtl.script.error.ExecutionCancelledException} once
+     * the execution is cancelled or exceeds its limits.
+     *
+     * @param script    the script.
+     * @param bindings  the bindings of the execution.
+     * @param execution the execution.
+     * @return the value of the last statement.
+     * @see Execution
+     */
+    public Object eval(String script, Bindings bindings, Execution execution) throws ScriptException {
+        return eval(new StringReader(script), getScriptContext(bindings), null, execution);
+    }
+
+    /**
+     * Evaluates the statements needed to compute the given variables, or all of them if outputs is
+     * null, as part of the given execution, or none if execution is null.
+     *
+     * @see #eval(String, Set)
+     * @see #eval(String, Bindings, Execution)
+     */
+    public Object eval(Reader reader, ScriptContext context, Set<String> outputs, Execution execution)
+            throws ScriptException {
         try {
             ArrayList<VTLScriptException> errors = Lists.newArrayList();
             VTLParser.StartContext start = parse(reader, errors::add);
-            Object returnValue = run(start, errors::add, context);
+            VtlConfiguration configuration = this.configuration;
+            if (execution != null) {
+                configuration = (configuration != null ? configuration : VtlConfiguration.getConfig()).copy();
+                configuration.setExecution(execution);
+            } else if (configuration != null) {
+                configuration = configuration.copy();
+            }
+            Object returnValue = configuration == null
+                    ? execute(start, outputs, errors::add, context)
+                    : configuration.execute(() -> execute(start, outputs, errors::add, context));
             if (!errors.isEmpty()) {
                 throw new VTLCompileException(errors);
             } else {
@@ -154,6 +293,18 @@ public class VTLScriptEngine extends AbstractScriptEngine {
         }
     }
 
+    private Object execute(VTLParser.StartContext start, Set<String> outputs,
+                           Consumer<VTLScriptException> errorConsumer, ScriptContext context) {
+        try {
+            return outputs == null
+                    ? run(start, errorConsumer, context)
+                    : run(start, outputs, errorConsumer, context);
+        } catch (VTLScriptException vse) {
+            errorConsumer.accept(vse);
+            return null;
+        }
+    }
+
     /**
      * Returns a collection of all keywords/reserved words in VTL, divided into the following categories:
      * - implementedVtlKeywords - implemented functions from the specifications
@@ -170,7 +321,7 @@ public class VTLScriptEngine extends AbstractScriptEngine {
         allKeywords.put("implementedVtlKeywords", new HashSet<>(Arrays.asList("get", "put", "and", "or", "join",
                 "xor", "not", "is null", "is not null",
                 "inner", "outer", "cross", "on", "rename",
-                "fold", "unfold", "keep", "drop", "filter", "to", "union", "nvl", "as", "isnull", "check",
+                "fold", "unfold", "keep", "drop", "filter", "to", "union", "intersect", "setdiff", "symdiff", "persist", "nvl", "as", "isnull", "check",
 
                 "hierarchy",
 
@@ -182,15 +333,17 @@ public class VTLScriptEngine extends AbstractScriptEngine {
 
                 "foreach", "in", "do", "done",
 
-                "sum", "avg", "along", "group by", "if", "then", "else", "elseif")));
+                "sum", "avg", "along", "group by", "if", "then", "else", "elseif",
+
+                "limit", "order by", "asc", "desc")));
         allKeywords.put("builtinFunctions", new HashSet<>(Arrays.asList("integer_from_string",
                 "float_from_string", "string_from_number")));
         allKeywords.put("dataTypes", new HashSet<>(Arrays.asList("identifier", "measure", "attribute")));
         allKeywords.put("notImplementedKeywordsAndFunctions", new HashSet<>(Arrays.asList("exists_in", "not_exists_in",
                 "exists_in_all", "not_exists_in_all",
                 "match_characters", "all", "any", "unique", "func_dep", "extract", "string_from_date", "current_date",
-                "listsum", "alterdataset", "eval", "lenght", "concatenation", "instr", "replace", "intersect",
-                "symdiff", "setdiff", "subscript", "transcode", "aggregate", "aggregatefunctions", "time_aggregate",
+                "listsum", "alterdataset", "eval", "lenght", "concatenation", "instr", "replace",
+                "subscript", "transcode", "aggregate", "aggregatefunctions", "time_aggregate",
                 "fill_time_series", "flow_to_stock", "stock_to_flow", "timeshift", "calc", "attrcalc")));
         allKeywords.put("builtinConstants", new HashSet<>(Arrays.asList("true", "false", "null")));
 
@@ -201,23 +354,136 @@ public class VTLScriptEngine extends AbstractScriptEngine {
      * Run loop
      */
     protected Object run(VTLParser.StartContext start, Consumer<VTLScriptException> errorConsumer, ScriptContext context) throws VTLScriptException {
-        AssignmentVisitor assignmentVisitor = new AssignmentVisitor(context, connectors);
+        ResultCache cache = resultStore != null ? new ResultCache(resultStore, connectors) : null;
+        List<Connector> runConnectors = cache != null ? cache.getConnectors() : connectors;
+        Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+        if (executor != null) {
+            StatementScheduler scheduler = new StatementScheduler(DependencyGraph.of(start), runConnectors, executor, cache);
+            return scheduler.run(bindings, errorConsumer);
+        }
+        AssignmentVisitor assignmentVisitor = new AssignmentVisitor(bindings, runConnectors);
+        boolean materialization = VtlConfiguration.getConfig().isMaterializationEnabled();
+        DependencyGraph graph = cache != null || materialization ? DependencyGraph.of(start) : null;
         Object last = null;
-        for (VTLParser.StatementContext statementContext : start.statement()) {
+        for (int i = 0; i < start.statement().size(); i++) {
+            VTLParser.StatementContext statementContext = start.statement(i);
+            checkExecution();
             try {
-                last = assignmentVisitor.visit(statementContext);
+                if (graph == null) {
+                    last = assignmentVisitor.visit(statementContext);
+                    continue;
+                }
+                Statement statement = graph.getStatements().get(i);
+                Object value = cache == null
+                        ? assignmentVisitor.visit(statementContext)
+                        : cache.evaluate(statement, bindings, () -> assignmentVisitor.visit(statementContext));
+                last = materialize(graph, statement, bindings, value);
             } catch (ContextualRuntimeException cre) {
-                ParserRuleContext ctx = cre.getContext();
-                if (cre.getCause() != null) {
-                    errorConsumer.accept(new VTLScriptException((Exception) cre.getCause(), ctx));
+                errorConsumer.accept(toScriptException(cre));
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Run loop evaluating only the statements needed to compute the outputs.
+     */
+    protected Object run(VTLParser.StartContext start, Set<String> outputs, Consumer<VTLScriptException> errorConsumer,
+                         ScriptContext context) {
+        ResultCache cache = resultStore != null ? new ResultCache(resultStore, connectors) : null;
+        List<Connector> runConnectors = cache != null ? cache.getConnectors() : connectors;
+        Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+        AssignmentVisitor assignmentVisitor = new AssignmentVisitor(bindings, runConnectors);
+        DependencyGraph graph = DependencyGraph.of(start);
+        Object last = null;
+        for (Statement statement : graph.getRequiredStatements(outputs)) {
+            checkExecution();
+            try {
+                VTLParser.AssignmentContext assignment = statement.getContext().assignment();
+                Object value;
+                if (assignment.datasetExpression() == null || !statement.getSinks().isEmpty()) {
+                    // The statements that put datasets are executed even if their variable is not used.
+                    Supplier<Object> execution = () -> assignmentVisitor.visit(statement.getContext());
+                    value = cache == null ? execution.get() : cache.evaluate(statement, bindings, execution);
                 } else {
-                    errorConsumer.accept(new VTLScriptException(cre.getMessage(), ctx));
+                    value = defer(statement, assignment.datasetExpression(), bindings, runConnectors, cache);
+                    bindings.put(statement.getTarget(), value);
+                }
+                last = materialize(graph, statement, bindings, value);
+            } catch (ContextualRuntimeException cre) {
+                errorConsumer.accept(toScriptException(cre));
+            }
+        }
+        for (String output : outputs) {
+            Object value = bindings.get(output);
+            try {
+                if (value instanceof Dataset) {
+                    ((Dataset) value).getDataStructure();
                 }
+            } catch (ContextualRuntimeException cre) {
+                errorConsumer.accept(toScriptException(cre));
             }
         }
         return last;
     }
 
+    /**
+     * Returns a dataset that creates the operations of the statement the first time it is used.
+     * <p>
+     * With a result cache, the statement is fingerprinted from its inputs right away and the dataset
+     * has the fingerprint as version, so the statements that read it can be fingerprinted without
+     * creating its operations.
+     */
+    private static Dataset defer(Statement statement, VTLParser.DatasetExpressionContext expression,
+                                 Bindings bindings, List<Connector> connectors, ResultCache cache) {
+        // Later statements can reassign the variables.
+        Bindings snapshot = new SimpleBindings(new LinkedHashMap<>(bindings));
+        AssignmentVisitor deferred = new AssignmentVisitor(snapshot, connectors);
+        Optional<String> fingerprint = cache != null ? cache.fingerprint(statement, bindings) : Optional.empty();
+        if (!fingerprint.isPresent()) {
+            return new DatasetOperationWrapper(() -> (Dataset) deferred.visit(expression));
+        }
+        return new DatasetOperationWrapper(() -> cache.evaluate(
+                statement, fingerprint.get(), () -> (Dataset) deferred.visit(expression)
+        ), fingerprint.get());
+    }
+
+    /**
+     * Materializes, and binds, the dataset a statement assigned if several statements read it.
+     *
+     * @see VtlConfiguration#setMaterialization(boolean)
+     */
+    static Object materialize(DependencyGraph graph, Statement statement, Bindings bindings, Object value) {
+        if (value instanceof Dataset && !(value instanceof MaterializedOperation)
+                && VtlConfiguration.getConfig().isMaterializationEnabled()
+                && graph.getConsumers(statement).size() > 1) {
+            value = new MaterializedOperation((Dataset) value);
+            bindings.put(statement.getTarget(), value);
+        }
+        return value;
+    }
+
+    /**
+     * Checks the execution of the current configuration, if any, before a statement is executed.
+     *
+     * @see Execution#checkpoint(long)
+     */
+    static void checkExecution() {
+        Execution execution = VtlConfiguration.getConfig().getExecution();
+        if (execution != null) {
+            execution.checkpoint(0);
+        }
+    }
+
+    static VTLScriptException toScriptException(ContextualRuntimeException cre) {
+        ParserRuleContext ctx = cre.getContext();
+        if (cre.getCause() != null) {
+            return new VTLScriptException((Exception) cre.getCause(), ctx);
+        } else {
+            return new VTLScriptException(cre.getMessage(), ctx);
+        }
+    }
+
     @Override
     public Bindings createBindings() {
         return new SimpleBindings(Maps.newLinkedHashMap());
@@ -20,21 +20,43 @@ package no.ssb.vtl.script;
  * =========================LICENSE_END==================================
  */
 
+import no.ssb.vtl.script.operations.MemoryTracker;
+
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
 /**
  * Configuration object for vtl.
  * <p>
- * The configuration is wrapped inside a ThreadLocal for now. Use {@link #getConfig()} to
- * access the instances.
+ * Each thread has a configuration, use {@link #getConfig()} to access it. A configuration can also
+ * be created with {@link #create()} and given to an engine (see
+ * {@link VTLScriptEngine#setConfiguration(VtlConfiguration)}); the executions of the engine then use a
+ * {@link #copy() copy} of it, whatever the thread that executes them.
+ * <p>
+ * The dataset operations keep the configuration of the thread that creates them and use it when
+ * their data is read, from any thread.
  */
 public final class VtlConfiguration {
 
     private static final ThreadLocal<VtlConfiguration> localConfiguration = new ThreadLocal<>();
 
-    private boolean filterOptimization = true;
-    private boolean filterPropagation = true;
-    private boolean profiling = false;
-    private boolean sortAssertion = false;
-    private boolean forceSort = false;
+    private volatile boolean filterOptimization = true;
+    private volatile boolean filterPropagation = true;
+    private volatile boolean profiling = false;
+    private volatile boolean sortAssertion = false;
+    private volatile boolean forceSort = false;
+    private volatile boolean rowRecycling = false;
+    private volatile boolean unsortedUnion = false;
+    private volatile boolean concurrentUnion = false;
+    private volatile boolean hashUnfold = false;
+    private volatile boolean materialization = false;
+    private volatile int foreachParallelism = 1;
+    private volatile long memoryBudget = Long.MAX_VALUE;
+    private volatile MemoryPolicy memoryPolicy = MemoryPolicy.FAIL;
+    private MemoryTracker memoryTracker;
+    private volatile Execution execution;
 
     private VtlConfiguration() {
         // prevent instantiation.
@@ -52,6 +74,66 @@ public final class VtlConfiguration {
         localConfiguration.set(config);
     }
 
+    /**
+     * Creates a configuration with the default settings.
+     */
+    public static VtlConfiguration create() {
+        return new VtlConfiguration();
+    }
+
+    /**
+     * Returns a copy of the settings of this configuration. The copy tracks its memory separately
+     * and has no execution.
+     */
+    public VtlConfiguration copy() {
+        VtlConfiguration copy = new VtlConfiguration();
+        copy.filterOptimization = filterOptimization;
+        copy.filterPropagation = filterPropagation;
+        copy.profiling = profiling;
+        copy.sortAssertion = sortAssertion;
+        copy.forceSort = forceSort;
+        copy.rowRecycling = rowRecycling;
+        copy.unsortedUnion = unsortedUnion;
+        copy.concurrentUnion = concurrentUnion;
+        copy.hashUnfold = hashUnfold;
+        copy.materialization = materialization;
+        copy.foreachParallelism = foreachParallelism;
+        copy.memoryBudget = memoryBudget;
+        copy.memoryPolicy = memoryPolicy;
+        return copy;
+    }
+
+    /**
+     * Returns a task that runs with the configuration of the current thread. Use it for
+     * tasks that execute operations in other threads.
+     */
+    public static Runnable inherit(Runnable task) {
+        return getConfig().bind(task);
+    }
+
+    /**
+     * Returns a task that runs with this configuration as the configuration of its thread.
+     */
+    public Runnable bind(Runnable task) {
+        return () -> execute(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs the task with this configuration as the configuration of the current thread.
+     */
+    public <T> T execute(Supplier<T> task) {
+        VtlConfiguration previous = localConfiguration.get();
+        setConfig(this);
+        try {
+            return task.get();
+        } finally {
+            setConfig(previous);
+        }
+    }
+
     /**
      * Some operations add filters down the execution tree in order to optimize the execution.
      * {@link no.ssb.vtl.script.operations.unfold.UnfoldOperation} adds a filter on the values that are unfolded.
@@ -166,6 +248,193 @@ public final class VtlConfiguration {
         setForceSort(false);
     }
 
+    /**
+     * When row recycling is enabled, operations that create new rows reuse the same
+     * {@link no.ssb.vtl.model.DataPoint} instance between elements of the streams they return.
+     * This reduces allocations but requires the consumers to copy the data points they keep
+     * references to.
+     *
+     * @see no.ssb.vtl.model.Dataset#getData()
+     * @see no.ssb.vtl.script.operations.DataPointRecycler
+     */
+    public void setRowRecycling(boolean rowRecycling) {
+        this.rowRecycling = rowRecycling;
+    }
+
+    /**
+     * @see #setRowRecycling(boolean)
+     */
+    public void enableRowRecycling() {
+        setRowRecycling(true);
+    }
+
+    /**
+     * @see #setRowRecycling(boolean)
+     */
+    public void disableRowRecycling() {
+        setRowRecycling(false);
+    }
+
+    /**
+     * When enabled, unions that do not need to be sorted concatenate the data of their children instead
+     * of merging it. The identifiers are then checked for duplicates using a hash set, unless at most
+     * one child has data.
+     *
+     * @see no.ssb.vtl.script.operations.union.UnionOperation
+     */
+    public void setUnsortedUnion(boolean unsortedUnion) {
+        this.unsortedUnion = unsortedUnion;
+    }
+
+    /**
+     * @see #setUnsortedUnion(boolean)
+     */
+    public void enableUnsortedUnion() {
+        setUnsortedUnion(true);
+    }
+
+    /**
+     * @see #setUnsortedUnion(boolean)
+     */
+    public void disableUnsortedUnion() {
+        setUnsortedUnion(false);
+    }
+
+    /**
+     * When enabled, unfolds that do not need to be sorted group the rows of their child in a hash table
+     * instead of reading them sorted on the identifiers. The rows are then returned in the order their
+     * identifiers are first seen and all the groups are kept in memory until the child is exhausted.
+     * This helps when the child would otherwise have to be sorted.
+     *
+     * @see no.ssb.vtl.script.operations.unfold.UnfoldOperation
+     */
+    public void setHashUnfold(boolean hashUnfold) {
+        this.hashUnfold = hashUnfold;
+    }
+
+    /**
+     * @see #setHashUnfold(boolean)
+     */
+    public void enableHashUnfold() {
+        setHashUnfold(true);
+    }
+
+    /**
+     * @see #setHashUnfold(boolean)
+     */
+    public void disableHashUnfold() {
+        setHashUnfold(false);
+    }
+
+    /**
+     * When enabled, unions that concatenate the data of their children consume them concurrently, with
+     * at most one thread per available processor, through a bounded queue. This helps when the children
+     * are slow to read (remote connectors for instance).
+     *
+     * @see #setUnsortedUnion(boolean)
+     */
+    public void setConcurrentUnion(boolean concurrentUnion) {
+        this.concurrentUnion = concurrentUnion;
+    }
+
+    /**
+     * @see #setConcurrentUnion(boolean)
+     */
+    public void enableConcurrentUnion() {
+        setConcurrentUnion(true);
+    }
+
+    /**
+     * @see #setConcurrentUnion(boolean)
+     */
+    public void disableConcurrentUnion() {
+        setConcurrentUnion(false);
+    }
+
+    /**
+     * When enabled, the datasets assigned by a statement and read by several other statements of
+     * the script are computed once and kept, instead of being computed again by each of them.
+     * Scripts can also request it for a dataset with <code>persist(dataset)</code>.
+     *
+     * @see no.ssb.vtl.script.operations.MaterializedOperation
+     */
+    public void setMaterialization(boolean materialization) {
+        this.materialization = materialization;
+    }
+
+    /**
+     * @see #setMaterialization(boolean)
+     */
+    public void enableMaterialization() {
+        setMaterialization(true);
+    }
+
+    /**
+     * @see #setMaterialization(boolean)
+     */
+    public void disableMaterialization() {
+        setMaterialization(false);
+    }
+
+    /**
+     * Sets the number of slices a foreach executes at the same time. With more than one, the slices
+     * are read ahead and executed by a pool of threads, each with its own copy of the block, and the
+     * results are returned in the order of the slices.
+     *
+     * @see no.ssb.vtl.script.operations.foreach.ForeachOperation
+     */
+    public void setForeachParallelism(int foreachParallelism) {
+        checkArgument(foreachParallelism > 0, "the parallelism must be positive");
+        this.foreachParallelism = foreachParallelism;
+    }
+
+    /**
+     * Limits the memory, in bytes, that the operations using this configuration can use to buffer
+     * rows (sorts, join buffers, groups). What happens when the budget is exceeded depends on the
+     * {@link #setMemoryPolicy(MemoryPolicy) memory policy}.
+     * <p>
+     * The sizes are estimates. Setting a budget resets the memory accounting of the configuration.
+     *
+     * @see MemoryTracker
+     */
+    public synchronized void setMemoryBudget(long memoryBudget) {
+        checkArgument(memoryBudget > 0, "the memory budget must be positive");
+        this.memoryBudget = memoryBudget;
+        this.memoryTracker = null;
+    }
+
+    /**
+     * @see #setMemoryBudget(long)
+     */
+    public void clearMemoryBudget() {
+        setMemoryBudget(Long.MAX_VALUE);
+    }
+
+    /**
+     * Sets what operations do when the memory budget is exceeded.
+     *
+     * @see #setMemoryBudget(long)
+     * @see MemoryPolicy
+     */
+    public void setMemoryPolicy(MemoryPolicy memoryPolicy) {
+        this.memoryPolicy = checkNotNull(memoryPolicy);
+    }
+
+    /**
+     * Sets the execution the operations using this configuration belong to. The operations then
+     * stop when it is cancelled or exceeds its limits. This starts the execution, and sets the memory
+     * budget if the execution has one.
+     *
+     * @see Execution
+     */
+    public void setExecution(Execution execution) {
+        checkNotNull(execution).start();
+        if (execution.getMemoryBudget() != Long.MAX_VALUE) {
+            setMemoryBudget(execution.getMemoryBudget());
+        }
+        this.execution = execution;
+    }
+
     /**
      * @see #setFilterOptimization(boolean)
      */
@@ -200,4 +469,97 @@ public final class VtlConfiguration {
     public boolean isForceSortEnabled() {
         return forceSort;
     }
+
+    /**
+     * @see #setRowRecycling(boolean)
+     */
+    public boolean isRowRecyclingEnabled() {
+        return rowRecycling;
+    }
+
+    /**
+     * @see #setUnsortedUnion(boolean)
+     */
+    public boolean isUnsortedUnionEnabled() {
+        return unsortedUnion;
+    }
+
+    /**
+     * @see #setConcurrentUnion(boolean)
+     */
+    public boolean isConcurrentUnionEnabled() {
+        return concurrentUnion;
+    }
+
+    /**
+     * @see #setHashUnfold(boolean)
+     */
+    public boolean isHashUnfoldEnabled() {
+        return hashUnfold;
+    }
+
+    /**
+     * @see #setMaterialization(boolean)
+     */
+    public boolean isMaterializationEnabled() {
+        return materialization;
+    }
+
+    /**
+     * @see #setForeachParallelism(int)
+     */
+    public int getForeachParallelism() {
+        return foreachParallelism;
+    }
+
+    /**
+     * @see #setMemoryBudget(long)
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * @see #setMemoryPolicy(MemoryPolicy)
+     */
+    public MemoryPolicy getMemoryPolicy() {
+        return memoryPolicy;
+    }
+
+    /**
+     * Returns the execution of the operations, or null.
+     *
+     * @see #setExecution(Execution)
+     */
+    public Execution getExecution() {
+        return execution;
+    }
+
+    /**
+     * Returns the tracker that enforces the memory budget. The trackers of the operations
+     * are created with {@link MemoryTracker#create()}.
+     *
+     * @see #setMemoryBudget(long)
+     */
+    public synchronized MemoryTracker getMemoryTracker() {
+        if (memoryTracker == null) {
+            memoryTracker = MemoryTracker.withLimit(memoryBudget);
+        }
+        return memoryTracker;
+    }
+
+    /**
+     * What operations do when the memory budget is exceeded.
+     */
+    public enum MemoryPolicy {
+        /**
+         * Fail with a {@link no.ssb.vtl.script.error.MemoryLimitExceededException}.
+         */
+        FAIL,
+        /**
+         * Sorts write their rows to temporary files. Operations that cannot spill fail
+         * as with {@link #FAIL}.
+         */
+        SPILL
+    }
 }
@@ -1,4 +1,4 @@
-package no.ssb.vtl.script.operations.join;
+package no.ssb.vtl.script.error;
 
 /*-
  * ========================LICENSE_START=================================
@@ -20,27 +20,20 @@ package no.ssb.vtl.script.operations.join;
  * =========================LICENSE_END==================================
  */
 
-import no.ssb.vtl.model.DataPoint;
-import no.ssb.vtl.model.VTLObject;
-
-import java.util.function.Consumer;
-
 /**
- * A consumer that expands the size of the {@link DataPoint} it receives.
+ * Thrown by the operations of an execution that was cancelled.
+ *
+ * @see no.ssb.vtl.script.Execution#cancel()
  */
-public class DataPointCapacityExpander implements Consumer<DataPoint> {
+public class ExecutionCancelledException extends RuntimeException {
 
-    private final int newSize;
+    private static final long serialVersionUID = 3402513170587745126L;
 
-    public DataPointCapacityExpander(int newCapacity) {
-        this.newSize = newCapacity;
+    public ExecutionCancelledException(String message) {
+        super(message);
     }
 
-    @Override
-    public void accept(DataPoint dataPoint) {
-        dataPoint.ensureCapacity(newSize);
-        while (dataPoint.size() < newSize) {
-            dataPoint.add(VTLObject.NULL);
-        }
+    public ExecutionCancelledException(String message, Throwable cause) {
+        super(message, cause);
     }
 }
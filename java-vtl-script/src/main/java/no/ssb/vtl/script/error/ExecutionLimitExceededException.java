@@ -1,10 +1,10 @@
-package no.ssb.vtl.script.operations.hierarchy;
+package no.ssb.vtl.script.error;
 
 /*-
  * ========================LICENSE_START=================================
  * Java VTL
  * %%
- * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
  * %%
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -20,23 +20,16 @@ package no.ssb.vtl.script.operations.hierarchy;
  * =========================LICENSE_END==================================
  */
 
-import no.ssb.vtl.model.VTLObject;
-
-import java.util.function.BiFunction;
-
 /**
- * Accumulator used in the hierarchy aggregation.
+ * Thrown when an execution exceeds one of its limits. The execution is then cancelled.
+ *
+ * @see no.ssb.vtl.script.Execution
  */
-public interface HierarchyAccumulator<T> {
-
-    public HierarchyAccumulator PRODUCT = new ProductHierarchyAccumulator();
+public class ExecutionLimitExceededException extends ExecutionCancelledException {
 
-    VTLObject<T> identity();
+    private static final long serialVersionUID = -7125328839270545917L;
 
-    BiFunction<? super VTLObject, ? super VTLObject, ? extends VTLObject> accumulator(Composition sign);
-
-    public static HierarchyAccumulator sumAccumulatorFor(Class<?> clazz) {
-        return new SumHierarchyAccumulator(clazz);
+    public ExecutionLimitExceededException(String message) {
+        super(message);
     }
-
 }
@@ -0,0 +1,51 @@
+package no.ssb.vtl.script.error;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+/**
+ * Thrown when an operation needs more memory than the budget allows.
+ *
+ * @see no.ssb.vtl.script.VtlConfiguration#setMemoryBudget(long)
+ */
+public class MemoryLimitExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = -4016354207461547381L;
+
+    private final long budget;
+    private final long requested;
+
+    public MemoryLimitExceededException(long budget, long used, long requested) {
+        super(String.format(
+                "memory budget of %d bytes exceeded: %d bytes in use, %d bytes requested",
+                budget, used, requested
+        ));
+        this.budget = budget;
+        this.requested = requested;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public long getRequested() {
+        return requested;
+    }
+}
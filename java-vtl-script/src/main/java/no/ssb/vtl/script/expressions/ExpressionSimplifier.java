@@ -0,0 +1,198 @@
+package no.ssb.vtl.script.expressions;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableMap;
+import no.ssb.vtl.model.VTLBoolean;
+import no.ssb.vtl.model.VTLExpression;
+import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.script.expressions.logic.AndExpression;
+import no.ssb.vtl.script.expressions.logic.NotExpression;
+import no.ssb.vtl.script.expressions.logic.OrExpression;
+
+import javax.script.Bindings;
+import javax.script.SimpleBindings;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Simplifies expressions so that they are not computed again for every row.
+ * <p>
+ * The expressions whose operands are all literals are replaced by their value, the boolean
+ * identities of <code>and</code>, <code>or</code> and <code>not</code> are applied and the branches of
+ * the if-then-else expressions whose conditions are literals are pruned. Expressions that fail when
+ * computed are kept so that the error happens when the rows are computed, as before.
+ * <p>
+ * The simplification only looks at the operands of the expression, they are expected to be simplified
+ * already (see {@link no.ssb.vtl.script.visitors.ExpressionVisitor}).
+ */
+public final class ExpressionSimplifier {
+
+    private static final Bindings EMPTY = new SimpleBindings(Collections.emptyMap());
+
+    private ExpressionSimplifier() {
+        // prevent instantiation.
+    }
+
+    /**
+     * Returns a simpler expression that computes the same values, or the expression itself.
+     */
+    public static VTLExpression simplify(VTLExpression expression) {
+        if (expression instanceof AndExpression) {
+            return simplifyAnd((AndExpression) expression);
+        } else if (expression instanceof OrExpression) {
+            return simplifyOr((OrExpression) expression);
+        } else if (expression instanceof NotExpression) {
+            return simplifyNot((NotExpression) expression);
+        } else if (expression instanceof IfThenElseExpression) {
+            return simplifyIfThenElse((IfThenElseExpression) expression);
+        } else if (expression instanceof AbstractBinaryExpression) {
+            AbstractBinaryExpression binary = (AbstractBinaryExpression) expression;
+            if (isLiteral(binary.getLeftOperand()) && isLiteral(binary.getRightOperand())) {
+                return fold(binary);
+            }
+        } else if (expression instanceof FunctionExpression) {
+            FunctionExpression<?> function = (FunctionExpression<?>) expression;
+            if (function.getArguments().stream().allMatch(ExpressionSimplifier::isLiteral)
+                    && function.getNamedArguments().values().stream().allMatch(ExpressionSimplifier::isLiteral)) {
+                return fold(function);
+            }
+        }
+        return expression;
+    }
+
+    private static VTLExpression simplifyAnd(AndExpression expression) {
+        VTLExpression left = expression.getLeftOperand();
+        VTLExpression right = expression.getRightOperand();
+        if (isLiteral(left) && isLiteral(right)) {
+            return fold(expression);
+        }
+        // false and x = false, also when x is null.
+        if (isLiteral(left, false) || isLiteral(right, false)) {
+            return new LiteralExpression(VTLBoolean.of(false), VTLBoolean.class);
+        }
+        if (isLiteral(left, true) && isBoolean(right)) {
+            return right;
+        }
+        if (isLiteral(right, true) && isBoolean(left)) {
+            return left;
+        }
+        return expression;
+    }
+
+    private static VTLExpression simplifyOr(OrExpression expression) {
+        VTLExpression left = expression.getLeftOperand();
+        VTLExpression right = expression.getRightOperand();
+        if (isLiteral(left) && isLiteral(right)) {
+            return fold(expression);
+        }
+        // true or x = true, also when x is null.
+        if (isLiteral(left, true) || isLiteral(right, true)) {
+            return new LiteralExpression(VTLBoolean.of(true), VTLBoolean.class);
+        }
+        if (isLiteral(left, false) && isBoolean(right)) {
+            return right;
+        }
+        if (isLiteral(right, false) && isBoolean(left)) {
+            return left;
+        }
+        return expression;
+    }
+
+    private static VTLExpression simplifyNot(NotExpression expression) {
+        VTLExpression operand = expression.getOperand();
+        if (isLiteral(operand)) {
+            return fold(expression);
+        }
+        if (operand instanceof NotExpression && isBoolean(((NotExpression) operand).getOperand())) {
+            return ((NotExpression) operand).getOperand();
+        }
+        return expression;
+    }
+
+    private static VTLExpression simplifyIfThenElse(IfThenElseExpression expression) {
+        ImmutableMap.Builder<VTLExpression, VTLExpression> conditions = ImmutableMap.builder();
+        VTLExpression defaultExpression = expression.getDefaultExpression();
+        boolean pruned = false;
+        for (Map.Entry<VTLExpression, VTLExpression> entry : expression.getConditions().entrySet()) {
+            VTLExpression condition = entry.getKey();
+            if (isLiteral(condition, true)) {
+                // The following branches are never reached.
+                defaultExpression = entry.getValue();
+                pruned = true;
+                break;
+            } else if (isLiteral(condition)) {
+                // False or null.
+                pruned = true;
+            } else {
+                conditions.put(condition, entry.getValue());
+            }
+        }
+        if (!pruned) {
+            return expression;
+        }
+
+        Class<?> type = expression.getVTLType();
+        ImmutableMap<VTLExpression, VTLExpression> remaining = conditions.build();
+        if (remaining.isEmpty()) {
+            if (isLiteral(defaultExpression)) {
+                return new LiteralExpression(((LiteralExpression) defaultExpression).getLiteral(), type);
+            } else if (type.equals(defaultExpression.getVTLType())) {
+                return defaultExpression;
+            }
+            return expression;
+        }
+        return new IfThenElseExpression(remaining, defaultExpression, type);
+    }
+
+    /**
+     * Replaces the expression by its value, unless it fails.
+     */
+    private static VTLExpression fold(VTLExpression expression) {
+        VTLObject value;
+        try {
+            value = expression.resolve(EMPTY);
+        } catch (RuntimeException e) {
+            return expression;
+        }
+        if (value == null) {
+            return expression;
+        }
+        Class<?> type = expression.getVTLType();
+        if (value.get() == null && VTLBoolean.class.equals(type)) {
+            value = VTLBoolean.of((Boolean) null);
+        }
+        return new LiteralExpression(value, type);
+    }
+
+    private static boolean isLiteral(VTLExpression expression) {
+        return expression instanceof LiteralExpression;
+    }
+
+    private static boolean isLiteral(VTLExpression expression, boolean value) {
+        return isLiteral(expression)
+                && Boolean.valueOf(value).equals(((LiteralExpression) expression).getLiteral().get());
+    }
+
+    private static boolean isBoolean(VTLExpression expression) {
+        return VTLBoolean.class.equals(expression.getVTLType());
+    }
+}
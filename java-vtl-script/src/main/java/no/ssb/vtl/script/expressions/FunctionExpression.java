@@ -123,6 +123,18 @@ public class FunctionExpression<T extends VTLObject> implements VTLExpression {
         return computedArguments;
     }
 
+    public VTLFunction<T> getFunction() {
+        return wrappedFunction;
+    }
+
+    public List<VTLExpression> getArguments() {
+        return arguments;
+    }
+
+    public Map<String, VTLExpression> getNamedArguments() {
+        return namedArguments;
+    }
+
     @Override
     public VTLObject resolve(Bindings bindings) {
         // Resolve the parameters.
@@ -40,7 +40,7 @@ public class IfThenElseExpression implements VTLExpression {
     private final VTLExpression defaultExpression;
     private final Class vtlType;
 
-    private IfThenElseExpression(ImmutableMap<VTLExpression, VTLExpression> conditionToExpression,
+    IfThenElseExpression(ImmutableMap<VTLExpression, VTLExpression> conditionToExpression,
                                  VTLExpression defaultExpression, Class vtlType) {
         checkArgument(vtlType != null, "could not infer data type. One value must be typed in if-then-else expressions");
         this.vtlType = vtlType;
@@ -65,6 +65,17 @@ public class IfThenElseExpression implements VTLExpression {
         return vtlType;
     }
 
+    /**
+     * Returns the conditions and their values, in order.
+     */
+    public ImmutableMap<VTLExpression, VTLExpression> getConditions() {
+        return conditionToExpression;
+    }
+
+    public VTLExpression getDefaultExpression() {
+        return defaultExpression;
+    }
+
     public static class Builder {
         private final VTLExpression defaultExpression;
         private Class returnType;
@@ -32,9 +32,24 @@ import static com.google.common.base.Preconditions.checkNotNull;
 public class LiteralExpression implements VTLExpression {
 
     private final VTLObject literal;
+    private final Class<?> type;
 
     public LiteralExpression(VTLObject literal) {
         this.literal = checkNotNull(literal);
+        this.type = null;
+    }
+
+    /**
+     * Creates a literal of the given type, used for the values computed from typed expressions (a null
+     * computed by a numeric expression is a number for instance).
+     */
+    public LiteralExpression(VTLObject literal, Class<?> type) {
+        this.literal = checkNotNull(literal);
+        this.type = checkNotNull(type);
+    }
+
+    public VTLObject getLiteral() {
+        return literal;
     }
 
     @Override
@@ -44,6 +59,8 @@ public class LiteralExpression implements VTLExpression {
 
     @Override
     public Class<?> getVTLType() {
+        if (type != null)
+            return type;
         if (literal instanceof VTLTyped)
             return ((VTLTyped) literal).getVTLType();
         return VTLObject.class;
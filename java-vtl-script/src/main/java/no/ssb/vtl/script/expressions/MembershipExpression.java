@@ -28,7 +28,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 public class MembershipExpression extends VariableExpression {
 
-    private String dataset;
+    private final String dataset;
 
     public MembershipExpression(Class<?> type, String dataset, String right) {
         super(type, right);
@@ -20,7 +20,7 @@ package no.ssb.vtl.script.expressions;
  * =========================LICENSE_END==================================
  */
 
-import no.ssb.vtl.model.FilteringSpecification;
+import no.ssb.vtl.model.FilteringSpecification.Operator;
 import no.ssb.vtl.model.VTLBoolean;
 import no.ssb.vtl.model.VTLExpression;
 import no.ssb.vtl.model.VTLObject;
@@ -35,104 +35,342 @@ import no.ssb.vtl.script.expressions.equality.LesserOrEqualExpression;
 import no.ssb.vtl.script.expressions.equality.LesserThanExpression;
 import no.ssb.vtl.script.expressions.equality.NotEqualExpression;
 import no.ssb.vtl.script.expressions.logic.AndExpression;
+import no.ssb.vtl.script.expressions.logic.NotExpression;
 import no.ssb.vtl.script.expressions.logic.OrExpression;
+import no.ssb.vtl.script.expressions.logic.XorExpression;
 
-import javax.script.SimpleBindings;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 import static java.lang.String.format;
 
+/**
+ * Converts predicates to filters that the datasets can use to skip rows
+ * (see {@link no.ssb.vtl.model.Dataset#getData(no.ssb.vtl.model.Ordering, no.ssb.vtl.model.Filtering, Set)}).
+ * <p>
+ * The filters keep at least the rows for which the predicate is true; the parts of the predicate that cannot be
+ * converted are replaced by TRUE. The predicate is still evaluated on the rows the datasets return.
+ * <p>
+ * Since comparisons with null are null, and null is neither true nor false, the negations are pushed down to
+ * the comparisons instead of being applied to the filters: <code>not (x &gt; 1)</code> is converted to
+ * <code>x &lt;= 1</code> and <code>not (x + y &gt; 1)</code> to <code>x is not null and y is not null</code>.
+ * Comparisons on the same column are combined into {@link Operator#IN} (<code>x = 1 or x = 2</code>) and
+ * {@link Operator#BETWEEN} (<code>x &gt;= 1 and x &lt;= 10</code>) filters.
+ */
 public class VtlFilteringConverter {
 
     public static VtlFiltering convert(AbstractEqualityExpression equalityExpression) {
-        VTLExpression leftOperand = equalityExpression.getLeftOperand();
-        VTLExpression rightOperand = equalityExpression.getRightOperand();
-
-        // We only support filter in the form of variable OP literal.
-        if ((leftOperand instanceof VariableExpression && rightOperand instanceof LiteralExpression) ||
-                (leftOperand instanceof LiteralExpression && rightOperand instanceof VariableExpression)) {
-            VariableExpression variableExpression = (VariableExpression) (leftOperand instanceof VariableExpression ?
-                    leftOperand : rightOperand);
-            LiteralExpression literalExpression = (LiteralExpression) (leftOperand instanceof LiteralExpression ?
-                    leftOperand : rightOperand);
-
-            // Use the internal identifier with dataset prefix if it is a membership expression.
-            // This should be refactored at some point.
-            String column = "";
-            if (variableExpression instanceof MembershipExpression) {
-                column = ((MembershipExpression) variableExpression).getDatasetIdentifier() + "_";
-            }
-            column = column + variableExpression.getIdentifier();
-
-            VTLObject value = literalExpression.resolve(null);
-            if (equalityExpression instanceof EqualExpression) {
-                return VtlFiltering.eq(column, value.get());
-            } else if (equalityExpression instanceof NotEqualExpression) {
-                return VtlFiltering.neq(column, value.get());
-            } else if (equalityExpression instanceof GreaterOrEqualExpression) {
-                return VtlFiltering.ge(column, value.get());
-            } else if (equalityExpression instanceof GraterThanExpression) {
-                return VtlFiltering.gt(column, value.get());
-            } else if (equalityExpression instanceof LesserOrEqualExpression) {
-                return VtlFiltering.le(column, value.get());
-            } else if (equalityExpression instanceof LesserThanExpression) {
-                return VtlFiltering.lt(column, value.get());
-            } else if (equalityExpression instanceof IsNullExpression) {
-                if (equalityExpression instanceof IsNotNullExpression) {
-                    return VtlFiltering.neq(column, value.get());
-                } else {
-                    return VtlFiltering.eq(column, value.get());
-                }
-            }
-        }
-        // Unsupported expressions are converted to TRUE.
-        return VtlFiltering.literal(false, FilteringSpecification.Operator.TRUE, null, null);
+        return convert(equalityExpression, true);
     }
 
     public static VtlFiltering convert(VTLExpression predicate) {
         if (!predicate.getVTLType().equals(VTLBoolean.class)) {
             throw new IllegalArgumentException(format("predicate %s was not a boolean", predicate));
         }
+        return convert(predicate, true);
+    }
+
+    public static VtlFiltering convert(OrExpression orExpression) {
+        return convert(orExpression, true);
+    }
 
-        if (predicate instanceof OrExpression) {
-            return convert((OrExpression) predicate);
-        } else if (predicate instanceof AndExpression) {
-            return convert((AndExpression) predicate);
+    public static VtlFiltering convert(AndExpression andExpression) {
+        return convert(andExpression, true);
+    }
+
+    /**
+     * Returns a filter that keeps at least the rows for which the predicate has the given outcome.
+     */
+    static VtlFiltering convert(VTLExpression predicate, boolean outcome) {
+        if (predicate instanceof AndExpression) {
+            AndExpression and = (AndExpression) predicate;
+            VtlFiltering left = convert(and.getLeftOperand(), outcome);
+            VtlFiltering right = convert(and.getRightOperand(), outcome);
+            return outcome ? and(left, right) : or(left, right);
+        } else if (predicate instanceof OrExpression) {
+            OrExpression or = (OrExpression) predicate;
+            VtlFiltering left = convert(or.getLeftOperand(), outcome);
+            VtlFiltering right = convert(or.getRightOperand(), outcome);
+            return outcome ? or(left, right) : and(left, right);
+        } else if (predicate instanceof XorExpression) {
+            // x xor y is true when x and y are different, false when they are equal.
+            XorExpression xor = (XorExpression) predicate;
+            VTLExpression left = xor.getLeftOperand();
+            VTLExpression right = xor.getRightOperand();
+            return or(
+                    and(convert(left, true), convert(right, !outcome)),
+                    and(convert(left, false), convert(right, outcome))
+            );
+        } else if (predicate instanceof NotExpression) {
+            return convert(((NotExpression) predicate).getOperand(), !outcome);
+        } else if (predicate instanceof IsNullExpression) {
+            boolean isNull = !(predicate instanceof IsNotNullExpression);
+            return nullness(((IsNullExpression) predicate).getLeftOperand(), isNull == outcome);
         } else if (predicate instanceof AbstractEqualityExpression) {
-            return convert((AbstractEqualityExpression) predicate);
+            return comparison((AbstractEqualityExpression) predicate, outcome);
         } else if (predicate instanceof LiteralExpression) {
-            VTLBoolean value = (VTLBoolean) predicate.resolve(new SimpleBindings(Collections.emptyMap()));
-            return VtlFiltering.literal(!value.get(), FilteringSpecification.Operator.TRUE, null, value);
+            Object value = ((LiteralExpression) predicate).getLiteral().get();
+            return Objects.equals(value, outcome) ? all() : none();
+        } else if (predicate instanceof VariableExpression) {
+            return VtlFiltering.eq(column((VariableExpression) predicate), outcome);
         }
-        // TODO: Handle XorExpression.
-        return VtlFiltering.literal(false, FilteringSpecification.Operator.TRUE, null, null);
+        return all();
     }
 
-    public static VtlFiltering convert(OrExpression orExpression) {
-        List<VtlFiltering> ops = new ArrayList<>();
-        if (orExpression.getLeftOperand() instanceof OrExpression) {
-            ops.addAll(convert((OrExpression) orExpression.getLeftOperand()).getOperands());
-        } else {
-            ops.add(convert(orExpression.getLeftOperand()));
+    /**
+     * Converts the comparisons in the form of variable OP literal. The other comparisons can only
+     * be true or false when their operands are not null.
+     */
+    private static VtlFiltering comparison(AbstractEqualityExpression expression, boolean outcome) {
+        VTLExpression leftOperand = expression.getLeftOperand();
+        VTLExpression rightOperand = expression.getRightOperand();
+
+        Comparison comparison = Comparison.of(expression);
+        if (comparison != null && leftOperand instanceof VariableExpression && rightOperand instanceof LiteralExpression) {
+            return comparison.filter(
+                    column((VariableExpression) leftOperand), (LiteralExpression) rightOperand, outcome
+            );
+        } else if (comparison != null && leftOperand instanceof LiteralExpression && rightOperand instanceof VariableExpression) {
+            return comparison.flip().filter(
+                    column((VariableExpression) rightOperand), (LiteralExpression) leftOperand, outcome
+            );
         }
-        VtlFiltering sub = convert(orExpression.getRightOperand());
-        if (sub != null && sub.getOperator() != FilteringSpecification.Operator.TRUE) {
-            ops.add(sub);
+        return nullness(expression, false);
+    }
+
+    /**
+     * Returns a filter that keeps at least the rows for which the expression is null, or not null.
+     */
+    private static VtlFiltering nullness(VTLExpression expression, boolean isNull) {
+        if (expression instanceof VariableExpression) {
+            String column = column((VariableExpression) expression);
+            return isNull ? VtlFiltering.isNull(column) : VtlFiltering.isNotNull(column);
+        } else if (expression instanceof LiteralExpression) {
+            Object value = ((LiteralExpression) expression).getLiteral().get();
+            return (value == null) == isNull ? all() : none();
+        } else if (expression instanceof IsNullExpression) {
+            return isNull ? none() : all();
+        } else if (expression instanceof AbstractNullFirstExpression) {
+            // Null if and only if one of the operands is null.
+            AbstractNullFirstExpression nullFirst = (AbstractNullFirstExpression) expression;
+            VtlFiltering left = nullness(nullFirst.getLeftOperand(), isNull);
+            VtlFiltering right = nullness(nullFirst.getRightOperand(), isNull);
+            return isNull ? or(left, right) : and(left, right);
         }
+        return all();
+    }
 
-        return VtlFiltering.or(ops.toArray(new VtlFiltering[0]));
+    private static String column(VariableExpression variableExpression) {
+        // Use the internal identifier with dataset prefix if it is a membership expression.
+        // This should be refactored at some point.
+        String column = "";
+        if (variableExpression instanceof MembershipExpression) {
+            column = ((MembershipExpression) variableExpression).getDatasetIdentifier() + "_";
+        }
+        return column + variableExpression.getIdentifier();
     }
 
-    public static VtlFiltering convert(AndExpression andExpression) {
-        List<VtlFiltering> ops = new ArrayList<>();
-        if (andExpression.getLeftOperand() instanceof AndExpression) {
-            ops.addAll(convert((AndExpression) andExpression.getLeftOperand()).getOperands());
-        } else {
-            ops.add(convert(andExpression.getLeftOperand()));
-        }
-        ops.add(convert(andExpression.getRightOperand()));
-        return VtlFiltering.and(ops.toArray(new VtlFiltering[0]));
+    private static VtlFiltering all() {
+        return VtlFiltering.literal(false, Operator.TRUE, null, null);
+    }
+
+    private static VtlFiltering none() {
+        return VtlFiltering.literal(true, Operator.TRUE, null, null);
+    }
+
+    private static boolean isConstant(VtlFiltering filtering, boolean value) {
+        return filtering.getOperator() == Operator.TRUE && filtering.isNegated() != value;
+    }
+
+    private static boolean isLiteral(VtlFiltering filtering, Operator operator, boolean negated) {
+        return filtering.getOperator() == operator && filtering.isNegated() == negated;
+    }
+
+    private static VtlFiltering and(VtlFiltering... operands) {
+        List<VtlFiltering> flattened = new ArrayList<>();
+        for (VtlFiltering operand : operands) {
+            if (isConstant(operand, false)) {
+                return none();
+            } else if (isLiteral(operand, Operator.AND, false)) {
+                flattened.addAll(operand.getOperands());
+            } else if (!isConstant(operand, true)) {
+                flattened.add(operand);
+            }
+        }
+        List<VtlFiltering> merged = mergeRanges(mergeEqualities(flattened, true));
+        if (merged.isEmpty()) {
+            return all();
+        }
+        return merged.size() == 1 ? merged.get(0) : VtlFiltering.and(merged.toArray(new VtlFiltering[0]));
+    }
+
+    private static VtlFiltering or(VtlFiltering... operands) {
+        List<VtlFiltering> flattened = new ArrayList<>();
+        for (VtlFiltering operand : operands) {
+            if (isConstant(operand, true)) {
+                return all();
+            } else if (isLiteral(operand, Operator.OR, false)) {
+                flattened.addAll(operand.getOperands());
+            } else if (!isConstant(operand, false)) {
+                flattened.add(operand);
+            }
+        }
+        List<VtlFiltering> merged = mergeEqualities(flattened, false);
+        if (merged.isEmpty()) {
+            return none();
+        }
+        return merged.size() == 1 ? merged.get(0) : VtlFiltering.or(merged);
+    }
+
+    /**
+     * Combines the equalities on the same column of a disjunction into an IN filter, or the
+     * inequalities of a conjunction into a negated IN filter.
+     */
+    private static List<VtlFiltering> mergeEqualities(List<VtlFiltering> operands, boolean negated) {
+        Map<String, Set<VTLObject>> values = new LinkedHashMap<>();
+        for (VtlFiltering operand : operands) {
+            if (isLiteral(operand, Operator.EQ, negated) || isLiteral(operand, Operator.IN, negated)) {
+                values.computeIfAbsent(operand.getColumn(), column -> new LinkedHashSet<>())
+                        .addAll(operand.getValues());
+            }
+        }
+
+        List<VtlFiltering> result = new ArrayList<>();
+        Set<String> merged = new HashSet<>();
+        for (VtlFiltering operand : operands) {
+            if ((isLiteral(operand, Operator.EQ, negated) || isLiteral(operand, Operator.IN, negated))
+                    && values.get(operand.getColumn()).size() > 1) {
+                if (merged.add(operand.getColumn())) {
+                    VtlFiltering in = VtlFiltering.in(operand.getColumn(), values.get(operand.getColumn()));
+                    result.add(negated ? VtlFiltering.not(in) : in);
+                }
+            } else {
+                result.add(operand);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Combines a greater or equal and a lesser or equal filter on the same column of a conjunction
+     * into a BETWEEN filter.
+     */
+    private static List<VtlFiltering> mergeRanges(List<VtlFiltering> operands) {
+        Map<String, VTLObject> lower = new HashMap<>();
+        Map<String, VTLObject> upper = new HashMap<>();
+        Set<String> ambiguous = new HashSet<>();
+        for (VtlFiltering operand : operands) {
+            // x >= v is not x < v and x <= v is not x > v.
+            Map<String, VTLObject> bounds = isLiteral(operand, Operator.LT, true) ? lower
+                    : isLiteral(operand, Operator.GT, true) ? upper : null;
+            if (bounds != null && bounds.put(operand.getColumn(), operand.getValue()) != null) {
+                ambiguous.add(operand.getColumn());
+            }
+        }
+
+        List<VtlFiltering> result = new ArrayList<>();
+        Set<String> merged = new HashSet<>();
+        for (VtlFiltering operand : operands) {
+            String column = operand.getColumn();
+            boolean bound = isLiteral(operand, Operator.LT, true) || isLiteral(operand, Operator.GT, true);
+            if (bound && lower.containsKey(column) && upper.containsKey(column) && !ambiguous.contains(column)) {
+                if (merged.add(column)) {
+                    result.add(VtlFiltering.between(column, lower.get(column), upper.get(column)));
+                }
+            } else {
+                result.add(operand);
+            }
+        }
+        return result;
+    }
+
+    private enum Comparison {
+        EQ, NE, GT, GE, LT, LE;
+
+        static Comparison of(AbstractEqualityExpression expression) {
+            if (expression instanceof EqualExpression) {
+                return EQ;
+            } else if (expression instanceof NotEqualExpression) {
+                return NE;
+            } else if (expression instanceof GraterThanExpression) {
+                return GT;
+            } else if (expression instanceof GreaterOrEqualExpression) {
+                return GE;
+            } else if (expression instanceof LesserThanExpression) {
+                return LT;
+            } else if (expression instanceof LesserOrEqualExpression) {
+                return LE;
+            }
+            return null;
+        }
+
+        /**
+         * Returns the comparison with the operands swapped (1 &lt; x is x &gt; 1).
+         */
+        Comparison flip() {
+            switch (this) {
+                case GT:
+                    return LT;
+                case GE:
+                    return LE;
+                case LT:
+                    return GT;
+                case LE:
+                    return GE;
+                default:
+                    return this;
+            }
+        }
+
+        /**
+         * Returns the comparison that is true when this one is false.
+         */
+        Comparison negate() {
+            switch (this) {
+                case EQ:
+                    return NE;
+                case NE:
+                    return EQ;
+                case GT:
+                    return LE;
+                case GE:
+                    return LT;
+                case LT:
+                    return GE;
+                default:
+                    return GT;
+            }
+        }
+
+        VtlFiltering filter(String column, LiteralExpression literal, boolean outcome) {
+            Object value = literal.getLiteral().get();
+            if (value == null) {
+                // Comparisons with null are null.
+                return none();
+            }
+            switch (outcome ? this : negate()) {
+                case EQ:
+                    return VtlFiltering.eq(column, value);
+                case NE:
+                    return VtlFiltering.neq(column, value);
+                case GT:
+                    return VtlFiltering.gt(column, value);
+                case GE:
+                    return VtlFiltering.ge(column, value);
+                case LT:
+                    return VtlFiltering.lt(column, value);
+                case LE:
+                    return VtlFiltering.le(column, value);
+                default:
+                    throw new IllegalStateException();
+            }
+        }
     }
 }
@@ -25,16 +25,25 @@ import no.ssb.vtl.model.VTLNumber;
 import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.script.expressions.AbstractNullFirstExpression;
 
+import javax.script.Bindings;
+
 /**
  * Returns type Float if one of its operand is Float.
+ * <p>
+ * The types of the operands are used to select a specialized evaluation path when the expression is
+ * created. Integer/Integer operations are computed on longs and all the other numeric combinations on
+ * doubles; the result is boxed only once. Operands of unknown type use the generic {@link VTLNumber} path.
  */
 public abstract class AbstractArithmeticExpression extends AbstractNullFirstExpression {
 
     // Arithmetic expression are often composed so we need caching.
     private Class type = null;
 
+    private final Specialization specialization;
+
     AbstractArithmeticExpression(VTLExpression leftOperand, VTLExpression rightOperand) {
         super(leftOperand, rightOperand);
+        this.specialization = computeSpecialization();
     }
 
     @Override
@@ -48,10 +57,70 @@ public abstract class AbstractArithmeticExpression extends AbstractNullFirstExpr
         return type;
     }
 
+    private Specialization computeSpecialization() {
+        Class<?> leftType = getLeftOperand().getVTLType();
+        Class<?> rightType = getRightOperand().getVTLType();
+        if (!isPrimitive(leftType) || !isPrimitive(rightType)) {
+            return Specialization.GENERIC;
+        }
+        if (getVTLType() == VTLInteger.class && leftType == VTLInteger.class && rightType == VTLInteger.class) {
+            return Specialization.LONG;
+        }
+        return getVTLType() == VTLFloat.class ? Specialization.DOUBLE : Specialization.GENERIC;
+    }
+
+    private static boolean isPrimitive(Class<?> type) {
+        return type == VTLInteger.class || type == VTLFloat.class;
+    }
+
+    @Override
+    public VTLObject resolve(Bindings bindings) {
+        VTLObject leftOperand = getLeftOperand().resolve(bindings);
+        VTLObject rightOperand = getRightOperand().resolve(bindings);
+
+        Object left = leftOperand.get();
+        Object right = rightOperand.get();
+        if (left == null || right == null)
+            return VTLObject.NULL;
+
+        switch (specialization) {
+            case LONG:
+                // The values could still be of another type if the declared type was wrong.
+                if (left instanceof Long && right instanceof Long)
+                    return VTLInteger.of(compute((long) (Long) left, (long) (Long) right));
+                break;
+            case DOUBLE:
+                return VTLFloat.of(compute(((Number) left).doubleValue(), ((Number) right).doubleValue()));
+        }
+        return compute(leftOperand, rightOperand);
+    }
+
     @Override
     protected VTLObject compute(VTLObject leftOperand, VTLObject rightOperand) {
         return compute((VTLNumber) leftOperand, (VTLNumber) rightOperand);
     }
 
     abstract protected VTLNumber compute(VTLNumber leftOperand, VTLNumber rightOperand);
+
+    /**
+     * Computes the operation on two longs.
+     * <p>
+     * The default implementation delegates to {@link #compute(VTLNumber, VTLNumber)}.
+     */
+    protected long compute(long leftOperand, long rightOperand) {
+        return compute(VTLInteger.of(leftOperand), VTLInteger.of(rightOperand)).get().longValue();
+    }
+
+    /**
+     * Computes the operation on two doubles.
+     * <p>
+     * The default implementation delegates to {@link #compute(VTLNumber, VTLNumber)}.
+     */
+    protected double compute(double leftOperand, double rightOperand) {
+        return compute(VTLFloat.of(leftOperand), VTLFloat.of(rightOperand)).get().doubleValue();
+    }
+
+    private enum Specialization {
+        LONG, DOUBLE, GENERIC
+    }
 }
@@ -33,6 +33,16 @@ public class AdditionExpression extends AbstractArithmeticExpression {
         return augend.add(addend);
     }
 
+    @Override
+    protected long compute(long augend, long addend) {
+        return augend + addend;
+    }
+
+    @Override
+    protected double compute(double augend, double addend) {
+        return augend + addend;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
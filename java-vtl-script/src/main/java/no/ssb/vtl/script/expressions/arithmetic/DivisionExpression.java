@@ -40,6 +40,11 @@ public class DivisionExpression extends AbstractArithmeticExpression {
         return dividend.divide(divisor);
     }
 
+    @Override
+    protected double compute(double dividend, double divisor) {
+        return dividend / divisor;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
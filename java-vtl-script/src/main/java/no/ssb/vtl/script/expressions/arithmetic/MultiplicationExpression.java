@@ -33,6 +33,16 @@ public class MultiplicationExpression extends AbstractArithmeticExpression {
         return multiplier.multiply(multiplicand);
     }
 
+    @Override
+    protected long compute(long multiplier, long multiplicand) {
+        return multiplier * multiplicand;
+    }
+
+    @Override
+    protected double compute(double multiplier, double multiplicand) {
+        return multiplier * multiplicand;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
@@ -33,6 +33,16 @@ public class SubtractionExpression extends AbstractArithmeticExpression {
         return minuend.subtract(subtrahend);
     }
 
+    @Override
+    protected long compute(long minuend, long subtrahend) {
+        return minuend - subtrahend;
+    }
+
+    @Override
+    protected double compute(double minuend, double subtrahend) {
+        return minuend - subtrahend;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
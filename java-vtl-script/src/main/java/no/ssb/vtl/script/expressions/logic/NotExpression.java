@@ -34,6 +34,10 @@ public class NotExpression implements VTLExpression<VTLBoolean> {
         this.operand = checkNotNull(operand);
     }
 
+    public VTLExpression getOperand() {
+        return operand;
+    }
+
     @Override
     public VTLBoolean resolve(Bindings bindings) {
         VTLObject resolved = operand.resolve(bindings);
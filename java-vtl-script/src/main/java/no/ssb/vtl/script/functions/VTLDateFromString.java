@@ -23,6 +23,9 @@ import no.ssb.vtl.model.VTLString;
 import no.ssb.vtl.script.VTLScriptEngine;
 
 import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
@@ -33,6 +36,9 @@ public class VTLDateFromString extends AbstractVTLFunction<VTLDate> {
     private static VTLDateFromString instance;
     private VTLString NULL = VTLString.of((String) null);
 
+    // Formatters are immutable and thread safe, keep one per pattern.
+    private final Map<String, DateTimeFormatter> formatters = new ConcurrentHashMap<>();
+
     private VTLDateFromString() {
         super("date_from_string", VTLDate.class, DS, FORMAT);
     }
@@ -52,6 +58,10 @@ public class VTLDateFromString extends AbstractVTLFunction<VTLDate> {
         if (value.get() == null)
             return VTLDate.of((Instant) null);
         else
-            return VTLDate.of(value.get(), format.get(), VTLScriptEngine.getTimeZone());
+            return VTLDate.of(
+                    value.get(),
+                    formatters.computeIfAbsent(format.get(), VTLDate::getFormatter),
+                    VTLScriptEngine.getTimeZone()
+            );
     }
 }
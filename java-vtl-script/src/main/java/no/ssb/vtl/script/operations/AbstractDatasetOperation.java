@@ -28,19 +28,28 @@ import no.ssb.vtl.model.Filtering;
 import no.ssb.vtl.model.FilteringSpecification;
 import no.ssb.vtl.model.Ordering;
 import no.ssb.vtl.model.OrderingSpecification;
+import no.ssb.vtl.script.VtlConfiguration;
 
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Optional;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Base class for {@link Dataset} transformation.
+ * <p>
+ * Operations are immutable once created and can be read by several threads at the same time. They keep
+ * the {@link VtlConfiguration} of the thread that creates them and read their data with it.
  */
 public abstract class AbstractDatasetOperation implements Dataset {
 
     private final ImmutableList<AbstractDatasetOperation> children;
-    private DataStructure cache;
+    private final VtlConfiguration configuration = VtlConfiguration.getConfig();
+    private volatile DataStructure cache;
 
     public AbstractDatasetOperation(Collection<Dataset> children) {
         ImmutableList.Builder<AbstractDatasetOperation> childrenCopy = ImmutableList.builder();
@@ -56,41 +65,85 @@ public abstract class AbstractDatasetOperation implements Dataset {
 
     @Override
     public final Stream<DataPoint> getData() {
-        return computeData(Ordering.ANY, Filtering.ALL, getDataStructure().keySet());
+        return execute(Ordering.ANY, Filtering.ALL, null);
     }
 
     @Override
     public final Optional<Stream<DataPoint>> getData(Ordering orders, Filtering filtering, Set<String> components) {
-        return Optional.of(computeData(orders, filtering, components));
+        return Optional.of(execute(orders, filtering, components));
     }
 
     @Override
     public final Optional<Stream<DataPoint>> getData(Ordering order) {
-        return Optional.of(computeData(order, Filtering.ALL, getDataStructure().keySet()));
+        return Optional.of(execute(order, Filtering.ALL, null));
     }
 
     @Override
     public final Optional<Stream<DataPoint>> getData(Filtering filtering) {
-        return Optional.of(computeData(Ordering.ANY, filtering, getDataStructure().keySet()));
+        return Optional.of(execute(Ordering.ANY, filtering, null));
     }
 
     @Override
     public final Optional<Stream<DataPoint>> getData(Set<String> components) {
-        return Optional.of(computeData(Ordering.ANY, Filtering.ALL, components));
+        return Optional.of(execute(Ordering.ANY, Filtering.ALL, components));
+    }
+
+    /**
+     * Computes the data with the configuration of the operation, binding it to the threads that
+     * consume the stream if it is not the configuration of the current thread.
+     *
+     * @param components the components, all of them if null.
+     */
+    private Stream<DataPoint> execute(Ordering orders, Filtering filtering, Set<String> components) {
+        if (VtlConfiguration.getConfig() == configuration) {
+            return computeData(orders, filtering, components != null ? components : getDataStructure().keySet());
+        }
+        Stream<DataPoint> stream = configuration.execute(() -> computeData(
+                orders, filtering, components != null ? components : getDataStructure().keySet()
+        ));
+        return StreamSupport.stream(
+                () -> new ConfiguredSpliterator(configuration, configuration.execute(stream::spliterator)),
+                Spliterator.ORDERED, false
+        ).onClose(stream::close);
     }
 
     @Override
     public final DataStructure getDataStructure() {
-        return cache = (cache == null ? computeDataStructure() : cache);
+        DataStructure structure = cache;
+        if (structure == null) {
+            // Computing it twice is harmless, see computeDataStructure.
+            structure = cache = computeDataStructure();
+        }
+        return structure;
+    }
+
+    /**
+     * Returns the configuration the operation uses.
+     */
+    public VtlConfiguration getConfiguration() {
+        return configuration;
     }
 
     /**
      * Implementation should uses this method to create the data structure only once.
+     * <p>
+     * It can be called by several threads at the same time. The state it sets, if any, must be
+     * immutable and the same for every call.
      */
     protected abstract DataStructure computeDataStructure();
 
     public abstract Stream<DataPoint> computeData(Ordering orders, Filtering filtering, Set<String> components);
 
+    /**
+     * Computes the data knowing that only the first <code>limit</code> data points will be consumed.
+     * <p>
+     * The limit is a hint and the returned stream can contain more data points. By default the limit is
+     * ignored.
+     */
+    public Stream<DataPoint> computeData(Ordering orders, Filtering filtering, Set<String> components, long limit) {
+        return computeData(orders, filtering, components);
+    }
+
     /**
      * Returns the required filtering of this operation.
      */
@@ -107,4 +160,51 @@ public abstract class AbstractDatasetOperation implements Dataset {
     public ImmutableList<AbstractDatasetOperation> getChildren() {
         return children;
     }
+
+    /**
+     * Runs the consumption of a stream with a configuration.
+     */
+    private static final class ConfiguredSpliterator implements Spliterator<DataPoint> {
+
+        private final VtlConfiguration configuration;
+        private final Spliterator<DataPoint> delegate;
+
+        private ConfiguredSpliterator(VtlConfiguration configuration, Spliterator<DataPoint> delegate) {
+            this.configuration = configuration;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super DataPoint> action) {
+            return configuration.execute(() -> delegate.tryAdvance(action));
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super DataPoint> action) {
+            configuration.execute(() -> {
+                delegate.forEachRemaining(action);
+                return null;
+            });
+        }
+
+        @Override
+        public Spliterator<DataPoint> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return delegate.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return delegate.characteristics() & ~(Spliterator.SUBSIZED | Spliterator.CONCURRENT);
+        }
+
+        @Override
+        public Comparator<? super DataPoint> getComparator() {
+            return delegate.getComparator();
+        }
+    }
 }
@@ -0,0 +1,148 @@
+package no.ssb.vtl.script.operations;
+
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.Filtering;
+import no.ssb.vtl.model.Ordering;
+
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Base class for the operations that only select, reorder or rename the columns of their child
+ * (keep, drop and rename).
+ * <p>
+ * Adjacent projections are fused: the top most one composes the column mappings of the projections
+ * below it and reads the data of the first child that is not a projection directly. The rows are then
+ * projected once, in a new row (see {@link DataPointRecycler}), without modifying the rows of the child.
+ */
+public abstract class AbstractProjectionOperation extends AbstractUnaryDatasetOperation {
+
+    protected AbstractProjectionOperation(AbstractDatasetOperation child) {
+        super(child);
+    }
+
+    protected AbstractProjectionOperation(Dataset child) {
+        super(child);
+    }
+
+    /**
+     * Returns, for each column of the data structure of this operation, the index of the column
+     * in the data structure of the child.
+     */
+    protected abstract int[] computeProjection();
+
+    /**
+     * Converts the components requested from this operation to the components of the child.
+     */
+    protected Set<String> computeRequiredComponents(Set<String> components) {
+        return components;
+    }
+
+    @Override
+    public Stream<DataPoint> computeData(Ordering ordering, Filtering filtering, Set<String> components) {
+        return project(ordering, filtering, components, Long.MAX_VALUE);
+    }
+
+    /**
+     * Passes the limit to the child since the projection keeps one row for each row of the child.
+     */
+    @Override
+    public Stream<DataPoint> computeData(Ordering ordering, Filtering filtering, Set<String> components,
+                                         long limit) {
+        return project(ordering, filtering, components, limit);
+    }
+
+    private Stream<DataPoint> project(Ordering ordering, Filtering filtering, Set<String> components,
+                                      long limit) {
+
+        int[] projection = identity(getDataStructure().size());
+        Ordering childOrdering = ordering;
+        Filtering childFiltering = filtering;
+        Set<String> childComponents = components;
+
+        AbstractDatasetOperation current = this;
+        while (current instanceof AbstractProjectionOperation) {
+            AbstractProjectionOperation operation = (AbstractProjectionOperation) current;
+            childOrdering = (Ordering) operation.computeRequiredOrdering(childOrdering);
+            childFiltering = (Filtering) operation.computeRequiredFiltering(childFiltering);
+            childComponents = operation.computeRequiredComponents(childComponents);
+
+            int[] childProjection = operation.computeProjection();
+            for (int i = 0; i < projection.length; i++) {
+                projection[i] = childProjection[projection[i]];
+            }
+            current = unwrap(operation.getChild());
+        }
+
+        Stream<DataPoint> original = limit == Long.MAX_VALUE
+                ? current.computeData(childOrdering, childFiltering, childComponents)
+                : current.computeData(childOrdering, childFiltering, childComponents, limit);
+        Stream<DataPoint> stream = original;
+        if (!isIdentity(projection, current.getDataStructure().size())) {
+            Supplier<DataPoint> rows = DataPointRecycler.supplier(projection.length);
+            stream = original.map(dataPoint -> {
+                DataPoint result = rows.get();
+                for (int i = 0; i < projection.length; i++) {
+                    result.set(i, dataPoint.get(projection[i]));
+                }
+                return result;
+            });
+        }
+
+        // The projection keeps the order and the values of the rows of the child.
+        return new VtlStream(this, stream, original, ordering, filtering, ordering, filtering);
+    }
+
+    private static AbstractDatasetOperation unwrap(AbstractDatasetOperation operation) {
+        if (operation instanceof DatasetOperationWrapper) {
+            Dataset dataset = ((DatasetOperationWrapper) operation).getDataset();
+            if (dataset instanceof AbstractDatasetOperation) {
+                return (AbstractDatasetOperation) dataset;
+            }
+        }
+        return operation;
+    }
+
+    private static int[] identity(int size) {
+        int[] projection = new int[size];
+        for (int i = 0; i < size; i++) {
+            projection[i] = i;
+        }
+        return projection;
+    }
+
+    private static boolean isIdentity(int[] projection, int childSize) {
+        if (projection.length != childSize) {
+            return false;
+        }
+        for (int i = 0; i < projection.length; i++) {
+            if (projection[i] != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,164 @@
+package no.ssb.vtl.script.operations;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.VTLObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Binary encoding of the data points, used to write them to files.
+ * <p>
+ * Each value is written as a type tag followed by its content. Values of other types are written with
+ * Java serialization and must implement {@link Serializable}.
+ */
+public final class DataPointCodec {
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte LONG = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte INSTANT = 5;
+    private static final byte SERIALIZED = 6;
+
+    private DataPointCodec() {
+        // prevent instantiation.
+    }
+
+    /**
+     * Writes the data point.
+     *
+     * @throws IllegalArgumentException if a value has a type that cannot be written.
+     */
+    public static void write(DataOutputStream output, DataPoint dataPoint) throws IOException {
+        output.writeInt(dataPoint.size());
+        for (VTLObject object : dataPoint) {
+            Object value = object == null ? null : object.get();
+            if (value == null) {
+                output.writeByte(NULL);
+            } else if (value instanceof String) {
+                output.writeByte(STRING);
+                byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+            } else if (value instanceof Long) {
+                output.writeByte(LONG);
+                output.writeLong((Long) value);
+            } else if (value instanceof Double) {
+                output.writeByte(DOUBLE);
+                output.writeDouble((Double) value);
+            } else if (value instanceof Boolean) {
+                output.writeByte(BOOLEAN);
+                output.writeBoolean((Boolean) value);
+            } else if (value instanceof Instant) {
+                output.writeByte(INSTANT);
+                output.writeLong(((Instant) value).getEpochSecond());
+                output.writeInt(((Instant) value).getNano());
+            } else if (value instanceof Serializable) {
+                output.writeByte(SERIALIZED);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream objectOutput = new ObjectOutputStream(bytes)) {
+                    objectOutput.writeObject(value);
+                }
+                output.writeInt(bytes.size());
+                bytes.writeTo(output);
+            } else {
+                throw new IllegalArgumentException(String.format(
+                        "cannot write value %s to a file, its type %s is not serializable", value, value.getClass()
+                ));
+            }
+        }
+    }
+
+    /**
+     * Reads a data point.
+     *
+     * @throws java.io.EOFException if the end of the input is reached.
+     */
+    public static DataPoint read(DataInputStream input) throws IOException {
+        int size = input.readInt();
+        DataPoint dataPoint = DataPoint.create(size);
+        for (int i = 0; i < size; i++) {
+            byte type = input.readByte();
+            switch (type) {
+                case NULL:
+                    break;
+                case STRING:
+                    byte[] bytes = new byte[input.readInt()];
+                    input.readFully(bytes);
+                    dataPoint.set(i, VTLObject.of(new String(bytes, StandardCharsets.UTF_8)));
+                    break;
+                case LONG:
+                    dataPoint.set(i, VTLObject.of(input.readLong()));
+                    break;
+                case DOUBLE:
+                    dataPoint.set(i, VTLObject.of(input.readDouble()));
+                    break;
+                case BOOLEAN:
+                    dataPoint.set(i, VTLObject.of(input.readBoolean()));
+                    break;
+                case INSTANT:
+                    dataPoint.set(i, VTLObject.of(Instant.ofEpochSecond(input.readLong(), input.readInt())));
+                    break;
+                case SERIALIZED:
+                    byte[] serialized = new byte[input.readInt()];
+                    input.readFully(serialized);
+                    dataPoint.set(i, deserialize(serialized));
+                    break;
+                default:
+                    throw new IllegalStateException("unknown type " + type);
+            }
+        }
+        return dataPoint;
+    }
+
+    private static VTLObject deserialize(byte[] bytes) throws IOException {
+        Object value;
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            value = input.readObject();
+        } catch (ClassNotFoundException cnfe) {
+            InvalidObjectException exception = new InvalidObjectException("could not read value");
+            exception.initCause(cnfe);
+            throw exception;
+        }
+        if (value instanceof VTLObject) {
+            return (VTLObject) value;
+        }
+        return new VTLObject() {
+            @Override
+            public Object get() {
+                return value;
+            }
+        };
+    }
+}
@@ -0,0 +1,111 @@
+package no.ssb.vtl.script.operations;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.script.VtlConfiguration;
+
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Creates the {@link DataPoint}s operations write their output rows into.
+ * <p>
+ * When row recycling is enabled (see {@link VtlConfiguration#setRowRecycling(boolean)}) the
+ * suppliers return the same instance on every call. Operations that keep references to the data points
+ * they receive (buffers, sorts, groups) must use {@link #retain(Stream)} on their input.
+ *
+ * @see no.ssb.vtl.model.Dataset#getData()
+ */
+public final class DataPointRecycler {
+
+    private DataPointRecycler() {
+        // prevent instantiation.
+    }
+
+    /**
+     * Returns true if the row recycling is enabled in the current configuration.
+     */
+    public static boolean isEnabled() {
+        return VtlConfiguration.getConfig().isRowRecyclingEnabled();
+    }
+
+    /**
+     * Returns a supplier of data points of the given size where all the values are {@link VTLObject#NULL}.
+     * <p>
+     * If row recycling is enabled, the supplier resets and returns the same data point on every call.
+     */
+    public static Supplier<DataPoint> supplier(int size) {
+        if (!isEnabled()) {
+            return () -> DataPoint.create(size);
+        }
+        DataPoint buffer = DataPoint.create(size);
+        return () -> reset(buffer, size);
+    }
+
+    /**
+     * Copies the values of the source into the target, resizing the target if needed.
+     *
+     * @return the target
+     */
+    public static DataPoint copyInto(DataPoint source, DataPoint target) {
+        int size = source.size();
+        truncate(target, size);
+        for (int i = 0; i < target.size(); i++) {
+            target.set(i, source.get(i));
+        }
+        for (int i = target.size(); i < size; i++) {
+            target.add(source.get(i));
+        }
+        return target;
+    }
+
+    /**
+     * Copies the data points of the stream if row recycling is enabled.
+     * <p>
+     * Operations that keep references to the data points they consume should use this method.
+     */
+    public static Stream<DataPoint> retain(Stream<DataPoint> stream) {
+        if (!isEnabled()) {
+            return stream;
+        }
+        return stream.map(DataPoint::create);
+    }
+
+    private static DataPoint reset(DataPoint dataPoint, int size) {
+        // Consumers are allowed to change the size of the rows (ie. KeepOperation).
+        truncate(dataPoint, size);
+        for (int i = 0; i < dataPoint.size(); i++) {
+            dataPoint.set(i, VTLObject.NULL);
+        }
+        while (dataPoint.size() < size) {
+            dataPoint.add(VTLObject.NULL);
+        }
+        return dataPoint;
+    }
+
+    private static void truncate(DataPoint dataPoint, int size) {
+        while (dataPoint.size() > size) {
+            dataPoint.remove(dataPoint.size() - 1);
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package no.ssb.vtl.script.operations;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.AbstractIterator;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.script.VtlConfiguration;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Sorts streams of data points within the memory budget of an operation.
+ * <p>
+ * The rows are accounted for in a {@link MemoryTracker}. When the budget is exceeded and the
+ * {@link VtlConfiguration.MemoryPolicy#SPILL} policy is used, the rows sorted so far are written to a
+ * temporary file and all the files are merged once the input is exhausted.
+ */
+public final class DataPointSorter {
+
+    private DataPointSorter() {
+        // prevent instantiation.
+    }
+
+    /**
+     * Sorts the stream, reserving the rows in the given tracker.
+     * <p>
+     * The sort is delegated to {@link Stream#sorted(Comparator)} if the tracker is disabled.
+     */
+    public static Stream<DataPoint> sort(Stream<DataPoint> stream, Comparator<? super DataPoint> comparator,
+                                         MemoryTracker memory) {
+        if (!memory.isEnabled()) {
+            return stream.sorted(comparator);
+        }
+        Sort sort = new Sort(comparator, memory, memory.isSpillEnabled());
+        return StreamSupport.stream(
+                () -> sort.sort(stream.iterator()), Spliterator.ORDERED, false
+        ).onClose(sort::close).onClose(stream::close);
+    }
+
+    /**
+     * Returns the first <code>limit</code> data points of the stream in the order of the comparator, reserving
+     * the rows it keeps in the given tracker.
+     * <p>
+     * Only <code>limit</code> rows are kept at a time, in a heap that evicts the greatest. Equal rows keep their
+     * order in the stream.
+     */
+    public static Stream<DataPoint> top(Stream<DataPoint> stream, Comparator<? super DataPoint> comparator,
+                                        long limit, MemoryTracker memory) {
+        checkArgument(limit >= 0 && limit < Integer.MAX_VALUE, "invalid limit %s", limit);
+        Top top = new Top(comparator, (int) limit, memory);
+        return StreamSupport.stream(
+                () -> top.top(stream.iterator()), Spliterator.ORDERED | Spliterator.SIZED, false
+        ).onClose(top::close).onClose(stream::close);
+    }
+
+    private static final class Top implements Closeable {
+
+        private final Comparator<Ranked> order;
+        private final int limit;
+        private final MemoryTracker memory;
+        private long reserved = 0;
+
+        private Top(Comparator<? super DataPoint> comparator, int limit, MemoryTracker memory) {
+            // The later row is greater when two rows are equal.
+            Comparator<Ranked> byDataPoint = (left, right) -> comparator.compare(left.dataPoint, right.dataPoint);
+            this.order = byDataPoint.thenComparingLong(ranked -> ranked.rank);
+            this.limit = limit;
+            this.memory = memory;
+        }
+
+        private Spliterator<DataPoint> top(Iterator<DataPoint> input) {
+            PriorityQueue<Ranked> heap = new PriorityQueue<>(Math.max(1, Math.min(limit, 1024)), order.reversed());
+            long rank = 0;
+            while (limit > 0 && input.hasNext()) {
+                Ranked ranked = new Ranked(input.next(), rank++);
+                if (heap.size() < limit) {
+                    add(heap, ranked);
+                } else if (order.compare(ranked, heap.peek()) < 0) {
+                    Ranked evicted = heap.poll();
+                    memory.release(evicted.size);
+                    reserved -= evicted.size;
+                    add(heap, ranked);
+                }
+            }
+            List<Ranked> sorted = new ArrayList<>(heap);
+            sorted.sort(order);
+            Iterator<DataPoint> iterator = new AbstractIterator<DataPoint>() {
+                private final Iterator<Ranked> delegate = sorted.iterator();
+
+                @Override
+                protected DataPoint computeNext() {
+                    if (delegate.hasNext()) {
+                        return delegate.next().dataPoint;
+                    }
+                    close();
+                    return endOfData();
+                }
+            };
+            return Spliterators.spliterator(iterator, sorted.size(), Spliterator.ORDERED | Spliterator.SIZED);
+        }
+
+        private void add(PriorityQueue<Ranked> heap, Ranked ranked) {
+            memory.reserve(ranked.size);
+            reserved += ranked.size;
+            heap.add(ranked);
+        }
+
+        @Override
+        public void close() {
+            memory.release(reserved);
+            reserved = 0;
+        }
+    }
+
+    private static final class Ranked {
+
+        private final DataPoint dataPoint;
+        private final long rank;
+        private final long size;
+
+        private Ranked(DataPoint dataPoint, long rank) {
+            this.dataPoint = dataPoint;
+            this.rank = rank;
+            this.size = MemoryTracker.estimate(dataPoint);
+        }
+    }
+
+    private static final class Sort implements Closeable {
+
+        private final Comparator<? super DataPoint> comparator;
+        private final MemoryTracker memory;
+        private final boolean spill;
+        private final List<Run> runs = new ArrayList<>();
+        private long reserved = 0;
+
+        private Sort(Comparator<? super DataPoint> comparator, MemoryTracker memory, boolean spill) {
+            this.comparator = comparator;
+            this.memory = memory;
+            this.spill = spill;
+        }
+
+        private Spliterator<DataPoint> sort(Iterator<DataPoint> input) {
+            List<DataPoint> buffer = new ArrayList<>();
+            while (input.hasNext()) {
+                DataPoint dataPoint = input.next();
+                long size = MemoryTracker.estimate(dataPoint);
+                if (!memory.tryReserve(size)) {
+                    if (!spill || buffer.isEmpty()) {
+                        memory.reserve(size);
+                    } else {
+                        spill(buffer);
+                        buffer.clear();
+                        memory.reserve(size);
+                    }
+                }
+                reserved += size;
+                buffer.add(dataPoint);
+            }
+            buffer.sort(comparator);
+
+            if (runs.isEmpty()) {
+                Iterator<DataPoint> sorted = new AbstractIterator<DataPoint>() {
+                    private final Iterator<DataPoint> delegate = buffer.iterator();
+
+                    @Override
+                    protected DataPoint computeNext() {
+                        if (delegate.hasNext()) {
+                            return delegate.next();
+                        }
+                        close();
+                        return endOfData();
+                    }
+                };
+                return Spliterators.spliterator(sorted, buffer.size(), Spliterator.ORDERED | Spliterator.SIZED);
+            }
+
+            if (!buffer.isEmpty()) {
+                spill(buffer);
+                buffer.clear();
+            }
+            return Spliterators.spliteratorUnknownSize(merge(), Spliterator.ORDERED);
+        }
+
+        private void spill(List<DataPoint> buffer) {
+            buffer.sort(comparator);
+            try {
+                File file = File.createTempFile("vtl-sort", ".run");
+                file.deleteOnExit();
+                try (DataOutputStream output = new DataOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(file)))) {
+                    for (DataPoint dataPoint : buffer) {
+                        DataPointCodec.write(output, dataPoint);
+                    }
+                }
+                runs.add(new Run(file));
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+            memory.release(reserved);
+            reserved = 0;
+        }
+
+        private Iterator<DataPoint> merge() {
+            PriorityQueue<Run> queue = new PriorityQueue<>(runs.size(),
+                    (left, right) -> comparator.compare(left.head, right.head)
+            );
+            for (Run run : runs) {
+                if (run.advance()) {
+                    queue.add(run);
+                }
+            }
+            return new AbstractIterator<DataPoint>() {
+                @Override
+                protected DataPoint computeNext() {
+                    Run run = queue.poll();
+                    if (run == null) {
+                        close();
+                        return endOfData();
+                    }
+                    DataPoint head = run.head;
+                    if (run.advance()) {
+                        queue.add(run);
+                    }
+                    return head;
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            memory.release(reserved);
+            reserved = 0;
+            for (Run run : runs) {
+                run.close();
+            }
+            runs.clear();
+        }
+    }
+
+    /**
+     * A sorted file of data points.
+     */
+    private static final class Run implements Closeable {
+
+        private final File file;
+        private DataInputStream input;
+        private DataPoint head;
+
+        private Run(File file) {
+            this.file = file;
+        }
+
+        private boolean advance() {
+            try {
+                if (input == null) {
+                    input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                }
+                head = DataPointCodec.read(input);
+                return true;
+            } catch (EOFException eof) {
+                close();
+                return false;
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+
+        @Override
+        public void close() {
+            head = null;
+            try {
+                if (input != null) {
+                    input.close();
+                }
+            } catch (IOException ioe) {
+                // ignore.
+            } finally {
+                file.delete();
+            }
+        }
+    }
+}
@@ -21,6 +21,8 @@ package no.ssb.vtl.script.operations;
  */
 
 import com.google.common.base.MoreObjects;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
@@ -42,15 +44,58 @@ import static com.google.common.base.Preconditions.checkNotNull;
  */
 public class DatasetOperationWrapper extends AbstractDatasetOperation {
 
-    private final Dataset dataset;
+    private final Supplier<Dataset> dataset;
+    private final String version;
 
     public DatasetOperationWrapper(Dataset dataset) {
         super(Collections.emptyList());
-        this.dataset = checkNotNull(dataset);
+        this.dataset = Suppliers.ofInstance(checkNotNull(dataset));
+        this.version = null;
+    }
+
+    /**
+     * Creates a wrapper that obtains the dataset the first time it is used.
+     * <p>
+     * The supplier is called again if it throws an exception.
+     */
+    public DatasetOperationWrapper(Supplier<Dataset> dataset) {
+        super(Collections.emptyList());
+        this.dataset = Suppliers.memoize(checkNotNull(dataset));
+        this.version = null;
+    }
+
+    /**
+     * Creates a wrapper that obtains the dataset the first time it is used, with a version known in
+     * advance. Reading the version does not obtain the dataset.
+     *
+     * @see Dataset#getVersion()
+     */
+    public DatasetOperationWrapper(Supplier<Dataset> dataset, String version) {
+        super(Collections.emptyList());
+        this.dataset = Suppliers.memoize(checkNotNull(dataset));
+        this.version = checkNotNull(version);
+    }
+
+    /**
+     * Returns the wrapped dataset.
+     */
+    Dataset getDataset() {
+        return dataset.get();
+    }
+
+    /**
+     * Returns the dataset wrapped by the given dataset, or the dataset itself if it is not a wrapper.
+     */
+    public static Dataset unwrap(Dataset dataset) {
+        while (dataset instanceof DatasetOperationWrapper) {
+            dataset = ((DatasetOperationWrapper) dataset).getDataset();
+        }
+        return dataset;
     }
 
     @Override
     public String toString() {
+        Dataset dataset = getDataset();
         if (dataset instanceof AbstractDatasetOperation) {
             return dataset.toString();
         } else {
@@ -64,6 +109,7 @@ public class DatasetOperationWrapper extends AbstractDatasetOperation {
      * Sorts and filters the stream if the underlying dataset does not support it.
      */
     private Stream<DataPoint> ensureSortedFilteredStream(Ordering orders, Filtering filtering, Set<String> components) {
+        Dataset dataset = getDataset();
         Optional<Stream<DataPoint>> sorted = dataset.getData(orders, filtering, components);
         if (sorted.isPresent()) {
             return new VtlStream(
@@ -77,6 +123,7 @@ public class DatasetOperationWrapper extends AbstractDatasetOperation {
 
     @Override
     public Stream<DataPoint> computeData(Ordering orders, Filtering filtering, Set<String> components) {
+        Dataset dataset = getDataset();
         if (dataset instanceof AbstractDatasetOperation) {
             return ((AbstractDatasetOperation) dataset).computeData(orders, filtering, components);
         } else {
@@ -84,9 +131,27 @@ public class DatasetOperationWrapper extends AbstractDatasetOperation {
         }
     }
 
+    /**
+     * Passes the limit to the underlying dataset as a hint.
+     */
+    @Override
+    public Stream<DataPoint> computeData(Ordering orders, Filtering filtering, Set<String> components, long limit) {
+        Dataset dataset = getDataset();
+        if (dataset instanceof AbstractDatasetOperation) {
+            return ((AbstractDatasetOperation) dataset).computeData(orders, filtering, components, limit);
+        }
+        Optional<Stream<DataPoint>> limited = dataset.getData(orders, filtering, components, limit);
+        if (limited.isPresent()) {
+            return new VtlStream(
+                    this, limited.get(), Collections.emptyList(), orders, filtering, orders, Filtering.ALL);
+        } else {
+            return ensureSortedFilteredStream(orders, filtering, components);
+        }
+    }
+
     @Override
     protected DataStructure computeDataStructure() {
-        return dataset.getDataStructure();
+        return getDataset().getDataStructure();
     }
 
     @Override
@@ -101,11 +166,19 @@ public class DatasetOperationWrapper extends AbstractDatasetOperation {
 
     @Override
     public Optional<Map<String, Integer>> getDistinctValuesCount() {
-        return dataset.getDistinctValuesCount();
+        return getDataset().getDistinctValuesCount();
     }
 
     @Override
     public Optional<Long> getSize() {
-        return dataset.getSize();
+        return getDataset().getSize();
+    }
+
+    @Override
+    public Optional<String> getVersion() {
+        if (version != null) {
+            return Optional.of(version);
+        }
+        return getDataset().getVersion();
     }
 }
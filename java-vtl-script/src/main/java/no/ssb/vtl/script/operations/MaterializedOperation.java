@@ -0,0 +1,337 @@
+package no.ssb.vtl.script.operations;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.Filtering;
+import no.ssb.vtl.model.FilteringSpecification;
+import no.ssb.vtl.model.Ordering;
+import no.ssb.vtl.model.OrderingSpecification;
+import no.ssb.vtl.model.VtlFiltering;
+import no.ssb.vtl.model.VtlOrdering;
+import no.ssb.vtl.script.Execution;
+import no.ssb.vtl.script.VtlConfiguration;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Computes the data of a dataset once and keeps it for the following reads.
+ * <p>
+ * The data is computed, without filter, in the ordering of the first read. The reads that request the
+ * same ordering get the rows in the stored order, the other ones are sorted.
+ * <p>
+ * The rows are kept in memory. When they do not fit in the memory budget and the memory policy is
+ * {@link VtlConfiguration.MemoryPolicy#SPILL}, they are written to a temporary file instead.
+ * <p>
+ * When the operation belongs to an {@link Execution}, the memory of the rows stays reserved in the
+ * budget until the execution is closed, and closing the execution closes the operation. Otherwise the
+ * memory is only reserved while the data is computed and the operation should be closed once it is not
+ * used anymore.
+ * <p>
+ * The stored rows are dropped when the version of a dataset the child reads changes, as the datasets of
+ * a foreach block do for each slice (see {@link Dataset#getVersion()}).
+ */
+public class MaterializedOperation extends AbstractUnaryDatasetOperation implements Closeable {
+
+    private Storage storage;
+    private boolean closed;
+    private boolean registered;
+
+    public MaterializedOperation(Dataset dataset) {
+        super(checkNotNull(dataset, "the dataset was null"));
+    }
+
+    @Override
+    protected DataStructure computeDataStructure() {
+        return getChild().getDataStructure();
+    }
+
+    @Override
+    public Stream<DataPoint> computeData(Ordering ordering, Filtering filtering, Set<String> components) {
+        Storage storage = materialize(ordering);
+        return new VtlStream(this, storage.read(), Collections.emptyList(),
+                ordering, filtering, storage.ordering, Filtering.ALL);
+    }
+
+    /**
+     * Returns true once the data has been computed.
+     */
+    public synchronized boolean isMaterialized() {
+        return storage != null;
+    }
+
+    /**
+     * Returns true if the data has been written to a file.
+     */
+    public synchronized boolean isSpilled() {
+        return storage != null && storage.file != null;
+    }
+
+    @VisibleForTesting
+    synchronized File getFile() {
+        return storage != null ? storage.file : null;
+    }
+
+    private synchronized Storage materialize(Ordering ordering) {
+        checkState(!closed, "the materialized dataset was closed");
+        List<Optional<String>> versions = getSourceVersions();
+        if (storage != null && !storage.versions.equals(versions)) {
+            drop();
+        }
+        if (storage == null) {
+            DataStructure structure = getDataStructure();
+            Ordering storedOrdering = ordering.columns().isEmpty()
+                    ? Ordering.ANY
+                    : new VtlOrdering(ordering, structure);
+            Execution execution = getConfiguration().getExecution();
+            MemoryTracker memory = MemoryTracker.create(getConfiguration());
+            try (Stream<DataPoint> data = getChild().computeData(storedOrdering, Filtering.ALL, structure.keySet())) {
+                storage = Storage.store(storedOrdering, versions, data, memory);
+            } finally {
+                if (storage == null || execution == null) {
+                    memory.releaseAll();
+                }
+            }
+            if (execution != null && !registered) {
+                registered = true;
+                execution.register(this);
+            }
+        }
+        return storage;
+    }
+
+    /**
+     * Returns the storage if the datasets the child reads did not change since it was stored.
+     */
+    private Storage current() {
+        return storage != null && storage.versions.equals(getSourceVersions()) ? storage : null;
+    }
+
+    /**
+     * Returns the versions of the datasets the child reads, in order.
+     */
+    private List<Optional<String>> getSourceVersions() {
+        List<Optional<String>> versions = new ArrayList<>();
+        addSourceVersions(getChild(), versions);
+        return versions;
+    }
+
+    private static void addSourceVersions(Dataset dataset, List<Optional<String>> versions) {
+        Dataset source = DatasetOperationWrapper.unwrap(dataset);
+        if (source instanceof AbstractDatasetOperation) {
+            for (AbstractDatasetOperation child : ((AbstractDatasetOperation) source).getChildren()) {
+                addSourceVersions(child, versions);
+            }
+        } else {
+            versions.add(source.getVersion());
+        }
+    }
+
+    /**
+     * Releases the memory of the rows and deletes the file they were written to, if any. The data
+     * cannot be read anymore.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        drop();
+    }
+
+    private void drop() {
+        if (storage != null) {
+            storage.memory.releaseAll();
+            if (storage.file != null && !storage.file.delete() && storage.file.exists()) {
+                // Deleted when the process exits.
+                storage.file.deleteOnExit();
+            }
+            storage = null;
+        }
+    }
+
+    @Override
+    public Optional<Map<String, Integer>> getDistinctValuesCount() {
+        return getChild().getDistinctValuesCount();
+    }
+
+    @Override
+    public synchronized Optional<Long> getSize() {
+        Storage storage = current();
+        return storage != null ? Optional.of(storage.count) : getChild().getSize();
+    }
+
+    @Override
+    public FilteringSpecification computeRequiredFiltering(FilteringSpecification filtering) {
+        return VtlFiltering.using(this).transpose(Filtering.ALL);
+    }
+
+    @Override
+    public synchronized OrderingSpecification computeRequiredOrdering(OrderingSpecification ordering) {
+        Storage storage = current();
+        if (storage != null) {
+            return storage.ordering;
+        }
+        return new VtlOrdering(ordering, getDataStructure());
+    }
+
+    /**
+     * The stored rows, in memory or in a file.
+     */
+    private static final class Storage {
+
+        private final Ordering ordering;
+        private final List<Optional<String>> versions;
+        private final ImmutableList<DataPoint> rows;
+        private final File file;
+        private final long count;
+        private final MemoryTracker memory;
+
+        private Storage(Ordering ordering, List<Optional<String>> versions, ImmutableList<DataPoint> rows,
+                        File file, long count, MemoryTracker memory) {
+            this.ordering = ordering;
+            this.versions = versions;
+            this.rows = rows;
+            this.file = file;
+            this.count = count;
+            this.memory = memory;
+        }
+
+        /**
+         * Stores the rows. The memory of the rows that are kept in memory stays reserved.
+         */
+        private static Storage store(Ordering ordering, List<Optional<String>> versions, Stream<DataPoint> data,
+                                     MemoryTracker memory) {
+            List<DataPoint> rows = new ArrayList<>();
+            Iterator<DataPoint> iterator = data.iterator();
+            while (iterator.hasNext()) {
+                DataPoint dataPoint = iterator.next();
+                long size = MemoryTracker.estimate(dataPoint);
+                if (!memory.tryReserve(size)) {
+                    if (!memory.isSpillEnabled()) {
+                        memory.reserve(size);
+                    } else {
+                        return spill(ordering, versions, rows, dataPoint, iterator, memory);
+                    }
+                }
+                // Copy since the data points can be recycled.
+                rows.add(DataPoint.create(dataPoint));
+            }
+            return new Storage(ordering, versions, ImmutableList.copyOf(rows), null, rows.size(), memory);
+        }
+
+        private static Storage spill(Ordering ordering, List<Optional<String>> versions, List<DataPoint> rows,
+                                     DataPoint next, Iterator<DataPoint> remaining, MemoryTracker memory) {
+            try {
+                File file = File.createTempFile("vtl-materialized", ".data");
+                // In case the operation is never closed.
+                file.deleteOnExit();
+                boolean complete = false;
+                try {
+                    long count = 0;
+                    try (DataOutputStream output = new DataOutputStream(
+                            new BufferedOutputStream(new FileOutputStream(file)))) {
+                        for (DataPoint dataPoint : rows) {
+                            DataPointCodec.write(output, dataPoint);
+                            count++;
+                        }
+                        rows.clear();
+                        memory.releaseAll();
+                        DataPointCodec.write(output, next);
+                        count++;
+                        while (remaining.hasNext()) {
+                            DataPointCodec.write(output, remaining.next());
+                            count++;
+                        }
+                    }
+                    complete = true;
+                    return new Storage(ordering, versions, null, file, count, memory);
+                } finally {
+                    if (!complete) {
+                        file.delete();
+                    }
+                }
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+
+        private Stream<DataPoint> read() {
+            if (file == null) {
+                return rows.stream().map(DataPoint::create);
+            }
+            DataInputStream input;
+            try {
+                input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+            Iterator<DataPoint> iterator = new AbstractIterator<DataPoint>() {
+                @Override
+                protected DataPoint computeNext() {
+                    try {
+                        return DataPointCodec.read(input);
+                    } catch (EOFException eof) {
+                        return endOfData();
+                    } catch (IOException ioe) {
+                        throw new UncheckedIOException(ioe);
+                    }
+                }
+            };
+            return StreamSupport.stream(
+                    Spliterators.spliterator(iterator, count, Spliterator.ORDERED), false
+            ).onClose(() -> {
+                try {
+                    input.close();
+                } catch (IOException ioe) {
+                    // ignore.
+                }
+            });
+        }
+    }
+}
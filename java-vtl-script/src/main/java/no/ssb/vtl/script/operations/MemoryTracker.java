@@ -0,0 +1,277 @@
+package no.ssb.vtl.script.operations;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.base.MoreObjects;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.script.VtlConfiguration;
+import no.ssb.vtl.script.error.MemoryLimitExceededException;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Keeps track of the memory used by the rows an operation buffers.
+ * <p>
+ * Operations that hold on to rows (sorts, join buffers, groups) reserve an estimate of their size
+ * before keeping them and release it when they let them go. The trackers of the operations are
+ * children of the tracker of the {@link VtlConfiguration}, which enforces the memory budget.
+ * <p>
+ * Tracking is disabled, and the methods are no-ops, unless a memory budget is set or profiling is enabled.
+ *
+ * @see VtlConfiguration#setMemoryBudget(long)
+ */
+public final class MemoryTracker {
+
+    // Rough sizes, in bytes, assuming compressed references.
+    private static final long ROW_SIZE = 40;
+    private static final long CELL_SIZE = 20;
+    private static final long BOXED_SIZE = 16;
+    private static final long INSTANT_SIZE = 24;
+    private static final long STRING_SIZE = 40;
+
+    private static final MemoryTracker UNTRACKED = new MemoryTracker(null, Long.MAX_VALUE, false, false);
+
+    private final MemoryTracker parent;
+    private final long limit;
+    private final boolean enabled;
+    private final boolean spill;
+    private final AtomicLong used = new AtomicLong();
+    private final AtomicLong peak = new AtomicLong();
+
+    private MemoryTracker(MemoryTracker parent, long limit, boolean enabled, boolean spill) {
+        this.parent = parent;
+        this.limit = limit;
+        this.enabled = enabled;
+        this.spill = spill;
+    }
+
+    /**
+     * Creates a tracker that enforces the given limit.
+     */
+    public static MemoryTracker withLimit(long limit) {
+        checkArgument(limit > 0, "the limit must be positive");
+        return new MemoryTracker(null, limit, true, false);
+    }
+
+    /**
+     * Creates a tracker for an operation using the budget of the current configuration.
+     */
+    public static MemoryTracker create() {
+        return create(VtlConfiguration.getConfig());
+    }
+
+    /**
+     * Creates a tracker for an operation using the budget of the given configuration.
+     */
+    public static MemoryTracker create(VtlConfiguration configuration) {
+        MemoryTracker root = configuration.getMemoryTracker();
+        boolean enabled = root.limit != Long.MAX_VALUE || configuration.isProfilingEnabled();
+        boolean spill = configuration.getMemoryPolicy() == VtlConfiguration.MemoryPolicy.SPILL;
+        return enabled ? new MemoryTracker(root, Long.MAX_VALUE, true, spill) : UNTRACKED;
+    }
+
+    /**
+     * Returns a tracker that ignores all the reservations.
+     */
+    public static MemoryTracker untracked() {
+        return UNTRACKED;
+    }
+
+    /**
+     * Estimates the size of a data point.
+     */
+    public static long estimate(DataPoint dataPoint) {
+        long size = ROW_SIZE;
+        for (VTLObject value : dataPoint) {
+            size += CELL_SIZE + estimateValue(value == null ? null : value.get());
+        }
+        return size;
+    }
+
+    /**
+     * Estimates the size of the data points in a collection.
+     */
+    public static long estimate(Collection<? extends DataPoint> dataPoints) {
+        long size = ROW_SIZE;
+        for (DataPoint dataPoint : dataPoints) {
+            size += estimate(dataPoint);
+        }
+        return size;
+    }
+
+    /**
+     * Estimates the size of a row, using the size of a data point with one column if the
+     * row is not a {@link DataPoint}.
+     */
+    public static long estimate(Object row) {
+        if (row instanceof DataPoint) {
+            return estimate((DataPoint) row);
+        }
+        return ROW_SIZE + CELL_SIZE + BOXED_SIZE;
+    }
+
+    private static long estimateValue(Object value) {
+        if (value == null || value instanceof Boolean) {
+            return 0;
+        } else if (value instanceof String) {
+            return STRING_SIZE + 2L * ((String) value).length();
+        } else if (value instanceof Instant) {
+            return INSTANT_SIZE;
+        } else {
+            return BOXED_SIZE;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns true if the operations should write their rows to temporary files instead of failing
+     * when the budget is exceeded.
+     *
+     * @see VtlConfiguration.MemoryPolicy#SPILL
+     */
+    public boolean isSpillEnabled() {
+        return spill;
+    }
+
+    /**
+     * Tries to reserve memory.
+     *
+     * @return false if the reservation would exceed the budget
+     */
+    public boolean tryReserve(long bytes) {
+        if (!enabled) {
+            return true;
+        }
+        if (parent != null && !parent.tryReserve(bytes)) {
+            return false;
+        }
+        long current = used.addAndGet(bytes);
+        if (current > limit) {
+            used.addAndGet(-bytes);
+            if (parent != null) {
+                // Undo the reservation of the parent.
+                parent.release(bytes);
+            }
+            return false;
+        }
+        peak.accumulateAndGet(current, Math::max);
+        return true;
+    }
+
+    /**
+     * Reserves memory.
+     *
+     * @throws MemoryLimitExceededException if the reservation would exceed the budget
+     */
+    public void reserve(long bytes) {
+        if (!tryReserve(bytes)) {
+            MemoryTracker root = this;
+            while (root.parent != null) {
+                root = root.parent;
+            }
+            throw new MemoryLimitExceededException(root.limit, root.getUsed(), bytes);
+        }
+    }
+
+    /**
+     * Releases memory previously reserved.
+     */
+    public void release(long bytes) {
+        if (!enabled) {
+            return;
+        }
+        used.addAndGet(-bytes);
+        if (parent != null) {
+            parent.release(bytes);
+        }
+    }
+
+    /**
+     * Releases all the memory reserved by this tracker.
+     */
+    public void releaseAll() {
+        if (!enabled) {
+            return;
+        }
+        long bytes = used.getAndSet(0);
+        if (parent != null) {
+            parent.release(bytes);
+        }
+    }
+
+    /**
+     * Wraps a function that processes groups of rows so that the size of each group
+     * is reserved while the function runs.
+     */
+    public <G extends Collection<? extends DataPoint>, R> Function<G, R> reserving(Function<G, R> function) {
+        if (!enabled) {
+            return function;
+        }
+        return group -> {
+            long size = estimate(group);
+            reserve(size);
+            try {
+                return function.apply(group);
+            } finally {
+                release(size);
+            }
+        };
+    }
+
+    /**
+     * Returns the number of bytes currently reserved.
+     */
+    public long getUsed() {
+        return used.get();
+    }
+
+    /**
+     * Returns the highest number of bytes reserved at once.
+     */
+    public long getPeak() {
+        return peak.get();
+    }
+
+    /**
+     * Returns the limit of this tracker, {@link Long#MAX_VALUE} if none.
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("used", used)
+                .add("peak", peak)
+                .add("limit", limit == Long.MAX_VALUE ? "none" : limit)
+                .toString();
+    }
+}
@@ -32,6 +32,8 @@ import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.Filtering;
 import no.ssb.vtl.model.FilteringSpecification;
 import no.ssb.vtl.model.Ordering;
+import no.ssb.vtl.model.VtlFiltering;
+import no.ssb.vtl.script.Execution;
 import no.ssb.vtl.script.VtlConfiguration;
 
 import java.util.Arrays;
@@ -39,6 +41,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Optional;
 import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.concurrent.TimeUnit;
@@ -66,6 +69,7 @@ public class VtlStream extends ForwardingStream<DataPoint> {
     private final Stream<DataPoint> delegate;
     private final Ordering requestedOrdering;
     private final Filtering requestedFiltering;
+    private final MemoryTracker memory;
     private VtlStream child;
     private Ordering actualOrdering;
     private Filtering actualFiltering;
@@ -84,6 +88,20 @@ public class VtlStream extends ForwardingStream<DataPoint> {
                 actualOrdering, actualFiltering);
     }
 
+    public VtlStream(
+            AbstractDatasetOperation operation,
+            Stream<DataPoint> delegate,
+            Stream<DataPoint> parent,
+            Ordering requestedOrdering,
+            Filtering requestedFiltering,
+            Ordering actualOrdering,
+            Filtering actualFiltering,
+            MemoryTracker memory
+    ) {
+        this(operation, delegate, Collections.singletonList(parent), requestedOrdering, requestedFiltering,
+                actualOrdering, actualFiltering, memory);
+    }
+
     public VtlStream(
             AbstractDatasetOperation operation,
             Stream<DataPoint> delegate,
@@ -93,6 +111,24 @@ public class VtlStream extends ForwardingStream<DataPoint> {
             Ordering actualOrdering,
             Filtering actualFiltering
     ) {
+        this(operation, delegate, parents, requestedOrdering, requestedFiltering, actualOrdering, actualFiltering,
+                MemoryTracker.create(operation.getConfiguration()));
+    }
+
+    /**
+     * Creates a stream whose operation buffers rows. The memory tracker is used by the post sort
+     * as well and its peak is reported in the {@link Statistics}.
+     */
+    public VtlStream(
+            AbstractDatasetOperation operation,
+            Stream<DataPoint> delegate,
+            Collection<Stream<DataPoint>> parents,
+            Ordering requestedOrdering,
+            Filtering requestedFiltering,
+            Ordering actualOrdering,
+            Filtering actualFiltering,
+            MemoryTracker memory
+    ) {
 
         this.parents = ImmutableList.copyOf(parents);
 
@@ -107,6 +143,7 @@ public class VtlStream extends ForwardingStream<DataPoint> {
         this.requestedFiltering = requestedFiltering;
         this.actualOrdering = actualOrdering;
         this.actualFiltering = actualFiltering;
+        this.memory = memory;
 
         this.statistics = new Statistics(this, Spectator.globalRegistry());
         this.delegate = decorateStream(delegate);
@@ -143,6 +180,7 @@ public class VtlStream extends ForwardingStream<DataPoint> {
     @Override
     public void close() {
         delegate.close();
+        memory.releaseAll();
         RuntimeException exception = null;
         for (Stream<DataPoint> parent : parents) {
             try {
@@ -190,9 +228,38 @@ public class VtlStream extends ForwardingStream<DataPoint> {
         }, 0, false).onClose(stream::close);
     }
 
+    /**
+     * Checks the execution for each row and reports the rows every {@link Execution#CHECK_INTERVAL} rows.
+     */
+    private Stream<DataPoint> controlStream(Stream<DataPoint> stream, Execution execution) {
+        return StreamSupport.stream(() -> {
+            execution.checkpoint(0);
+            Spliterator<DataPoint> spliterator = stream.spliterator();
+            return new Spliterators.AbstractSpliterator<DataPoint>(spliterator.estimateSize(), spliterator.characteristics()) {
+
+                private int produced;
+
+                @Override
+                public boolean tryAdvance(Consumer<? super DataPoint> action) {
+                    execution.checkCancelled();
+                    if (!spliterator.tryAdvance(action)) {
+                        execution.checkpoint(produced);
+                        produced = 0;
+                        return false;
+                    }
+                    if (++produced == Execution.CHECK_INTERVAL) {
+                        execution.checkpoint(produced);
+                        produced = 0;
+                    }
+                    return true;
+                }
+            };
+        }, 0, false).onClose(stream::close);
+    }
+
     Stream<DataPoint> decorateStream(Stream<DataPoint> stream) {
 
-        VtlConfiguration configuration = VtlConfiguration.getConfig();
+        VtlConfiguration configuration = operation.getConfiguration();
 
         final Clock clock = statistics.registry.clock();
         if (configuration.isProfilingEnabled()) {
@@ -215,7 +282,7 @@ public class VtlStream extends ForwardingStream<DataPoint> {
 
         // Post ordering
         if (configuration.isForceSortEnabled() || !requestedOrdering.equals(actualOrdering)) {
-            stream = stream.sorted(requestedOrdering);
+            stream = DataPointSorter.sort(DataPointRecycler.retain(stream), requestedOrdering, memory);
             if (configuration.isProfilingEnabled()) {
                 stream = measureStartStream(
                         stream,
@@ -259,6 +326,11 @@ public class VtlStream extends ForwardingStream<DataPoint> {
                 statistics.cells.increment(dataPoint.size());
             });
         }
+
+        Execution execution = configuration.getExecution();
+        if (execution != null) {
+            stream = controlStream(stream, execution);
+        }
         return stream;
     }
 
@@ -298,8 +370,18 @@ public class VtlStream extends ForwardingStream<DataPoint> {
         result = result + prefix + V_BAR + opString;
         result = result + prefix + V_BAR + filter;
         result = result + prefix + V_BAR + aFilter;
+        if (requestedFiltering instanceof VtlFiltering) {
+            Optional<String> evaluation = ((VtlFiltering) requestedFiltering).describeEvaluation();
+            if (evaluation.isPresent()) {
+                result = result + prefix + V_BAR + String.format("  - evaluation: %s\n", evaluation.get());
+            }
+        }
         result = result + prefix + V_BAR + order;
         result = result + prefix + V_BAR + aOrder;
+        if (memory.isEnabled()) {
+            String peak = String.format("  memory  : %d bytes (peak)\n", memory.getPeak());
+            result = result + prefix + V_BAR + peak;
+        }
 
         ListIterator<Stream<DataPoint>> parentIterator = parents.listIterator();
         while (parentIterator.hasNext()) {
@@ -324,6 +406,7 @@ public class VtlStream extends ForwardingStream<DataPoint> {
      * Time spent post ordering.
      * Cell count.
      * Row count.
+     * Memory used by the operation.
      */
     public class Statistics {
 
@@ -367,5 +450,9 @@ public class VtlStream extends ForwardingStream<DataPoint> {
         public Timer getTime() {
             return time;
         }
+
+        public MemoryTracker getMemory() {
+            return memory;
+        }
     }
 }
@@ -41,6 +41,8 @@ import no.ssb.vtl.model.VtlOrdering;
 import no.ssb.vtl.script.error.TypeException;
 import no.ssb.vtl.script.operations.AbstractDatasetOperation;
 import no.ssb.vtl.script.operations.AbstractUnaryDatasetOperation;
+import no.ssb.vtl.script.operations.DataPointRecycler;
+import no.ssb.vtl.script.operations.MemoryTracker;
 import no.ssb.vtl.script.operations.VtlStream;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
 
@@ -49,6 +51,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 public class AggregationOperation extends AbstractUnaryDatasetOperation {
@@ -163,8 +166,7 @@ public class AggregationOperation extends AbstractUnaryDatasetOperation {
         return new VtlOrdering(directionMap, childStructure);
     }
 
-    private DataPoint aggregate(List<DataPoint> datapoints) {
-        DataPoint result = DataPoint.create(columns.size());
+    private DataPoint aggregate(List<DataPoint> datapoints, DataPoint result) {
 
         // Aggregate and copy into the result.
         for (String columnName : aggregateColumns) {
@@ -212,12 +214,14 @@ public class AggregationOperation extends AbstractUnaryDatasetOperation {
         );
 
         Stream<DataPoint> original = childOperation.computeData(groupByOrdering, aggregationFilter, components);
+        Supplier<DataPoint> rows = DataPointRecycler.supplier(columns.size());
+        MemoryTracker memory = MemoryTracker.create(getConfiguration());
 
         // TODO: Move close logic to VtlStream.
-        Stream<DataPoint> stream = StreamUtils.aggregate(original, (previous, current) -> groupByPredicate.compare(previous, current) == 0)
-                .onClose(original::close).map(this::aggregate);
+        Stream<DataPoint> stream = StreamUtils.aggregate(DataPointRecycler.retain(original), (previous, current) -> groupByPredicate.compare(previous, current) == 0)
+                .onClose(original::close).map(memory.reserving(group -> aggregate(group, rows.get())));
 
-        return new VtlStream(this, stream, original, orders, filtering, groupByOrdering, aggregationFilter);
+        return new VtlStream(this, stream, original, orders, filtering, groupByOrdering, aggregationFilter, memory);
     }
 
     @Override
@@ -20,6 +20,7 @@ package no.ssb.vtl.script.operations.check;
  * =========================LICENSE_END==================================
  */
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import no.ssb.vtl.model.Component;
@@ -31,12 +32,18 @@ import no.ssb.vtl.model.FilteringSpecification;
 import no.ssb.vtl.model.Ordering;
 import no.ssb.vtl.model.OrderingSpecification;
 import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.model.VtlFiltering;
+import no.ssb.vtl.model.VtlOrdering;
 import no.ssb.vtl.script.operations.AbstractUnaryDatasetOperation;
+import no.ssb.vtl.script.operations.DataPointRecycler;
+import no.ssb.vtl.script.operations.VtlStream;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -52,7 +59,6 @@ public class CheckSingleRuleOperation extends AbstractUnaryDatasetOperation {
     private final ComponentsToReturn componentsToReturn;
     private final String errorCode;
     private final Long errorLevel;
-    private final Set<Component> conditions = Sets.newHashSet();
 
     private CheckSingleRuleOperation(Builder builder) {
         super(checkNotNull(builder.dataset, "dataset was null"));
@@ -67,6 +73,30 @@ public class CheckSingleRuleOperation extends AbstractUnaryDatasetOperation {
         checkDataStructure(getChild());
     }
 
+    /**
+     * Returns the boolean measures of the dataset that are conditions.
+     * <p>
+     * They are computed from the structure on each use rather than collected in a field so that
+     * computing the data structure does not modify the operation, which can be shared between threads.
+     */
+    private static ImmutableSet<Component> computeConditions(Dataset dataset) {
+        DataStructure structure = dataset.getDataStructure();
+        Set<Component> conditions = Sets.newLinkedHashSet();
+        for (Map.Entry<String, Component> entry : structure.entrySet()) {
+            Component component = entry.getValue();
+            if (component.isMeasure() && isConditionName(entry.getKey())
+                    && component.getType().isAssignableFrom(Boolean.class)) {
+                checkArgument(
+                        conditions.add(component),
+                        "duplicate condition %s in %s",
+                        entry, structure
+                );
+            }
+        }
+        checkArgument(!conditions.isEmpty(), "the dataset %s was not a boolean dataset", dataset);
+        return ImmutableSet.copyOf(conditions);
+    }
+
     private static boolean isConditionName(String name) {
         return CONDITION_LABEL.equals(name.toLowerCase()) || name.toLowerCase().endsWith("_condition");
     }
@@ -79,70 +109,107 @@ public class CheckSingleRuleOperation extends AbstractUnaryDatasetOperation {
 
     @Override
     public Stream<DataPoint> computeData(Ordering orders, Filtering filtering, Set<String> components) {
-        Dataset childDataset = getChild();
-        DataStructure newStructure = getDataStructure();
-        DataStructure previousStructure = childDataset.getDataStructure();
-        Component conditionComponent = getConditionComponent(newStructure);
-
-        return childDataset.getData().map(dataPoint -> {
-
-            DataPoint resultDataPoint = DataPoint.create(newStructure.size());
-            Map<Component, VTLObject> originalMap = previousStructure.asMap(dataPoint);
-            Map<Component, VTLObject> resultMap = newStructure.asMap(resultDataPoint);
+        DataStructure structure = getDataStructure();
+        DataStructure childStructure = getChild().getDataStructure();
+
+        List<String> childColumns = new ArrayList<>(childStructure.keySet());
+        List<String> columns = new ArrayList<>(structure.keySet());
+
+        // Indices of the columns copied from the child.
+        int[] sources = columns.stream().filter(column -> !isGenerated(structure, column))
+                .mapToInt(childColumns::indexOf).toArray();
+        int[] targets = columns.stream().filter(column -> !isGenerated(structure, column))
+                .mapToInt(columns::indexOf).toArray();
+        int[] conditionIndices = computeConditions(getChild()).stream()
+                .mapToInt(condition -> childColumns.indexOf(childStructure.getName(condition))).toArray();
+
+        int conditionIndex = columns.indexOf(CONDITION_LABEL);
+        int errorCodeIndex = columns.indexOf(ERROR_CODE_LABEL);
+        int errorLevelIndex = columns.indexOf(ERROR_LEVEL_LABEL);
+        VTLObject errorCodeValue = VTLObject.of(errorCode);
+        VTLObject errorLevelValue = VTLObject.of(errorLevel);
+
+        VtlFiltering childFiltering = (VtlFiltering) computeRequiredFiltering(filtering);
+        VtlOrdering childOrdering = (VtlOrdering) computeRequiredOrdering(orders);
+
+        Stream<DataPoint> original = getChild().computeData(childOrdering, childFiltering, components);
+        Stream<DataPoint> stream = original;
+
+        // The child might not apply the filter so the rows are selected here as well.
+        if (rowsToReturn == RowsToReturn.VALID) {
+            stream = stream.filter(dataPoint -> isValid(dataPoint, conditionIndices));
+        } else if (rowsToReturn == RowsToReturn.NOT_VALID) {
+            stream = stream.filter(dataPoint -> !isValid(dataPoint, conditionIndices));
+        }
 
-            for (Component component : resultMap.keySet()) {
-                if (originalMap.containsKey(component)) {
-                    resultMap.put(component, originalMap.get(component));
-                }
+        Supplier<DataPoint> rows = DataPointRecycler.supplier(structure.size());
+        stream = stream.map(dataPoint -> {
+            DataPoint result = rows.get();
+            for (int i = 0; i < sources.length; i++) {
+                result.set(targets[i], dataPoint.get(sources[i]));
             }
-
-            // Optimized and.
-            // TODO: Handle nulls somewhere else (VTLBoolean?)
-            Boolean combinedCondition = true;
-            for (Component condition : conditions) {
-                VTLObject value = originalMap.get(condition);
-                if (value.get() == null) {
-                    combinedCondition = false;
-                    break;
-                } else {
-                    if (!(combinedCondition && (Boolean) value.get())) {
-                        combinedCondition = false;
-                        break;
-                    }
-                }
+            if (conditionIndex >= 0) {
+                boolean valid = rowsToReturn == RowsToReturn.ALL
+                        ? isValid(dataPoint, conditionIndices)
+                        : rowsToReturn == RowsToReturn.VALID;
+                result.set(conditionIndex, VTLObject.of(valid));
             }
-
-            //... then filter rows
-            if (rowsToReturn != RowsToReturn.ALL) {
-                if (rowsToReturn == RowsToReturn.VALID && !combinedCondition) {
-                    return null;
-                }
-                if (rowsToReturn == RowsToReturn.NOT_VALID && combinedCondition) {
-                    return null;
-                }
+            result.set(errorCodeIndex, errorCodeValue);
+            if (errorLevelIndex >= 0) {
+                result.set(errorLevelIndex, errorLevelValue);
             }
+            return result;
+        });
 
-            resultMap.computeIfPresent(getErrorCodeComponent(), (k, v) -> VTLObject.of(errorCode));
-            resultMap.computeIfPresent(getErrorLevelComponent(), (k, v) -> VTLObject.of(errorLevel));
-
-            Boolean finalPrevious = combinedCondition;
-            resultMap.computeIfPresent(conditionComponent, (k, v) -> VTLObject.of(finalPrevious));
-
-
-            return resultDataPoint;
-        }).filter(Objects::nonNull);
+        return new VtlStream(this, stream, original, orders, filtering, childOrdering, childFiltering);
     }
 
-    private Component getConditionComponent(DataStructure structure) {
-        return structure.get(CONDITION_LABEL);
+    /**
+     * Returns true if all the conditions are true. Null conditions are not valid.
+     */
+    private static boolean isValid(DataPoint dataPoint, int[] conditionIndices) {
+        // TODO: Handle nulls somewhere else (VTLBoolean?)
+        for (int index : conditionIndices) {
+            Object value = dataPoint.get(index).get();
+            if (value == null || !(Boolean) value) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    private Component getErrorLevelComponent() {
-        return getDataStructure().get(ERROR_LEVEL_LABEL);
+    /**
+     * Returns true if the column is computed by the check and not copied from the child. The computed
+     * columns cannot have the name of a column of the child.
+     */
+    private boolean isGenerated(DataStructure structure, String column) {
+        return !structure.containsKey(column) || !getChild().getDataStructure().containsKey(column);
     }
 
-    private Component getErrorCodeComponent() {
-        return getDataStructure().get(ERROR_CODE_LABEL);
+    /**
+     * Creates the filter that selects the rows to return on the conditions of the child.
+     * <p>
+     * Not valid is expressed as a disjunction of negated literals rather than a negated conjunction
+     * since the transposition replaces the literals it cannot send with TRUE.
+     */
+    private VtlFiltering computeRowsFiltering() {
+        DataStructure childStructure = getChild().getDataStructure();
+        List<VtlFiltering> literals = new ArrayList<>();
+        for (Component condition : computeConditions(getChild())) {
+            String column = childStructure.getName(condition);
+            literals.add(rowsToReturn == RowsToReturn.VALID
+                    ? VtlFiltering.eq(column, true)
+                    : VtlFiltering.neq(column, true));
+        }
+        switch (rowsToReturn) {
+            case VALID:
+                return VtlFiltering.nary(false, FilteringSpecification.Operator.AND, literals);
+            case NOT_VALID:
+                return VtlFiltering.or(literals);
+            case ALL:
+            default:
+                return VtlFiltering.literal(false, FilteringSpecification.Operator.TRUE, null, null);
+        }
     }
 
     @Override
@@ -160,6 +227,8 @@ public class CheckSingleRuleOperation extends AbstractUnaryDatasetOperation {
     protected DataStructure computeDataStructure() {
         Dataset dataset = getChild();
         DataStructure structure = dataset.getDataStructure();
+        // Fails if the dataset has no condition.
+        computeConditions(dataset);
 
         DataStructure.Builder builder = DataStructure.builder();
         for (Map.Entry<String, Component> entry : structure.entrySet()) {
@@ -167,13 +236,6 @@ public class CheckSingleRuleOperation extends AbstractUnaryDatasetOperation {
             if (component.isIdentifier()) {
                 builder.put(entry);
             } else if (component.isMeasure()) {
-                if (isConditionName(entry.getKey()) && component.getType().isAssignableFrom(Boolean.class)) {
-                    checkArgument(
-                            conditions.add(component),
-                            "duplicate condition %s in %s",
-                            entry, structure
-                    );
-                }
                 if (componentsToReturn == ComponentsToReturn.MEASURES) {
                     if (!isConditionName(entry.getKey())) {
                         builder.put(entry);
@@ -184,7 +246,6 @@ public class CheckSingleRuleOperation extends AbstractUnaryDatasetOperation {
             }
         }
 
-        checkArgument(!conditions.isEmpty(), "the dataset %s was not a boolean dataset", dataset);
         if (componentsToReturn == ComponentsToReturn.CONDITION) {
             builder.put(CONDITION_LABEL, Component.Role.MEASURE, Boolean.class);
         }
@@ -200,12 +261,31 @@ public class CheckSingleRuleOperation extends AbstractUnaryDatasetOperation {
 
     @Override
     public FilteringSpecification computeRequiredFiltering(FilteringSpecification filtering) {
-        throw new UnsupportedOperationException("TODO");
+        // Neutralize the filters on the computed columns and add the selection of the rows.
+        DataStructure structure = getDataStructure();
+        VtlFiltering transposed = VtlFiltering.using(this).transpose(filtering);
+        VtlFiltering copied = VtlFiltering.transform(transposed, (parent, filter) -> {
+            if (filter.getOperator() != FilteringSpecification.Operator.TRUE && isGenerated(structure, filter.getColumn())) {
+                return VtlFiltering.literal(false, FilteringSpecification.Operator.TRUE, null, null);
+            } else {
+                return filter;
+            }
+        });
+        return VtlFiltering.using(getChild()).transpose(VtlFiltering.and(copied, computeRowsFiltering()));
     }
 
     @Override
-    public OrderingSpecification computeRequiredOrdering(OrderingSpecification filtering) {
-        throw new UnsupportedOperationException("TODO");
+    public OrderingSpecification computeRequiredOrdering(OrderingSpecification ordering) {
+        // Only the columns before the first computed column can be sorted by the child.
+        DataStructure structure = getDataStructure();
+        VtlOrdering.Builder builder = VtlOrdering.using(getChild());
+        for (String column : ordering.columns()) {
+            if (isGenerated(structure, column)) {
+                break;
+            }
+            builder.then(ordering.getDirection(column), column);
+        }
+        return builder.build();
     }
 
 
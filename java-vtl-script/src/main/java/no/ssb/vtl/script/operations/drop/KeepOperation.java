@@ -22,30 +22,18 @@ package no.ssb.vtl.script.operations.drop;
 
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
 import no.ssb.vtl.model.Component;
-import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
-import no.ssb.vtl.model.Filtering;
 import no.ssb.vtl.model.FilteringSpecification;
-import no.ssb.vtl.model.Ordering;
 import no.ssb.vtl.model.OrderingSpecification;
 import no.ssb.vtl.model.VtlFiltering;
 import no.ssb.vtl.model.VtlOrdering;
-import no.ssb.vtl.script.operations.AbstractUnaryDatasetOperation;
-import no.ssb.vtl.script.operations.VtlStream;
+import no.ssb.vtl.script.operations.AbstractProjectionOperation;
 
-import java.util.HashSet;
-import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.TreeSet;
-import java.util.stream.Stream;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -53,7 +41,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 /**
  * Keep operation
  */
-public class KeepOperation extends AbstractUnaryDatasetOperation {
+public class KeepOperation extends AbstractProjectionOperation {
 
     protected final Set<Component> components;
 
@@ -98,62 +86,9 @@ public class KeepOperation extends AbstractUnaryDatasetOperation {
     }
 
     @Override
-    public Stream<DataPoint> computeData(Ordering ordering, Filtering filtering, Set<String> components) {
-        ImmutableList<Component> componentsToRemove = getComponentsToRemove();
-
-        VtlFiltering childFiltering = (VtlFiltering) computeRequiredFiltering(filtering);
-        VtlOrdering childOrdering = (VtlOrdering) computeRequiredOrdering(ordering);
-
-        final Stream<DataPoint> original = getChild().computeData(childOrdering, childFiltering, components);
-        Stream<DataPoint> stream = original;
-        if (!componentsToRemove.isEmpty()) {
-            final ImmutableSet<Integer> indexes = computeIndexes(componentsToRemove);
-
-            stream = stream.peek(
-                    dataPoints -> {
-                        for (Integer index : indexes)
-                            dataPoints.remove((int) index);
-                    }
-            );
-        }
-
-        return new VtlStream(this, stream,
-                original,
-                ordering,
-                filtering,
-                childOrdering,
-                childFiltering
-        );
-
-    }
-
-    /**
-     * Find the index of the component in the child data structure.
-     */
-    private ImmutableSet<Integer> computeIndexes(List<Component> componentsToRemove) {
-        // Compute indexes to remove (in reverse order to avoid shifting).
-        TreeSet<Integer> indexes = Sets.newTreeSet();
-        List<Component> components = Lists.newArrayList(getChild().getDataStructure().values());
-        for (Component component : componentsToRemove) {
-            ListIterator<Component> iterator = components.listIterator();
-            while (iterator.hasNext()) {
-                int index = iterator.nextIndex();
-                Component next = iterator.next();
-                if (component.equals(next))
-                    indexes.add(index);
-            }
-        }
-        return ImmutableSet.copyOf(indexes.descendingIterator());
-    }
-
-    /**
-     * Compute the list of component that need to be removed.
-     */
-    private ImmutableList<Component> getComponentsToRemove() {
-        HashSet<Component> oldComponents = Sets.newLinkedHashSet(getChild().getDataStructure().values());
-        HashSet<Component> newComponents = Sets.newLinkedHashSet(getDataStructure().values());
-
-        return ImmutableList.copyOf(Sets.difference(oldComponents, newComponents));
+    protected int[] computeProjection() {
+        ImmutableList<String> childColumns = ImmutableList.copyOf(getChild().getDataStructure().keySet());
+        return getDataStructure().keySet().stream().mapToInt(childColumns::indexOf).toArray();
     }
 
     @Override
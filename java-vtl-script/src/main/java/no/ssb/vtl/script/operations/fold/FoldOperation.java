@@ -25,7 +25,6 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ListMultimap;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.DataStructure;
@@ -34,7 +33,6 @@ import no.ssb.vtl.model.Filtering;
 import no.ssb.vtl.model.FilteringSpecification;
 import no.ssb.vtl.model.Ordering;
 import no.ssb.vtl.model.OrderingSpecification;
-import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.model.VtlFiltering;
 import no.ssb.vtl.model.VtlOrdering;
 import no.ssb.vtl.script.operations.AbstractUnaryDatasetOperation;
@@ -46,6 +44,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -60,12 +59,8 @@ public class FoldOperation extends AbstractUnaryDatasetOperation {
     private final String measure;
     private final ImmutableSet<String> elements;
 
-    private int[] copyIndices;
-    private int[] elementIndices;
-    private int measureIndex;
-    private int dimensionIndex;
-    private int size;
-    private String[] elementNames;
+    // Set with the data structure.
+    private volatile Indices indices;
 
     public FoldOperation(Dataset dataset, String dimension, String measure, Set<String> elements) {
         super(dataset);
@@ -157,79 +152,25 @@ public class FoldOperation extends AbstractUnaryDatasetOperation {
         structureBuilder.put(measure, Role.MEASURE, newType);
         DataStructure structure = structureBuilder.build();
 
-        computeIndices(structure);
+        indices = new Indices(structure);
 
         return structure;
     }
 
-    /**
-     * Create indices used by the fold operation.
-     *
-     * @param structure the new structure.
-     */
-    private void computeIndices(DataStructure structure) {
-        ImmutableSet<String> originalColumns = ImmutableSet.copyOf(getChild().getDataStructure().keySet());
-        ImmutableSet<String> columns = ImmutableSet.copyOf(structure.keySet());
-
-        // Indices of the common columns.
-        copyIndices = Sets.intersection(columns, originalColumns).stream()
-                .mapToInt(originalColumns.asList()::indexOf)
-                .toArray();
-
-        elementIndices = Sets.intersection(elements, originalColumns).stream()
-                .mapToInt(originalColumns.asList()::indexOf)
-                .toArray();
-
-        elementNames = elements.asList().toArray(new String[]{});
-
-        measureIndex = columns.asList().indexOf(measure);
-        dimensionIndex = columns.asList().indexOf(dimension);
-        size = columns.size();
-    }
-
-    /**
-     * Fold a single datapoint.
-     */
-    private Stream<DataPoint> fold(DataPoint dataPoint) {
-
-        // Create a new datapoint
-        DataPoint baseDatapoint = DataPoint.create(size);
-        for (int i = 0; i < copyIndices.length; i++) {
-            baseDatapoint.set(i, dataPoint.get(copyIndices[i]));
-        }
-
-        List<DataPoint> foldedDatapoints = Lists.newArrayListWithCapacity(elements.size());
-        for (int i = 0; i < elementIndices.length; i++) {
-
-            VTLObject elementValue = dataPoint.get(elementIndices[i]);
-            if (VTLObject.NULL == elementValue || elementValue == null || elementValue.get() == null) {
-                continue;
-            }
-
-            // TODO: Still unclear from benchmark.
-            //DataPoint clone = DataPoint.create(baseDatapoint);
-            DataPoint clone = (DataPoint) baseDatapoint.clone();
-
-            clone.set(dimensionIndex, VTLObject.of(elementNames[i]));
-            clone.set(measureIndex, elementValue);
-
-            foldedDatapoints.add(clone);
-        }
-
-        return foldedDatapoints.stream();
-
-    }
-
     @Override
     public Stream<DataPoint> computeData(Ordering ordering, Filtering filtering, Set<String> components) {
         // To initialize the indices.
         getDataStructure();
+        Indices indices = this.indices;
 
         VtlOrdering childOrdering = (VtlOrdering) computeRequiredOrdering(ordering);
         VtlFiltering childFiltering = (VtlFiltering) computeRequiredFiltering(filtering);
 
         final Stream<DataPoint> original = getChild().computeData(childOrdering, childFiltering, components);
-        Stream<DataPoint> stream = original.flatMap(this::fold);
+        Stream<DataPoint> stream = StreamSupport.stream(new FoldSpliterator(
+                original.spliterator(), indices.copyIndices, indices.elementIndices, indices.elementNames,
+                indices.dimensionIndex, indices.measureIndex, indices.size
+        ), false);
 
         return new VtlStream(this, stream, original, ordering, filtering, childOrdering, childFiltering);
     }
@@ -242,7 +183,7 @@ public class FoldOperation extends AbstractUnaryDatasetOperation {
             if (measure.equals(filter.getColumn())) {
                 List<VtlFiltering> ops = new ArrayList<>();
                 for (String element : elements) {
-                    ops.add(VtlFiltering.literal(filter.isNegated(), filter.getOperator(), element, filter.getValue()));
+                    ops.add(VtlFiltering.literal(filter, element));
                 }
                 return VtlFiltering.or(ops);
             } else {
@@ -285,4 +226,40 @@ public class FoldOperation extends AbstractUnaryDatasetOperation {
         helper.add("measure", measure);
         return helper.omitNullValues().toString();
     }
+
+    /**
+     * Indices used by the fold operation.
+     */
+    private final class Indices {
+
+        private final int[] copyIndices;
+        private final int[] elementIndices;
+        private final int measureIndex;
+        private final int dimensionIndex;
+        private final int size;
+        private final String[] elementNames;
+
+        /**
+         * @param structure the new structure.
+         */
+        private Indices(DataStructure structure) {
+            ImmutableSet<String> originalColumns = ImmutableSet.copyOf(getChild().getDataStructure().keySet());
+            ImmutableSet<String> columns = ImmutableSet.copyOf(structure.keySet());
+
+            // Indices of the common columns.
+            copyIndices = Sets.intersection(columns, originalColumns).stream()
+                    .mapToInt(originalColumns.asList()::indexOf)
+                    .toArray();
+
+            elementIndices = Sets.intersection(elements, originalColumns).stream()
+                    .mapToInt(originalColumns.asList()::indexOf)
+                    .toArray();
+
+            elementNames = elements.asList().toArray(new String[]{});
+
+            measureIndex = columns.asList().indexOf(measure);
+            dimensionIndex = columns.asList().indexOf(dimension);
+            size = columns.size();
+        }
+    }
 }
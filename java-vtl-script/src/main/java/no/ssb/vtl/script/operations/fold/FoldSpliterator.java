@@ -0,0 +1,152 @@
+package no.ssb.vtl.script.operations.fold;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.script.operations.DataPointRecycler;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Folds the rows of a spliterator, one element at a time.
+ * <p>
+ * The columns that are kept are copied once per input row, in a base row that is then cloned for
+ * each element that has a value. Input rows where all the elements are null are skipped before
+ * anything is copied.
+ */
+final class FoldSpliterator extends Spliterators.AbstractSpliterator<DataPoint> {
+
+    private final Spliterator<DataPoint> source;
+    private final int[] copyIndices;
+    private final int[] elementIndices;
+    private final VTLObject[] elementNames;
+    private final int dimensionIndex;
+    private final int measureIndex;
+    private final DataPoint base;
+    private final Supplier<DataPoint> rows;
+
+    private DataPoint current;
+    private int element;
+
+    /**
+     * @param copyIndices    the indices of the columns that are kept, in the order of the output
+     * @param elementIndices the indices of the folded columns
+     * @param elementNames   the names of the folded columns, in the same order as the indices
+     * @param dimensionIndex the index of the new identifier in the output
+     * @param measureIndex   the index of the new measure in the output
+     * @param size           the size of the output rows
+     */
+    FoldSpliterator(Spliterator<DataPoint> source, int[] copyIndices, int[] elementIndices,
+                    String[] elementNames, int dimensionIndex, int measureIndex, int size) {
+        super(estimateSize(source, elementIndices.length), source.characteristics() & Spliterator.ORDERED
+                | Spliterator.NONNULL);
+        checkArgument(elementIndices.length == elementNames.length);
+        this.source = checkNotNull(source);
+        this.copyIndices = copyIndices;
+        this.elementIndices = elementIndices;
+        this.elementNames = new VTLObject[elementNames.length];
+        for (int i = 0; i < elementNames.length; i++) {
+            this.elementNames[i] = VTLObject.of(elementNames[i]);
+        }
+        this.dimensionIndex = dimensionIndex;
+        this.measureIndex = measureIndex;
+        this.base = DataPoint.create(size);
+        this.rows = DataPointRecycler.isEnabled() ? DataPointRecycler.supplier(size) : null;
+        this.element = elementIndices.length;
+    }
+
+    private static long estimateSize(Spliterator<DataPoint> source, int elements) {
+        long size = source.estimateSize();
+        if (elements == 0) {
+            return 0;
+        }
+        return size > Long.MAX_VALUE / elements ? Long.MAX_VALUE : size * elements;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super DataPoint> action) {
+        do {
+            while (element < elementIndices.length) {
+                VTLObject value = current.get(elementIndices[element]);
+                if (isNull(value)) {
+                    element++;
+                    continue;
+                }
+                action.accept(emit(value, elementNames[element++]));
+                return true;
+            }
+        } while (advance());
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super DataPoint> action) {
+        do {
+            for (; element < elementIndices.length; element++) {
+                VTLObject value = current.get(elementIndices[element]);
+                if (!isNull(value)) {
+                    action.accept(emit(value, elementNames[element]));
+                }
+            }
+        } while (advance());
+    }
+
+    /**
+     * Reads the next input row that has at least one element and copies it into the base row.
+     */
+    private boolean advance() {
+        while (source.tryAdvance(this::setCurrent)) {
+            for (int i = 0; i < elementIndices.length; i++) {
+                if (!isNull(current.get(elementIndices[i]))) {
+                    for (int j = 0; j < copyIndices.length; j++) {
+                        base.set(j, current.get(copyIndices[j]));
+                    }
+                    element = i;
+                    return true;
+                }
+            }
+        }
+        current = null;
+        return false;
+    }
+
+    private void setCurrent(DataPoint dataPoint) {
+        current = dataPoint;
+    }
+
+    private DataPoint emit(VTLObject value, VTLObject name) {
+        DataPoint row = rows == null ? (DataPoint) base.clone() : DataPointRecycler.copyInto(base, rows.get());
+        row.set(dimensionIndex, name);
+        row.set(measureIndex, value);
+        return row;
+    }
+
+    private static boolean isNull(VTLObject value) {
+        return VTLObject.NULL == value || value == null || value.get() == null;
+    }
+}
@@ -20,7 +20,7 @@ package no.ssb.vtl.script.operations.foreach;
  * =========================LICENSE_END==================================
  */
 
-import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -28,6 +28,7 @@ import com.google.common.collect.Iterators;
 import com.google.common.collect.PeekingIterator;
 import com.google.common.collect.Sets;
 import com.google.common.collect.Streams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
@@ -37,22 +38,43 @@ import no.ssb.vtl.model.Ordering;
 import no.ssb.vtl.model.OrderingSpecification;
 import no.ssb.vtl.model.VtlOrdering;
 import no.ssb.vtl.script.VTLDataset;
+import no.ssb.vtl.script.VtlConfiguration;
 import no.ssb.vtl.script.operations.AbstractDatasetOperation;
+import no.ssb.vtl.script.operations.DataPointRecycler;
+import no.ssb.vtl.script.operations.DataPointSorter;
+import no.ssb.vtl.script.operations.MemoryTracker;
+import no.ssb.vtl.script.operations.VtlStream;
 
 import javax.script.Bindings;
 import javax.script.SimpleBindings;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static com.google.common.base.Preconditions.checkNotNull;
 import static no.ssb.vtl.model.Ordering.Direction.ANY;
 import static no.ssb.vtl.model.Ordering.Direction.ASC;
 
@@ -75,13 +97,18 @@ import static no.ssb.vtl.model.Ordering.Direction.ASC;
  * <p>
  * The set of identifiers much be a subset of the common identifiers of the
  * set of datasets.
+ * <p>
+ * The block is compiled once (see {@link ForeachPlan}) and executed for each slice. The slices
+ * can be executed in parallel, see {@link VtlConfiguration#setForeachParallelism(int)}.
  */
 public final class ForeachOperation extends AbstractDatasetOperation {
 
     private final ImmutableMap<String, Dataset> sources;
     private final ImmutableSet<String> identifiers;
-    private DataStructure structure;
-    private Function<Bindings, VTLDataset> block;
+    private volatile Function<Bindings, VTLDataset> block;
+
+    // Compiled blocks that are not used by a stream.
+    private final Queue<ForeachPlan> plans = new ConcurrentLinkedQueue<>();
 
     public ForeachOperation(Map<String, Dataset> sourceDatasets, Set<String> identifiers) {
         super(sourceDatasets.values());
@@ -89,69 +116,67 @@ public final class ForeachOperation extends AbstractDatasetOperation {
         this.identifiers = ImmutableSet.copyOf(identifiers);
     }
 
-    public static Stream<DataPoint> sort(Stream<DataPoint> stream, Comparator<DataPoint> order) {
-        System.out.println("WARN: needed to sort");
-        Stopwatch started = Stopwatch.createStarted();
-        Stream<DataPoint> sorted = stream.sorted(order);
-        System.out.println("WARN: done sorting: " + started.stop().elapsed(TimeUnit.SECONDS));
-        return sorted;
+    public ForeachOperation(Map<String, Dataset> sourceDatasets, Set<String> identifiers,
+                            Function<Bindings, VTLDataset> block) {
+        this(sourceDatasets, identifiers);
+        this.block = checkNotNull(block);
     }
 
+    /**
+     * @deprecated the operation is not immutable if the block is set after it is read, use
+     * {@link #ForeachOperation(Map, Set, Function)}.
+     */
+    @Deprecated
     public void setBlock(Function<Bindings, VTLDataset> block) {
         this.block = block;
+        this.plans.clear();
     }
 
-    private Stream<DataPoint> sortIfNeeded(Dataset dataset, Ordering order) {
+    private Stream<DataPoint> sortIfNeeded(Dataset dataset, Ordering order, MemoryTracker memory) {
         Ordering actualOrder = rearrangeOrder(order, dataset.getDataStructure());
-        return dataset.getData(actualOrder).orElseGet(() -> sort(dataset.getData(), actualOrder));
+        return dataset.getData(actualOrder).orElseGet(() ->
+                DataPointSorter.sort(DataPointRecycler.retain(dataset.getData()), actualOrder, memory)
+        );
     }
 
+    private ForeachPlan borrowPlan() {
+        ForeachPlan plan = plans.poll();
+        return plan != null ? plan : new ForeachPlan(sources, block);
+    }
+
+    private void returnPlan(ForeachPlan plan) {
+        plans.add(plan);
+    }
 
     @Override
     public Stream<DataPoint> computeData(Ordering orders, Filtering filtering, Set<String> components) {
-        Boolean needSort = !isCompatible(orders);
 
-        ImmutableMap.Builder<String, PeekingIterator<DataPointMap.View>> iteratorBuilder = ImmutableMap.builder();
-        ImmutableMap.Builder<String, DataStructure> structureBuilder = ImmutableMap.builder();
-        for (String name : sources.keySet()) {
-            Dataset dataset = sources.get(name);
+        // Slice along the identifiers in the requested direction, ascending otherwise.
+        Comparator<DataPointMap.View> comparator = createComparator(rearrangeOrder(orders, getDataStructure()));
+
+        MemoryTracker memory = MemoryTracker.create(getConfiguration());
+        List<Stream<DataPoint>> originals = new ArrayList<>(sources.size());
+        ImmutableMap.Builder<String, PeekingIterator<DataPointMap.View>> iterators = ImmutableMap.builder();
+        for (Map.Entry<String, Dataset> source : sources.entrySet()) {
+            Dataset dataset = source.getValue();
+            Stream<DataPoint> original = sortIfNeeded(dataset, orders, memory);
+            originals.add(original);
             DataPointMap mapView = new DataPointMap(dataset.getDataStructure());
-            PeekingIterator<DataPointMap.View> iterator = Iterators.peekingIterator(
-                    sortIfNeeded(dataset, orders).map(mapView::wrap).iterator()
-            );
-            iteratorBuilder.put(name, iterator);
-            structureBuilder.put(name, dataset.getDataStructure());
+            iterators.put(source.getKey(), Iterators.peekingIterator(
+                    DataPointRecycler.retain(original).map(mapView::wrap).iterator()
+            ));
         }
-        ImmutableMap<String, PeekingIterator<DataPointMap.View>> sources = iteratorBuilder.build();
-        ImmutableMap<String, DataStructure> structures = structureBuilder.build();
+        Slicer slicer = new Slicer(iterators.build(), comparator);
 
-        Stream<DataPoint> stream = Streams.stream(new AbstractIterator<DataPoint>() {
+        int parallelism = getConfiguration().getForeachParallelism();
+        SliceIterator rows = parallelism > 1
+                ? new ParallelSliceIterator(slicer, orders, memory, parallelism)
+                : new SequentialSliceIterator(slicer, orders, memory);
+        Stream<DataPoint> stream = Streams.stream(rows).onClose(rows::close);
 
-            Iterator<DataPoint> current = null;
-
-            @Override
-            protected DataPoint computeNext() {
-                if (current == null || !current.hasNext()) {
-                    current = slice(structures, sources, orders);
-                }
-                if (!current.hasNext()) {
-                    // Continue as long as source has values.
-                    for (PeekingIterator<DataPointMap.View> it : sources.values()) {
-                        if (it.hasNext()) {
-                            current = slice(structures, sources, orders);
-                            if (current.hasNext()) {
-                                return current.next();
-                            }
-                        }
-                    }
-                    return endOfData();
-                } else {
-                    return current.next();
-                }
-            }
-        });
-
-        return needSort ? stream.sorted(orders) : stream;
+        // The rows are in the requested order only if it starts with the identifiers.
+        return new VtlStream(this, stream, originals, orders, filtering,
+                isCompatible(orders) ? orders : Ordering.ANY, Filtering.ALL, memory);
     }
 
     /**
@@ -202,58 +227,246 @@ public final class ForeachOperation extends AbstractDatasetOperation {
     }
 
     /**
-     * Create a "slice" of data and execute the block on it.
+     * Creates the "slices" of data.
      * <p>
      * In order to do so, the maximum value of each input is calculated
      * and each input stream (iterator for simplicity here) first discards
      * any values <b>less than max</b> then produces values <b>as long as
      * it is equal to max</b>.
-     *
-     * @param structures the structure of the datasets.
-     * @param iterators  the iterators for the data of the datasets.
-     * @param orders
-     * @return the result of the block as an iterator.
      */
-    private Iterator<DataPoint> slice(
-            Map<String, DataStructure> structures,
-            Map<String, PeekingIterator<DataPointMap.View>> iterators,
-            Ordering orders) {
-        Bindings scope = new SimpleBindings(new LinkedHashMap<>());
+    private static final class Slicer {
 
+        private final ImmutableMap<String, PeekingIterator<DataPointMap.View>> iterators;
+        private final Comparator<DataPointMap.View> comparator;
+        private final MaxSelector<DataPointMap.View> maxSelector;
+        private Map<String, Iterator<DataPoint>> current = Collections.emptyMap();
 
-        Comparator<DataPointMap.View> comparator = createComparator(orders);
-
-        MaxSelector<DataPointMap.View> maxSupplier = new MaxSelector<>(iterators.values(), comparator);
-        Optional<DataPointMap.View> max = maxSupplier.get();
-        if (!max.isPresent()) {
-            return Collections.emptyIterator();
+        private Slicer(ImmutableMap<String, PeekingIterator<DataPointMap.View>> iterators,
+                       Comparator<DataPointMap.View> comparator) {
+            this.iterators = iterators;
+            this.comparator = comparator;
+            this.maxSelector = new MaxSelector<>(iterators.values(), comparator);
         }
 
-        for (String name : iterators.keySet()) {
-            PeekingIterator<DataPointMap.View> iterator = iterators.get(name);
+        /**
+         * Returns the data of the next slice, null if all the inputs are exhausted.
+         * <p>
+         * The rows of the previous slice that were not consumed are skipped.
+         */
+        private Map<String, Iterator<DataPoint>> next() {
+            for (Iterator<DataPoint> iterator : current.values()) {
+                Iterators.size(iterator);
+            }
+
+            Optional<DataPointMap.View> max = maxSelector.get();
+            if (!max.isPresent()) {
+                current = Collections.emptyMap();
+                return null;
+            }
+
             DataPointMap.View finalMax = max.get();
-            Iterator<DataPointMap.View> slice = new AbstractIterator<DataPointMap.View>() {
-                @Override
-                protected DataPointMap.View computeNext() {
-                    while (iterator.hasNext() && comparator.compare(iterator.peek(), finalMax) < 0) {
-                        iterator.next();
+            ImmutableMap.Builder<String, Iterator<DataPoint>> slice = ImmutableMap.builder();
+            for (Map.Entry<String, PeekingIterator<DataPointMap.View>> entry : iterators.entrySet()) {
+                PeekingIterator<DataPointMap.View> iterator = entry.getValue();
+                Iterator<DataPointMap.View> rows = new AbstractIterator<DataPointMap.View>() {
+                    @Override
+                    protected DataPointMap.View computeNext() {
+                        while (iterator.hasNext() && comparator.compare(iterator.peek(), finalMax) < 0) {
+                            iterator.next();
+                        }
+                        if (iterator.hasNext() && comparator.compare(iterator.peek(), finalMax) == 0) {
+                            return iterator.next();
+                        } else {
+                            return endOfData();
+                        }
                     }
-                    if (iterator.hasNext() && comparator.compare(iterator.peek(), finalMax) == 0) {
-                        return iterator.next();
-                    } else {
-                        return endOfData();
+                };
+                slice.put(entry.getKey(), Iterators.transform(rows, DataPointMap.View::unwrap));
+            }
+            current = slice.build();
+            return current;
+        }
+    }
+
+    private abstract static class SliceIterator extends AbstractIterator<DataPoint> implements AutoCloseable {
+        @Override
+        public abstract void close();
+    }
+
+    /**
+     * Executes the slices one after the other as the rows are consumed.
+     */
+    private final class SequentialSliceIterator extends SliceIterator {
+
+        private final Slicer slicer;
+        private final Ordering orders;
+        private final MemoryTracker memory;
+        private final ForeachPlan plan = borrowPlan();
+
+        private Stream<DataPoint> current;
+        private Iterator<DataPoint> rows = Collections.emptyIterator();
+
+        private SequentialSliceIterator(Slicer slicer, Ordering orders, MemoryTracker memory) {
+            this.slicer = slicer;
+            this.orders = orders;
+            this.memory = memory;
+        }
+
+        @Override
+        protected DataPoint computeNext() {
+            while (!rows.hasNext()) {
+                closeCurrent();
+                Map<String, Iterator<DataPoint>> slice = slicer.next();
+                if (slice == null) {
+                    return endOfData();
+                }
+                ImmutableMap.Builder<String, Supplier<Stream<DataPoint>>> data = ImmutableMap.builder();
+                for (Map.Entry<String, Iterator<DataPoint>> entry : slice.entrySet()) {
+                    data.put(entry.getKey(), () -> Streams.stream(entry.getValue()));
+                }
+                current = plan.execute(data.build(), orders, memory);
+                rows = current.iterator();
+            }
+            return rows.next();
+        }
+
+        private void closeCurrent() {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+        }
+
+        @Override
+        public void close() {
+            closeCurrent();
+            returnPlan(plan);
+        }
+    }
+
+    /**
+     * Reads the slices ahead and executes them in a pool of threads, each using its own plan. The
+     * results are returned in the order of the slices.
+     */
+    private final class ParallelSliceIterator extends SliceIterator {
+
+        private final Slicer slicer;
+        private final Ordering orders;
+        private final MemoryTracker memory;
+        private final int window;
+        private final BlockingQueue<ForeachPlan> workerPlans;
+        private final ExecutorService executor;
+        private final Deque<Future<List<DataPoint>>> pending = new ArrayDeque<>();
+
+        private boolean exhausted;
+        private Iterator<DataPoint> rows = Collections.emptyIterator();
+        private long reserved;
+
+        private ParallelSliceIterator(Slicer slicer, Ordering orders, MemoryTracker memory, int parallelism) {
+            this.slicer = slicer;
+            this.orders = orders;
+            this.memory = memory;
+            this.window = 2 * parallelism;
+            // The plans are compiled in this thread.
+            this.workerPlans = new ArrayBlockingQueue<>(parallelism);
+            for (int i = 0; i < parallelism; i++) {
+                workerPlans.add(borrowPlan());
+            }
+            this.executor = Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder()
+                    .setNameFormat("vtl-foreach-%d")
+                    .setDaemon(true)
+                    .build());
+        }
+
+        @Override
+        protected DataPoint computeNext() {
+            while (!rows.hasNext()) {
+                memory.release(reserved);
+                reserved = 0;
+                submit();
+                if (pending.isEmpty()) {
+                    return endOfData();
+                }
+                List<DataPoint> result = await(pending.poll());
+                reserved = memory.isEnabled() ? MemoryTracker.estimate(result) : 0;
+                rows = result.iterator();
+            }
+            return rows.next();
+        }
+
+        private void submit() {
+            while (!exhausted && pending.size() < window) {
+                Map<String, Iterator<DataPoint>> slice = slicer.next();
+                if (slice == null) {
+                    exhausted = true;
+                    return;
+                }
+                // The inputs are shared so the slice is read before being handed to a worker.
+                ImmutableMap.Builder<String, List<DataPoint>> data = ImmutableMap.builder();
+                for (Map.Entry<String, Iterator<DataPoint>> entry : slice.entrySet()) {
+                    List<DataPoint> list = new ArrayList<>();
+                    entry.getValue().forEachRemaining(list::add);
+                    data.put(entry.getKey(), list);
+                }
+                FutureTask<List<DataPoint>> task = new FutureTask<>(() -> execute(data.build()));
+                executor.execute(VtlConfiguration.inherit(task));
+                pending.add(task);
+            }
+        }
+
+        private List<DataPoint> execute(Map<String, List<DataPoint>> slice) throws InterruptedException {
+            ForeachPlan plan = workerPlans.take();
+            try {
+                ImmutableMap.Builder<String, Supplier<Stream<DataPoint>>> data = ImmutableMap.builder();
+                for (Map.Entry<String, List<DataPoint>> entry : slice.entrySet()) {
+                    data.put(entry.getKey(), entry.getValue()::stream);
+                }
+                try (Stream<DataPoint> result = plan.execute(data.build(), orders, memory)) {
+                    List<DataPoint> rows = DataPointRecycler.retain(result).collect(Collectors.toList());
+                    if (memory.isEnabled()) {
+                        memory.reserve(MemoryTracker.estimate(rows));
                     }
+                    return rows;
                 }
-            };
-            DataStructure structure = structures.get(name);
-            IteratorDataset dataset = new IteratorDataset(
-                    structure,
-                    Iterators.transform(slice, DataPointMap.View::unwrap)
-            );
-            scope.put(name, VTLDataset.of(dataset));
+            } finally {
+                workerPlans.put(plan);
+            }
+        }
+
+        private List<DataPoint> await(Future<List<DataPoint>> future) {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                CancellationException cancellation = new CancellationException("interrupted");
+                cancellation.initCause(e);
+                throw cancellation;
+            } catch (ExecutionException e) {
+                close();
+                Throwables.throwIfUnchecked(e.getCause());
+                throw new RuntimeException(e.getCause());
+            }
+        }
+
+        @Override
+        public void close() {
+            if (executor.isShutdown()) {
+                return;
+            }
+            executor.shutdownNow();
+            for (Future<List<DataPoint>> future : pending) {
+                future.cancel(true);
+            }
+            pending.clear();
+            memory.release(reserved);
+            reserved = 0;
+            // Plans that are still used by a worker are dropped.
+            ForeachPlan plan;
+            while ((plan = workerPlans.poll()) != null) {
+                returnPlan(plan);
+            }
         }
-        Dataset dataset = block.apply(scope).get();
-        return dataset.getData(orders).orElseGet(() -> sort(dataset.getData(), orders)).iterator();
     }
 
     private Comparator<DataPointMap.View> createComparator(Ordering orders) {
@@ -278,14 +491,11 @@ public final class ForeachOperation extends AbstractDatasetOperation {
 
     @Override
     public DataStructure computeDataStructure() {
-        if (structure == null) {
-            Bindings scope = new SimpleBindings(new LinkedHashMap<>());
-            for (String name : sources.keySet()) {
-                scope.put(name, VTLDataset.of(sources.get(name)));
-            }
-            structure = block.apply(scope).get().getDataStructure();
+        Bindings scope = new SimpleBindings(new LinkedHashMap<>());
+        for (String name : sources.keySet()) {
+            scope.put(name, VTLDataset.of(sources.get(name)));
         }
-        return structure;
+        return block.apply(scope).get().getDataStructure();
     }
 
     @Override
@@ -0,0 +1,77 @@
+package no.ssb.vtl.script.operations.foreach;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableMap;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.Ordering;
+import no.ssb.vtl.script.VTLDataset;
+import no.ssb.vtl.script.operations.DataPointRecycler;
+import no.ssb.vtl.script.operations.DataPointSorter;
+import no.ssb.vtl.script.operations.MemoryTracker;
+
+import javax.script.Bindings;
+import javax.script.SimpleBindings;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * The block of a foreach compiled once and executed for each slice.
+ * <p>
+ * The datasets of the foreach are bound to {@link SliceDataset}s when the block is compiled. Executing
+ * a slice only replaces their data. A plan executes one slice at a time.
+ */
+final class ForeachPlan {
+
+    private final ImmutableMap<String, SliceDataset> slots;
+    private final Dataset dataset;
+
+    ForeachPlan(Map<String, Dataset> sources, Function<Bindings, VTLDataset> block) {
+        Bindings scope = new SimpleBindings(new LinkedHashMap<>());
+        ImmutableMap.Builder<String, SliceDataset> slots = ImmutableMap.builder();
+        for (Map.Entry<String, Dataset> source : sources.entrySet()) {
+            SliceDataset slot = new SliceDataset(source.getValue().getDataStructure());
+            slots.put(source.getKey(), slot);
+            scope.put(source.getKey(), VTLDataset.of(slot));
+        }
+        this.slots = slots.build();
+        this.dataset = block.apply(scope).get();
+    }
+
+    /**
+     * Executes the block on the data of a slice.
+     *
+     * @param slice the data of each dataset of the foreach
+     * @return the result of the block in the given order
+     */
+    Stream<DataPoint> execute(Map<String, Supplier<Stream<DataPoint>>> slice, Ordering orders, MemoryTracker memory) {
+        for (Map.Entry<String, SliceDataset> slot : slots.entrySet()) {
+            slot.getValue().bind(slice.get(slot.getKey()));
+        }
+        return dataset.getData(orders).orElseGet(() ->
+                DataPointSorter.sort(DataPointRecycler.retain(dataset.getData()), orders, memory)
+        );
+    }
+}
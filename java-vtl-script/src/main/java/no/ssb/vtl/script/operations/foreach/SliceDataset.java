@@ -4,14 +4,14 @@ package no.ssb.vtl.script.operations.foreach;
  * ========================LICENSE_START=================================
  * Java VTL
  * %%
- * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
  * %%
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
  * You may obtain a copy of the License at
- *
+ * 
  *      http://www.apache.org/licenses/LICENSE-2.0
- *
+ * 
  * Unless required by applicable law or agreed to in writing, software
  * distributed under the License is distributed on an "AS IS" BASIS,
  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
@@ -20,35 +20,48 @@ package no.ssb.vtl.script.operations.foreach;
  * =========================LICENSE_END==================================
  */
 
-import com.google.common.collect.Streams;
 import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
 
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
 /**
- * A Dataset that returns its data based on an iterator.
+ * A Dataset whose data is bound to a slice of a foreach.
+ * <p>
+ * The block of the foreach is compiled once with these datasets and their data is replaced
+ * before each slice is executed. Each slice has a new version so that nothing computed from the
+ * previous slice is reused.
  */
-public class IteratorDataset implements Dataset {
+final class SliceDataset implements Dataset {
 
-    private final Iterator<DataPoint> source;
     private final DataStructure structure;
+    private Supplier<Stream<DataPoint>> data;
+    private String version;
+
+    SliceDataset(DataStructure structure) {
+        this.structure = checkNotNull(structure);
+    }
 
-    public IteratorDataset(
-            DataStructure structure,
-            Iterator<DataPoint> source
-    ) {
-        this.source = source;
-        this.structure = structure;
+    /**
+     * Binds the data of the next slice.
+     */
+    void bind(Supplier<Stream<DataPoint>> data) {
+        this.data = checkNotNull(data);
+        this.version = UUID.randomUUID().toString();
     }
 
     @Override
     public Stream<DataPoint> getData() {
-        return Streams.stream(this.source);
+        checkState(data != null, "no slice was bound");
+        return data.get();
     }
 
     @Override
@@ -61,6 +74,11 @@ public class IteratorDataset implements Dataset {
         return Optional.empty();
     }
 
+    @Override
+    public Optional<String> getVersion() {
+        return Optional.ofNullable(version);
+    }
+
     @Override
     public DataStructure getDataStructure() {
         return structure;
@@ -0,0 +1,181 @@
+package no.ssb.vtl.script.operations.hierarchy;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.Component;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.script.error.TypeException;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Aggregates a group of rows along a compiled hierarchy.
+ * <p>
+ * Each row contributes to its own node and, using the {@link HierarchyClosure}, to all the ancestors
+ * of its node. The measures are accumulated in primitive arrays indexed by node that are reused
+ * between groups. Null values count as zero. A node with a single contribution keeps the values of
+ * the contributing row. The other columns are taken from the row of the node if present, otherwise
+ * from the first contributing row in topological order.
+ * <p>
+ * Rows of nodes that are not in the hierarchy are returned unchanged. The result is sorted.
+ */
+final class HierarchyAggregator implements Function<List<DataPoint>, List<DataPoint>> {
+
+    private final HierarchyClosure closure;
+    private final Comparator<DataPoint> order;
+    private final int componentIndex;
+    private final int[] measures;
+    private final String[] measureNames;
+    private final boolean[] longs;
+
+    // Accumulators, by measure and node.
+    private final long[][] longSums;
+    private final double[][] doubleSums;
+    private final int[] counts;
+    private final DataPoint[] first;
+    private final int[] firstRank;
+
+    // Nodes used by the current group.
+    private final int[] stamps;
+    private final int[] touched;
+    private int touchedCount;
+    private int generation;
+
+    HierarchyAggregator(HierarchyClosure closure, DataStructure structure, Component component,
+                        Comparator<DataPoint> order) {
+        this.closure = checkNotNull(closure);
+        this.order = checkNotNull(order);
+
+        List<String> names = new ArrayList<>(structure.keySet());
+        List<Component> components = new ArrayList<>(structure.values());
+        this.componentIndex = components.indexOf(checkNotNull(component));
+        List<Integer> measureIndices = new ArrayList<>();
+        for (int i = 0; i < components.size(); i++) {
+            if (components.get(i).isMeasure()) {
+                measureIndices.add(i);
+            }
+        }
+        this.measures = measureIndices.stream().mapToInt(Integer::intValue).toArray();
+        this.measureNames = new String[measures.length];
+        this.longs = new boolean[measures.length];
+        for (int m = 0; m < measures.length; m++) {
+            measureNames[m] = names.get(measures[m]);
+            longs[m] = Long.class.equals(components.get(measures[m]).getType());
+        }
+
+        int size = closure.size();
+        this.longSums = new long[measures.length][size];
+        this.doubleSums = new double[measures.length][size];
+        this.counts = new int[size];
+        this.first = new DataPoint[size];
+        this.firstRank = new int[size];
+        this.stamps = new int[size];
+        this.touched = new int[size];
+    }
+
+    @Override
+    public List<DataPoint> apply(List<DataPoint> group) {
+        generation++;
+        touchedCount = 0;
+
+        List<DataPoint> result = new ArrayList<>();
+        for (DataPoint row : group) {
+            int node = closure.indexOf(row.get(componentIndex));
+            if (node < 0) {
+                result.add(row);
+                continue;
+            }
+
+            // The row of the node comes first.
+            contribute(node, row, 1, 1, -1);
+
+            int[] targets = closure.getTargets(node);
+            int[] coefficients = closure.getCoefficients(node);
+            int[] paths = closure.getPaths(node);
+            for (int i = 0; i < targets.length; i++) {
+                contribute(targets[i], row, coefficients[i], paths[i], node);
+            }
+        }
+
+        for (int i = 0; i < touchedCount; i++) {
+            result.add(build(touched[i]));
+        }
+        result.sort(order);
+        return result;
+    }
+
+    private void contribute(int target, DataPoint row, int coefficient, int paths, int rank) {
+        if (stamps[target] != generation) {
+            stamps[target] = generation;
+            touched[touchedCount++] = target;
+            counts[target] = 0;
+            first[target] = row;
+            firstRank[target] = rank;
+            for (int m = 0; m < measures.length; m++) {
+                longSums[m][target] = 0;
+                doubleSums[m][target] = 0;
+            }
+        } else if (rank < firstRank[target]) {
+            first[target] = row;
+            firstRank[target] = rank;
+        }
+
+        counts[target] += paths;
+        for (int m = 0; m < measures.length; m++) {
+            Object value = row.get(measures[m]).get();
+            if (value == null) {
+                continue;
+            }
+            if (!(value instanceof Number)) {
+                TypeException exception = new TypeException(String.format(
+                        "the value %s of the measure %s was not numeric", value, measureNames[m]
+                ), "VTL-02xx");
+                throw new ParseCancellationException(exception.getMessage(), exception);
+            }
+            if (longs[m]) {
+                longSums[m][target] += coefficient * ((Number) value).longValue();
+            } else {
+                doubleSums[m][target] += coefficient * ((Number) value).doubleValue();
+            }
+        }
+    }
+
+    private DataPoint build(int node) {
+        DataPoint row = DataPoint.create(first[node]);
+        row.set(componentIndex, closure.getNode(node));
+        if (counts[node] > 1) {
+            for (int m = 0; m < measures.length; m++) {
+                row.set(measures[m], longs[m]
+                        ? VTLObject.of(longSums[m][node])
+                        : VTLObject.of(doubleSums[m][node]));
+            }
+        }
+        return row;
+    }
+}
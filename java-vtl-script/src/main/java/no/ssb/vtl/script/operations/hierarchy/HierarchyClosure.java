@@ -0,0 +1,153 @@
+package no.ssb.vtl.script.operations.hierarchy;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.graph.ValueGraph;
+import com.google.common.primitives.Ints;
+import no.ssb.vtl.model.VTLObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A hierarchy compiled into a sparse contribution matrix.
+ * <p>
+ * For each node, the matrix lists all the ancestors the node contributes to. The coefficient of a
+ * contribution is the sum of the signs of all the paths between the node and the ancestor, the
+ * sign of a path being the product of the signs of its edges (ie. a - (b - c) = a - b + c).
+ * The number of paths is kept as well.
+ * <p>
+ * The matrix is computed once per graph, from the roots to the leaves.
+ */
+final class HierarchyClosure {
+
+    private final Map<VTLObject, Integer> index;
+    private final VTLObject[] nodes;
+    private final int[][] targets;
+    private final int[][] coefficients;
+    private final int[][] paths;
+
+    private HierarchyClosure(Map<VTLObject, Integer> index, VTLObject[] nodes,
+                             int[][] targets, int[][] coefficients, int[][] paths) {
+        this.index = index;
+        this.nodes = nodes;
+        this.targets = targets;
+        this.coefficients = coefficients;
+        this.paths = paths;
+    }
+
+    /**
+     * Compiles the graph.
+     *
+     * @param graph  the hierarchy, with edges going from the children to their parents.
+     * @param sorted the nodes sorted topologically, children first.
+     */
+    static HierarchyClosure compile(ValueGraph<VTLObject, Composition> graph, List<VTLObject> sorted) {
+        checkArgument(sorted.size() == graph.nodes().size(), "the sorted nodes do not match the graph");
+
+        int size = sorted.size();
+        Map<VTLObject, Integer> index = new HashMap<>(size * 2);
+        VTLObject[] nodes = sorted.toArray(new VTLObject[0]);
+        for (int i = 0; i < size; i++) {
+            index.put(nodes[i], i);
+        }
+
+        int[][] targets = new int[size][];
+        int[][] coefficients = new int[size][];
+        int[][] paths = new int[size][];
+
+        // Parents come after their children, so they are compiled first.
+        for (int i = size - 1; i >= 0; i--) {
+            Map<Integer, int[]> contributions = new LinkedHashMap<>();
+            for (VTLObject successor : graph.successors(nodes[i])) {
+                int parent = index.get(successor);
+                int sign = Composition.COMPLEMENT.equals(graph.edgeValue(nodes[i], successor)) ? -1 : 1;
+                add(contributions, parent, sign, 1);
+                for (int j = 0; j < targets[parent].length; j++) {
+                    add(contributions, targets[parent][j], sign * coefficients[parent][j], paths[parent][j]);
+                }
+            }
+
+            List<Integer> nodeTargets = new ArrayList<>(contributions.keySet());
+            targets[i] = Ints.toArray(nodeTargets);
+            coefficients[i] = new int[nodeTargets.size()];
+            paths[i] = new int[nodeTargets.size()];
+            for (int j = 0; j < nodeTargets.size(); j++) {
+                int[] contribution = contributions.get(nodeTargets.get(j));
+                coefficients[i][j] = contribution[0];
+                paths[i][j] = contribution[1];
+            }
+        }
+
+        return new HierarchyClosure(index, nodes, targets, coefficients, paths);
+    }
+
+    private static void add(Map<Integer, int[]> contributions, int target, int coefficient, int paths) {
+        int[] contribution = contributions.computeIfAbsent(target, t -> new int[2]);
+        contribution[0] += coefficient;
+        contribution[1] += paths;
+    }
+
+    /**
+     * Returns the number of nodes.
+     */
+    int size() {
+        return nodes.length;
+    }
+
+    /**
+     * Returns the index of the node, its topological rank, or -1 if the node is not in the hierarchy.
+     */
+    int indexOf(VTLObject node) {
+        Integer i = index.get(node);
+        return i == null ? -1 : i;
+    }
+
+    VTLObject getNode(int index) {
+        return nodes[index];
+    }
+
+    /**
+     * Returns the ancestors of the node.
+     */
+    int[] getTargets(int index) {
+        return targets[index];
+    }
+
+    /**
+     * Returns the coefficients of the contributions of the node to each of its ancestors.
+     */
+    int[] getCoefficients(int index) {
+        return coefficients[index];
+    }
+
+    /**
+     * Returns the number of paths from the node to each of its ancestors.
+     */
+    int[] getPaths(int index) {
+        return paths[index];
+    }
+}
@@ -0,0 +1,119 @@
+package no.ssb.vtl.script.operations.hierarchy;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import no.ssb.vtl.model.Dataset;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Process wide cache of the compiled hierarchies.
+ * <p>
+ * The hierarchies are cached by dataset instance so that connectors that return the same instance for
+ * a classification only have it parsed once. A hierarchy is compiled again when the {@link
+ * Dataset#getVersion() version} of the dataset changes. The entries are evicted when the cache is full or
+ * when the dataset is garbage collected. Datasets whose content changes without a new version must be
+ * {@link #invalidate(Dataset) invalidated}.
+ */
+public final class HierarchyGraphCache {
+
+    private static final long DEFAULT_MAXIMUM_SIZE = 128;
+
+    private static volatile Cache<Dataset, Entry> cache = create(DEFAULT_MAXIMUM_SIZE);
+
+    private HierarchyGraphCache() {
+        // prevent instantiation.
+    }
+
+    private static Cache<Dataset, Entry> create(long maximumSize) {
+        return CacheBuilder.newBuilder()
+                .weakKeys()
+                .maximumSize(maximumSize)
+                .build();
+    }
+
+    /**
+     * Sets the maximum number of hierarchies in the cache. The cache is cleared.
+     */
+    public static void setMaximumSize(long maximumSize) {
+        checkArgument(maximumSize >= 0, "the maximum size cannot be negative");
+        cache = create(maximumSize);
+    }
+
+    /**
+     * Removes the compiled hierarchy of the dataset.
+     */
+    public static void invalidate(Dataset hierarchy) {
+        cache.invalidate(hierarchy);
+    }
+
+    /**
+     * Removes all the compiled hierarchies.
+     */
+    public static void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @VisibleForTesting
+    static long size() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the compiled hierarchy of the dataset, compiling it if needed.
+     */
+    static HierarchyClosure get(Dataset hierarchy, Function<Dataset, HierarchyClosure> compiler) {
+        Cache<Dataset, Entry> cache = HierarchyGraphCache.cache;
+        Optional<String> version = hierarchy.getVersion();
+        try {
+            Entry entry = cache.get(hierarchy, () -> new Entry(version, compiler.apply(hierarchy)));
+            if (!entry.version.equals(version)) {
+                entry = new Entry(version, compiler.apply(hierarchy));
+                cache.put(hierarchy, entry);
+            }
+            return entry.closure;
+        } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static final class Entry {
+
+        private final Optional<String> version;
+        private final HierarchyClosure closure;
+
+        private Entry(Optional<String> version, HierarchyClosure closure) {
+            this.version = version;
+            this.closure = closure;
+        }
+    }
+}
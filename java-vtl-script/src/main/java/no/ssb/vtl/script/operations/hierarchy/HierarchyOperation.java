@@ -22,13 +22,10 @@ package no.ssb.vtl.script.operations.hierarchy;
 
 import com.codepoetics.protonpack.StreamUtils;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.base.MoreObjects;
-import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Multimap;
 import com.google.common.graph.Graph;
 import com.google.common.graph.Graphs;
 import com.google.common.graph.ImmutableValueGraph;
@@ -46,15 +43,19 @@ import no.ssb.vtl.model.OrderingSpecification;
 import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.model.VtlFiltering;
 import no.ssb.vtl.model.VtlOrdering;
+import no.ssb.vtl.script.error.TypeException;
 import no.ssb.vtl.script.operations.AbstractDatasetOperation;
 import no.ssb.vtl.script.operations.AbstractUnaryDatasetOperation;
+import no.ssb.vtl.script.operations.DataPointRecycler;
+import no.ssb.vtl.script.operations.DatasetOperationWrapper;
+import no.ssb.vtl.script.operations.MemoryTracker;
 import no.ssb.vtl.script.operations.VtlStream;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -66,7 +67,6 @@ import java.util.stream.Stream;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static java.util.stream.Collectors.toList;
-import static no.ssb.vtl.script.operations.hierarchy.HierarchyAccumulator.sumAccumulatorFor;
 
 public class HierarchyOperation extends AbstractUnaryDatasetOperation {
 
@@ -88,11 +88,21 @@ public class HierarchyOperation extends AbstractUnaryDatasetOperation {
     private final Dataset hierarchy;
     // The component
     private final Component component;
-    private ImmutableValueGraph<VTLObject, Composition> graph;
-    private List<VTLObject> graphValues;
+    // Only set by the tests, otherwise the compiled hierarchy comes from the HierarchyGraphCache.
+    private final HierarchyClosure closure;
 
     public HierarchyOperation(Dataset dataset, Dataset hierarchy, Component group) {
+        this(dataset, hierarchy, group, null);
+    }
+
+    @VisibleForTesting
+    HierarchyOperation(Dataset dataset, ValueGraph<VTLObject, Composition> graph, Component component) {
+        this(dataset, dataset, component, compile(graph));
+    }
+
+    private HierarchyOperation(Dataset dataset, Dataset hierarchy, Component group, HierarchyClosure closure) {
         super(dataset);
+        this.closure = closure;
 
         this.component = checkNotNull(group, "component cannot be null");
 
@@ -118,24 +128,26 @@ public class HierarchyOperation extends AbstractUnaryDatasetOperation {
             if (!Number.class.isAssignableFrom(component.getType()))
                 wrongComponents.add(entry);
         }
-        checkArgument(
-                wrongComponents.isEmpty(),
-                "all measure components must be numeric (%s %s wrong)",
-                wrongComponents,
-                wrongComponents.size() > 1 ? "were" : "is"
-        );
+        if (!wrongComponents.isEmpty()) {
+            // TODO: This should be handled in the visitor (before execution)
+            TypeException exception = new TypeException(String.format(
+                    "all measure components must be numeric (%s %s wrong)",
+                    wrongComponents,
+                    wrongComponents.size() > 1 ? "were" : "is"
+            ), "VTL-02xx");
+            throw new ParseCancellationException(exception.getMessage(), exception);
+        }
 
         // TODO: Hierarchy should be typed.
         this.hierarchy = checkNotNull(hierarchy);
     }
 
-    @VisibleForTesting
-    HierarchyOperation(Dataset dataset, ValueGraph<VTLObject, Composition> graph, Component component) {
-        this(dataset, dataset, component);
+    private static HierarchyClosure compile(ValueGraph<VTLObject, Composition> graph) {
         checkNotNull(graph);
         checkArgument(graph.isDirected());
         checkArgument(!graph.allowsSelfLoops());
-        this.graph = ImmutableValueGraph.copyOf(graph);
+        ImmutableValueGraph<VTLObject, Composition> copy = ImmutableValueGraph.copyOf(graph);
+        return HierarchyClosure.compile(copy, sortTopologically(copy));
     }
 
     /**
@@ -143,6 +155,8 @@ public class HierarchyOperation extends AbstractUnaryDatasetOperation {
      * <p>
      * The dataset is required to have the following columns:
      * from, to, sign.
+     * <p>
+     * Circular dependencies are detected as the edges are added, using an {@link OnlineTopologicalOrder}.
      *
      * @throws IllegalArgumentException if a circular dependency is found.
      * @throws IllegalArgumentException if from and to are not of the same type.
@@ -159,6 +173,7 @@ public class HierarchyOperation extends AbstractUnaryDatasetOperation {
         MutableValueGraph<VTLObject, Composition> graph = ValueGraphBuilder.directed()
                 .allowsSelfLoops(false)
                 .build();
+        OnlineTopologicalOrder<VTLObject> order = new OnlineTopologicalOrder<>();
 
         // Add all the points.
         try (Stream<DataPoint> stream = hierarchy.getData()) {
@@ -172,8 +187,8 @@ public class HierarchyOperation extends AbstractUnaryDatasetOperation {
 
                 Composition composition = checkNotNull(COMPOSITION_MAP.get(sign.get()), UNKNOWN_SIGN_VALUE, sign);
 
-                List<List<VTLObject>> paths = findPaths(graph, to, from);
-                checkArgument(paths.isEmpty(), CIRCULAR_DEPENDENCY, from, composition, to, paths);
+                List<VTLObject> path = order.addEdge(graph, from, to);
+                checkArgument(path.isEmpty(), CIRCULAR_DEPENDENCY, from, composition, to, path);
 
                 graph.putEdgeValue(from, to, composition);
             }
@@ -246,15 +261,23 @@ public class HierarchyOperation extends AbstractUnaryDatasetOperation {
         return paths;
     }
 
-    private List<VTLObject> getGraphValues() {
-        if (this.graph == null) {
-            // TODO: Hierarchy should be typed.
-            this.graph = ImmutableValueGraph.copyOf(convertToHierarchy(this.hierarchy));
+    private HierarchyClosure getClosure() {
+        if (this.closure != null) {
+            return this.closure;
         }
-        if (this.graphValues == null) {
-            this.graphValues = sortTopologically(this.graph);
+        // Not kept in the operation since the content of the dataset can change (see foreach).
+        // TODO: Hierarchy should be typed.
+        Dataset source = DatasetOperationWrapper.unwrap(this.hierarchy);
+        if (source instanceof AbstractDatasetOperation) {
+            // Computed by the script, the same operation can be executed on different data.
+            return compileHierarchy(source);
         }
-        return this.graphValues;
+        return HierarchyGraphCache.get(source, HierarchyOperation::compileHierarchy);
+    }
+
+    private static HierarchyClosure compileHierarchy(Dataset hierarchy) {
+        ValueGraph<VTLObject, Composition> graph = convertToHierarchy(hierarchy);
+        return HierarchyClosure.compile(graph, sortTopologically(graph));
     }
 
     @Override
@@ -309,112 +332,20 @@ public class HierarchyOperation extends AbstractUnaryDatasetOperation {
                 getChild().getDataStructure()
         );
 
-        final List<VTLObject> sorted = getGraphValues();
-
-        final Map<Component, HierarchyAccumulator> accumulators = createAccumulatorMap();
+        HierarchyAggregator aggregator = new HierarchyAggregator(
+                getClosure(), structure, component, childOrdering
+        );
 
         Stream<DataPoint> sortedData = getChild().computeData(childOrdering, childFiltering, components);
-        Stream<ComposedDataPoint> streamToAggregate = StreamUtils.aggregate(
-                sortedData,
-                (prev, current) -> childPredicate.compare(prev, current) == 0
-        ).onClose(sortedData::close).map(dataPoints -> {
-
-            // Organize the data points in "buckets" for each component. Here we add "sign" information
-            // to the data points so that we can use it later when we aggregate.
-            Multimap<VTLObject, ComposedDataPoint> buckets = ArrayListMultimap.create();
-            for (DataPoint dataPoint : dataPoints) {
-                Map<Component, VTLObject> map = structure.asMap(dataPoint);
-                VTLObject group = map.get(this.component);
-                buckets.put(group, new ComposedDataPoint(dataPoint, Composition.UNION));
-            }
-
-            // TODO: Filter the nodes by the keys of the bucket (and check that it is faster)
-            // For each component put the content in every successors. If the edge was a complement (-) then we invert
-            // the sign of each datapoint (ie. a - (b - c + d) = a - b + c - d)
-            for (VTLObject node : sorted) {
-                for (VTLObject successor : graph.successors(node)) {
-                    Composition sign = graph.edgeValue(node, successor);
-                    for (ComposedDataPoint point : buckets.get(node)) {
-                        if (Composition.COMPLEMENT.equals(sign)) {
-                            // Invert if complement.
-                            buckets.put(successor, ComposedDataPoint.invert(point));
-                        } else {
-                            buckets.put(successor, new ComposedDataPoint(point, point.sign));
-                        }
-                    }
-                }
-            }
-
-            // Put the new "mapped" component
-            List<ComposedDataPoint> result = Lists.newArrayList();
-            for (Map.Entry<VTLObject, ComposedDataPoint> entry : buckets.entries()) {
-                VTLObject group = entry.getKey();
-                ComposedDataPoint point = entry.getValue();
-                result.add(point);
-                structure.asMap(point).put(this.component, group);
-            }
-
-            // Not needed since we are constructing the result by component.
-            // Collections.sort(result, groupOrder);
-
-            return result;
-
-        }).flatMap(Collection::stream);
-
-
+        MemoryTracker memory = MemoryTracker.create(getConfiguration());
         Stream<DataPoint> data = StreamUtils.aggregate(
-                streamToAggregate,
-                (dataPoint, dataPoint2) -> childOrdering.compare(dataPoint, dataPoint2) == 0
-        ).onClose(streamToAggregate::close).map(dataPoints -> {
-
-            DataPoint aggregate;
-            // Optimization.
-            if (dataPoints.size() > 1) {
-
-
-                // Won't fail since we check size.
-                aggregate = DataPoint.create(dataPoints.get(0));
-                Map<Component, VTLObject> result = structure.asMap(aggregate);
-
-                for (Map.Entry<Component, HierarchyAccumulator> entry : accumulators.entrySet()) {
-                    result.put(entry.getKey(), entry.getValue().identity());
-                }
-
-                Iterator<ComposedDataPoint> iterator = dataPoints.iterator();
-                while (iterator.hasNext()) {
-                    ComposedDataPoint composedDataPoint = iterator.next();
-                    Map<Component, VTLObject> next = structure.asMap(composedDataPoint);
-
-                    for (Map.Entry<Component, HierarchyAccumulator> accumulator : accumulators.entrySet()) {
-                        Component component = accumulator.getKey();
-                        VTLObject objectValue = next.get(component);
-                        HierarchyAccumulator value = accumulator.getValue();
-                        result.merge(component, objectValue, value.accumulator(composedDataPoint.getSign()));
-                    }
-
-                }
-            } else {
-                aggregate = dataPoints.get(0);
-            }
-
-            return aggregate;
-        });
-
-        return new VtlStream(this, data, sortedData, ordering, filtering, childOrdering, childFiltering);
-    }
+                DataPointRecycler.retain(sortedData),
+                (prev, current) -> childPredicate.compare(prev, current) == 0
+        ).onClose(sortedData::close).map(memory.reserving(aggregator)).flatMap(Collection::stream);
 
-    private Map<Component, HierarchyAccumulator> createAccumulatorMap() {
-        DataStructure structure = getDataStructure();
-        ImmutableMap.Builder<Component, HierarchyAccumulator> builder = ImmutableMap.builder();
-        for (Component component : structure.values()) {
-            if (component.isMeasure()) {
-                builder.put(component, sumAccumulatorFor(component.getType()));
-            }
-        }
-        return builder.build();
+        return new VtlStream(this, data, sortedData, ordering, filtering, childOrdering, childFiltering, memory);
     }
 
-
     @Override
     public Optional<Map<String, Integer>> getDistinctValuesCount() {
         return Optional.empty();
@@ -424,35 +355,4 @@ public class HierarchyOperation extends AbstractUnaryDatasetOperation {
     public Optional<Long> getSize() {
         return Optional.empty();
     }
-
-    static class ComposedDataPoint extends DataPoint {
-        final Composition sign;
-
-        ComposedDataPoint(Collection<? extends VTLObject> c, Composition sign) {
-            super(c);
-            this.sign = checkNotNull(sign);
-        }
-
-        static ComposedDataPoint invert(ComposedDataPoint original) {
-            switch (original.getSign()) {
-                case COMPLEMENT:
-                    return new ComposedDataPoint(original, Composition.UNION);
-                case UNION:
-                    return new ComposedDataPoint(original, Composition.COMPLEMENT);
-                default:
-                    throw new IllegalArgumentException("unknown sign");
-            }
-        }
-
-        private Composition getSign() {
-            return sign;
-        }
-
-        @Override
-        public String toString() {
-            return MoreObjects.toStringHelper(super.toString())
-                    .addValue(sign)
-                    .toString();
-        }
-    }
 }
@@ -0,0 +1,153 @@
+package no.ssb.vtl.script.operations.hierarchy;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.Lists;
+import com.google.common.graph.Graph;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maintains a topological order of a graph while edges are added, in order to detect cycles
+ * incrementally (Pearce and Kelly, "A dynamic topological sort algorithm for directed acyclic graphs").
+ * <p>
+ * An edge that agrees with the current order is accepted in constant time. Otherwise, only the nodes
+ * between the two ends of the edge in the current order are visited, and reordered.
+ */
+final class OnlineTopologicalOrder<T> {
+
+    private final Map<T, Integer> order = new HashMap<>();
+    private int next = 0;
+
+    private int ord(T node) {
+        Integer ord = order.get(node);
+        if (ord == null) {
+            order.put(node, ord = next++);
+        }
+        return ord;
+    }
+
+    /**
+     * Checks that adding the edge to the graph would not introduce a cycle and updates the order.
+     * Must be called before the edge is added to the graph.
+     *
+     * @param graph the graph, without the edge.
+     * @return the path from to to from that would close a cycle, empty if the edge is accepted.
+     */
+    List<T> addEdge(Graph<T> graph, T from, T to) {
+        int upper = ord(from);
+        int lower = ord(to);
+        if (from.equals(to)) {
+            return Collections.singletonList(from);
+        }
+        if (lower > upper) {
+            return Collections.emptyList();
+        }
+
+        // Nodes reachable from "to" that are not after "from".
+        Map<T, T> parents = new HashMap<>();
+        List<T> forward = new ArrayList<>();
+        Deque<T> stack = new ArrayDeque<>();
+        stack.push(to);
+        parents.put(to, to);
+        while (!stack.isEmpty()) {
+            T node = stack.pop();
+            forward.add(node);
+            for (T successor : successors(graph, node)) {
+                if (successor.equals(from)) {
+                    return path(parents, node, from);
+                }
+                if (ord(successor) < upper && !parents.containsKey(successor)) {
+                    parents.put(successor, node);
+                    stack.push(successor);
+                }
+            }
+        }
+
+        // Nodes that reach "from" that are not before "to".
+        Set<T> visited = new HashSet<>();
+        List<T> backward = new ArrayList<>();
+        stack.push(from);
+        visited.add(from);
+        while (!stack.isEmpty()) {
+            T node = stack.pop();
+            backward.add(node);
+            for (T predecessor : predecessors(graph, node)) {
+                if (ord(predecessor) > lower && visited.add(predecessor)) {
+                    stack.push(predecessor);
+                }
+            }
+        }
+
+        // Reuse the positions of the affected nodes, putting the backward ones first.
+        Comparator<T> byOrder = Comparator.comparing(order::get);
+        forward.sort(byOrder);
+        backward.sort(byOrder);
+        List<Integer> positions = new ArrayList<>(forward.size() + backward.size());
+        for (T node : backward) {
+            positions.add(order.get(node));
+        }
+        for (T node : forward) {
+            positions.add(order.get(node));
+        }
+        Collections.sort(positions);
+
+        int i = 0;
+        for (T node : backward) {
+            order.put(node, positions.get(i++));
+        }
+        for (T node : forward) {
+            order.put(node, positions.get(i++));
+        }
+        return Collections.emptyList();
+    }
+
+    private static <T> Set<T> successors(Graph<T> graph, T node) {
+        return graph.nodes().contains(node) ? graph.successors(node) : Collections.emptySet();
+    }
+
+    private static <T> Set<T> predecessors(Graph<T> graph, T node) {
+        return graph.nodes().contains(node) ? graph.predecessors(node) : Collections.emptySet();
+    }
+
+    private List<T> path(Map<T, T> parents, T last, T end) {
+        List<T> path = Lists.newArrayList(end);
+        T node = last;
+        while (true) {
+            path.add(node);
+            T parent = parents.get(node);
+            if (parent.equals(node)) {
+                break;
+            }
+            node = parent;
+        }
+        return Lists.reverse(path);
+    }
+}
@@ -32,6 +32,7 @@ import com.google.common.collect.Multimap;
 import com.google.common.collect.Multiset;
 import com.google.common.collect.Sets;
 import com.google.common.collect.Table;
+import com.google.common.primitives.Ints;
 import no.ssb.vtl.model.Component;
 import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.DataStructure;
@@ -43,7 +44,11 @@ import no.ssb.vtl.model.Ordering.Direction;
 import no.ssb.vtl.model.VtlFiltering;
 import no.ssb.vtl.model.VtlOrdering;
 import no.ssb.vtl.script.operations.AbstractDatasetOperation;
+import no.ssb.vtl.script.operations.DataPointRecycler;
+import no.ssb.vtl.script.operations.MemoryTracker;
+import no.ssb.vtl.script.support.Closer;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -51,8 +56,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.Spliterator;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -374,6 +381,91 @@ public abstract class AbstractJoinOperation extends AbstractDatasetOperation imp
         }
     }
 
+    /**
+     * Joins the data of all the datasets in one pass.
+     * <p>
+     * The data of each dataset is sorted by the required order and all the datasets are advanced together
+     * on the common identifiers (see {@link MergeJoinSpliterator}).
+     *
+     * @param requiredOrder the order compatible with the join.
+     * @param predicate     the order of the common identifiers.
+     * @param outer         true for outer join semantics.
+     * @param originals     receives the streams of the datasets.
+     * @param memory        tracker of the buffered rows.
+     * @return the joined data, closing the data of the datasets when closed.
+     */
+    protected Stream<DataPoint> computeMergeJoin(Ordering requiredOrder, Ordering predicate, Filtering filtering,
+                                                 Set<String> components, boolean outer,
+                                                 List<Stream<DataPoint>> originals, MemoryTracker memory) {
+        Closer closer = Closer.create();
+        try {
+            List<Spliterator<DataPoint>> inputs = new ArrayList<>(datasets.size());
+            List<JoinKeyExtractor> keyExtractors = new ArrayList<>(datasets.size());
+            for (Map.Entry<String, Dataset> entry : datasets.entrySet()) {
+                Dataset dataset = entry.getValue();
+                Stream<DataPoint> stream = getOrSortData(
+                        dataset,
+                        adjustOrderForStructure(requiredOrder, dataset.getDataStructure()),
+                        renameFilterColumns(filtering, entry.getKey()),
+                        components
+                );
+                originals.add(stream);
+                closer.register(stream);
+
+                // The rows are buffered by key.
+                inputs.add(DataPointRecycler.retain(stream).spliterator());
+                keyExtractors.add(new JoinKeyExtractor(dataset.getDataStructure(), predicate));
+            }
+
+            MergeJoinSpliterator spliterator = new MergeJoinSpliterator(
+                    inputs, keyExtractors, predicate, createMerger(), outer, memory
+            );
+            return StreamSupport.stream(spliterator, false).onClose(() -> {
+                try {
+                    closer.close();
+                } catch (IOException e) {
+                    // ignore (cannot happen).
+                }
+            });
+        } catch (Exception ex) {
+            try {
+                closer.close();
+            } catch (IOException ioe) {
+                ex.addSuppressed(ioe);
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Creates a merger that maps the columns of each dataset to the columns of the join structure.
+     */
+    @VisibleForTesting
+    MergeJoinMerger createMerger() {
+        List<String> columns = new ArrayList<>(getDataStructure().keySet());
+        int[][] sources = new int[datasets.size()][];
+        int[][] targets = new int[datasets.size()][];
+        int i = 0;
+        for (Map.Entry<String, Dataset> entry : datasets.entrySet()) {
+            List<String> datasetColumns = new ArrayList<>(entry.getValue().getDataStructure().keySet());
+            Map<String, String> columnMap = columnMapping.column(entry.getKey());
+            List<Integer> source = new ArrayList<>(columnMap.size());
+            List<Integer> target = new ArrayList<>(columnMap.size());
+            for (Map.Entry<String, String> column : columnMap.entrySet()) {
+                int targetIndex = columns.indexOf(column.getKey());
+                int sourceIndex = datasetColumns.indexOf(column.getValue());
+                if (targetIndex >= 0 && sourceIndex >= 0) {
+                    source.add(sourceIndex);
+                    target.add(targetIndex);
+                }
+            }
+            sources[i] = Ints.toArray(source);
+            targets[i] = Ints.toArray(target);
+            i++;
+        }
+        return new MergeJoinMerger(columns.size(), sources, targets);
+    }
+
     @VisibleForTesting
     VtlFiltering computeDatasetFiltering(Dataset dataset, Filtering filtering) {
         return VtlFiltering.using(dataset).transpose(filtering);
@@ -410,12 +502,7 @@ public abstract class AbstractJoinOperation extends AbstractDatasetOperation imp
             return VtlFiltering.nary(negated, operator, operands);
         } else {
             Map<String, String> columnMap = columnMapping.column(datasetKey);
-                return VtlFiltering.literal(
-                        negated,
-                        operator,
-                    columnMap.getOrDefault(filtering.getColumn(), filtering.getColumn()),
-                        filtering.getValue()
-                );
+            return VtlFiltering.literal(filtering, columnMap.getOrDefault(filtering.getColumn(), filtering.getColumn()));
         }
     }
 
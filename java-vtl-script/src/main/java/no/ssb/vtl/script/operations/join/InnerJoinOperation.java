@@ -20,7 +20,6 @@ package no.ssb.vtl.script.operations.join;
  * =========================LICENSE_END==================================
  */
 
-import com.google.common.collect.ImmutableList;
 import no.ssb.vtl.model.Component;
 import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.Dataset;
@@ -29,17 +28,16 @@ import no.ssb.vtl.model.FilteringSpecification;
 import no.ssb.vtl.model.Ordering;
 import no.ssb.vtl.model.OrderingSpecification;
 import no.ssb.vtl.model.VtlOrdering;
+import no.ssb.vtl.script.operations.MemoryTracker;
 import no.ssb.vtl.script.operations.VtlStream;
-import no.ssb.vtl.script.support.Closer;
 
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 public class InnerJoinOperation extends AbstractJoinOperation {
 
@@ -61,88 +59,23 @@ public class InnerJoinOperation extends AbstractJoinOperation {
         // Compute the predicate
         Ordering predicate = computePredicate(requiredOrder);
 
-        // TODO: Use abstract operation here.
-        Iterator<Map.Entry<String, Dataset>> iterator = datasets.entrySet().iterator();
-        Map.Entry<String, Dataset> left = iterator.next();
-        Map.Entry<String, Dataset> right = left;
-
-        ImmutableList.Builder<Stream<DataPoint>> originals = ImmutableList.builder();
-
-        Closer closer = Closer.create();
-        try {
-
-            Stream<DataPoint> original = getOrSortData(
-                    left.getValue(),
-                    adjustOrderForStructure(requiredOrder, left.getValue().getDataStructure()),
-                    renameFilterColumns(filtering, left.getKey()),
-                    components
-            );
-            originals.add(original);
-            Stream<DataPoint> result = original.peek(new DataPointCapacityExpander(getDataStructure().size()));
-            closer.register(result);
-
-
-            boolean first = true;
-            while (iterator.hasNext()) {
-                left = right;
-                right = iterator.next();
-
-                Stream<DataPoint> rightStream = getOrSortData(
-                        right.getValue(),
-                        adjustOrderForStructure(requiredOrder, right.getValue().getDataStructure()),
-                        renameFilterColumns(filtering, right.getKey()),
-                        components
-                );
-                originals.add(rightStream);
-                closer.register(rightStream);
-
-                // The first left stream uses its own structure. After that, the left data structure
-                // will always be the resulting structure. We use a flag (first) to handle the first case
-                // since the hotfix needs to be quickly released but this code should be refactored.
-
-                result = StreamSupport.stream(
-                        new InnerJoinSpliterator<>(
-                                new JoinKeyExtractor(first ? left.getValue().getDataStructure() : getDataStructure(),
-                                        predicate),
-                                new JoinKeyExtractor(right.getValue().getDataStructure(), predicate),
-                                predicate,
-                                new InnerJoinMerger(getDataStructure(), right.getValue().getDataStructure()),
-                                result.spliterator(),
-                                rightStream.spliterator()
-                        ), false
-                );
-
-                first = false;
-            }
-
-            // Close all the underlying streams.
-            Stream<DataPoint> delegate = result.onClose(() -> {
-                try {
-                    closer.close();
-                } catch (IOException e) {
-                    // ignore (cannot happen).
-                }
-            });
-
-            // TODO: Closer could be moved to VtlStream.
-            return new VtlStream(
-                    this,
-                    delegate,
-                    originals.build(),
-                    requestedOrder,
-                    filtering,
-                    new VtlOrdering(predicate, this.getDataStructure()),
-                    filtering
-            );
-
-        } catch (Exception ex) {
-            try {
-                closer.close();
-            } catch (IOException ioe) {
-                ex.addSuppressed(ioe);
-            }
-            throw ex;
-        }
+        // All the datasets are joined in one pass instead of a chain of binary joins.
+        List<Stream<DataPoint>> originals = new ArrayList<>(datasets.size());
+        MemoryTracker memory = MemoryTracker.create(getConfiguration());
+        Stream<DataPoint> delegate = computeMergeJoin(
+                requiredOrder, predicate, filtering, components, false, originals, memory
+        );
+
+        return new VtlStream(
+                this,
+                delegate,
+                originals,
+                requestedOrder,
+                filtering,
+                new VtlOrdering(predicate, this.getDataStructure()),
+                filtering,
+                memory
+        );
     }
 
     @Override
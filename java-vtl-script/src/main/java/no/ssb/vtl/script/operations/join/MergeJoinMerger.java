@@ -0,0 +1,71 @@
+package no.ssb.vtl.script.operations.join;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.script.operations.DataPointRecycler;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Merges one row of each dataset of a join into a row of the join structure.
+ * <p>
+ * The value at {@code sources[i][j]} in the row of the i-th dataset is copied at {@code targets[i][j]}
+ * in the result. Absent rows (null) are skipped and their columns are left null. The rows are never
+ * modified.
+ */
+public class MergeJoinMerger implements Function<DataPoint[], DataPoint> {
+
+    private final int[][] sources;
+    private final int[][] targets;
+    private final Supplier<DataPoint> rows;
+
+    public MergeJoinMerger(int size, int[][] sources, int[][] targets) {
+        checkArgument(sources.length == targets.length, "the number of sources and targets differ");
+        for (int i = 0; i < sources.length; i++) {
+            checkArgument(sources[i].length == targets[i].length,
+                    "the number of source and target columns of dataset %s differ", i);
+        }
+        this.sources = sources;
+        this.targets = targets;
+        this.rows = DataPointRecycler.supplier(size);
+    }
+
+    @Override
+    public DataPoint apply(DataPoint[] points) {
+        DataPoint result = rows.get();
+        for (int i = 0; i < points.length; i++) {
+            DataPoint point = points[i];
+            if (point == null) {
+                continue;
+            }
+            int[] source = sources[i];
+            int[] target = targets[i];
+            for (int j = 0; j < source.length; j++) {
+                result.set(target[j], point.get(source[j]));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,295 @@
+package no.ssb.vtl.script.operations.join;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.script.operations.MemoryTracker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Joins any number of sorted inputs in one pass.
+ * <p>
+ * All the inputs are advanced together on the join key. For each key, the rows of every input that
+ * have this key are grouped and the merger is applied to the cartesian product of the groups; the first
+ * input varies the slowest. With inner semantics, only the keys present in all the inputs are
+ * emitted. With outer semantics, every key is emitted and the missing inputs are passed as null.
+ */
+public class MergeJoinSpliterator implements Spliterator<DataPoint> {
+
+    private final ImmutableList<Input> inputs;
+    private final Comparator<DataPoint> predicate;
+    private final Function<DataPoint[], DataPoint> merger;
+    private final boolean outer;
+    private final MemoryTracker memory;
+    private long reserved = 0;
+    private Iterator<DataPoint> output = Collections.emptyIterator();
+
+    /**
+     * Creates a new merge join.
+     *
+     * @param spliterators  the inputs, sorted by the predicate.
+     * @param keyExtractors functions that extract the join key of the rows of each input.
+     * @param predicate     the comparator of the keys.
+     * @param merger        merges one row of each input, or null if absent, into the result.
+     * @param outer         true for outer join semantics.
+     * @param memory        tracker of the groups.
+     */
+    public MergeJoinSpliterator(
+            List<Spliterator<DataPoint>> spliterators,
+            List<? extends UnaryOperator<DataPoint>> keyExtractors,
+            Comparator<DataPoint> predicate,
+            Function<DataPoint[], DataPoint> merger,
+            boolean outer,
+            MemoryTracker memory
+    ) {
+        checkArgument(spliterators.size() == keyExtractors.size(),
+                "the number of inputs and key extractors differ");
+        this.predicate = checkNotNull(predicate);
+        this.merger = checkNotNull(merger);
+        this.outer = outer;
+        this.memory = checkNotNull(memory);
+
+        ImmutableList.Builder<Input> inputs = ImmutableList.builder();
+        for (int i = 0; i < spliterators.size(); i++) {
+            inputs.add(new Input(Spliterators.iterator(spliterators.get(i)), keyExtractors.get(i), memory.isEnabled()));
+        }
+        this.inputs = inputs.build();
+    }
+
+    /**
+     * Groups the rows of the next key.
+     *
+     * @return false if there is no more keys.
+     */
+    private boolean advance() {
+        memory.release(reserved);
+        reserved = 0;
+
+        boolean found = outer ? alignOuter() : alignInner();
+        if (!found) {
+            return false;
+        }
+
+        List<List<DataPoint>> groups = new ArrayList<>(inputs.size());
+        for (Input input : inputs) {
+            groups.add(input.group);
+            reserved += input.groupSize;
+        }
+        memory.reserve(reserved);
+
+        output = new Product(groups);
+        return true;
+    }
+
+    /**
+     * Advances all the inputs to the next key they have in common and group their rows.
+     */
+    private boolean alignInner() {
+        while (true) {
+            DataPoint max = null;
+            for (Input input : inputs) {
+                if (input.head == null) {
+                    return false;
+                }
+                if (max == null || predicate.compare(input.key, max) > 0) {
+                    max = input.key;
+                }
+            }
+
+            boolean aligned = true;
+            for (Input input : inputs) {
+                while (input.head != null && predicate.compare(input.key, max) < 0) {
+                    input.next();
+                }
+                if (input.head == null) {
+                    return false;
+                }
+                aligned &= predicate.compare(input.key, max) == 0;
+            }
+
+            if (aligned) {
+                for (Input input : inputs) {
+                    input.fillGroup(predicate);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Groups the rows of the smallest key of the inputs.
+     */
+    private boolean alignOuter() {
+        DataPoint min = null;
+        for (Input input : inputs) {
+            if (input.head != null && (min == null || predicate.compare(input.key, min) < 0)) {
+                min = input.key;
+            }
+        }
+        if (min == null) {
+            return false;
+        }
+
+        for (Input input : inputs) {
+            if (input.head != null && predicate.compare(input.key, min) == 0) {
+                input.fillGroup(predicate);
+            } else {
+                input.clearGroup();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super DataPoint> action) {
+        while (!output.hasNext()) {
+            if (!advance()) {
+                return false;
+            }
+        }
+        action.accept(output.next());
+        return true;
+    }
+
+    @Override
+    public Spliterator<DataPoint> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return Spliterator.ORDERED | Spliterator.NONNULL;
+    }
+
+    /**
+     * A sorted input and the rows of its current key.
+     */
+    private static final class Input {
+
+        private final Iterator<DataPoint> iterator;
+        private final UnaryOperator<DataPoint> keyExtractor;
+        private final List<DataPoint> group = new ArrayList<>();
+        private final boolean tracked;
+        private long groupSize;
+        private DataPoint head;
+        private DataPoint key;
+
+        private Input(Iterator<DataPoint> iterator, UnaryOperator<DataPoint> keyExtractor, boolean tracked) {
+            this.iterator = checkNotNull(iterator);
+            this.keyExtractor = checkNotNull(keyExtractor);
+            this.tracked = tracked;
+            next();
+        }
+
+        private void next() {
+            if (iterator.hasNext()) {
+                head = iterator.next();
+                key = keyExtractor.apply(head);
+            } else {
+                head = null;
+                key = null;
+            }
+        }
+
+        private void clearGroup() {
+            group.clear();
+            groupSize = 0;
+        }
+
+        private void fillGroup(Comparator<DataPoint> predicate) {
+            clearGroup();
+            DataPoint groupKey = key;
+            do {
+                group.add(head);
+                if (tracked) {
+                    // Estimated once per row, when it is added.
+                    groupSize += MemoryTracker.estimate(head);
+                }
+                next();
+            } while (head != null && predicate.compare(key, groupKey) == 0);
+        }
+    }
+
+    /**
+     * Iterates over the cartesian product of the groups. Empty groups are represented by null.
+     */
+    private final class Product extends AbstractIterator<DataPoint> {
+
+        private final List<List<DataPoint>> groups;
+        private final int[] positions;
+        private final DataPoint[] rows;
+        private boolean started = false;
+
+        private Product(List<List<DataPoint>> groups) {
+            this.groups = groups;
+            this.positions = new int[groups.size()];
+            this.rows = new DataPoint[groups.size()];
+        }
+
+        @Override
+        protected DataPoint computeNext() {
+            if (!started) {
+                started = true;
+            } else if (!increment()) {
+                return endOfData();
+            }
+            for (int i = 0; i < rows.length; i++) {
+                List<DataPoint> group = groups.get(i);
+                rows[i] = group.isEmpty() ? null : group.get(positions[i]);
+            }
+            return merger.apply(rows);
+        }
+
+        /**
+         * Moves to the next combination, the last group varying the fastest.
+         */
+        private boolean increment() {
+            for (int i = positions.length - 1; i >= 0; i--) {
+                if (positions[i] + 1 < groups.get(i).size()) {
+                    positions[i]++;
+                    return true;
+                }
+                positions[i] = 0;
+            }
+            return false;
+        }
+    }
+}
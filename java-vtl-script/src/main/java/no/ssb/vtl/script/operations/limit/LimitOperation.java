@@ -0,0 +1,141 @@
+package no.ssb.vtl.script.operations.limit;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.base.MoreObjects;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.Filtering;
+import no.ssb.vtl.model.FilteringSpecification;
+import no.ssb.vtl.model.Ordering;
+import no.ssb.vtl.model.OrderingSpecification;
+import no.ssb.vtl.model.VtlOrdering;
+import no.ssb.vtl.script.operations.AbstractUnaryDatasetOperation;
+import no.ssb.vtl.script.operations.DataPointRecycler;
+import no.ssb.vtl.script.operations.DataPointSorter;
+import no.ssb.vtl.script.operations.MemoryTracker;
+import no.ssb.vtl.script.operations.VtlStream;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Keeps the first rows of a dataset, optionally in a given order (top-N).
+ * <p>
+ * Without order, the child streams stop once the limit is reached and the limit is passed to the
+ * connectors as a hint. The hint only goes through the operations that keep one row for each row of
+ * their child (rename, keep and drop); the other operations do not pass it on. With an order, the rows
+ * are sorted in a heap that only keeps the limit.
+ */
+public class LimitOperation extends AbstractUnaryDatasetOperation {
+
+    private final Ordering ordering;
+    private final long limit;
+
+    public LimitOperation(Dataset dataset, long limit) {
+        this(dataset, Ordering.ANY, limit);
+    }
+
+    public LimitOperation(Dataset dataset, OrderingSpecification ordering, long limit) {
+        super(checkNotNull(dataset, "the dataset was null"));
+        checkNotNull(ordering, "the ordering was null");
+        checkArgument(limit >= 0, "the limit was negative");
+        if (ordering.columns().isEmpty()) {
+            this.ordering = Ordering.ANY;
+        } else {
+            checkArgument(limit < Integer.MAX_VALUE, "the limit %s was too big to sort", limit);
+            this.ordering = new VtlOrdering(ordering, dataset.getDataStructure());
+        }
+        this.limit = limit;
+    }
+
+    @Override
+    protected DataStructure computeDataStructure() {
+        return getChild().getDataStructure();
+    }
+
+    @Override
+    public Stream<DataPoint> computeData(Ordering orders, Filtering filtering, Set<String> components) {
+        MemoryTracker memory = MemoryTracker.create(getConfiguration());
+        Stream<DataPoint> original;
+        Stream<DataPoint> data;
+        Ordering actualOrdering;
+        if (ordering == Ordering.ANY) {
+            original = getChild().computeData(Ordering.ANY, Filtering.ALL, components, limit);
+            data = original.limit(limit);
+            actualOrdering = Ordering.ANY;
+        } else {
+            original = getChild().computeData(Ordering.ANY, Filtering.ALL, components);
+            data = DataPointSorter.top(DataPointRecycler.retain(original), ordering, limit, memory);
+            // No need to sort again if any order is requested.
+            actualOrdering = orders.columns().isEmpty() ? orders : ordering;
+        }
+
+        // The filter is applied after the limit.
+        return new VtlStream(this, data, original, orders, filtering, actualOrdering, Filtering.ALL, memory);
+    }
+
+    /**
+     * The filters cannot be applied before the limit.
+     */
+    @Override
+    public FilteringSpecification computeRequiredFiltering(FilteringSpecification filtering) {
+        return Filtering.ALL;
+    }
+
+    @Override
+    public OrderingSpecification computeRequiredOrdering(OrderingSpecification ordering) {
+        return this.ordering;
+    }
+
+    @Override
+    public Optional<Map<String, Integer>> getDistinctValuesCount() {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<Long> getSize() {
+        return getChild().getSize().map(size -> Math.min(size, limit));
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public Ordering getOrdering() {
+        return ordering;
+    }
+
+    @Override
+    public String toString() {
+        MoreObjects.ToStringHelper helper = MoreObjects.toStringHelper(this).add("limit", limit);
+        if (ordering != Ordering.ANY) {
+            helper.add("ordering", ordering);
+        }
+        return helper.toString();
+    }
+}
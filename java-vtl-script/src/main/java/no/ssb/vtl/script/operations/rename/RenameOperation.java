@@ -45,7 +45,6 @@ import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import no.ssb.vtl.model.Component;
-import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
 import no.ssb.vtl.model.Filtering;
@@ -54,8 +53,7 @@ import no.ssb.vtl.model.Ordering;
 import no.ssb.vtl.model.OrderingSpecification;
 import no.ssb.vtl.model.VtlFiltering;
 import no.ssb.vtl.model.VtlOrdering;
-import no.ssb.vtl.script.operations.AbstractUnaryDatasetOperation;
-import no.ssb.vtl.script.operations.VtlStream;
+import no.ssb.vtl.script.operations.AbstractProjectionOperation;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -63,13 +61,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Stream;
 
 
 /**
  * Rename operation.
  */
-public class RenameOperation extends AbstractUnaryDatasetOperation {
+public class RenameOperation extends AbstractProjectionOperation {
 
     private final ImmutableBiMap<String, String> nameMapping;
     private final ImmutableMap<String, Component.Role> roleMapping;
@@ -106,6 +103,11 @@ public class RenameOperation extends AbstractUnaryDatasetOperation {
 
     @Override
     public FilteringSpecification computeRequiredFiltering(FilteringSpecification filtering) {
+        // Transpose so that the filter can be tested on the rows of the child.
+        return VtlFiltering.using(getChild()).transpose(renameFilterColumns(filtering));
+    }
+
+    private VtlFiltering renameFilterColumns(FilteringSpecification filtering) {
         if (filtering == Filtering.ALL) {
             return VtlFiltering.literal(false, FilteringSpecification.Operator.TRUE, null, null);
         }
@@ -114,17 +116,12 @@ public class RenameOperation extends AbstractUnaryDatasetOperation {
         if (filtering.getOperator() == FilteringSpecification.Operator.OR || filtering.getOperator() == FilteringSpecification.Operator.AND) {
             List<VtlFiltering> operands = new ArrayList<>();
             for (FilteringSpecification operand : filtering.getOperands()) {
-                operands.add((VtlFiltering) computeRequiredFiltering(operand));
+                operands.add(renameFilterColumns(operand));
             }
             return VtlFiltering.nary(negated, operator, operands);
         } else {
             ImmutableBiMap<String, String> reverseMap = ImmutableBiMap.copyOf(nameMapping).inverse();
-            return VtlFiltering.literal(
-                    negated,
-                    operator,
-                    reverseMap.getOrDefault(filtering.getColumn(), filtering.getColumn()),
-                    filtering.getValue()
-            );
+            return VtlFiltering.literal(filtering, reverseMap.getOrDefault(filtering.getColumn(), filtering.getColumn()));
         }
     }
 
@@ -154,21 +151,18 @@ public class RenameOperation extends AbstractUnaryDatasetOperation {
     }
 
     @Override
-    public Stream<DataPoint> computeData(Ordering oldOrdering, Filtering oldFiltering, Set<String> oldComponents) {
-        VtlFiltering childFiltering = (VtlFiltering) computeRequiredFiltering(oldFiltering);
-        VtlOrdering childOrdering = (VtlOrdering) computeRequiredOrdering(oldOrdering);
-
-        Set<String> components = renameComponent(oldComponents);
-
-        // No post filter/order since rename does not change the structure.
-        Stream<DataPoint> original = getChild().computeData(childOrdering, childFiltering, components);
-        return new VtlStream(this, original,
-                original,
-                oldOrdering,
-                oldFiltering,
-                childOrdering,
-                childFiltering
-        );
+    protected int[] computeProjection() {
+        // Rename does not move the columns.
+        int[] projection = new int[getDataStructure().size()];
+        for (int i = 0; i < projection.length; i++) {
+            projection[i] = i;
+        }
+        return projection;
+    }
+
+    @Override
+    protected Set<String> computeRequiredComponents(Set<String> components) {
+        return renameComponent(components);
     }
 
     private Set<String> renameComponent(Set<String> oldComponents) {
@@ -20,9 +20,7 @@ package no.ssb.vtl.script.operations.unfold;
  * =========================LICENSE_END==================================
  */
 
-import com.codepoetics.protonpack.StreamUtils;
 import com.google.common.base.MoreObjects;
-import com.google.common.collect.Maps;
 import no.ssb.vtl.model.Component;
 import no.ssb.vtl.model.Component.Role;
 import no.ssb.vtl.model.DataPoint;
@@ -32,17 +30,21 @@ import no.ssb.vtl.model.Filtering;
 import no.ssb.vtl.model.FilteringSpecification;
 import no.ssb.vtl.model.Ordering;
 import no.ssb.vtl.model.OrderingSpecification;
-import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.model.VtlFiltering;
 import no.ssb.vtl.model.VtlOrdering;
+import no.ssb.vtl.script.VtlConfiguration;
 import no.ssb.vtl.script.operations.AbstractUnaryDatasetOperation;
+import no.ssb.vtl.script.operations.MemoryTracker;
 import no.ssb.vtl.script.operations.VtlStream;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -69,69 +71,83 @@ public class UnfoldOperation extends AbstractUnaryDatasetOperation {
     @Override
     public Stream<DataPoint> computeData(Ordering ordering, Filtering filtering, Set<String> components) {
 
-        DataStructure dataStructure = getDataStructure();
-        DataStructure childStructure = getChild().getDataStructure();
-
+        UnfoldPivot pivot = new UnfoldPivot(getChild().getDataStructure(), getDataStructure(),
+                dimension, measure, elements);
         VtlFiltering childFiltering = (VtlFiltering) computeRequiredFiltering(filtering);
-        VtlOrdering childOrdering = (VtlOrdering) computeRequiredOrdering(ordering);
-
-        // Filter out the dimensionName and measureName to get the predicate.
-        String dimensionName = childStructure.getName(dimension);
-        String measureName = childStructure.getName(measure);
-        Ordering predicate = new VtlOrdering(
-                Maps.filterKeys(
-                        childOrdering.toMap(),
-                        column -> !measureName.equals(column) && !dimensionName.equals(column)
-                ),
-                childStructure
-        );
+        MemoryTracker memory = MemoryTracker.create(getConfiguration());
+
+        if (useHashGrouping(ordering)) {
+            Stream<DataPoint> original = getChild().computeData(Ordering.ANY, childFiltering, components);
+            return new VtlStream(this, computeHashedData(pivot, original, memory),
+                    original,
+                    ordering,
+                    filtering,
+                    Ordering.ANY,
+                    childFiltering,
+                    memory
+            );
+        }
 
         // Try to get data sorted as required. If impossible, sort it.
+        VtlOrdering childOrdering = (VtlOrdering) computeRequiredOrdering(ordering);
         Stream<DataPoint> sortedStream = getChild()
                 .computeData(childOrdering, childFiltering, components);
 
-
-        Stream<DataPoint> unfoldedStream = StreamUtils.aggregate(sortedStream, (left, right) -> {
-            // Checks if the previous ids (except the one with unfold on) where different.
-            return predicate.compare(left, right) == 0;
-        }).map(dataPoints -> {
-
-            // TODO: remove asMap() (instantiate too many objects).
-            DataPoint result = DataPoint.create(dataStructure.size());
-            Map<Component, VTLObject> resultAsMap = dataStructure.asMap(result);
-
-            for (DataPoint dataPoint : dataPoints) {
-                Map<Component, VTLObject> dataPointAsMap = childStructure.asMap(dataPoint);
-
-                VTLObject unfoldedValue = null;
-                Component unfoldedComponent = null;
-
-                for (Component component : dataPointAsMap.keySet()) {
-                    if (component.equals(dimension)) {
-                        VTLObject value = dataPointAsMap.get(component);
-                        if (elements.contains(value.get())) {
-                            unfoldedComponent = dataStructure.get(value.get());
-                        }
-                    } else if (component.equals(measure)) {
-                        unfoldedValue = dataPointAsMap.get(component);
-                    } else if (component.isIdentifier()) {
-                        resultAsMap.put(component, dataPointAsMap.get(component));
-                    }
-                }
-                resultAsMap.put(unfoldedComponent, unfoldedValue);
-            }
-            return result;
-        });
+        Stream<DataPoint> unfoldedStream = StreamSupport.stream(
+                new UnfoldSpliterator(sortedStream.spliterator(), pivot), false
+        );
 
         return new VtlStream(this, unfoldedStream,
                 sortedStream,
                 ordering,
                 filtering,
                 childOrdering,
-                childFiltering
+                childFiltering,
+                memory
         );
     }
 
+    /**
+     * Groups the rows in a hash table instead of reading them sorted when enabled and no order is
+     * requested. This is not done when the memory budget can be exceeded by spilling since only the
+     * sort spills.
+     *
+     * @see VtlConfiguration#setHashUnfold(boolean)
+     */
+    private boolean useHashGrouping(Ordering ordering) {
+        VtlConfiguration configuration = getConfiguration();
+        if (!configuration.isHashUnfoldEnabled() || !ordering.columns().isEmpty()) {
+            return false;
+        }
+        return configuration.getMemoryPolicy() != VtlConfiguration.MemoryPolicy.SPILL
+                || configuration.getMemoryBudget() == Long.MAX_VALUE;
+    }
+
+    /**
+     * Unfolds the rows in the order their groups are first seen. The groups are kept in memory,
+     * reserved in the tracker, until the input is exhausted.
+     */
+    private static Stream<DataPoint> computeHashedData(UnfoldPivot pivot, Stream<DataPoint> stream,
+                                                       MemoryTracker memory) {
+        Supplier<Spliterator<DataPoint>> groups = () -> {
+            Map<DataPoint, DataPoint> rows = new LinkedHashMap<>();
+            stream.forEach(dataPoint -> {
+                DataPoint key = pivot.key(dataPoint);
+                DataPoint row = rows.get(key);
+                if (row == null) {
+                    row = pivot.create(dataPoint);
+                    if (memory.isEnabled()) {
+                        memory.reserve(MemoryTracker.estimate(key) + MemoryTracker.estimate(row));
+                    }
+                    rows.put(key, row);
+                }
+                pivot.apply(row, dataPoint);
+            });
+            return rows.values().spliterator();
+        };
+        return StreamSupport.stream(groups, Spliterator.ORDERED | Spliterator.NONNULL, false);
+    }
+
     @Override
     public Optional<Map<String, Integer>> getDistinctValuesCount() {
         return Optional.empty();
@@ -208,9 +224,13 @@ public class UnfoldOperation extends AbstractUnaryDatasetOperation {
         String measureName = childStructure.getName(measure);
         VtlFiltering transformed = VtlFiltering.transform(vtlFiltering, (parent, filter) -> {
             if (elements.contains(filter.getColumn())) {
-                return VtlFiltering.and(
-                        VtlFiltering.eq(dimensionName, filter.getColumn()),
-                        VtlFiltering.literal(filter.isNegated(), filter.getOperator(), measureName, filter.getValue())
+                // Keep the rows of the other elements, they belong to the same unfolded rows.
+                return VtlFiltering.or(
+                        VtlFiltering.and(
+                                VtlFiltering.eq(dimensionName, filter.getColumn()),
+                                VtlFiltering.literal(filter, measureName)
+                        ),
+                        VtlFiltering.neq(dimensionName, filter.getColumn())
                 );
             } else {
                 return filter;
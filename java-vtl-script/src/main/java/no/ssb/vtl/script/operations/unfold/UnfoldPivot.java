@@ -0,0 +1,127 @@
+package no.ssb.vtl.script.operations.unfold;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.Component;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.VTLObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Moves the values of the unfolded measure to their columns using precomputed indices.
+ * <p>
+ * The identifiers (except the dimension) are copied by position and the value of the dimension
+ * is mapped to the index of its column with a hash lookup, so that no {@link DataStructure#asMap(DataPoint)}
+ * view is needed.
+ */
+final class UnfoldPivot {
+
+    private final int size;
+    private final int[] sources;
+    private final int[] targets;
+    private final int dimensionIndex;
+    private final int measureIndex;
+    private final Map<Object, Integer> columns;
+
+    UnfoldPivot(DataStructure childStructure, DataStructure structure, Component dimension,
+                Component measure, Set<String> elements) {
+        List<Component> childComponents = new ArrayList<>(childStructure.values());
+        List<Component> components = new ArrayList<>(structure.values());
+        List<String> names = new ArrayList<>(structure.keySet());
+
+        this.size = structure.size();
+        this.dimensionIndex = childComponents.indexOf(dimension);
+        this.measureIndex = childComponents.indexOf(measure);
+
+        int identifiers = 0;
+        for (Component component : components) {
+            if (component.isIdentifier()) {
+                identifiers++;
+            }
+        }
+        this.sources = new int[identifiers];
+        this.targets = new int[identifiers];
+        for (int target = 0, i = 0; target < components.size(); target++) {
+            Component component = components.get(target);
+            if (component.isIdentifier()) {
+                sources[i] = childComponents.indexOf(component);
+                targets[i] = target;
+                i++;
+            }
+        }
+
+        this.columns = new HashMap<>();
+        for (String element : elements) {
+            columns.put(element, names.indexOf(element));
+        }
+    }
+
+    /**
+     * Creates a new row for the group of the data point.
+     */
+    DataPoint create(DataPoint dataPoint) {
+        DataPoint row = DataPoint.create(size);
+        for (int i = 0; i < sources.length; i++) {
+            row.set(targets[i], dataPoint.get(sources[i]));
+        }
+        return row;
+    }
+
+    /**
+     * Returns true if the data point belongs to the group of the row.
+     */
+    boolean belongsTo(DataPoint row, DataPoint dataPoint) {
+        for (int i = 0; i < sources.length; i++) {
+            if (!row.get(targets[i]).equals(dataPoint.get(sources[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the identifiers of the group of the data point.
+     */
+    DataPoint key(DataPoint dataPoint) {
+        DataPoint key = DataPoint.create(sources.length);
+        for (int i = 0; i < sources.length; i++) {
+            key.set(i, dataPoint.get(sources[i]));
+        }
+        return key;
+    }
+
+    /**
+     * Puts the measure of the data point in the column of its element, if any.
+     */
+    void apply(DataPoint row, DataPoint dataPoint) {
+        VTLObject element = dataPoint.get(dimensionIndex);
+        Integer column = columns.get(element.get());
+        if (column != null) {
+            row.set(column, dataPoint.get(measureIndex));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package no.ssb.vtl.script.operations.unfold;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.DataPoint;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Unfolds rows sorted by the identifiers (except the dimension).
+ * <p>
+ * The consecutive rows of a group are pivoted into one row as they are read, so nothing but the
+ * current row is kept in memory.
+ */
+final class UnfoldSpliterator extends Spliterators.AbstractSpliterator<DataPoint> {
+
+    private final Spliterator<DataPoint> source;
+    private final UnfoldPivot pivot;
+
+    private DataPoint current;
+    private DataPoint next;
+
+    UnfoldSpliterator(Spliterator<DataPoint> source, UnfoldPivot pivot) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.source = checkNotNull(source);
+        this.pivot = checkNotNull(pivot);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super DataPoint> action) {
+        while (source.tryAdvance(this::accept)) {
+            if (next != null) {
+                DataPoint row = current;
+                current = next;
+                next = null;
+                action.accept(row);
+                return true;
+            }
+        }
+        if (current != null) {
+            DataPoint row = current;
+            current = null;
+            action.accept(row);
+            return true;
+        }
+        return false;
+    }
+
+    private void accept(DataPoint dataPoint) {
+        if (current == null) {
+            current = pivot.create(dataPoint);
+            pivot.apply(current, dataPoint);
+        } else if (pivot.belongsTo(current, dataPoint)) {
+            pivot.apply(current, dataPoint);
+        } else {
+            next = pivot.create(dataPoint);
+            pivot.apply(next, dataPoint);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package no.ssb.vtl.script.operations.union;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.DataPoint;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Streams the children of a union one after the other.
+ * <p>
+ * Unlike nested {@link java.util.stream.Stream#concat(java.util.stream.Stream, java.util.stream.Stream)}
+ * calls, the depth does not grow with the number of children.
+ */
+final class ConcatSpliterator implements Spliterator<DataPoint> {
+
+    private final Iterator<Spliterator<DataPoint>> children;
+    private Spliterator<DataPoint> current;
+
+    ConcatSpliterator(List<Spliterator<DataPoint>> children) {
+        this.children = children.iterator();
+        this.current = this.children.hasNext() ? this.children.next() : null;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super DataPoint> action) {
+        while (current != null) {
+            if (current.tryAdvance(action)) {
+                return true;
+            }
+            current = children.hasNext() ? children.next() : null;
+        }
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super DataPoint> action) {
+        while (current != null) {
+            current.forEachRemaining(action);
+            current = children.hasNext() ? children.next() : null;
+        }
+    }
+
+    @Override
+    public Spliterator<DataPoint> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return Spliterator.NONNULL;
+    }
+}
@@ -0,0 +1,213 @@
+package no.ssb.vtl.script.operations.union;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.script.VtlConfiguration;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Streams the children of a union concurrently.
+ * <p>
+ * The children are consumed into a bounded queue by at most one thread per available processor, with the
+ * configuration of the thread that created the spliterator. The threads start with the first element
+ * requested and {@link #close()} stops them and waits for them to finish, for a few seconds at most.
+ * Failures of the children are rethrown to the consumer.
+ * <p>
+ * The children must not recycle the rows they produce.
+ */
+final class ConcurrentConcatSpliterator implements Spliterator<DataPoint>, AutoCloseable {
+
+    private static final Object END = new Object();
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+    private final List<Stream<DataPoint>> children;
+    private final BlockingQueue<Object> queue;
+    private final Runnable start;
+    private final List<Thread> threads = new CopyOnWriteArrayList<>();
+    private ExecutorService executor;
+    private int running;
+    private volatile boolean closed;
+
+    ConcurrentConcatSpliterator(List<Stream<DataPoint>> children, int capacity) {
+        checkArgument(capacity > 0, "the capacity must be positive");
+        this.children = children;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.running = children.size();
+        // The threads are started by the consumer, possibly in another thread.
+        this.start = VtlConfiguration.inherit(this::start);
+    }
+
+    private void start() {
+        int size = Math.max(1, Math.min(children.size(), Runtime.getRuntime().availableProcessors()));
+        ThreadFactory factory = new ThreadFactoryBuilder()
+                .setNameFormat("vtl-union-%d")
+                .setDaemon(true)
+                .build();
+        executor = Executors.newFixedThreadPool(size, runnable -> {
+            Thread thread = factory.newThread(runnable);
+            threads.add(thread);
+            return thread;
+        });
+        for (Stream<DataPoint> child : children) {
+            executor.execute(VtlConfiguration.inherit(() -> consume(child)));
+        }
+    }
+
+    private void consume(Stream<DataPoint> child) {
+        try {
+            child.forEach(this::put);
+            put(END);
+        } catch (Stopped stopped) {
+            // closed.
+        } catch (Throwable t) {
+            try {
+                put(new Failure(t));
+            } catch (Stopped stopped) {
+                // closed.
+            }
+        }
+    }
+
+    private void put(Object element) {
+        try {
+            while (!queue.offer(element, 100, TimeUnit.MILLISECONDS)) {
+                if (closed) {
+                    throw new Stopped();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Stopped();
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super DataPoint> action) {
+        if (executor == null) {
+            start.run();
+        }
+        while (running > 0) {
+            Object element;
+            try {
+                element = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                CancellationException cancellation = new CancellationException("interrupted");
+                cancellation.initCause(e);
+                throw cancellation;
+            }
+            if (element == END) {
+                running--;
+            } else if (element instanceof Failure) {
+                close();
+                Throwable cause = ((Failure) element).cause;
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException(cause);
+            } else {
+                action.accept((DataPoint) element);
+                return true;
+            }
+        }
+        close();
+        return false;
+    }
+
+    /**
+     * Stops the threads and waits until they are finished.
+     * <p>
+     * A child that ignores interrupts (blocking I/O for instance) can keep its thread running. The
+     * threads that are still running after {@link #CLOSE_TIMEOUT_MILLIS} are abandoned; they are
+     * daemon threads and their rows are discarded.
+     */
+    @Override
+    public void close() {
+        running = 0;
+        closed = true;
+        if (executor == null) {
+            return;
+        }
+        executor.shutdownNow();
+        long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT_MILLIS;
+        try {
+            for (Thread thread : threads) {
+                while (thread.isAlive() && System.currentTimeMillis() < deadline) {
+                    // Unblocks the threads that wait for room in the queue.
+                    queue.clear();
+                    thread.join(100);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        queue.clear();
+    }
+
+    @Override
+    public Spliterator<DataPoint> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return Spliterator.NONNULL;
+    }
+
+    private static final class Failure {
+        private final Throwable cause;
+
+        private Failure(Throwable cause) {
+            this.cause = cause;
+        }
+    }
+
+    private static final class Stopped extends RuntimeException {
+        private Stopped() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package no.ssb.vtl.script.operations.union;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.Component;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.script.operations.MemoryTracker;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Checks that the rows of an unsorted union have distinct identifiers.
+ * <p>
+ * The identifiers of all the rows are kept in a hash set, accounted in the memory tracker.
+ */
+final class HashDuplicateChecker implements UnaryOperator<DataPoint> {
+
+    private final DataStructure structure;
+    private final MemoryTracker memory;
+    private final int[] identifiers;
+    private final Set<DataPoint> seen = new HashSet<>();
+
+    HashDuplicateChecker(DataStructure structure, MemoryTracker memory) {
+        this.structure = checkNotNull(structure);
+        this.memory = checkNotNull(memory);
+        Component[] components = structure.values().toArray(new Component[0]);
+        this.identifiers = IntStream.range(0, components.length)
+                .filter(i -> components[i].isIdentifier())
+                .toArray();
+    }
+
+    @Override
+    public DataPoint apply(DataPoint dataPoint) {
+        // Copy since the data point can be recycled.
+        DataPoint key = DataPoint.create(identifiers.length);
+        for (int i = 0; i < identifiers.length; i++) {
+            key.set(i, dataPoint.get(identifiers[i]));
+        }
+        if (!seen.add(key)) {
+            throw UnionSpliterator.duplicateError(structure, dataPoint);
+        }
+        if (memory.isEnabled()) {
+            memory.reserve(MemoryTracker.estimate(key));
+        }
+        return dataPoint;
+    }
+}
@@ -0,0 +1,188 @@
+package no.ssb.vtl.script.operations.union;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.Component;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Ordering;
+import no.ssb.vtl.script.operations.DataPointRecycler;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Merges the data of the two children of a set operation, sorted on the identifiers.
+ * <p>
+ * The heads of both children are copied into the result structure and compared; only the rows kept by
+ * the {@link SetOperation.Type} are emitted. The merge stops as soon as no more rows can be emitted,
+ * without reading the rest of the other child.
+ */
+final class SetMergeSpliterator implements Spliterator<DataPoint> {
+
+    private static final int LEFT = 0;
+    private static final int RIGHT = 1;
+
+    private final SetOperation.Type type;
+    private final Ordering ordering;
+    private final int size;
+
+    private final List<Iterator<DataPoint>> children = new ArrayList<>(2);
+    private final int[][] indices = new int[2][];
+    private final DataPoint[] heads = new DataPoint[2];
+
+    // Two rows per child when recycling: the emitted one and the next head.
+    private final DataPoint[][] buffers;
+
+    /**
+     * Creates a new set merge.
+     *
+     * @param type           the set operation.
+     * @param ordering       the order of the children on the identifiers, using the result structure.
+     * @param structure      the result structure.
+     * @param left           the sorted data of the left child.
+     * @param leftStructure  the structure of the left child.
+     * @param right          the sorted data of the right child.
+     * @param rightStructure the structure of the right child.
+     */
+    SetMergeSpliterator(SetOperation.Type type, Ordering ordering, DataStructure structure,
+                        Spliterator<DataPoint> left, DataStructure leftStructure,
+                        Spliterator<DataPoint> right, DataStructure rightStructure) {
+        this.type = checkNotNull(type);
+        this.ordering = checkNotNull(ordering);
+        this.size = structure.size();
+        this.buffers = DataPointRecycler.isEnabled() ? new DataPoint[2][2] : null;
+
+        List<String> columns = new ArrayList<>(structure.keySet());
+        children.add(Spliterators.iterator(left));
+        children.add(Spliterators.iterator(right));
+        indices[LEFT] = UnionSpliterator.computeIndices(columns, new ArrayList<>(leftStructure.keySet()));
+        indices[RIGHT] = UnionSpliterator.computeIndices(columns, new ArrayList<>(rightStructure.keySet()));
+
+        advance(LEFT);
+        advance(RIGHT);
+    }
+
+    /**
+     * Returns the indices of the identifiers in the structure.
+     */
+    static int[] computeIdentifiers(DataStructure structure) {
+        Component[] components = structure.values().toArray(new Component[0]);
+        return IntStream.range(0, components.length)
+                .filter(i -> components[i].isIdentifier())
+                .toArray();
+    }
+
+    /**
+     * Copies the next row of the child into its head.
+     */
+    private void advance(int child) {
+        Iterator<DataPoint> iterator = children.get(child);
+        if (!iterator.hasNext()) {
+            heads[child] = null;
+            return;
+        }
+        heads[child] = UnionSpliterator.copy(iterator.next(), nextBuffer(child), indices[child]);
+    }
+
+    private DataPoint nextBuffer(int child) {
+        if (buffers == null) {
+            return DataPoint.create(size);
+        }
+        DataPoint[] pair = buffers[child];
+        DataPoint buffer = pair[1];
+        // Consumers are allowed to change the size of the rows.
+        if (buffer == null || buffer.size() != size) {
+            buffer = DataPoint.create(size);
+        }
+        pair[1] = pair[0];
+        pair[0] = buffer;
+        return buffer;
+    }
+
+    /**
+     * Returns true if no more rows can be emitted.
+     */
+    private boolean isDone() {
+        DataPoint left = heads[LEFT];
+        DataPoint right = heads[RIGHT];
+        switch (type) {
+            case INTERSECT:
+                return left == null || right == null;
+            case SETDIFF:
+                return left == null;
+            default:
+                return left == null && right == null;
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super DataPoint> action) {
+        while (!isDone()) {
+            DataPoint left = heads[LEFT];
+            DataPoint right = heads[RIGHT];
+            int result = left == null ? 1 : right == null ? -1 : ordering.compare(left, right);
+            if (result < 0) {
+                advance(LEFT);
+                if (type != SetOperation.Type.INTERSECT) {
+                    action.accept(left);
+                    return true;
+                }
+            } else if (result > 0) {
+                advance(RIGHT);
+                if (type == SetOperation.Type.SYMDIFF) {
+                    action.accept(right);
+                    return true;
+                }
+            } else {
+                advance(LEFT);
+                advance(RIGHT);
+                if (type == SetOperation.Type.INTERSECT) {
+                    action.accept(left);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Spliterator<DataPoint> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return Spliterator.ORDERED | Spliterator.NONNULL;
+    }
+}
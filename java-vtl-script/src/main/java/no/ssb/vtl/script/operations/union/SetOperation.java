@@ -0,0 +1,276 @@
+package no.ssb.vtl.script.operations.union;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableList;
+import no.ssb.vtl.model.Component;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.Filtering;
+import no.ssb.vtl.model.FilteringSpecification;
+import no.ssb.vtl.model.Ordering;
+import no.ssb.vtl.model.OrderingSpecification;
+import no.ssb.vtl.model.VtlFiltering;
+import no.ssb.vtl.model.VtlOrdering;
+import no.ssb.vtl.script.VtlConfiguration;
+import no.ssb.vtl.script.operations.AbstractDatasetOperation;
+import no.ssb.vtl.script.operations.DataPointRecycler;
+import no.ssb.vtl.script.operations.MemoryTracker;
+import no.ssb.vtl.script.operations.VtlStream;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Arrays.asList;
+
+/**
+ * The intersect, setdiff and symdiff operators.
+ * <p>
+ * The data points are matched on their identifiers. When the data is requested in a specific order,
+ * both datasets are requested sorted on the identifiers and merged; the result is advertised in that order.
+ * Otherwise the identifiers of the right dataset are kept in a hash table and the left dataset is
+ * streamed unsorted.
+ */
+public class SetOperation extends AbstractDatasetOperation {
+
+    public enum Type {
+        /**
+         * The data points of the left dataset that have a match in the right dataset.
+         */
+        INTERSECT,
+        /**
+         * The data points of the left dataset that have no match in the right dataset.
+         */
+        SETDIFF,
+        /**
+         * The data points of each dataset that have no match in the other one.
+         */
+        SYMDIFF
+    }
+
+    private final Type type;
+
+    public SetOperation(Type type, Dataset left, Dataset right) {
+        super(asList(left, right));
+        this.type = checkNotNull(type);
+        UnionOperation.checkDataStructures(left.getDataStructure(), right.getDataStructure());
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    private AbstractDatasetOperation getLeft() {
+        return getChildren().get(0);
+    }
+
+    private AbstractDatasetOperation getRight() {
+        return getChildren().get(1);
+    }
+
+    @Override
+    protected DataStructure computeDataStructure() {
+        // Only symdiff returns data points of the right dataset.
+        if (type == Type.SYMDIFF) {
+            return UnionOperation.computeUnionStructure(getChildren());
+        }
+        return getLeft().getDataStructure();
+    }
+
+    /**
+     * The filter is pushed to the left dataset only when all the values of the result come from it.
+     * Filtering the right dataset would change which data points match.
+     */
+    @Override
+    public FilteringSpecification computeRequiredFiltering(FilteringSpecification filtering) {
+        if (type == Type.SYMDIFF) {
+            return VtlFiltering.using(this).transpose(Filtering.ALL);
+        }
+        return VtlFiltering.using(this).transpose(filtering);
+    }
+
+    @Override
+    public OrderingSpecification computeRequiredOrdering(OrderingSpecification ordering) {
+        VtlOrdering.Builder setOrder = VtlOrdering.using(this);
+        if (useHashMatching(ordering)) {
+            return setOrder.build();
+        }
+
+        // Keep the requested identifiers as prefix and add the missing ones.
+        DataStructure structure = getDataStructure();
+        for (String column : ordering.columns()) {
+            if (!structure.get(column).isIdentifier()) {
+                break;
+            }
+            setOrder.then(ordering.getDirection(column), column);
+        }
+        List<String> prefix = setOrder.build().columns();
+        for (Map.Entry<String, Component> entry : structure.entrySet()) {
+            if (entry.getValue().isIdentifier() && !prefix.contains(entry.getKey())) {
+                setOrder.asc(entry.getKey());
+            }
+        }
+        return setOrder.build();
+    }
+
+    /**
+     * Matches using a hash table when no order is requested. This is not done when the memory
+     * budget can be exceeded by spilling since only the sort spills.
+     */
+    private boolean useHashMatching(OrderingSpecification ordering) {
+        if (!ordering.columns().isEmpty()) {
+            return false;
+        }
+        VtlConfiguration configuration = getConfiguration();
+        return configuration.getMemoryPolicy() != VtlConfiguration.MemoryPolicy.SPILL
+                || configuration.getMemoryBudget() == Long.MAX_VALUE;
+    }
+
+    @Override
+    public Stream<DataPoint> computeData(Ordering ordering, Filtering filtering, Set<String> components) {
+        VtlFiltering setFiltering = (VtlFiltering) computeRequiredFiltering(filtering);
+        VtlFiltering leftFiltering = VtlFiltering.using(getLeft()).transpose(setFiltering);
+
+        VtlOrdering setOrder = (VtlOrdering) computeRequiredOrdering(ordering);
+        if (setOrder.columns().isEmpty()) {
+            return computeHashedData(ordering, filtering, setFiltering, leftFiltering, components);
+        }
+
+        DataStructure structure = getDataStructure();
+        VtlOrdering setOrdering = new VtlOrdering(setOrder, structure);
+
+        Stream<DataPoint> left = getLeft().computeData(
+                new VtlOrdering(setOrder, UnionOperation.getNormalizedChildStructure(getLeft().getDataStructure(), structure)),
+                leftFiltering, components);
+        Stream<DataPoint> right = getRight().computeData(
+                new VtlOrdering(setOrder, UnionOperation.getNormalizedChildStructure(getRight().getDataStructure(), structure)),
+                Filtering.ALL, components);
+
+        Stream<DataPoint> result = StreamSupport.stream(new SetMergeSpliterator(
+                type, setOrdering, structure,
+                left.spliterator(), getLeft().getDataStructure(),
+                right.spliterator(), getRight().getDataStructure()
+        ), false);
+
+        return new VtlStream(
+                this, result, ImmutableList.of(left, right), ordering, filtering, setOrdering, setFiltering);
+    }
+
+    /**
+     * Keeps the identifiers of the right dataset (and its data points for symdiff) in a hash table,
+     * accounted in the memory tracker, and streams the left dataset. The data points of the right
+     * dataset that were not matched are returned last, in their original order.
+     */
+    private Stream<DataPoint> computeHashedData(Ordering ordering, Filtering filtering, VtlFiltering setFiltering,
+                                                VtlFiltering leftFiltering, Set<String> components) {
+        DataStructure structure = getDataStructure();
+        List<String> columns = new ArrayList<>(structure.keySet());
+        int[] leftIndices = UnionSpliterator.computeIndices(columns, new ArrayList<>(getLeft().getDataStructure().keySet()));
+        int[] rightIndices = UnionSpliterator.computeIndices(columns, new ArrayList<>(getRight().getDataStructure().keySet()));
+        int[] identifiers = SetMergeSpliterator.computeIdentifiers(structure);
+
+        Stream<DataPoint> left = getLeft().computeData(Ordering.ANY, leftFiltering, components);
+        Stream<DataPoint> right = getRight().computeData(Ordering.ANY, Filtering.ALL, components);
+        MemoryTracker memory = MemoryTracker.create(getConfiguration());
+
+        Supplier<Spliterator<DataPoint>> matched = () -> {
+            Map<DataPoint, DataPoint> unmatched = new LinkedHashMap<>();
+            Set<DataPoint> keys = new HashSet<>();
+            right.forEach(dataPoint -> {
+                DataPoint key = key(dataPoint, rightIndices, identifiers, DataPoint.create(identifiers.length));
+                long size = MemoryTracker.estimate(key);
+                if (type == Type.SYMDIFF) {
+                    // Copy since the data point can be recycled.
+                    DataPoint row = UnionSpliterator.copy(dataPoint, DataPoint.create(columns.size()), rightIndices);
+                    size += MemoryTracker.estimate(row);
+                    unmatched.put(key, row);
+                } else {
+                    keys.add(key);
+                }
+                if (memory.isEnabled()) {
+                    memory.reserve(size);
+                }
+            });
+
+            DataPoint probe = DataPoint.create(identifiers.length);
+            Supplier<DataPoint> rows = DataPointRecycler.supplier(columns.size());
+            Stream<DataPoint> result = left.filter(dataPoint -> {
+                key(dataPoint, leftIndices, identifiers, probe);
+                switch (type) {
+                    case INTERSECT:
+                        return keys.contains(probe);
+                    case SETDIFF:
+                        return !keys.contains(probe);
+                    default:
+                        return unmatched.remove(probe) == null;
+                }
+            }).map(dataPoint -> UnionSpliterator.copy(dataPoint, rows.get(), leftIndices));
+
+            if (type == Type.SYMDIFF) {
+                // The table is complete once the left dataset is exhausted.
+                return new ConcatSpliterator(asList(result.spliterator(), unmatched.values().spliterator()));
+            }
+            return result.spliterator();
+        };
+
+        Stream<DataPoint> result = StreamSupport.stream(matched, Spliterator.ORDERED | Spliterator.NONNULL, false);
+        return new VtlStream(
+                this, result, ImmutableList.of(left, right), ordering, filtering, ordering, setFiltering, memory);
+    }
+
+    /**
+     * Copies the identifiers of the data point into the key.
+     */
+    private static DataPoint key(DataPoint dataPoint, int[] indices, int[] identifiers, DataPoint key) {
+        for (int i = 0; i < identifiers.length; i++) {
+            key.set(i, dataPoint.get(indices[identifiers[i]]));
+        }
+        return key;
+    }
+
+    @Override
+    public Optional<Map<String, Integer>> getDistinctValuesCount() {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<Long> getSize() {
+        // Exact only when one of the datasets is empty.
+        if (getRight().getSize().filter(size -> size == 0).isPresent()) {
+            return type == Type.INTERSECT ? Optional.of(0L) : getLeft().getSize();
+        }
+        if (getLeft().getSize().filter(size -> size == 0).isPresent()) {
+            return type == Type.SYMDIFF ? getRight().getSize() : Optional.of(0L);
+        }
+        return Optional.empty();
+    }
+}
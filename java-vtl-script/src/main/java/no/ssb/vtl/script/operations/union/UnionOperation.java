@@ -20,8 +20,6 @@ package no.ssb.vtl.script.operations.union;
  * =========================LICENSE_END==================================
  */
 
-import com.codepoetics.protonpack.StreamUtils;
-import com.codepoetics.protonpack.selectors.Selector;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
@@ -37,10 +35,9 @@ import no.ssb.vtl.model.OrderingSpecification;
 import no.ssb.vtl.model.VtlFiltering;
 import no.ssb.vtl.model.VtlOrdering;
 import no.ssb.vtl.script.operations.AbstractDatasetOperation;
-import no.ssb.vtl.script.operations.DataPointMap;
-import no.ssb.vtl.script.operations.DataPointMapComparator;
+import no.ssb.vtl.script.operations.DataPointRecycler;
+import no.ssb.vtl.script.operations.MemoryTracker;
 import no.ssb.vtl.script.operations.VtlStream;
-import no.ssb.vtl.script.operations.join.DataPointCapacityExpander;
 
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -49,6 +46,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -63,6 +62,8 @@ import static no.ssb.vtl.model.DataStructure.builder;
  */
 public class UnionOperation extends AbstractDatasetOperation {
 
+    private static final int QUEUE_CAPACITY = 1024;
+
     @VisibleForTesting
     UnionOperation(Dataset... dataset) {
         this(asList(dataset));
@@ -81,16 +82,23 @@ public class UnionOperation extends AbstractDatasetOperation {
         if (getChildren().size() == 1) {
             return getChildren().get(0).getDataStructure();
         }
+        return computeUnionStructure(getChildren());
+    }
 
+    /**
+     * Returns the structure of the first dataset without attributes followed by the attributes of all
+     * the datasets, sorted by name.
+     */
+    static DataStructure computeUnionStructure(List<? extends Dataset> datasets) {
         // Get base structure, that is, structure from first parameter, without attributes
         List<Entry<String, Component>> baseStructure
-                = new ArrayList<>(getChildren().get(0).getDataStructure().entrySet())
+                = new ArrayList<>(datasets.get(0).getDataStructure().entrySet())
                 .stream().filter(entry -> entry.getValue().getRole() != Component.Role.ATTRIBUTE)
                 .collect(Collectors.toList());
 
         // Add attributes, sorted by name
         List<Entry<String, Component>> allAttributes = new ArrayList<>();
-        for(Dataset dataset : getChildren()) {
+        for(Dataset dataset : datasets) {
             List<Entry<String, Component>> childAttributes = dataset.getDataStructure().entrySet()
                     .stream().filter(entry -> entry.getValue().getRole() == Component.Role.ATTRIBUTE)
                     .filter(entry -> allAttributes.stream()
@@ -110,8 +118,13 @@ public class UnionOperation extends AbstractDatasetOperation {
 
     @Override
     public OrderingSpecification computeRequiredOrdering(OrderingSpecification ordering) {
-        // Union requires data to be sorted on all identifiers. Start with requested. Add all missing.
+        // Unsorted data can be concatenated.
         VtlOrdering.Builder unionOrder = VtlOrdering.using(this);
+        if (ordering.columns().isEmpty() && getConfiguration().isUnsortedUnionEnabled()) {
+            return unionOrder.build();
+        }
+
+        // Union requires data to be sorted on all identifiers. Start with requested. Add all missing.
         for (String column : ordering.columns()) {
             unionOrder.then(ordering.getDirection(column), column);
         }
@@ -127,7 +140,7 @@ public class UnionOperation extends AbstractDatasetOperation {
         return unionOrder.build();
     }
 
-    private void checkDataStructures(DataStructure baseDataStructure, DataStructure nextDataStructure) {
+    static void checkDataStructures(DataStructure baseDataStructure, DataStructure nextDataStructure) {
         // Identifiers and attribute should be equals in name, role and type.
         Set<String> requiredNames = nonAttributeNames(baseDataStructure);
         Set<String> providedNames = nonAttributeNames(nextDataStructure);
@@ -161,7 +174,7 @@ public class UnionOperation extends AbstractDatasetOperation {
 
     }
 
-    private Set<String> nonAttributeNames(DataStructure dataStructure) {
+    private static Set<String> nonAttributeNames(DataStructure dataStructure) {
         return Maps.filterValues(dataStructure.getRoles(), role -> role != Component.Role.ATTRIBUTE).keySet();
     }
 
@@ -174,48 +187,90 @@ public class UnionOperation extends AbstractDatasetOperation {
 
         VtlFiltering childFiltering = (VtlFiltering) computeRequiredFiltering(filtering);
         VtlOrdering unionOrder = (VtlOrdering) computeRequiredOrdering(ordering);
+        if (unionOrder.columns().isEmpty()) {
+            return computeUnsortedData(ordering, filtering, childFiltering, components);
+        }
 
         DataStructure structure = getDataStructure();
-        ImmutableList.Builder<Stream<DataPointMap>> streams = ImmutableList.builder();
+        VtlOrdering unionOrdering = new VtlOrdering(unionOrder, structure);
+
         ImmutableList.Builder<Stream<DataPoint>> originals = ImmutableList.builder();
+        List<Spliterator<DataPoint>> streams = new ArrayList<>();
+        List<DataStructure> structures = new ArrayList<>();
         for (AbstractDatasetOperation child : getChildren()) {
-
-            Stream<DataPointMap> dataPointMapStream = getChildDataStream(
-                    components, childFiltering, unionOrder, structure, originals, child);
-            streams.add(dataPointMapStream);
+            DataStructure childStructure = child.getDataStructure();
+            VtlOrdering childOrdering = new VtlOrdering(unionOrder, getNormalizedChildStructure(childStructure, structure));
+            VtlFiltering childFilter = VtlFiltering.using(child).transpose(childFiltering);
+
+            Stream<DataPoint> stream = child.computeData(childOrdering, childFilter, components);
+            originals.add(stream);
+            streams.add(stream.spliterator());
+            structures.add(childStructure);
         }
 
-        VtlOrdering unionOrdering = new VtlOrdering(unionOrder, structure);
-        Comparator<DataPointMap> comparing = new DataPointMapComparator(unionOrdering);
-
-        ImmutableList<Stream<DataPointMap>> build = streams.build();
-
-        DataPointMap resultMap = new DataPointMap(structure);
-        Stream<DataPoint> result = StreamUtils.interleave(
-                createSelector(comparing), build)
-                .map(source -> {
-                    resultMap.setDataPoint(DataPoint.create(structure.size()));
-                    structure.keySet().forEach(col -> resultMap.set(col, source.get(col)));
-                    return resultMap.getDataPoint();
-                }).map(new DuplicateChecker(unionOrdering, structure));
+        Stream<DataPoint> result = StreamSupport.stream(
+                new UnionSpliterator(unionOrdering, structure, streams, structures), false
+        );
 
         return new VtlStream(
                 this, result, originals.build(), ordering, filtering, unionOrdering, childFiltering);
     }
 
-    private Stream<DataPointMap> getChildDataStream(Set<String> components, VtlFiltering childFiltering, VtlOrdering unionOrder, DataStructure structure, ImmutableList.Builder<Stream<DataPoint>> originals, AbstractDatasetOperation child) {
-        DataStructure childStructure = getNormalizedChildStructure(child.getDataStructure(), structure);
-        VtlOrdering unionOrdering = new VtlOrdering(unionOrder, childStructure);
-        VtlFiltering unionFilter = VtlFiltering.using(child).transpose(childFiltering);
+    /**
+     * Concatenates the data of the children without sorting it.
+     */
+    private Stream<DataPoint> computeUnsortedData(Ordering ordering, Filtering filtering,
+                                                  VtlFiltering childFiltering, Set<String> components) {
+        DataStructure structure = getDataStructure();
+        List<String> columns = new ArrayList<>(structure.keySet());
 
-        Stream<DataPoint> stream = child.computeData(unionOrdering, unionFilter, components)
-                .peek(new DataPointCapacityExpander(structure.size()));
+        // Rows cannot be recycled across threads.
+        boolean concurrent = getConfiguration().isConcurrentUnionEnabled();
 
-        originals.add(stream);
+        ImmutableList.Builder<Stream<DataPoint>> originals = ImmutableList.builder();
+        List<Stream<DataPoint>> streams = new ArrayList<>();
+        for (AbstractDatasetOperation child : getChildren()) {
+            VtlFiltering childFilter = VtlFiltering.using(child).transpose(childFiltering);
+            Stream<DataPoint> stream = child.computeData(Ordering.ANY, childFilter, components);
+            originals.add(stream);
+
+            int[] indices = UnionSpliterator.computeIndices(columns, new ArrayList<>(child.getDataStructure().keySet()));
+            Supplier<DataPoint> rows = concurrent
+                    ? () -> DataPoint.create(columns.size())
+                    : DataPointRecycler.supplier(columns.size());
+            streams.add(stream.map(dataPoint -> UnionSpliterator.copy(dataPoint, rows.get(), indices)));
+        }
 
-        DataPointMap map = new DataPointMap(childStructure);
+        Stream<DataPoint> result;
+        if (concurrent) {
+            ConcurrentConcatSpliterator spliterator = new ConcurrentConcatSpliterator(streams, QUEUE_CAPACITY);
+            result = StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+        } else {
+            result = StreamSupport.stream(new ConcatSpliterator(
+                    streams.stream().map(Stream::spliterator).collect(Collectors.toList())
+            ), false);
+        }
 
-        return StreamSupport.stream(stream.spliterator(), false).map(map::withDataPoint);
+        MemoryTracker memory = MemoryTracker.create(getConfiguration());
+        if (!isDisjoint()) {
+            result = result.map(new HashDuplicateChecker(structure, memory));
+        }
+
+        return new VtlStream(
+                this, result, originals.build(), ordering, filtering, ordering, childFiltering, memory);
+    }
+
+    /**
+     * Returns true if the children cannot share identifiers because at most one of them has data.
+     */
+    private boolean isDisjoint() {
+        int nonEmpty = 0;
+        for (Dataset child : getChildren()) {
+            if (!child.getSize().filter(size -> size == 0).isPresent()) {
+                nonEmpty++;
+            }
+        }
+        return nonEmpty <= 1;
     }
 
     /**
@@ -226,7 +281,7 @@ public class UnionOperation extends AbstractDatasetOperation {
      *                      parameters
      * @return the concatenated structure
      */
-    private DataStructure getNormalizedChildStructure(DataStructure childStructure, DataStructure baseStructure) {
+    static DataStructure getNormalizedChildStructure(DataStructure childStructure, DataStructure baseStructure) {
         if (childStructure.getRoles().size() == baseStructure.getRoles().size()
                 && childStructure.getRoles().keySet().equals(baseStructure.getRoles().keySet())) {
             return childStructure;
@@ -243,10 +298,6 @@ public class UnionOperation extends AbstractDatasetOperation {
         return builder().putAll(childStructureList).build();
     }
 
-    private <T> Selector<T> createSelector(Comparator<T> comparator) {
-        return new MinimumSelector<>(comparator);
-    }
-
     @Override
     public Optional<Map<String, Integer>> getDistinctValuesCount() {
         return Optional.empty();
@@ -0,0 +1,248 @@
+package no.ssb.vtl.script.operations.union;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.Component;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Ordering;
+import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.script.error.VTLRuntimeException;
+import no.ssb.vtl.script.operations.DataPointRecycler;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Merges the sorted data of the children of a union using a loser tree.
+ * <p>
+ * The rows of each child are copied into the union structure using column indices computed once per child.
+ * The tree keeps the loser of each match so only the path of the previous winner is replayed for each row
+ * (log(k) comparisons). Ties are won by the first child.
+ * <p>
+ * Since the output is sorted, duplicates are adjacent; the next winner is compared to the current
+ * one before emitting it.
+ */
+final class UnionSpliterator implements Spliterator<DataPoint> {
+
+    private final Ordering ordering;
+    private final DataStructure structure;
+    private final int size;
+
+    private final List<Iterator<DataPoint>> children;
+    private final int[][] indices;
+    private final DataPoint[] heads;
+
+    // Two rows per child when recycling: the emitted one and the next head.
+    private final DataPoint[][] buffers;
+
+    // tree[0] is the winner, tree[1..k-1] are the losers of the matches.
+    private final int[] tree;
+
+    /**
+     * Creates a new union merge.
+     *
+     * @param ordering   the order of the children, using the union structure.
+     * @param structure  the union structure.
+     * @param children   the sorted data of the children.
+     * @param structures the structure of the children.
+     */
+    UnionSpliterator(Ordering ordering, DataStructure structure,
+                     List<Spliterator<DataPoint>> children, List<DataStructure> structures) {
+        checkArgument(!children.isEmpty(), "no children");
+        checkArgument(children.size() == structures.size(), "the number of children and structures differ");
+        this.ordering = checkNotNull(ordering);
+        this.structure = checkNotNull(structure);
+        this.size = structure.size();
+
+        int k = children.size();
+        this.children = new ArrayList<>(k);
+        this.indices = new int[k][];
+        this.heads = new DataPoint[k];
+        this.buffers = DataPointRecycler.isEnabled() ? new DataPoint[k][2] : null;
+        this.tree = new int[k];
+
+        List<String> columns = new ArrayList<>(structure.keySet());
+        for (int i = 0; i < k; i++) {
+            this.children.add(Spliterators.iterator(children.get(i)));
+            this.indices[i] = computeIndices(columns, new ArrayList<>(structures.get(i).keySet()));
+        }
+
+        for (int i = 0; i < k; i++) {
+            advance(i);
+        }
+        tree[0] = build(1);
+    }
+
+    /**
+     * Returns the index in the child of each column of the union, -1 if absent.
+     */
+    static int[] computeIndices(List<String> columns, List<String> childColumns) {
+        int[] indices = new int[columns.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = childColumns.indexOf(columns.get(i));
+        }
+        return indices;
+    }
+
+    /**
+     * Plays the matches of the subtree at node and returns its winner.
+     */
+    private int build(int node) {
+        int k = tree.length;
+        if (node >= k) {
+            return node - k;
+        }
+        int left = build(2 * node);
+        int right = build(2 * node + 1);
+        if (beats(right, left)) {
+            tree[node] = left;
+            return right;
+        } else {
+            tree[node] = right;
+            return left;
+        }
+    }
+
+    /**
+     * Plays the matches from the leaf to the root.
+     */
+    private void replay(int leaf) {
+        int winner = leaf;
+        for (int node = (leaf + tree.length) >> 1; node > 0; node >>= 1) {
+            if (beats(tree[node], winner)) {
+                int loser = winner;
+                winner = tree[node];
+                tree[node] = loser;
+            }
+        }
+        tree[0] = winner;
+    }
+
+    /**
+     * Returns true if the head of child a comes before the head of child b. Exhausted children are last.
+     */
+    private boolean beats(int a, int b) {
+        DataPoint first = heads[a];
+        DataPoint second = heads[b];
+        if (first == null) {
+            return false;
+        }
+        if (second == null) {
+            return true;
+        }
+        int result = ordering.compare(first, second);
+        return result < 0 || (result == 0 && a < b);
+    }
+
+    /**
+     * Copies the next row of the child into its head.
+     */
+    private void advance(int child) {
+        Iterator<DataPoint> iterator = children.get(child);
+        if (!iterator.hasNext()) {
+            heads[child] = null;
+            return;
+        }
+        heads[child] = copy(iterator.next(), nextBuffer(child), indices[child]);
+    }
+
+    /**
+     * Copies the values of the source into the target using the indices computed by
+     * {@link #computeIndices(List, List)}.
+     *
+     * @return the target
+     */
+    static DataPoint copy(DataPoint source, DataPoint target, int[] indices) {
+        for (int i = 0; i < indices.length; i++) {
+            target.set(i, indices[i] < 0 ? VTLObject.NULL : source.get(indices[i]));
+        }
+        return target;
+    }
+
+    private DataPoint nextBuffer(int child) {
+        if (buffers == null) {
+            return DataPoint.create(size);
+        }
+        DataPoint[] pair = buffers[child];
+        DataPoint buffer = pair[1];
+        // Consumers are allowed to change the size of the rows.
+        if (buffer == null || buffer.size() != size) {
+            buffer = DataPoint.create(size);
+        }
+        pair[1] = pair[0];
+        pair[0] = buffer;
+        return buffer;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super DataPoint> action) {
+        int winner = tree[0];
+        DataPoint current = heads[winner];
+        if (current == null) {
+            return false;
+        }
+
+        advance(winner);
+        replay(winner);
+
+        DataPoint next = heads[tree[0]];
+        if (next != null && ordering.compare(current, next) == 0) {
+            throw duplicateError(structure, current);
+        }
+
+        action.accept(current);
+        return true;
+    }
+
+    static VTLRuntimeException duplicateError(DataStructure structure, DataPoint dataPoint) {
+        //TODO: define an error code encoding. See VTL User Manuel "Constraints and errors"
+        Map<Component, VTLObject> row = structure.asMap(dataPoint);
+        String rowAsString = row.keySet().stream()
+                .map(k -> k.getRole() + ":" + row.get(k))
+                .collect(Collectors.joining("\n"));
+        return new VTLRuntimeException(String.format("The resulting dataset from a union contains duplicates. Duplicate row: %s", rowAsString), "VTL-1xxx", dataPoint);
+    }
+
+    @Override
+    public Spliterator<DataPoint> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return Spliterator.ORDERED | Spliterator.NONNULL;
+    }
+}
@@ -0,0 +1,268 @@
+package no.ssb.vtl.script.store;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.AbstractIterator;
+import no.ssb.vtl.model.Component;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.script.operations.DataPointCodec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Keeps the results in files of a local directory, so they survive the process.
+ * <p>
+ * Each result is written in a file named after its fingerprint. The file starts with the number of
+ * data points and the data structure, followed by the data points encoded with {@link DataPointCodec}.
+ * The files are written in a temporary file first, then moved.
+ * <p>
+ * The last fingerprint of each statement is kept in a file named after the statement. When a statement
+ * is stored with a new fingerprint, the result of the previous one is deleted.
+ */
+public class FileResultStore implements ResultStore {
+
+    private static final int MAGIC = 0x56544c31;
+    private static final long COUNT_OFFSET = 4;
+    private static final String SUFFIX = ".vtl";
+    private static final String STATEMENT_SUFFIX = ".last";
+
+    private final Path directory;
+    private final Map<String, Dataset> pending = new ConcurrentHashMap<>();
+
+    public FileResultStore(Path directory) throws IOException {
+        this.directory = Files.createDirectories(checkNotNull(directory));
+    }
+
+    @Override
+    public Optional<Dataset> get(String fingerprint) {
+        Dataset dataset = pending.get(fingerprint);
+        if (dataset != null) {
+            return Optional.of(dataset);
+        }
+        Path file = file(fingerprint);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try (DataInputStream input = open(file)) {
+            long count = input.readLong();
+            DataStructure structure = readStructure(input);
+            return Optional.of(new FileDataset(null, fingerprint, structure, null, file, count));
+        } catch (IOException ioe) {
+            // Unreadable results are recomputed.
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Dataset put(String statement, String fingerprint, Dataset dataset) {
+        checkArgument(statement.matches("[0-9a-zA-Z_-]+"), "invalid statement %s", statement);
+        FileDataset stored = new FileDataset(
+                statement, fingerprint, dataset.getDataStructure(), dataset, file(fingerprint), -1
+        );
+        pending.put(fingerprint, stored);
+        return stored;
+    }
+
+    private Path file(String fingerprint) {
+        checkArgument(fingerprint.matches("[0-9a-zA-Z_-]+"), "invalid fingerprint %s", fingerprint);
+        return directory.resolve(fingerprint + SUFFIX);
+    }
+
+    /**
+     * Records the fingerprint as the last one of the statement and deletes the result of the previous one.
+     */
+    private synchronized void supersede(String statement, String fingerprint) throws IOException {
+        Path last = directory.resolve(statement + STATEMENT_SUFFIX);
+        if (Files.exists(last)) {
+            String previous = new String(Files.readAllBytes(last), StandardCharsets.UTF_8);
+            if (previous.equals(fingerprint)) {
+                return;
+            }
+            if (previous.matches("[0-9a-zA-Z_-]+") && !pending.containsKey(previous)) {
+                Files.deleteIfExists(file(previous));
+            }
+        }
+        Path temporary = Files.createTempFile(directory, last.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporary, fingerprint.getBytes(StandardCharsets.UTF_8));
+            move(temporary, last);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException amnse) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static DataInputStream open(Path file) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+        if (input.readInt() != MAGIC) {
+            input.close();
+            throw new IOException("not a result file: " + file);
+        }
+        return input;
+    }
+
+    private static void writeStructure(DataOutputStream output, DataStructure structure) throws IOException {
+        output.writeInt(structure.size());
+        for (Map.Entry<String, Component> entry : structure.entrySet()) {
+            output.writeUTF(entry.getKey());
+            output.writeUTF(entry.getValue().getRole().name());
+            output.writeUTF(entry.getValue().getType().getName());
+        }
+    }
+
+    private static DataStructure readStructure(DataInputStream input) throws IOException {
+        int size = input.readInt();
+        DataStructure.Builder builder = DataStructure.builder();
+        for (int i = 0; i < size; i++) {
+            String name = input.readUTF();
+            Component.Role role = Component.Role.valueOf(input.readUTF());
+            String type = input.readUTF();
+            try {
+                builder.put(name, role, Class.forName(type));
+            } catch (ClassNotFoundException cnfe) {
+                throw new IOException("unknown type " + type, cnfe);
+            }
+        }
+        return builder.build();
+    }
+
+    private final class FileDataset extends StoredDataset {
+
+        // Null when read from the directory.
+        private final String statement;
+        private final Path file;
+        private volatile long count;
+
+        private FileDataset(String statement, String fingerprint, DataStructure structure, Dataset source,
+                            Path file, long count) {
+            super(fingerprint, structure, source);
+            this.statement = statement;
+            this.file = file;
+            this.count = count;
+        }
+
+        @Override
+        void store(Stream<DataPoint> data) {
+            try {
+                Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+                try {
+                    long written = 0;
+                    try (DataOutputStream output = new DataOutputStream(
+                            new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                        output.writeInt(MAGIC);
+                        output.writeLong(-1);
+                        writeStructure(output, getDataStructure());
+                        for (DataPoint dataPoint : (Iterable<DataPoint>) data::iterator) {
+                            DataPointCodec.write(output, dataPoint);
+                            written++;
+                        }
+                    }
+                    try (RandomAccessFile output = new RandomAccessFile(temporary.toFile(), "rw")) {
+                        output.seek(COUNT_OFFSET);
+                        output.writeLong(written);
+                    }
+                    move(temporary, file);
+                    count = written;
+                } finally {
+                    Files.deleteIfExists(temporary);
+                }
+                if (statement != null) {
+                    supersede(statement, getVersion().get());
+                }
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+            pending.remove(getVersion().get(), this);
+        }
+
+        @Override
+        Stream<DataPoint> read() {
+            DataInputStream input;
+            try {
+                input = open(file);
+                input.readLong();
+                readStructure(input);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+            AbstractIterator<DataPoint> iterator = new AbstractIterator<DataPoint>() {
+                @Override
+                protected DataPoint computeNext() {
+                    try {
+                        return DataPointCodec.read(input);
+                    } catch (EOFException eof) {
+                        close(input);
+                        return endOfData();
+                    } catch (IOException ioe) {
+                        throw new UncheckedIOException(ioe);
+                    }
+                }
+            };
+            return StreamSupport.stream(
+                    Spliterators.spliterator(iterator, count, Spliterator.ORDERED | Spliterator.NONNULL), false
+            ).onClose(() -> close(input));
+        }
+
+        private void close(DataInputStream input) {
+            try {
+                input.close();
+            } catch (IOException ioe) {
+                // ignore.
+            }
+        }
+
+        @Override
+        long count() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package no.ssb.vtl.script.store;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Dataset;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Keeps the results in memory.
+ * <p>
+ * At most {@link #DEFAULT_MAXIMUM_SIZE} results are kept by default, the least recently used are evicted.
+ */
+public class InMemoryResultStore implements ResultStore {
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 64;
+
+    private final Cache<String, Dataset> datasets;
+    // The last fingerprint of each statement.
+    private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+
+    public InMemoryResultStore() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * @param maximumSize the maximum number of results kept.
+     */
+    public InMemoryResultStore(long maximumSize) {
+        checkArgument(maximumSize >= 0, "the maximum size cannot be negative");
+        this.datasets = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    @Override
+    public Optional<Dataset> get(String fingerprint) {
+        return Optional.ofNullable(datasets.getIfPresent(fingerprint));
+    }
+
+    @Override
+    public Dataset put(String statement, String fingerprint, Dataset dataset) {
+        Dataset stored = new MemoryDataset(fingerprint, dataset.getDataStructure(), dataset);
+        datasets.put(fingerprint, stored);
+        String previous = fingerprints.put(statement, fingerprint);
+        if (previous != null && !previous.equals(fingerprint)) {
+            datasets.invalidate(previous);
+        }
+        return stored;
+    }
+
+    /**
+     * Returns the number of results kept.
+     */
+    public long size() {
+        return datasets.size();
+    }
+
+    /**
+     * Removes all the results.
+     */
+    public void clear() {
+        datasets.invalidateAll();
+        fingerprints.clear();
+    }
+
+    private static final class MemoryDataset extends StoredDataset {
+
+        private volatile ImmutableList<DataPoint> data;
+
+        private MemoryDataset(String fingerprint, DataStructure structure, Dataset source) {
+            super(fingerprint, structure, source);
+        }
+
+        @Override
+        void store(Stream<DataPoint> stream) {
+            ImmutableList.Builder<DataPoint> builder = ImmutableList.builder();
+            // Copy since the data points can be recycled.
+            stream.forEach(dataPoint -> builder.add(DataPoint.create(dataPoint)));
+            data = builder.build();
+        }
+
+        @Override
+        Stream<DataPoint> read() {
+            return data.stream().map(DataPoint::create);
+        }
+
+        @Override
+        long count() {
+            return data.size();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package no.ssb.vtl.script.store;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.connectors.Connector;
+import no.ssb.vtl.connectors.ConnectorException;
+import no.ssb.vtl.model.Dataset;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Returns the same dataset instance for an identifier until it is put.
+ */
+final class MemoizingConnector implements Connector {
+
+    private final Connector delegate;
+    private final Map<String, Dataset> datasets = new ConcurrentHashMap<>();
+
+    MemoizingConnector(Connector delegate) {
+        this.delegate = checkNotNull(delegate);
+    }
+
+    @Override
+    public boolean canHandle(String identifier) {
+        return delegate.canHandle(identifier);
+    }
+
+    @Override
+    public Dataset getDataset(String identifier) throws ConnectorException {
+        Dataset dataset = datasets.get(identifier);
+        if (dataset == null) {
+            dataset = delegate.getDataset(identifier);
+            Dataset previous = datasets.putIfAbsent(identifier, dataset);
+            if (previous != null) {
+                dataset = previous;
+            }
+        }
+        return dataset;
+    }
+
+    @Override
+    public Dataset putDataset(String identifier, Dataset dataset) throws ConnectorException {
+        datasets.remove(identifier);
+        return delegate.putDataset(identifier, dataset);
+    }
+}
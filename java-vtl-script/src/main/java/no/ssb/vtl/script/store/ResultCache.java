@@ -0,0 +1,176 @@
+package no.ssb.vtl.script.store;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import no.ssb.vtl.connectors.Connector;
+import no.ssb.vtl.connectors.ConnectorException;
+import no.ssb.vtl.dependencies.Statement;
+import no.ssb.vtl.model.Dataset;
+
+import javax.script.Bindings;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reuses the datasets computed by the statements of previous executions of a script.
+ * <p>
+ * The fingerprint of a statement is a hash of its text, the values of the scalar variables and the
+ * versions of the datasets it reads, including the datasets returned by the connectors
+ * ({@link Dataset#getVersion()}). The datasets computed by the statements are stored with their
+ * fingerprint as version, so the statements that use them can be fingerprinted in turn. A statement
+ * that reads a dataset without version or puts a dataset is always executed.
+ * <p>
+ * Use one instance per execution; the datasets of the connectors are memoized.
+ */
+public final class ResultCache {
+
+    private final ResultStore store;
+    private final ImmutableList<Connector> connectors;
+
+    public ResultCache(ResultStore store, List<Connector> connectors) {
+        this.store = checkNotNull(store);
+        ImmutableList.Builder<Connector> memoized = ImmutableList.builder();
+        for (Connector connector : connectors) {
+            memoized.add(new MemoizingConnector(connector));
+        }
+        this.connectors = memoized.build();
+    }
+
+    /**
+     * Returns the connectors the statements must be executed with.
+     */
+    public ImmutableList<Connector> getConnectors() {
+        return connectors;
+    }
+
+    /**
+     * Binds the stored result of the statement if any, otherwise executes it and stores its result.
+     *
+     * @param statement the statement.
+     * @param bindings  the bindings the statement is executed with.
+     * @param execution executes the statement and returns its value.
+     * @return the value of the statement.
+     */
+    public Object evaluate(Statement statement, Bindings bindings, Supplier<Object> execution) {
+        Optional<String> fingerprint = fingerprint(statement, bindings);
+        if (!fingerprint.isPresent()) {
+            return execution.get();
+        }
+        Optional<Dataset> stored = store.get(fingerprint.get());
+        if (stored.isPresent()) {
+            bindings.put(statement.getTarget(), stored.get());
+            return stored.get();
+        }
+
+        Object value = execution.get();
+        if (value instanceof Dataset) {
+            value = store(statement, fingerprint.get(), (Dataset) value);
+            bindings.put(statement.getTarget(), value);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the stored result of the statement with the given fingerprint if any, otherwise
+     * executes it and stores its result.
+     *
+     * @param statement   the statement.
+     * @param fingerprint the fingerprint of the statement, see {@link #fingerprint(Statement, Bindings)}.
+     * @param execution   executes the statement and returns its dataset.
+     * @return the dataset of the statement.
+     */
+    public Dataset evaluate(Statement statement, String fingerprint, Supplier<Dataset> execution) {
+        Optional<Dataset> stored = store.get(fingerprint);
+        if (stored.isPresent()) {
+            return stored.get();
+        }
+        return store(statement, fingerprint, execution.get());
+    }
+
+    private Dataset store(Statement statement, String fingerprint, Dataset dataset) {
+        // Versioned datasets (from connectors) are not copied.
+        if (dataset.getVersion().isPresent()) {
+            return dataset;
+        }
+        return store.put(identify(statement), fingerprint, dataset);
+    }
+
+    /**
+     * Returns the fingerprint of the statement, or empty if it must be executed.
+     */
+    public Optional<String> fingerprint(Statement statement, Bindings bindings) {
+        if (!statement.getSinks().isEmpty()) {
+            return Optional.empty();
+        }
+
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(statement.getContext().getText(), StandardCharsets.UTF_8);
+        for (String variable : new TreeSet<>(statement.getReads())) {
+            hasher.putString("\0" + variable + "=", StandardCharsets.UTF_8);
+            Object value = bindings.get(variable);
+            if (value instanceof Dataset) {
+                Optional<String> version = ((Dataset) value).getVersion();
+                if (!version.isPresent()) {
+                    return Optional.empty();
+                }
+                hasher.putString("dataset:" + version.get(), StandardCharsets.UTF_8);
+            } else if (value != null) {
+                hasher.putString(value.getClass().getName() + ":" + value, StandardCharsets.UTF_8);
+            }
+        }
+        for (String source : new TreeSet<>(statement.getSources())) {
+            Optional<String> version = getVersion(source);
+            if (!version.isPresent()) {
+                return Optional.empty();
+            }
+            hasher.putString("\0get:" + source + "=" + version.get(), StandardCharsets.UTF_8);
+        }
+        return Optional.of(hasher.hash().toString());
+    }
+
+    /**
+     * Returns an identifier of the statement that does not depend on its inputs.
+     */
+    private static String identify(Statement statement) {
+        return Hashing.sha256().hashString(statement.getContext().getText(), StandardCharsets.UTF_8).toString();
+    }
+
+    private Optional<String> getVersion(String identifier) {
+        try {
+            for (Connector connector : connectors) {
+                if (connector.canHandle(identifier)) {
+                    return connector.getDataset(identifier).getVersion();
+                }
+            }
+        } catch (ConnectorException ce) {
+            // The execution reports it.
+        }
+        return Optional.empty();
+    }
+}
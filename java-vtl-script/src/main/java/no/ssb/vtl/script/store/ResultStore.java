@@ -0,0 +1,52 @@
+package no.ssb.vtl.script.store;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.Dataset;
+
+import java.util.Optional;
+
+/**
+ * Keeps the datasets computed by the statements of a script, by fingerprint.
+ * <p>
+ * The fingerprint of a statement is computed from its text and from the versions of the datasets and
+ * the values of the variables it reads. See {@link ResultCache}.
+ */
+public interface ResultStore {
+
+    /**
+     * Returns the dataset stored with the fingerprint.
+     */
+    Optional<Dataset> get(String fingerprint);
+
+    /**
+     * Stores a dataset.
+     * <p>
+     * The data is read from the given dataset and stored the first time the returned dataset is used.
+     * The result stored before for the same statement with another fingerprint is removed since its
+     * inputs changed.
+     *
+     * @param statement   identifies the statement across executions.
+     * @param fingerprint the fingerprint of the statement.
+     * @return a dataset that reads the stored data, with the fingerprint as version.
+     */
+    Dataset put(String statement, String fingerprint, Dataset dataset);
+}
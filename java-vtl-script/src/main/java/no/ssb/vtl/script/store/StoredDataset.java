@@ -0,0 +1,113 @@
+package no.ssb.vtl.script.store;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.Filtering;
+import no.ssb.vtl.model.Ordering;
+import no.ssb.vtl.script.operations.DataPointSorter;
+import no.ssb.vtl.script.operations.MemoryTracker;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A dataset that stores the data of another dataset the first time it is read.
+ */
+abstract class StoredDataset implements Dataset {
+
+    private final String fingerprint;
+    private final DataStructure structure;
+
+    // Null once the data is stored.
+    private Dataset source;
+
+    StoredDataset(String fingerprint, DataStructure structure, Dataset source) {
+        this.fingerprint = checkNotNull(fingerprint);
+        this.structure = checkNotNull(structure);
+        this.source = source;
+    }
+
+    /**
+     * Stores the data. The data points can be recycled.
+     */
+    abstract void store(Stream<DataPoint> data);
+
+    /**
+     * Reads the stored data.
+     */
+    abstract Stream<DataPoint> read();
+
+    /**
+     * Returns the number of stored data points.
+     */
+    abstract long count();
+
+    private synchronized void ensureStored() {
+        if (source != null) {
+            try (Stream<DataPoint> data = source.getData()) {
+                store(data);
+            }
+            source = null;
+        }
+    }
+
+    @Override
+    public Stream<DataPoint> getData() {
+        ensureStored();
+        return read();
+    }
+
+    @Override
+    public Optional<Stream<DataPoint>> getData(Ordering orders, Filtering filtering, Set<String> components) {
+        Stream<DataPoint> data = getData().filter(filtering);
+        if (orders.columns().isEmpty()) {
+            return Optional.of(data);
+        }
+        return Optional.of(DataPointSorter.sort(data, orders, MemoryTracker.create()));
+    }
+
+    @Override
+    public Optional<Map<String, Integer>> getDistinctValuesCount() {
+        return Optional.empty();
+    }
+
+    @Override
+    public synchronized Optional<Long> getSize() {
+        return source != null ? source.getSize() : Optional.of(count());
+    }
+
+    @Override
+    public DataStructure getDataStructure() {
+        return structure;
+    }
+
+    @Override
+    public Optional<String> getVersion() {
+        return Optional.of(fingerprint);
+    }
+}
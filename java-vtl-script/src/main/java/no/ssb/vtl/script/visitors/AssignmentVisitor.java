@@ -27,6 +27,7 @@ import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.parser.VTLBaseVisitor;
 import no.ssb.vtl.parser.VTLParser;
 import no.ssb.vtl.script.error.ContextualRuntimeException;
+import no.ssb.vtl.script.operations.MaterializedOperation;
 import no.ssb.vtl.script.visitors.foreach.ForeachVisitor;
 
 import javax.script.Bindings;
@@ -118,6 +119,11 @@ public class AssignmentVisitor extends VTLBaseVisitor<Object> {
         return connectorVisitor.visit(ctx);
     }
 
+    @Override
+    public Object visitPersistFunction(VTLParser.PersistFunctionContext ctx) {
+        return new MaterializedOperation((Dataset) visit(ctx.datasetExpression()));
+    }
+
     @Override
     public Object visitWithClause(VTLParser.WithClauseContext ctx) {
         Dataset dataset = (Dataset) visit(ctx.datasetExpression());
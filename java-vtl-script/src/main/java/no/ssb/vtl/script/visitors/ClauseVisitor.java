@@ -43,8 +43,12 @@ package no.ssb.vtl.script.visitors;
 import com.google.common.collect.ImmutableMap;
 import no.ssb.vtl.model.Component;
 import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.Ordering;
+import no.ssb.vtl.model.VtlOrdering;
 import no.ssb.vtl.parser.VTLBaseVisitor;
 import no.ssb.vtl.parser.VTLParser;
+import no.ssb.vtl.script.error.ContextualRuntimeException;
+import no.ssb.vtl.script.operations.limit.LimitOperation;
 import no.ssb.vtl.script.operations.rename.RenameOperation;
 import no.ssb.vtl.script.operations.join.ComponentBindings;
 
@@ -96,4 +100,30 @@ public class ClauseVisitor extends VTLBaseVisitor<Function<Dataset, Dataset>> {
             return new RenameOperation(dataset, names.build(), roles.build());
         };
     }
+
+    @Override
+    public Function<Dataset, Dataset> visitLimitClause(VTLParser.LimitClauseContext ctx) {
+        VTLParser.LimitContext limit = ctx.limit();
+        Long count = LiteralVisitor.getInstance().visitIntegerLiteral(limit.integerLiteral()).get();
+        if (count < 0) {
+            throw new ContextualRuntimeException(String.format("invalid limit %s", count), limit.integerLiteral());
+        }
+        return dataset -> {
+
+            ComponentBindings bindings = new ComponentBindings(dataset);
+            ComponentVisitor componentVisitor = new ComponentVisitor(bindings);
+
+            VtlOrdering.Builder ordering = VtlOrdering.using(dataset);
+            for (VTLParser.LimitOrderContext order : limit.limitOrder()) {
+                // Check is defined.
+                componentVisitor.visit(order.variable());
+                Ordering.Direction direction = order.direction != null && order.direction.getType() == VTLParser.DESC
+                        ? Ordering.Direction.DESC
+                        : Ordering.Direction.ASC;
+                ordering.then(direction, order.variable().getText());
+            }
+
+            return new LimitOperation(dataset, ordering.build(), count);
+        };
+    }
 }
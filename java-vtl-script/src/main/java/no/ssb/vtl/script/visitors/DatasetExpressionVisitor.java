@@ -27,6 +27,8 @@ import no.ssb.vtl.parser.VTLBaseVisitor;
 import no.ssb.vtl.parser.VTLParser;
 import no.ssb.vtl.script.VTLDataset;
 import no.ssb.vtl.script.error.ContextualRuntimeException;
+import no.ssb.vtl.script.operations.MaterializedOperation;
+import no.ssb.vtl.script.operations.union.SetOperation;
 import no.ssb.vtl.script.operations.union.UnionOperation;
 import no.ssb.vtl.script.visitors.join.JoinBodyVisitor;
 
@@ -67,6 +69,22 @@ public class DatasetExpressionVisitor extends VTLBaseVisitor<Dataset> {
 
     }
 
+    @Override
+    public Dataset visitSetExpression(VTLParser.SetExpressionContext ctx) {
+        Dataset left = visit(ctx.left);
+        Dataset right = visit(ctx.right);
+        try {
+            return new SetOperation(SetOperation.Type.valueOf(ctx.op.getText().toUpperCase()), left, right);
+        } catch (Exception e) {
+            throw new ContextualRuntimeException(e, ctx);
+        }
+    }
+
+    @Override
+    public Dataset visitPersistFunction(VTLParser.PersistFunctionContext ctx) {
+        return new MaterializedOperation(visit(ctx.datasetExpression()));
+    }
+
     @Override
     public Dataset visitJoinExpression(VTLParser.JoinExpressionContext ctx) {
         JoinBodyVisitor joinBodyVisitor = new JoinBodyVisitor(this);
@@ -31,6 +31,7 @@ import no.ssb.vtl.parser.VTLParser;
 import no.ssb.vtl.script.VTLDataset;
 import no.ssb.vtl.script.error.ContextualRuntimeException;
 import no.ssb.vtl.script.error.VTLRuntimeException;
+import no.ssb.vtl.script.expressions.ExpressionSimplifier;
 import no.ssb.vtl.script.expressions.FunctionExpression;
 import no.ssb.vtl.script.expressions.IfThenElseExpression;
 import no.ssb.vtl.script.expressions.LiteralExpression;
@@ -109,6 +110,18 @@ public class ExpressionVisitor extends VTLBaseVisitor<VTLExpression> {
         return scope;
     }
 
+    /**
+     * Visits the tree and simplifies the resulting expression. The operands are visited, and
+     * simplified, first so constant sub-expressions are folded bottom up.
+     *
+     * @see ExpressionSimplifier
+     */
+    @Override
+    public VTLExpression visit(ParseTree tree) {
+        VTLExpression expression = super.visit(tree);
+        return expression == null ? null : ExpressionSimplifier.simplify(expression);
+    }
+
     @Override
     public VTLExpression visitLiteral(VTLParser.LiteralContext ctx) {
         VTLObject literal = literalVisitor.visit(ctx);
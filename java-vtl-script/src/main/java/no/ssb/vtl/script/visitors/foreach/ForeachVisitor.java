@@ -64,9 +64,7 @@ public class ForeachVisitor extends VTLBaseVisitor<ForeachOperation> {
             identifiers.add(identifier.getText());
         }
 
-        ForeachOperation foreachOperation = new ForeachOperation(datasets.build(), identifiers.build());
-
-        foreachOperation.setBlock(bindings -> {
+        return new ForeachOperation(datasets.build(), identifiers.build(), bindings -> {
             AssignmentVisitor assignmentVisitor = new AssignmentVisitor(bindings);
             Object last = null;
             for (StatementContext statementContext : ctx.statement()) {
@@ -74,7 +72,5 @@ public class ForeachVisitor extends VTLBaseVisitor<ForeachOperation> {
             }
             return VTLDataset.of((Dataset) last);
         });
-
-        return foreachOperation;
     }
 }
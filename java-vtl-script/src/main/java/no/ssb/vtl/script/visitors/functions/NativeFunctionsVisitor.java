@@ -31,6 +31,7 @@ import no.ssb.vtl.parser.VTLBaseVisitor;
 import no.ssb.vtl.parser.VTLParser;
 import no.ssb.vtl.script.error.ContextualRuntimeException;
 import no.ssb.vtl.script.expressions.FunctionExpression;
+import no.ssb.vtl.script.expressions.LiteralExpression;
 import no.ssb.vtl.script.functions.VTLAbs;
 import no.ssb.vtl.script.functions.VTLCeil;
 import no.ssb.vtl.script.functions.VTLDateFromString;
@@ -137,6 +138,11 @@ public class NativeFunctionsVisitor extends VTLBaseVisitor<VTLExpression> {
             );
         }
 
+        // nvl(null, x) is x and nvl(literal, x) is the literal.
+        if (nullable instanceof LiteralExpression) {
+            return ((LiteralExpression) nullable).getLiteral().get() == null ? replacement : nullable;
+        }
+
         return new FunctionExpression<VTLObject>(new VTLNvl(), finalNullable, replacement) {
             @Override
             public Class getVTLType() {
@@ -0,0 +1,131 @@
+package no.ssb.vtl.script;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.Component.Role;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.StaticDataset;
+import no.ssb.vtl.script.error.ExecutionCancelledException;
+import no.ssb.vtl.script.error.ExecutionLimitExceededException;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.script.Bindings;
+import javax.script.ScriptException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ExecutionTest {
+
+    private VTLScriptEngine engine;
+    private Bindings bindings;
+
+    @Before
+    public void setUp() {
+        engine = new VTLScriptEngine();
+        bindings = engine.createBindings();
+        StaticDataset.ValueBuilder builder = StaticDataset.create(DataStructure.builder()
+                .put("id", Role.IDENTIFIER, Long.class)
+                .put("m1", Role.MEASURE, Long.class)
+                .build());
+        for (long i = 0; i < 1000; i++) {
+            builder.addPoints(i, i);
+        }
+        bindings.put("ds", builder.build());
+    }
+
+    @Test
+    public void testRowLimit() throws Exception {
+        Execution execution = engine.newExecution().setRowLimit(100);
+        engine.eval("result := [ds]{ m2 := m1 + 1 }", bindings, execution);
+
+        Dataset result = (Dataset) bindings.get("result");
+        assertThatThrownBy(() -> count(result.getData()))
+                .isInstanceOf(ExecutionLimitExceededException.class)
+                .hasMessageContaining("100 rows");
+        assertThat(execution.isCancelled()).isTrue();
+        assertThat(execution.getRowCount()).isGreaterThan(100);
+    }
+
+    @Test
+    public void testRowCount() throws Exception {
+        Execution execution = engine.newExecution().setRowLimit(10_000);
+        engine.eval("result := [ds]{ m2 := m1 + 1 }", bindings, execution);
+
+        assertThat(count(((Dataset) bindings.get("result")).getData())).isEqualTo(1000);
+        // Includes the rows of the intermediate operations.
+        assertThat(execution.getRowCount()).isGreaterThanOrEqualTo(1000);
+        assertThat(execution.isCancelled()).isFalse();
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        Execution execution = engine.newExecution();
+        engine.eval("result := [ds]{ m2 := m1 + 1 }", bindings, execution);
+        Dataset result = (Dataset) bindings.get("result");
+
+        execution.cancel();
+        assertThatThrownBy(() -> count(result.getData()))
+                .isInstanceOf(ExecutionCancelledException.class)
+                .isNotInstanceOf(ExecutionLimitExceededException.class);
+        assertThatThrownBy(() -> engine.eval("other := ds", bindings, execution))
+                .isInstanceOf(ScriptException.class)
+                .hasCauseInstanceOf(ExecutionCancelledException.class);
+        assertThat(bindings).doesNotContainKey("other");
+    }
+
+    @Test(timeout = 10_000)
+    public void testTimeout() throws Exception {
+        Execution execution = engine.newExecution().setTimeout(500, TimeUnit.MILLISECONDS);
+        engine.eval("result := [ds]{ m2 := m1 + 1 }", bindings, execution);
+
+        Dataset result = (Dataset) bindings.get("result");
+        assertThatThrownBy(() -> result.getData().forEach(dataPoint -> sleep()))
+                .isInstanceOf(ExecutionLimitExceededException.class)
+                .hasMessageContaining("timeout");
+    }
+
+    @Test
+    public void testWithoutExecution() throws Exception {
+        engine.eval("result := [ds]{ m2 := m1 + 1 }", bindings);
+        assertThat(count(((Dataset) bindings.get("result")).getData())).isEqualTo(1000);
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long count(Stream<DataPoint> stream) {
+        try (Stream<DataPoint> data = stream) {
+            return data.collect(Collectors.counting());
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package no.ssb.vtl.script;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.connectors.Connector;
+import no.ssb.vtl.model.Component.Role;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.StaticDataset;
+import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.script.error.VTLCompileException;
+import no.ssb.vtl.script.error.VTLScriptException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class StatementSchedulerTest {
+
+    private ExecutorService executor;
+    private Connector connector = mock(Connector.class);
+    private VTLScriptEngine engine = new VTLScriptEngine(connector);
+    private Bindings bindings = engine.getBindings(ScriptContext.ENGINE_SCOPE);
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+        engine.setExecutor(executor);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void testIndependentStatementsRunConcurrently() throws Exception {
+        // Both get need to be running at the same time for any of them to return.
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        when(connector.canHandle(anyString())).thenReturn(true);
+        when(connector.getDataset("a")).then(invocation -> {
+            barrier.await(10, TimeUnit.SECONDS);
+            return dataset("1", 10L);
+        });
+        when(connector.getDataset("b")).then(invocation -> {
+            barrier.await(10, TimeUnit.SECONDS);
+            return dataset("2", 20L);
+        });
+
+        engine.eval("" +
+                "a := get(\"a\")\n" +
+                "b := get(\"b\")\n" +
+                "c := union(a, b)");
+
+        assertThat(bindings).containsOnlyKeys("a", "b", "c");
+        assertThat(values("c")).containsExactly("1", 10L, "2", 20L);
+    }
+
+    @Test
+    public void testReassignments() throws Exception {
+        when(connector.canHandle(anyString())).thenReturn(true);
+        when(connector.getDataset("first")).thenReturn(dataset("1", 10L));
+        when(connector.getDataset("second")).thenReturn(dataset("2", 20L));
+
+        engine.eval("" +
+                "x := get(\"first\")\n" +
+                "y := x\n" +
+                "x := get(\"second\")\n" +
+                "z := x");
+
+        assertThat(values("x")).containsExactly("2", 20L);
+        assertThat(values("y")).containsExactly("1", 10L);
+        assertThat(values("z")).containsExactly("2", 20L);
+    }
+
+    @Test
+    public void testErrorsInScriptOrder() throws Exception {
+        when(connector.canHandle(anyString())).thenReturn(true);
+        when(connector.getDataset("first")).thenReturn(dataset("1", 10L));
+
+        VTLCompileException exception = catchThrowableOfType(() -> engine.eval("" +
+                "x := get(\"first\")\n" +
+                "a := unknown1\n" +
+                "x := unknown2\n" +
+                "y := x"), VTLCompileException.class);
+
+        assertThat(exception.getErrors())
+                .extracting(VTLScriptException::getStartLine)
+                .containsExactly(2, 3);
+
+        // Same as the sequential execution; the failed assignment is skipped.
+        assertThat(bindings).containsOnlyKeys("x", "y");
+        assertThat(values("y")).containsExactly("1", 10L);
+    }
+
+    private List<Object> values(String variable) {
+        try (Stream<DataPoint> data = ((Dataset) bindings.get(variable)).getData()) {
+            return data.flatMap(dataPoint -> dataPoint.stream().map(VTLObject::get)).collect(Collectors.toList());
+        }
+    }
+
+    private static Dataset dataset(String id, Long value) {
+        return StaticDataset.create()
+                .addComponent("id", Role.IDENTIFIER, String.class)
+                .addComponent("value", Role.MEASURE, Long.class)
+                .addPoints(id, value)
+                .build();
+    }
+}
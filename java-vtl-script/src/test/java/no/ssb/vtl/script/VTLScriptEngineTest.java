@@ -31,6 +31,10 @@ import no.ssb.vtl.model.StaticDataset;
 import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.model.VtlOrdering;
 import no.ssb.vtl.parser.VTLLexer;
+import no.ssb.vtl.script.error.VTLCompileException;
+import no.ssb.vtl.script.error.VTLScriptException;
+import no.ssb.vtl.script.operations.AbstractDatasetOperation;
+import no.ssb.vtl.script.operations.MaterializedOperation;
 import no.ssb.vtl.script.support.VTLPrintStream;
 import org.antlr.v4.runtime.Vocabulary;
 import org.apache.maven.artifact.versioning.ComparableVersion;
@@ -49,16 +53,24 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static no.ssb.vtl.model.Component.Role;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
 import static org.assertj.core.api.Assertions.entry;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class VTLScriptEngineTest {
@@ -93,11 +105,11 @@ public class VTLScriptEngineTest {
                 "time_aggregate", "exists_in_all", "match_characters",
                 "timeshift", "join", "flow_to_stock", "identifier",
                 "string_from_date", "subscript", "transcode",
-                "setdiff", "current_date", "measure",
+                "current_date", "measure",
                 "extract", "eval", "concatenation",
                 "unique", "true", "exists_in",
-                "func_dep", "symdiff", "attribute",
-                "fill_time_series", "intersect", "not_exists_in_all",
+                "func_dep", "attribute",
+                "fill_time_series", "not_exists_in_all",
                 "false", "any",
                 "lenght", "stock_to_flow", "not_exists_in",
                 "aggregatefunctions", "alterdataset", "||",
@@ -110,7 +122,7 @@ public class VTLScriptEngineTest {
                 ":=", "role", "errorlevel",
                 "valid", "[", "]",
                 "errorcode", "prod", "length",
-                "{", "}"
+                "{", "}", "order by"
         );
 
         Vocabulary vocabulary = VTLLexer.VOCABULARY;
@@ -552,6 +564,75 @@ public class VTLScriptEngineTest {
                 );
     }
 
+    @Test
+    public void testJoinFilterInAndBetween() throws Exception {
+        Dataset ds1 = StaticDataset.create()
+                .addComponent("id1", Role.IDENTIFIER, String.class)
+                .addComponent("id2", Role.IDENTIFIER, String.class)
+                .addComponent("m1", Role.MEASURE, Long.class)
+                .addComponent("m2", Role.MEASURE, Long.class)
+
+                .addPoints("1", "one", 1L, 10L)
+                .addPoints("1", "two", 2L, 20L)
+                .addPoints("2", "one", 3L, 30L)
+                .addPoints("2", "two", 4L, 40L)
+
+                .build();
+
+        Dataset ds2 = StaticDataset.create()
+                .addComponent("id1", Role.IDENTIFIER, String.class)
+                .addComponent("id2", Role.IDENTIFIER, String.class)
+                .addComponent("m1", Role.MEASURE, Long.class)
+
+                .addPoints("1", "one", 5L)
+                .addPoints("1", "two", 6L)
+                .addPoints("2", "one", 7L)
+                .addPoints("2", "two", 8L)
+
+                .build();
+
+        bindings.put("ds1", ds1);
+        bindings.put("ds2", ds2);
+        engine.eval("" +
+                "filtered := [ds1]{ filter m1 = 1 or m1 = 3 }\n" +
+                "joined := [ds1, ds2]{ filter ds1.m1 >= 1 and ds1.m1 <= 2, keep ds1.m1 }\n" +
+                "renamed := [ds1]{ rename m1 to n, filter n = 1 or n = 3, keep n }\n" +
+                "folded := [ds1]{ fold m1, m2 to type, v, filter v = 1 or v = 3 }\n" +
+                "unfolded := [ds1]{ unfold id2, m1 to \"one\", \"two\", filter one = 1 or one = 3 }"
+        );
+
+        assertThat(((Dataset) bindings.get("filtered")).getData()).flatExtracting(input -> input)
+                .extracting(VTLObject::get)
+                .containsExactly(
+                        "1", "one", 1L, 10L,
+                        "2", "one", 3L, 30L
+                );
+        assertThat(((Dataset) bindings.get("joined")).getData()).flatExtracting(input -> input)
+                .extracting(VTLObject::get)
+                .containsExactly(
+                        "1", "one", 1L,
+                        "1", "two", 2L
+                );
+        assertThat(((Dataset) bindings.get("renamed")).getData()).flatExtracting(input -> input)
+                .extracting(VTLObject::get)
+                .containsExactly(
+                        "1", "one", 1L,
+                        "2", "one", 3L
+                );
+        assertThat(((Dataset) bindings.get("folded")).getData()).flatExtracting(input -> input)
+                .extracting(VTLObject::get)
+                .containsExactly(
+                        "1", "one", "m1", 1L,
+                        "2", "one", "m1", 3L
+                );
+        assertThat(((Dataset) bindings.get("unfolded")).getData()).flatExtracting(input -> input)
+                .extracting(VTLObject::get)
+                .containsExactly(
+                        "1", 1L, 2L,
+                        "2", 3L, 4L
+                );
+    }
+
     @Test
     public void testRename() throws Exception {
 
@@ -578,6 +659,32 @@ public class VTLScriptEngineTest {
         );
     }
 
+    @Test
+    public void testLimit() throws Exception {
+
+        dataset = StaticDataset.create()
+                .addComponent("id1", Role.IDENTIFIER, String.class)
+                .addComponent("me1", Role.MEASURE, Long.class)
+                .addPoints("a", 3L)
+                .addPoints("b", 1L)
+                .addPoints("c", 2L)
+                .addPoints("d", 3L)
+                .build();
+
+        bindings.put("ds1", dataset);
+        engine.eval("ds2 := ds1[limit 2]"
+                + "ds3 := ds1[limit 3 order by me1 desc, id1]");
+
+        assertThat(((Dataset) bindings.get("ds2")).getData())
+                .flatExtracting(input -> input)
+                .extracting(VTLObject::get)
+                .containsExactly("a", 3L, "b", 1L);
+        assertThat(((Dataset) bindings.get("ds3")).getData())
+                .flatExtracting(input -> input)
+                .extracting(VTLObject::get)
+                .containsExactly("a", 3L, "d", 3L, "c", 2L);
+    }
+
     @Test
     public void testCheckSingleRule() throws Exception {
 
@@ -1121,6 +1228,190 @@ public class VTLScriptEngineTest {
                 );
     }
 
+    @Test
+    public void testSetOperations() throws Exception {
+        Dataset ds1 = StaticDataset.create()
+                .addComponent("id1", Role.IDENTIFIER, String.class)
+                .addComponent("m1", Role.MEASURE, Long.class)
+                .addPoints("1", 10L)
+                .addPoints("2", 20L)
+                .build();
+
+        Dataset ds2 = StaticDataset.create()
+                .addComponent("id1", Role.IDENTIFIER, String.class)
+                .addComponent("m1", Role.MEASURE, Long.class)
+                .addPoints("2", 200L)
+                .addPoints("3", 300L)
+                .build();
+
+        bindings.put("ds1", ds1);
+        bindings.put("ds2", ds2);
+
+        engine.eval("" +
+                "intersection := intersect(ds1, ds2)\n" +
+                "difference := setdiff(ds1, ds2)\n" +
+                "symmetric := symdiff(ds1, ds2)");
+
+        assertThat(((Dataset) bindings.get("intersection")).getData())
+                .flatExtracting(input -> input)
+                .extracting(VTLObject::get)
+                .containsExactly("2", 20L);
+        assertThat(((Dataset) bindings.get("difference")).getData())
+                .flatExtracting(input -> input)
+                .extracting(VTLObject::get)
+                .containsExactly("1", 10L);
+        assertThat(((Dataset) bindings.get("symmetric")).getData())
+                .flatExtracting(input -> input)
+                .extracting(VTLObject::get)
+                .containsExactly("1", 10L, "3", 300L);
+    }
+
+    @Test
+    public void testEvalOutputsExecutesPut() throws Exception {
+        when(connector.canHandle(anyString())).thenReturn(true);
+        when(connector.putDataset(anyString(), any())).thenReturn(dataset);
+        when(connector.getDataset("first")).thenReturn(StaticDataset.create()
+                .addComponent("id1", Role.IDENTIFIER, String.class)
+                .addComponent("m1", Role.MEASURE, Long.class)
+                .addPoints("1", 10L)
+                .build());
+
+        ((VTLScriptEngine) engine).eval("" +
+                "x := put(\"saved\")\n" +
+                "y := get(\"first\")", Sets.newHashSet("y"));
+
+        verify(connector).putDataset(anyString(), any());
+        assertThat(bindings).containsKeys("x", "y");
+    }
+
+    @Test
+    public void testEvalOutputs() throws Exception {
+        when(connector.canHandle(anyString())).thenReturn(true);
+        when(connector.getDataset("first")).thenReturn(StaticDataset.create()
+                .addComponent("id1", Role.IDENTIFIER, String.class)
+                .addComponent("m1", Role.MEASURE, Long.class)
+                .addPoints("1", 10L)
+                .addPoints("2", 20L)
+                .build());
+        when(connector.getDataset("second")).thenReturn(StaticDataset.create()
+                .addComponent("id1", Role.IDENTIFIER, String.class)
+                .addComponent("m1", Role.MEASURE, Long.class)
+                .addPoints("3", 30L)
+                .build());
+
+        String script = "" +
+                "x := get(\"first\")\n" +
+                "unused := get(\"unused\")\n" +
+                "y := [x]{ filter m1 > 10 }\n" +
+                "x := get(\"second\")\n" +
+                "invalid := union(x, missing)";
+
+        ((VTLScriptEngine) engine).eval(script, Sets.newHashSet("y"));
+
+        assertThat(bindings).containsOnlyKeys("x", "y");
+        assertThat(((Dataset) bindings.get("y")).getData())
+                .flatExtracting(input -> input)
+                .extracting(VTLObject::get)
+                .containsExactly("2", 20L);
+        verify(connector, never()).getDataset("second");
+        verify(connector, never()).getDataset("unused");
+
+        bindings.clear();
+        ((VTLScriptEngine) engine).eval(script, Sets.newHashSet("x", "y"));
+        assertThat(bindings).containsOnlyKeys("x", "y");
+        assertThat(((Dataset) bindings.get("x")).getData())
+                .flatExtracting(input -> input)
+                .extracting(VTLObject::get)
+                .containsExactly("3", 30L);
+        assertThat(((Dataset) bindings.get("y")).getData())
+                .flatExtracting(input -> input)
+                .extracting(VTLObject::get)
+                .containsExactly("2", 20L);
+
+        bindings.clear();
+        VTLCompileException exception = catchThrowableOfType(
+                () -> ((VTLScriptEngine) engine).eval(script, Sets.newHashSet("invalid")),
+                VTLCompileException.class
+        );
+        assertThat(exception.getErrors())
+                .extracting(VTLScriptException::getStartLine)
+                .containsExactly(5);
+    }
+
+    @Test
+    public void testMaterialization() throws Exception {
+        Dataset ds1 = spy(StaticDataset.create()
+                .addComponent("id1", Role.IDENTIFIER, String.class)
+                .addComponent("m1", Role.MEASURE, Long.class)
+                .addPoints("1", 10L)
+                .addPoints("2", 20L)
+                .build());
+        when(connector.canHandle(anyString())).thenReturn(true);
+        when(connector.getDataset("ds1")).thenReturn(ds1);
+
+        VtlConfiguration.getConfig().enableMaterialization();
+        try {
+            engine.eval("" +
+                    "shared := get(\"ds1\")\n" +
+                    "high := [shared]{ filter m1 > 10 }\n" +
+                    "low := [shared]{ filter m1 < 20 }\n" +
+                    "persisted := persist(low)");
+        } finally {
+            VtlConfiguration.getConfig().disableMaterialization();
+        }
+
+        assertThat(bindings.get("shared")).isInstanceOf(MaterializedOperation.class);
+        assertThat(bindings.get("high")).isNotInstanceOf(MaterializedOperation.class);
+        assertThat(bindings.get("persisted")).isInstanceOf(MaterializedOperation.class);
+
+        assertThat(((Dataset) bindings.get("high")).getData())
+                .flatExtracting(input -> input)
+                .extracting(VTLObject::get)
+                .containsExactly("2", 20L);
+        assertThat(((Dataset) bindings.get("low")).getData())
+                .flatExtracting(input -> input)
+                .extracting(VTLObject::get)
+                .containsExactly("1", 10L);
+        verify(ds1, times(1)).getData(any(), any(), any());
+    }
+
+    @Test
+    public void testConcurrentExecutions() throws Exception {
+        VTLScriptEngine sharedEngine = new VTLScriptEngine();
+        VtlConfiguration configuration = VtlConfiguration.create();
+        configuration.enableSortAssertion();
+        sharedEngine.setConfiguration(configuration);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<Object>>> results = Lists.newArrayList();
+            for (long i = 0; i < 40; i++) {
+                long value = i;
+                results.add(executor.submit(() -> {
+                    Bindings requestBindings = sharedEngine.createBindings();
+                    requestBindings.put("ds", StaticDataset.create()
+                            .addComponent("id1", Role.IDENTIFIER, String.class)
+                            .addComponent("m1", Role.MEASURE, Long.class)
+                            .addPoints("1", value)
+                            .addPoints("2", value + 1)
+                            .build());
+                    sharedEngine.eval("result := [ds]{ filter m1 > " + value + " }", requestBindings);
+
+                    AbstractDatasetOperation result = (AbstractDatasetOperation) requestBindings.get("result");
+                    assertThat(result.getConfiguration()).isNotSameAs(configuration);
+                    assertThat(result.getConfiguration().isSortAssertionEnabled()).isTrue();
+                    return result.getData().flatMap(DataPoint::stream).map(VTLObject::get)
+                            .collect(Collectors.toList());
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertThat(results.get(i).get()).containsExactly("2", i + 1L);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Test
     public void testUnionWithFilter() throws Exception {
         Dataset ds1 = StaticDataset.create()
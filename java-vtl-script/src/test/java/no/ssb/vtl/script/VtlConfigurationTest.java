@@ -0,0 +1,104 @@
+package no.ssb.vtl.script;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.Component.Role;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.StaticDataset;
+import no.ssb.vtl.script.error.MemoryLimitExceededException;
+import no.ssb.vtl.script.operations.DatasetOperationWrapper;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class VtlConfigurationTest {
+
+    private static final DataStructure STRUCTURE = DataStructure.builder()
+            .put("id", Role.IDENTIFIER, Long.class)
+            .put("value", Role.MEASURE, String.class)
+            .build();
+
+    @Test
+    public void testExecute() {
+        VtlConfiguration current = VtlConfiguration.getConfig();
+        VtlConfiguration configuration = VtlConfiguration.create();
+
+        assertThat(configuration.execute(VtlConfiguration::getConfig)).isSameAs(configuration);
+        assertThat(VtlConfiguration.getConfig()).isSameAs(current);
+    }
+
+    @Test
+    public void testCopy() {
+        VtlConfiguration configuration = VtlConfiguration.create();
+        configuration.setMemoryBudget(1000);
+        configuration.setMemoryPolicy(VtlConfiguration.MemoryPolicy.SPILL);
+        configuration.enableMaterialization();
+        configuration.setForeachParallelism(4);
+        configuration.getMemoryTracker().reserve(100);
+
+        VtlConfiguration copy = configuration.copy();
+
+        assertThat(copy).isNotSameAs(configuration);
+        assertThat(copy.getMemoryBudget()).isEqualTo(1000);
+        assertThat(copy.getMemoryPolicy()).isEqualTo(VtlConfiguration.MemoryPolicy.SPILL);
+        assertThat(copy.isMaterializationEnabled()).isTrue();
+        assertThat(copy.getForeachParallelism()).isEqualTo(4);
+        assertThat(copy.getMemoryTracker().getUsed()).isZero();
+    }
+
+    @Test
+    public void testOperationsKeepTheirConfiguration() {
+        StaticDataset.ValueBuilder builder = StaticDataset.create(STRUCTURE);
+        for (long i = 0; i < 1000; i++) {
+            builder.addPoints(i, "value " + i);
+        }
+
+        VtlConfiguration configuration = VtlConfiguration.create();
+        configuration.setMemoryBudget(10_000);
+        configuration.enableForceSort();
+        DatasetOperationWrapper operation = configuration.execute(() -> new DatasetOperationWrapper(builder.build()));
+        assertThat(operation.getConfiguration()).isSameAs(configuration);
+
+        // Read by the current thread and another one, both without budget.
+        assertThatThrownBy(() -> count(operation.getData()))
+                .isInstanceOf(MemoryLimitExceededException.class);
+        assertThatThrownBy(() -> CompletableFuture.supplyAsync(() -> count(operation.getData())).join())
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(MemoryLimitExceededException.class);
+
+        configuration.clearMemoryBudget();
+        assertThat(count(operation.getData())).isEqualTo(1000);
+        assertThat(configuration.getMemoryTracker().getUsed()).isZero();
+    }
+
+    private static long count(Stream<DataPoint> stream) {
+        try (Stream<DataPoint> data = stream) {
+            return data.collect(Collectors.counting());
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package no.ssb.vtl.script.expressions;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.VTLBoolean;
+import no.ssb.vtl.model.VTLExpression;
+import no.ssb.vtl.model.VTLInteger;
+import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.model.VTLString;
+import no.ssb.vtl.script.expressions.arithmetic.AdditionExpression;
+import no.ssb.vtl.script.expressions.logic.AndExpression;
+import no.ssb.vtl.script.expressions.logic.NotExpression;
+import no.ssb.vtl.script.expressions.logic.OrExpression;
+import no.ssb.vtl.script.functions.VTLIntegerFromString;
+import org.assertj.core.api.JUnitSoftAssertions;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.script.Bindings;
+import javax.script.SimpleBindings;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BinaryOperator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ExpressionSimplifierTest {
+
+    private static final List<Boolean> VALUES = Arrays.asList(true, false, null);
+
+    private VTLExpression variable = new VariableExpression(VTLBoolean.class, "b");
+
+    @Rule
+    public JUnitSoftAssertions softly = new JUnitSoftAssertions();
+
+    private static VTLExpression literal(Boolean value) {
+        return new LiteralExpression(VTLBoolean.of(value));
+    }
+
+    @Test
+    public void testLogicIdentities() throws Exception {
+        checkLogic("and", AndExpression::new);
+        checkLogic("or", OrExpression::new);
+    }
+
+    private void checkLogic(String name, BinaryOperator<VTLExpression> operator) {
+        for (Boolean literal : VALUES) {
+            for (Boolean value : VALUES) {
+                Bindings bindings = new SimpleBindings();
+                bindings.put("b", VTLBoolean.of(value));
+
+                VTLExpression left = operator.apply(literal(literal), variable);
+                VTLExpression right = operator.apply(variable, literal(literal));
+                softly.assertThat(ExpressionSimplifier.simplify(left).resolve(bindings).get())
+                        .as("%s %s %s", literal, name, value)
+                        .isEqualTo(left.resolve(bindings).get());
+                softly.assertThat(ExpressionSimplifier.simplify(right).resolve(bindings).get())
+                        .as("%s %s %s", value, name, literal)
+                        .isEqualTo(right.resolve(bindings).get());
+            }
+        }
+
+        softly.assertThat(ExpressionSimplifier.simplify(operator.apply(literal(null), variable)))
+                .as("null %s b", name)
+                .isNotInstanceOf(LiteralExpression.class);
+    }
+
+    @Test
+    public void testNot() throws Exception {
+        assertThat(ExpressionSimplifier.simplify(new NotExpression(new NotExpression(variable)))).isSameAs(variable);
+
+        VTLExpression not = ExpressionSimplifier.simplify(new NotExpression(literal(null)));
+        assertThat(not).isInstanceOf(LiteralExpression.class);
+        assertThat(not.resolve(null).get()).isNull();
+    }
+
+    @Test
+    public void testFolding() throws Exception {
+        VTLExpression nullSum = new AdditionExpression(
+                new LiteralExpression(VTLInteger.of(1)),
+                new LiteralExpression(VTLObject.NULL)
+        );
+        VTLExpression folded = ExpressionSimplifier.simplify(nullSum);
+        assertThat(folded).isInstanceOf(LiteralExpression.class);
+        assertThat(folded.getVTLType()).isEqualTo(nullSum.getVTLType());
+        assertThat(folded.resolve(null).get()).isNull();
+    }
+
+    @Test
+    public void testFailuresAreNotFolded() throws Exception {
+        VTLExpression invalid = new FunctionExpression<>(
+                VTLIntegerFromString.getInstance(),
+                new LiteralExpression(VTLString.of("not a number"))
+        );
+        assertThatThrownBy(() -> invalid.resolve(null)).isInstanceOf(NumberFormatException.class);
+        assertThat(ExpressionSimplifier.simplify(invalid)).isSameAs(invalid);
+    }
+
+    @Test
+    public void testIfThenElse() throws Exception {
+        VTLExpression value = new VariableExpression(VTLInteger.class, "value");
+        IfThenElseExpression expression = new IfThenElseExpression.Builder(new LiteralExpression(VTLInteger.of(3)))
+                .addCondition(literal(false), new LiteralExpression(VTLInteger.of(1)))
+                .addCondition(variable, value)
+                .addCondition(literal(true), new LiteralExpression(VTLObject.NULL))
+                .addCondition(literal(null), new LiteralExpression(VTLInteger.of(2)))
+                .build();
+
+        VTLExpression simplified = ExpressionSimplifier.simplify(expression);
+        assertThat(simplified).isInstanceOf(IfThenElseExpression.class);
+        assertThat(((IfThenElseExpression) simplified).getConditions()).containsOnlyKeys(variable);
+        assertThat(((IfThenElseExpression) simplified).getDefaultExpression().resolve(null).get()).isNull();
+        assertThat(simplified.getVTLType()).isEqualTo(VTLInteger.class);
+
+        IfThenElseExpression constant = new IfThenElseExpression.Builder(new LiteralExpression(VTLInteger.of(3)))
+                .addCondition(literal(true), new LiteralExpression(VTLObject.NULL))
+                .build();
+        simplified = ExpressionSimplifier.simplify(constant);
+        assertThat(simplified).isInstanceOf(LiteralExpression.class);
+        assertThat(simplified.getVTLType()).isEqualTo(VTLInteger.class);
+    }
+}
@@ -0,0 +1,133 @@
+package no.ssb.vtl.script.expressions;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.Component.Role;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.FilteringSpecification.Operator;
+import no.ssb.vtl.model.VTLExpression;
+import no.ssb.vtl.model.VTLInteger;
+import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.model.VtlFiltering;
+import no.ssb.vtl.parser.VTLLexer;
+import no.ssb.vtl.parser.VTLParser;
+import no.ssb.vtl.script.visitors.ExpressionVisitor;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.assertj.core.api.JUnitSoftAssertions;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.script.Bindings;
+import javax.script.SimpleBindings;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class VtlFilteringConverterTest {
+
+    private static final DataStructure STRUCTURE = DataStructure.builder()
+            .put("x", Role.MEASURE, Long.class)
+            .put("y", Role.MEASURE, Long.class)
+            .build();
+
+    @Rule
+    public JUnitSoftAssertions softly = new JUnitSoftAssertions();
+
+    private static VTLExpression parse(String expression) {
+        VTLParser parser = new VTLParser(new CommonTokenStream(new VTLLexer(CharStreams.fromString(expression))));
+        Bindings scope = new SimpleBindings();
+        scope.put("x", VTLInteger.of(0));
+        scope.put("y", VTLInteger.of(0));
+        return new ExpressionVisitor(scope).visit(parser.expression());
+    }
+
+    private static VtlFiltering convert(String expression) {
+        return VtlFiltering.using(STRUCTURE).with(VtlFilteringConverter.convert(parse(expression)));
+    }
+
+    @Test
+    public void testConversions() throws Exception {
+        softly.assertThat(convert("x = 1").toString()).isEqualTo("x=1");
+        softly.assertThat(convert("1 < x").toString()).isEqualTo("x>1");
+        softly.assertThat(convert("not (x > 1)").toString()).isEqualTo("x<=1");
+        softly.assertThat(convert("x is null").toString()).isEqualTo("x is null");
+        softly.assertThat(convert("not ((x + y) is null)").toString()).isEqualTo("(x is not null&y is not null)");
+        softly.assertThat(convert("x + 1 > y").toString()).isEqualTo("(x is not null&y is not null)");
+        softly.assertThat(convert("x = 1 or x = 2 or x = 3").toString()).isEqualTo("x in (1,2,3)");
+        softly.assertThat(convert("x <> 1 and x <> 2").toString()).isEqualTo("x !in (1,2)");
+        softly.assertThat(convert("x >= 1 and x <= 10").toString()).isEqualTo("x in [1,10]");
+        softly.assertThat(convert("x >= 1 and x < 10").toString()).isEqualTo("(x>=1&x<10)");
+        softly.assertThat(convert("x = 1 or y = 2 and x > 3").toString()).isEqualTo("(x=1|(y=2&x>3))");
+        softly.assertThat(convert("x = 1 or y is not null").toString()).isEqualTo("(x=1|y is not null)");
+        softly.assertThat(convert("x = null").toString()).isEqualTo("FALSE");
+        softly.assertThat(convert("x = 1 or y = x").toString()).isEqualTo("(x=1|(y is not null&x is not null))");
+    }
+
+    @Test
+    public void testOperators() throws Exception {
+        VtlFiltering in = convert("x = 1 or x = 2");
+        assertThat(in.getOperator()).isEqualTo(Operator.IN);
+        assertThat(in.getValues()).containsExactly(VTLObject.of(1L), VTLObject.of(2L));
+
+        VtlFiltering between = convert("x <= 10 and x >= 1");
+        assertThat(between.getOperator()).isEqualTo(Operator.BETWEEN);
+        assertThat(between.getValues()).containsExactly(VTLObject.of(1L), VTLObject.of(10L));
+
+        VtlFiltering isNull = convert("x is null");
+        assertThat(isNull.getOperator()).isEqualTo(Operator.IS_NULL);
+        assertThat(isNull.isNegated()).isFalse();
+    }
+
+    /**
+     * The filters must keep all the rows for which the predicate is true.
+     */
+    @Test
+    public void testFiltersKeepTheMatchingRows() throws Exception {
+        List<String> predicates = Arrays.asList(
+                "x = 1", "x <> 1", "not (x = 1)", "not (x <> 1)", "x > 2 and y < 3", "not (x > 2 and y < 3)",
+                "x = 1 or x = 3", "not (x = 1 or x = 3)", "x >= 1 and x <= 3", "not (x >= 1 and x <= 3)",
+                "x is null", "x is not null", "not (x is null)", "(x + y) is null", "not ((x + y) is null)",
+                "x = 1 xor y = 1", "not (x = 1 xor y = 1)", "(x = 1 or y = 2) and not (x = 2 or y is null)",
+                "x = y", "not (x = y)", "x = 1 or true", "x = 1 and false"
+        );
+        List<Long> values = Arrays.asList(null, 0L, 1L, 2L, 3L, 4L);
+
+        for (String predicate : predicates) {
+            VTLExpression expression = parse(predicate);
+            VtlFiltering filtering = convert(predicate);
+            for (Long x : values) {
+                for (Long y : values) {
+                    Bindings bindings = new SimpleBindings();
+                    bindings.put("x", VTLObject.of(x));
+                    bindings.put("y", VTLObject.of(y));
+                    if (Boolean.TRUE.equals(expression.resolve(bindings).get())) {
+                        softly.assertThat(filtering.test(DataPoint.create(x, y)))
+                                .as("%s with x=%s, y=%s (filter %s)", predicate, x, y, filtering)
+                                .isTrue();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -139,6 +139,41 @@ public class AbstractArithmeticExpressionTest {
         ).hasMessage("should not have been called");
     }
 
+    @Test
+    public void testSpecializedPaths() throws Exception {
+        VTLExpression three = createExpression(VTLInteger.class, VTLInteger.of(3));
+        VTLExpression two = createExpression(VTLInteger.class, VTLInteger.of(2));
+        VTLExpression half = createExpression(VTLFloat.class, VTLFloat.of(0.5));
+        VTLExpression quarter = createExpression(VTLFloat.class, VTLFloat.of(0.25));
+        SimpleBindings bindings = new SimpleBindings();
+
+        // Integer, Integer
+        softly.assertThat(new AdditionExpression(three, two).resolve(bindings)).isEqualTo(VTLInteger.of(5));
+        softly.assertThat(new SubtractionExpression(three, two).resolve(bindings)).isEqualTo(VTLInteger.of(1));
+        softly.assertThat(new MultiplicationExpression(three, two).resolve(bindings)).isEqualTo(VTLInteger.of(6));
+        softly.assertThat(new DivisionExpression(three, two).resolve(bindings)).isEqualTo(VTLFloat.of(1.5));
+
+        // Float, Float
+        softly.assertThat(new AdditionExpression(half, quarter).resolve(bindings)).isEqualTo(VTLFloat.of(0.75));
+        softly.assertThat(new SubtractionExpression(half, quarter).resolve(bindings)).isEqualTo(VTLFloat.of(0.25));
+        softly.assertThat(new MultiplicationExpression(half, quarter).resolve(bindings)).isEqualTo(VTLFloat.of(0.125));
+        softly.assertThat(new DivisionExpression(half, quarter).resolve(bindings)).isEqualTo(VTLFloat.of(2.0));
+
+        // Mixed
+        softly.assertThat(new AdditionExpression(three, half).resolve(bindings)).isEqualTo(VTLFloat.of(3.5));
+        softly.assertThat(new SubtractionExpression(half, two).resolve(bindings)).isEqualTo(VTLFloat.of(-1.5));
+        softly.assertThat(new MultiplicationExpression(quarter, two).resolve(bindings)).isEqualTo(VTLFloat.of(0.5));
+        softly.assertThat(new DivisionExpression(three, quarter).resolve(bindings)).isEqualTo(VTLFloat.of(12.0));
+
+        // Nested
+        VTLExpression nested = new SubtractionExpression(
+                new AdditionExpression(new MultiplicationExpression(three, quarter), two),
+                half
+        );
+        softly.assertThat(nested.getVTLType()).isEqualTo(VTLFloat.class);
+        softly.assertThat(nested.resolve(bindings)).isEqualTo(VTLFloat.of(2.25));
+    }
+
     private class TestableExpression extends AbstractArithmeticExpression {
 
         TestableExpression(VTLExpression leftOperand, VTLExpression rightOperand) {
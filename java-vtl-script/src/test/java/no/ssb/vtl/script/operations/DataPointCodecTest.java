@@ -0,0 +1,73 @@
+package no.ssb.vtl.script.operations;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.VTLObject;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DataPointCodecTest {
+
+    private static VTLObject wrap(Object value) {
+        return new VTLObject() {
+            @Override
+            public Object get() {
+                return value;
+            }
+        };
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        DataPoint dataPoint = DataPoint.create(
+                VTLObject.of("a"), VTLObject.of(1L), VTLObject.of(1.5), VTLObject.of(true),
+                VTLObject.of(Instant.ofEpochMilli(1000)), VTLObject.NULL, wrap(new BigDecimal("1.25"))
+        );
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            DataPointCodec.write(output, dataPoint);
+        }
+        DataPoint read = DataPointCodec.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertThat(read).extracting(VTLObject::get).containsExactly(
+                "a", 1L, 1.5, true, Instant.ofEpochMilli(1000), null, new BigDecimal("1.25")
+        );
+    }
+
+    @Test
+    public void testNotSerializable() {
+        DataPoint dataPoint = DataPoint.create(VTLObject.of("a"), wrap(new Object()));
+        assertThatThrownBy(() -> DataPointCodec.write(new DataOutputStream(new ByteArrayOutputStream()), dataPoint))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("not serializable");
+    }
+}
@@ -0,0 +1,133 @@
+package no.ssb.vtl.script.operations;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.Component.Role;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.StaticDataset;
+import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.model.VtlOrdering;
+import no.ssb.vtl.script.VtlConfiguration;
+import no.ssb.vtl.script.operations.union.UnionOperation;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DataPointRecyclerTest {
+
+    @After
+    public void tearDown() {
+        VtlConfiguration.getConfig().disableRowRecycling();
+    }
+
+    @Test
+    public void testSupplierWithoutRecycling() {
+        Supplier<DataPoint> supplier = DataPointRecycler.supplier(2);
+        DataPoint first = supplier.get();
+        first.set(0, VTLObject.of("a"));
+        DataPoint second = supplier.get();
+
+        assertThat(second).isNotSameAs(first).containsExactly(VTLObject.NULL, VTLObject.NULL);
+        assertThat(first).containsExactly(VTLObject.of("a"), VTLObject.NULL);
+    }
+
+    @Test
+    public void testSupplierWithRecycling() {
+        VtlConfiguration.getConfig().enableRowRecycling();
+
+        Supplier<DataPoint> supplier = DataPointRecycler.supplier(2);
+        DataPoint first = supplier.get();
+        first.set(0, VTLObject.of("a"));
+        first.add(VTLObject.of("b"));
+        DataPoint second = supplier.get();
+
+        assertThat(second).isSameAs(first).containsExactly(VTLObject.NULL, VTLObject.NULL);
+    }
+
+    @Test
+    public void testCopyInto() {
+        DataPoint source = DataPoint.create("a", "b", "c");
+
+        assertThat(DataPointRecycler.copyInto(source, DataPoint.create(1)))
+                .containsExactlyElementsOf(source);
+        assertThat(DataPointRecycler.copyInto(source, DataPoint.create(5)))
+                .containsExactlyElementsOf(source);
+    }
+
+    @Test
+    public void testRetain() {
+        DataPoint dataPoint = DataPoint.create("a");
+
+        assertThat(DataPointRecycler.retain(Stream.of(dataPoint))).first().isSameAs(dataPoint);
+
+        VtlConfiguration.getConfig().enableRowRecycling();
+        List<DataPoint> retained = DataPointRecycler.retain(Stream.of(dataPoint)).collect(Collectors.toList());
+        assertThat(retained).containsExactly(dataPoint);
+        assertThat(retained.get(0)).isNotSameAs(dataPoint);
+    }
+
+    @Test
+    public void testUnionWithRecycling() {
+        Dataset first = StaticDataset.create()
+                .addComponent("id", Role.IDENTIFIER, String.class)
+                .addComponent("m", Role.MEASURE, Long.class)
+                .addPoints("b", 2L)
+                .addPoints("a", 1L)
+                .build();
+        Dataset second = StaticDataset.create()
+                .addComponent("id", Role.IDENTIFIER, String.class)
+                .addComponent("m", Role.MEASURE, Long.class)
+                .addPoints("d", 4L)
+                .addPoints("c", 3L)
+                .build();
+
+        VtlConfiguration.getConfig().enableRowRecycling();
+        UnionOperation union = new UnionOperation(Arrays.asList(first, second));
+
+        // Consumers that retain must copy.
+        List<DataPoint> result = union.getData().map(DataPoint::create).collect(Collectors.toList());
+        assertThat(result).containsExactly(
+                DataPoint.create("a", 1L),
+                DataPoint.create("b", 2L),
+                DataPoint.create("c", 3L),
+                DataPoint.create("d", 4L)
+        );
+
+        // Post sorting must copy as well.
+        VtlOrdering descending = VtlOrdering.using(union).desc("id").build();
+        List<DataPoint> sorted = union.getData(descending).get()
+                .map(DataPoint::create).collect(Collectors.toList());
+        assertThat(sorted).containsExactly(
+                DataPoint.create("d", 4L),
+                DataPoint.create("c", 3L),
+                DataPoint.create("b", 2L),
+                DataPoint.create("a", 1L)
+        );
+    }
+}
@@ -0,0 +1,164 @@
+package no.ssb.vtl.script.operations;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.Component.Role;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.Filtering;
+import no.ssb.vtl.model.StaticDataset;
+import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.model.VtlFiltering;
+import no.ssb.vtl.model.VtlOrdering;
+import no.ssb.vtl.script.Execution;
+import no.ssb.vtl.script.VTLScriptEngine;
+import no.ssb.vtl.script.VtlConfiguration;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class MaterializedOperationTest {
+
+    private static final DataStructure STRUCTURE = DataStructure.builder()
+            .put("id", Role.IDENTIFIER, Long.class)
+            .put("value", Role.MEASURE, String.class)
+            .build();
+
+    private final Dataset dataset = spy(StaticDataset.create(STRUCTURE)
+            .addPoints(2L, "b")
+            .addPoints(3L, "c")
+            .addPoints(1L, "a")
+            .build());
+
+    @After
+    public void tearDown() {
+        VtlConfiguration configuration = VtlConfiguration.getConfig();
+        configuration.clearMemoryBudget();
+        configuration.setMemoryPolicy(VtlConfiguration.MemoryPolicy.FAIL);
+    }
+
+    private static List<Object> ids(Stream<DataPoint> stream) {
+        try (Stream<DataPoint> data = stream) {
+            return data.map(dataPoint -> dataPoint.get(0)).map(VTLObject::get).collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testComputedOnce() {
+        MaterializedOperation operation = new MaterializedOperation(dataset);
+        assertThat(operation.isMaterialized()).isFalse();
+
+        VtlOrdering descending = VtlOrdering.using(operation).desc("id").build();
+        VtlOrdering ascending = VtlOrdering.using(operation).asc("id").build();
+
+        assertThat(ids(operation.computeData(descending, Filtering.ALL, STRUCTURE.keySet())))
+                .containsExactly(3L, 2L, 1L);
+        assertThat(operation.isMaterialized()).isTrue();
+        assertThat(operation.getSize()).contains(3L);
+
+        // Same ordering, other ordering and filtering.
+        assertThat(ids(operation.computeData(descending, Filtering.ALL, STRUCTURE.keySet())))
+                .containsExactly(3L, 2L, 1L);
+        assertThat(ids(operation.computeData(ascending, Filtering.ALL, STRUCTURE.keySet())))
+                .containsExactly(1L, 2L, 3L);
+        assertThat(ids(operation.computeData(descending, VtlFiltering.using(operation).with(
+                VtlFiltering.gt("id", 1L)), STRUCTURE.keySet())))
+                .containsExactly(3L, 2L);
+        assertThat(ids(operation.getData())).containsExactly(3L, 2L, 1L);
+
+        verify(dataset, times(1)).getData(any(), any(), any());
+    }
+
+    @Test
+    public void testRowsAreCopied() {
+        MaterializedOperation operation = new MaterializedOperation(dataset);
+
+        try (Stream<DataPoint> data = operation.getData()) {
+            data.forEach(dataPoint -> dataPoint.set(1, VTLObject.NULL));
+        }
+        try (Stream<DataPoint> data = operation.getData()) {
+            assertThat(data.map(dataPoint -> dataPoint.get(1).get())).containsExactly("b", "c", "a");
+        }
+    }
+
+    @Test
+    public void testSpills() {
+        VtlConfiguration configuration = VtlConfiguration.getConfig();
+        configuration.setMemoryBudget(200);
+        configuration.setMemoryPolicy(VtlConfiguration.MemoryPolicy.SPILL);
+
+        MaterializedOperation operation = new MaterializedOperation(dataset);
+        VtlOrdering ascending = VtlOrdering.using(operation).asc("id").build();
+
+        assertThat(ids(operation.computeData(ascending, Filtering.ALL, STRUCTURE.keySet())))
+                .containsExactly(1L, 2L, 3L);
+        assertThat(operation.isSpilled()).isTrue();
+        assertThat(ids(operation.computeData(ascending, Filtering.ALL, STRUCTURE.keySet())))
+                .containsExactly(1L, 2L, 3L);
+        assertThat(operation.getSize()).contains(3L);
+        assertThat(configuration.getMemoryTracker().getUsed()).isZero();
+    }
+
+    @Test
+    public void testReservedUntilTheExecutionIsClosed() {
+        Execution execution = new VTLScriptEngine().newExecution().setMemoryBudget(10_000);
+        VtlConfiguration configuration = VtlConfiguration.getConfig().copy();
+        configuration.setExecution(execution);
+
+        MaterializedOperation operation = configuration.execute(() -> new MaterializedOperation(dataset));
+        assertThat(ids(operation.getData())).containsExactly(2L, 3L, 1L);
+        assertThat(configuration.getMemoryTracker().getUsed()).isPositive();
+
+        execution.close();
+        assertThat(configuration.getMemoryTracker().getUsed()).isZero();
+        assertThat(operation.isMaterialized()).isFalse();
+        assertThatThrownBy(operation::getData).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void testSpilledFileIsDeletedOnClose() {
+        VtlConfiguration configuration = VtlConfiguration.getConfig();
+        configuration.setMemoryBudget(200);
+        configuration.setMemoryPolicy(VtlConfiguration.MemoryPolicy.SPILL);
+
+        MaterializedOperation operation = new MaterializedOperation(dataset);
+        assertThat(ids(operation.getData())).containsExactly(2L, 3L, 1L);
+
+        File file = operation.getFile();
+        assertThat(file).exists();
+
+        operation.close();
+        assertThat(file).doesNotExist();
+        assertThat(operation.isSpilled()).isFalse();
+    }
+}
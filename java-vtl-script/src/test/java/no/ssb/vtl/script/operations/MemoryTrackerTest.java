@@ -0,0 +1,152 @@
+package no.ssb.vtl.script.operations;
+
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.Component.Role;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Filtering;
+import no.ssb.vtl.model.StaticDataset;
+import no.ssb.vtl.model.VtlOrdering;
+import no.ssb.vtl.script.VtlConfiguration;
+import no.ssb.vtl.script.error.MemoryLimitExceededException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MemoryTrackerTest {
+
+    private static final DataStructure STRUCTURE = DataStructure.builder()
+            .put("id", Role.IDENTIFIER, Long.class)
+            .put("value", Role.MEASURE, String.class)
+            .build();
+
+    @After
+    public void tearDown() {
+        VtlConfiguration configuration = VtlConfiguration.getConfig();
+        configuration.clearMemoryBudget();
+        configuration.setMemoryPolicy(VtlConfiguration.MemoryPolicy.FAIL);
+        configuration.disableProfiling();
+        configuration.disableForceSort();
+    }
+
+    private static List<DataPoint> shuffledRows(int count) {
+        List<DataPoint> rows = new ArrayList<>();
+        for (long i = 0; i < count; i++) {
+            rows.add(DataPoint.create(i, "value " + i));
+        }
+        Collections.shuffle(rows, new Random(42));
+        return rows;
+    }
+
+    @Test
+    public void testUntracked() {
+        MemoryTracker tracker = MemoryTracker.create();
+        assertThat(tracker.isEnabled()).isFalse();
+
+        tracker.reserve(Long.MAX_VALUE);
+        assertThat(tracker.getUsed()).isZero();
+        assertThat(tracker.getPeak()).isZero();
+    }
+
+    @Test
+    public void testReserveAndRelease() {
+        VtlConfiguration.getConfig().setMemoryBudget(100);
+        MemoryTracker first = MemoryTracker.create();
+        MemoryTracker second = MemoryTracker.create();
+
+        first.reserve(60);
+        assertThat(second.tryReserve(60)).isFalse();
+        second.reserve(40);
+        first.release(60);
+        second.reserve(40);
+
+        assertThat(first.getPeak()).isEqualTo(60);
+        assertThat(second.getPeak()).isEqualTo(80);
+        assertThat(VtlConfiguration.getConfig().getMemoryTracker().getUsed()).isEqualTo(80);
+
+        second.releaseAll();
+        assertThat(VtlConfiguration.getConfig().getMemoryTracker().getUsed()).isZero();
+
+        assertThatThrownBy(() -> first.reserve(101))
+                .isInstanceOf(MemoryLimitExceededException.class)
+                .hasMessageContaining("memory budget of 100 bytes exceeded");
+    }
+
+    @Test
+    public void testSortFails() {
+        VtlConfiguration.getConfig().setMemoryBudget(10_000);
+        List<DataPoint> rows = shuffledRows(1000);
+        VtlOrdering order = VtlOrdering.using(STRUCTURE).asc("id").build();
+
+        Stream<DataPoint> sorted = DataPointSorter.sort(rows.stream(), order, MemoryTracker.create());
+        assertThatThrownBy(() -> sorted.collect(Collectors.toList()))
+                .isInstanceOf(MemoryLimitExceededException.class);
+    }
+
+    @Test
+    public void testSortSpills() {
+        VtlConfiguration configuration = VtlConfiguration.getConfig();
+        configuration.setMemoryBudget(10_000);
+        configuration.setMemoryPolicy(VtlConfiguration.MemoryPolicy.SPILL);
+
+        List<DataPoint> rows = shuffledRows(1000);
+        VtlOrdering order = VtlOrdering.using(STRUCTURE).asc("id").build();
+
+        MemoryTracker tracker = MemoryTracker.create();
+        List<DataPoint> sorted;
+        try (Stream<DataPoint> stream = DataPointSorter.sort(rows.stream(), order, tracker)) {
+            sorted = stream.collect(Collectors.toList());
+        }
+
+        List<DataPoint> expected = new ArrayList<>(rows);
+        expected.sort(order);
+        assertThat(sorted).containsExactlyElementsOf(expected);
+        assertThat(tracker.getPeak()).isBetween(1L, 10_000L);
+        assertThat(tracker.getUsed()).isZero();
+    }
+
+    @Test
+    public void testPeakInPlan() {
+        VtlConfiguration.getConfig().enableProfiling();
+        VtlConfiguration.getConfig().enableForceSort();
+        StaticDataset.ValueBuilder builder = StaticDataset.create(STRUCTURE);
+        shuffledRows(10).forEach(builder::addPoints);
+        DatasetOperationWrapper operation = new DatasetOperationWrapper(builder.build());
+
+        VtlOrdering order = VtlOrdering.using(operation).desc("id").build();
+        VtlStream stream = (VtlStream) operation.computeData(order, Filtering.ALL, STRUCTURE.keySet());
+        assertThat(stream.collect(Collectors.toList())).hasSize(10);
+
+        assertThat(stream.getStatistics().getMemory().getPeak()).isPositive();
+        assertThat(stream.printPlan()).contains("memory  : ");
+    }
+}
@@ -24,11 +24,15 @@ import no.ssb.vtl.model.Component;
 import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.Filtering;
+import no.ssb.vtl.model.Ordering;
 import no.ssb.vtl.model.StaticDataset;
 import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.model.VtlOrdering;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
 
 import java.util.List;
 import java.util.Map;
@@ -43,7 +47,10 @@ import static no.ssb.vtl.script.operations.check.CheckSingleRuleOperation.ERROR_
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class CheckSingleRuleOperationTest {
@@ -298,4 +305,43 @@ public class CheckSingleRuleOperationTest {
 
     }
 
+
+    @Test
+    public void testCheckPushesSelectionAndOrdering() throws Exception {
+        Dataset ds = spy(StaticDataset.create()
+                .withName("kommune_nr", "measure", "CONDITION")
+                .andRoles(IDENTIFIER, MEASURE, MEASURE)
+                .andTypes(String.class, String.class, Boolean.class)
+                .addPoints("0101", "measure 0101", false)
+                .addPoints("9990", "measure 9990", null)
+                .addPoints("0104", "measure 0104", true)
+                .build());
+
+        CheckSingleRuleOperation checkOperation = new CheckSingleRuleOperation.Builder(ds)
+                .rowsToReturn(CheckSingleRuleOperation.RowsToReturn.NOT_VALID)
+                .componentsToReturn(CheckSingleRuleOperation.ComponentsToReturn.CONDITION)
+                .errorCode("ERROR")
+                .build();
+
+        Ordering ordering = VtlOrdering.using(checkOperation).desc("kommune_nr").build();
+        List<DataPoint> result;
+        try (Stream<DataPoint> stream = checkOperation.computeData(ordering, Filtering.ALL,
+                checkOperation.getDataStructure().keySet())) {
+            result = stream.collect(toList());
+        }
+
+        assertThat(result).containsExactly(
+                DataPoint.create("9990", false, "ERROR"),
+                DataPoint.create("0101", false, "ERROR")
+        );
+
+        ArgumentCaptor<Ordering> childOrdering = ArgumentCaptor.forClass(Ordering.class);
+        ArgumentCaptor<Filtering> childFiltering = ArgumentCaptor.forClass(Filtering.class);
+        verify(ds).getData(childOrdering.capture(), childFiltering.capture(), any());
+
+        assertThat(childOrdering.getValue().getDirection("kommune_nr")).isEqualTo(Ordering.Direction.DESC);
+        assertThat(childFiltering.getValue().test(DataPoint.create("0101", "measure 0101", false))).isTrue();
+        assertThat(childFiltering.getValue().test(DataPoint.create("9990", "measure 9990", null))).isTrue();
+        assertThat(childFiltering.getValue().test(DataPoint.create("0104", "measure 0104", true))).isFalse();
+    }
 }
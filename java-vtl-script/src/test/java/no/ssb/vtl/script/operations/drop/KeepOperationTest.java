@@ -0,0 +1,97 @@
+package no.ssb.vtl.script.operations.drop;
+
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import no.ssb.vtl.model.Component.Role;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Filtering;
+import no.ssb.vtl.model.StaticDataset;
+import no.ssb.vtl.model.VtlOrdering;
+import no.ssb.vtl.script.operations.VtlStream;
+import no.ssb.vtl.script.operations.rename.RenameOperation;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KeepOperationTest {
+
+    private StaticDataset createDataset() {
+        return StaticDataset.create()
+                .addComponent("id", Role.IDENTIFIER, String.class)
+                .addComponent("m1", Role.MEASURE, Long.class)
+                .addComponent("m2", Role.MEASURE, Long.class)
+                .addComponent("m3", Role.MEASURE, Long.class)
+                .addPoints("b", 1L, 2L, 3L)
+                .addPoints("a", 4L, 5L, 6L)
+                .build();
+    }
+
+    @Test
+    public void testKeep() {
+        StaticDataset dataset = createDataset();
+        DataStructure structure = dataset.getDataStructure();
+        KeepOperation keep = new KeepOperation(dataset, ImmutableSet.of(structure.get("m3"), structure.get("m1")));
+
+        assertThat(keep.getDataStructure().keySet()).containsExactly("id", "m1", "m3");
+        assertThat(keep.getData()).containsExactly(
+                DataPoint.create("b", 1L, 3L),
+                DataPoint.create("a", 4L, 6L)
+        );
+
+        // The rows of the child are not modified.
+        assertThat(dataset.getData()).containsExactly(
+                DataPoint.create("b", 1L, 2L, 3L),
+                DataPoint.create("a", 4L, 5L, 6L)
+        );
+    }
+
+    @Test
+    public void testFusedProjections() {
+        StaticDataset dataset = createDataset();
+        DataStructure structure = dataset.getDataStructure();
+        DropOperation drop = new DropOperation(dataset, ImmutableSet.of(structure.get("m1")));
+        RenameOperation rename = new RenameOperation(drop, ImmutableMap.of("m3", "renamed"));
+        KeepOperation keep = new KeepOperation(rename, ImmutableSet.of(rename.getDataStructure().get("renamed")));
+
+        assertThat(keep.getDataStructure().keySet()).containsExactly("id", "renamed");
+
+        VtlOrdering order = VtlOrdering.using(keep).asc("id").build();
+        VtlStream stream = (VtlStream) keep.computeData(order, Filtering.ALL, keep.getDataStructure().keySet());
+        List<DataPoint> data = stream.collect(Collectors.toList());
+        assertThat(data).containsExactly(
+                DataPoint.create("a", 6L),
+                DataPoint.create("b", 3L)
+        );
+
+        // Only one stream between the keep and the dataset.
+        VtlStream parent = (VtlStream) stream.getParents().get(0);
+        assertThat(parent.getOperation()).isNotInstanceOfAny(
+                KeepOperation.class, RenameOperation.class
+        );
+    }
+}
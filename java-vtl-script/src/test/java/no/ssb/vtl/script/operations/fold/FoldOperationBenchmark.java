@@ -25,6 +25,8 @@ import com.google.common.collect.Iterators;
 import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.Filtering;
+import no.ssb.vtl.model.Ordering;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Fork;
@@ -40,6 +42,7 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.Spliterator;
 import java.util.stream.Stream;
 
@@ -82,6 +85,12 @@ public class FoldOperationBenchmark {
                     return Stream.generate(source::next);
                 }
 
+                @Override
+                public Optional<Stream<DataPoint>> getData(Ordering orders, Filtering filtering, Set<String> components) {
+                    // The source is infinite and cannot be sorted.
+                    return Optional.of(getData());
+                }
+
                 @Override
                 public Optional<Map<String, Integer>> getDistinctValuesCount() {
                     return Optional.empty();
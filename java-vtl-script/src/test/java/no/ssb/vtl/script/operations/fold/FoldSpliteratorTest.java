@@ -0,0 +1,106 @@
+package no.ssb.vtl.script.operations.fold;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableSet;
+import no.ssb.vtl.model.Component.Role;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.StaticDataset;
+import no.ssb.vtl.script.VtlConfiguration;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FoldSpliteratorTest {
+
+    @After
+    public void tearDown() {
+        VtlConfiguration.getConfig().disableRowRecycling();
+    }
+
+    @Test
+    public void testFold() {
+        List<DataPoint> source = Arrays.asList(
+                DataPoint.create("a", 1L, null),
+                DataPoint.create("b", null, null),
+                DataPoint.create("c", 3L, 4L)
+        );
+
+        FoldSpliterator spliterator = new FoldSpliterator(source.spliterator(), new int[]{0},
+                new int[]{1, 2}, new String[]{"m1", "m2"}, 1, 2, 3);
+
+        assertThat(spliterator.estimateSize()).isEqualTo(6);
+        assertThat(StreamSupport.stream(spliterator, false)).containsExactly(
+                DataPoint.create("a", "m1", 1L),
+                DataPoint.create("c", "m1", 3L),
+                DataPoint.create("c", "m2", 4L)
+        );
+    }
+
+    @Test
+    public void testEstimateSize() {
+        List<DataPoint> source = Collections.singletonList(DataPoint.create("a"));
+        FoldSpliterator empty = new FoldSpliterator(source.spliterator(), new int[]{0},
+                new int[0], new String[0], 1, 2, 3);
+
+        assertThat(empty.estimateSize()).isEqualTo(0);
+        assertThat(StreamSupport.stream(empty, false)).isEmpty();
+
+        // Unknown size.
+        Spliterator<DataPoint> unknown = Spliterators.spliteratorUnknownSize(source.iterator(), 0);
+        FoldSpliterator overflow = new FoldSpliterator(unknown, new int[0],
+                new int[]{0, 1}, new String[]{"m1", "m2"}, 0, 1, 2);
+
+        assertThat(overflow.estimateSize()).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testFoldWithRecycling() {
+        Dataset dataset = StaticDataset.create()
+                .addComponent("id", Role.IDENTIFIER, String.class)
+                .addComponent("m1", Role.MEASURE, Long.class)
+                .addComponent("m2", Role.MEASURE, Long.class)
+                .addPoints("a", 1L, null)
+                .addPoints("b", null, null)
+                .addPoints("c", 3L, 4L)
+                .build();
+
+        VtlConfiguration.getConfig().enableRowRecycling();
+        FoldOperation fold = new FoldOperation(dataset, "dim", "m", ImmutableSet.of("m1", "m2"));
+
+        List<DataPoint> result = fold.getData().map(DataPoint::create).collect(Collectors.toList());
+        assertThat(result).containsExactly(
+                DataPoint.create("a", "m1", 1L),
+                DataPoint.create("c", "m1", 3L),
+                DataPoint.create("c", "m2", 4L)
+        );
+    }
+}
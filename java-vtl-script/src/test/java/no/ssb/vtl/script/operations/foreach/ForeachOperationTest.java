@@ -26,11 +26,17 @@ import no.ssb.vtl.model.Component;
 import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.Dataset;
 import no.ssb.vtl.model.StaticDataset;
+import no.ssb.vtl.model.VTLBoolean;
 import no.ssb.vtl.model.VtlOrdering;
 import no.ssb.vtl.script.VTLDataset;
 import no.ssb.vtl.script.VTLScriptEngine;
+import no.ssb.vtl.script.VtlConfiguration;
+import no.ssb.vtl.script.expressions.VariableExpression;
+import no.ssb.vtl.script.operations.filter.FilterOperation;
 import no.ssb.vtl.script.operations.hierarchy.HierarchyOperation;
+import no.ssb.vtl.script.operations.join.ComponentBindings;
 import no.ssb.vtl.script.operations.join.InnerJoinOperation;
+import org.junit.After;
 import org.junit.Test;
 
 import javax.script.Bindings;
@@ -39,6 +45,7 @@ import javax.script.ScriptEngine;
 import javax.script.ScriptException;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -49,6 +56,11 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 public class ForeachOperationTest {
 
+    @After
+    public void tearDown() {
+        VtlConfiguration.getConfig().setForeachParallelism(1);
+    }
+
     @Test
     public void testEval() throws ScriptException {
         ScriptEngine engine = new VTLScriptEngine();
@@ -74,13 +86,36 @@ public class ForeachOperationTest {
         );
     }
 
+    @Test
+    public void testPersistInSlices() throws ScriptException {
+        ScriptEngine engine = new VTLScriptEngine();
+        Bindings bindings = engine.getBindings(ScriptContext.ENGINE_SCOPE);
+
+        Dataset t1 = createInnerJoin1();
+        bindings.put("t1", t1);
+
+        // The block is compiled once, the persisted rows of a slice must not be reused for the next.
+        engine.eval("" +
+                "res := foreach year in t1 do" +
+                "  x := persist(t1)" +
+                "done\n" +
+                "filtered := foreach year in t1 do" +
+                "  x := persist([t1]{ filter true })" +
+                "done" +
+                "", bindings);
+
+        List<DataPoint> expected = t1.getData().collect(Collectors.toList());
+        assertThat(((Dataset) bindings.get("res")).getData()).containsExactlyInAnyOrderElementsOf(expected);
+        assertThat(((Dataset) bindings.get("filtered")).getData()).containsExactlyInAnyOrderElementsOf(expected);
+    }
+
     @Test
     public void testInnerJoin() {
         Dataset data1 = createInnerJoin1();
         Dataset data2 = createInnerJoin2();
 
-        ForeachOperation foreachOperation = new ForeachOperation(ImmutableMap.of("t1", data1, "t2", data2), ImmutableSet.of("year"));
-        foreachOperation.setBlock(bindings -> {
+        ForeachOperation foreachOperation = new ForeachOperation(ImmutableMap.of("t1", data1, "t2", data2),
+                ImmutableSet.of("year"), bindings -> {
             VTLDataset t1 = (VTLDataset) bindings.get("t1");
             VTLDataset t2 = (VTLDataset) bindings.get("t2");
             ImmutableMap<String, Dataset> namedDataset = ImmutableMap.of(
@@ -107,6 +142,54 @@ public class ForeachOperationTest {
 
     }
 
+    @Test
+    public void testBlockCompiledOnce() {
+        AtomicInteger compilations = new AtomicInteger();
+        ForeachOperation foreachOperation = createInnerJoinForeach(compilations);
+
+        VtlOrdering orderedByYear = VtlOrdering.using(foreachOperation).desc("year").build();
+        assertThat(foreachOperation.getData(orderedByYear).get()).containsExactly(createInnerJoinResult());
+        assertThat(foreachOperation.getData(orderedByYear).get()).containsExactly(createInnerJoinResult());
+
+        // Once for the structure and once for the plan, reused by the second execution.
+        assertThat(compilations.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testParallelSlices() {
+        VtlConfiguration.getConfig().setForeachParallelism(3);
+
+        AtomicInteger compilations = new AtomicInteger();
+        ForeachOperation foreachOperation = createInnerJoinForeach(compilations);
+
+        VtlOrdering orderedByYear = VtlOrdering.using(foreachOperation).desc("year").build();
+        try (Stream<DataPoint> stream = foreachOperation.getData(orderedByYear).get()) {
+            assertThat(stream).containsExactly(createInnerJoinResult());
+        }
+        // Once for the structure and once per worker.
+        assertThat(compilations.get()).isEqualTo(4);
+    }
+
+    private ForeachOperation createInnerJoinForeach(AtomicInteger compilations) {
+        ForeachOperation foreachOperation = new ForeachOperation(
+                ImmutableMap.of("t1", createInnerJoin1(), "t2", createInnerJoin2()),
+                ImmutableSet.of("year"), bindings -> {
+            compilations.incrementAndGet();
+            VTLDataset t1 = (VTLDataset) bindings.get("t1");
+            VTLDataset t2 = (VTLDataset) bindings.get("t2");
+            ImmutableMap<String, Dataset> namedDataset = ImmutableMap.of(
+                    "t1", t1.get(),
+                    "t2", t2.get()
+            );
+            ImmutableMap<String, Component> identifier = ImmutableMap.of(
+                    "t1.year", t1.get().getDataStructure().get("year"),
+                    "t1.id", t1.get().getDataStructure().get("id")
+            );
+            return VTLDataset.of(new InnerJoinOperation(namedDataset, identifier));
+        });
+        return foreachOperation;
+    }
+
     private DataPoint[] createInnerJoinResult() {
         return new DataPoint[]{DataPoint.create(2004, 1, "m1", "t1-2004", "m1", "t2-2004"),
                 DataPoint.create(2004, 2, "m2", "t1-2004", "m2", "t2-2004"),
@@ -220,8 +303,8 @@ public class ForeachOperationTest {
 
                 .build();
 
-        ForeachOperation foreachOperation = new ForeachOperation(ImmutableMap.of("t1", data1, "hier", hierarchy), ImmutableSet.of("year"));
-        foreachOperation.setBlock(bindings -> {
+        ForeachOperation foreachOperation = new ForeachOperation(ImmutableMap.of("t1", data1, "hier", hierarchy),
+                ImmutableSet.of("year"), bindings -> {
             VTLDataset t1 = (VTLDataset) bindings.get("t1");
             VTLDataset hier = (VTLDataset) bindings.get("hier");
             return VTLDataset.of(new HierarchyOperation(t1.get(), hier.get(), t1.get().getDataStructure().get("id")));
@@ -247,4 +330,55 @@ public class ForeachOperationTest {
 
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testHierarchyFromFilteredSlice() {
+        Dataset data = StaticDataset.create()
+                .addComponent("year", IDENTIFIER, Long.class)
+                .addComponent("id", IDENTIFIER, String.class)
+                .addComponent("measure", MEASURE, Long.class)
+
+                .addPoints(2000L, "m1", 1L)
+                .addPoints(2000L, "m2", 2L)
+
+                .addPoints(2001L, "m1", 10L)
+                .addPoints(2001L, "m2", 20L)
+
+                .build();
+
+        Dataset hierarchy = StaticDataset.create()
+                .addComponent("year", IDENTIFIER, Long.class)
+                .addComponent("from", IDENTIFIER, String.class)
+                .addComponent("to", IDENTIFIER, String.class)
+                .addComponent("sign", IDENTIFIER, String.class)
+                .addComponent("valid", MEASURE, Boolean.class)
+
+                .addPoints(2000L, "m1", "total", "+", true)
+                .addPoints(2000L, "m2", "total", "+", false)
+
+                .addPoints(2001L, "m1", "total", "+", true)
+                .addPoints(2001L, "m2", "total", "+", true)
+
+                .build();
+
+        // The filter is compiled once and executed on the hierarchy of each slice.
+        ForeachOperation foreachOperation = new ForeachOperation(ImmutableMap.of("t1", data, "hier", hierarchy),
+                ImmutableSet.of("year"), bindings -> {
+            VTLDataset t1 = (VTLDataset) bindings.get("t1");
+            VTLDataset hier = (VTLDataset) bindings.get("hier");
+            FilterOperation filtered = new FilterOperation(hier.get(),
+                    new VariableExpression(VTLBoolean.class, "valid"),
+                    new ComponentBindings(hier.get()));
+            return VTLDataset.of(new HierarchyOperation(t1.get(), filtered, t1.get().getDataStructure().get("id")));
+        });
+
+        List<DataPoint> points;
+        try (Stream<DataPoint> stream = foreachOperation.getData()) {
+            points = stream.filter(point -> point.get(1).get().equals("total")).collect(Collectors.toList());
+        }
+        assertThat(points).containsExactly(
+                DataPoint.create(2000L, "total", 1L),
+                DataPoint.create(2001L, "total", 30L)
+        );
+    }
+}
@@ -45,8 +45,10 @@ import no.ssb.vtl.model.Filtering;
 import no.ssb.vtl.model.Ordering;
 import no.ssb.vtl.model.StaticDataset;
 import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.script.error.TypeException;
 import no.ssb.vtl.script.support.DatasetCloseWatcher;
 import no.ssb.vtl.script.support.VTLPrintStream;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.brotli.dec.BrotliInputStream;
 import org.junit.Test;
 
@@ -77,6 +79,7 @@ import static no.ssb.vtl.script.operations.hierarchy.HierarchyOperation.findPath
 import static no.ssb.vtl.script.operations.hierarchy.HierarchyOperation.sortTopologically;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
 import static org.assertj.core.api.Assertions.fail;
 
 public class HierarchyOperationTest extends RandomizedTest {
@@ -438,7 +441,31 @@ public class HierarchyOperationTest extends RandomizedTest {
 
         assertThatThrownBy(() ->
                 new HierarchyOperation(dataset, graph, structure.get("id2"))
-        ).isNotNull().hasMessageContaining("m4");
+        ).isNotNull().hasMessageContaining("m4").hasCauseInstanceOf(TypeException.class);
+    }
+
+    @Test
+    public void testNonNumericValue() {
+        StaticDataset hierarchy = StaticDataset.create()
+                .addComponent("from", IDENTIFIER, String.class)
+                .addComponent("to", IDENTIFIER, String.class)
+                .addComponent("sign", IDENTIFIER, String.class)
+                .addPoints("a", "b", "+")
+                .build();
+
+        // The value does not match the type of the measure.
+        StaticDataset data = StaticDataset.create()
+                .addComponent("node", IDENTIFIER, String.class)
+                .addComponent("value", MEASURE, Long.class)
+                .addPoints(VTLObject.of("a"), VTLObject.of("one"))
+                .build();
+
+        HierarchyOperation result = new HierarchyOperation(data, hierarchy, data.getDataStructure().get("node"));
+        assertThatThrownBy(() -> result.getData().count())
+                .isInstanceOf(ParseCancellationException.class)
+                .hasCauseInstanceOf(TypeException.class)
+                .hasMessageContaining("one")
+                .hasMessageContaining("value");
     }
 
     //@Test
@@ -475,6 +502,176 @@ public class HierarchyOperationTest extends RandomizedTest {
 
     }
 
+    @Test
+    public void testClosure() {
+
+        // Diamond with a complement:
+        //
+        // a -(+)-> b -(+)-> d
+        // a -(-)-> c -(+)-> d
+        // d -(-)-> e
+
+        MutableValueGraph<VTLObject, Composition> graph = ValueGraphBuilder.directed().allowsSelfLoops(false).build();
+        graph.putEdgeValue(VTLObject.of("a"), VTLObject.of("b"), Composition.UNION);
+        graph.putEdgeValue(VTLObject.of("a"), VTLObject.of("c"), Composition.COMPLEMENT);
+        graph.putEdgeValue(VTLObject.of("b"), VTLObject.of("d"), Composition.UNION);
+        graph.putEdgeValue(VTLObject.of("c"), VTLObject.of("d"), Composition.UNION);
+        graph.putEdgeValue(VTLObject.of("d"), VTLObject.of("e"), Composition.COMPLEMENT);
+
+        HierarchyClosure closure = HierarchyClosure.compile(graph, sortTopologically(graph));
+        int a = closure.indexOf(VTLObject.of("a"));
+        int[] targets = closure.getTargets(a);
+
+        Map<Object, Integer> coefficients = Maps.newHashMap();
+        Map<Object, Integer> paths = Maps.newHashMap();
+        for (int i = 0; i < targets.length; i++) {
+            coefficients.put(closure.getNode(targets[i]).get(), closure.getCoefficients(a)[i]);
+            paths.put(closure.getNode(targets[i]).get(), closure.getPaths(a)[i]);
+        }
+
+        assertThat(coefficients).containsOnly(
+                entry("b", 1), entry("c", -1), entry("d", 0), entry("e", 0)
+        );
+        assertThat(paths).containsOnly(
+                entry("b", 1), entry("c", 1), entry("d", 2), entry("e", 2)
+        );
+        assertThat(closure.indexOf(VTLObject.of("unknown"))).isEqualTo(-1);
+
+        StaticDataset data = StaticDataset.create()
+                .addComponent("node", IDENTIFIER, String.class)
+                .addComponent("value", MEASURE, Long.class)
+                .addPoints("a", 10L)
+                .addPoints("c", 1L)
+                .addPoints("x", 5L)
+                .build();
+
+        HierarchyOperation result = new HierarchyOperation(data, graph, data.getDataStructure().get("node"));
+        assertThat(result.getData()).containsExactly(
+                DataPoint.create("a", 10L),
+                DataPoint.create("b", 10L),
+                DataPoint.create("c", -9L),
+                DataPoint.create("d", 1L),
+                DataPoint.create("e", -1L),
+                DataPoint.create("x", 5L)
+        );
+    }
+
+    @Test
+    public void testOnlineTopologicalOrder() {
+        MutableGraph<Integer> graph = GraphBuilder.directed().allowsSelfLoops(false).build();
+        OnlineTopologicalOrder<Integer> order = new OnlineTopologicalOrder<>();
+
+        int nodes = randomIntBetween(2, 30);
+        for (int i = 0; i < nodes * 3; i++) {
+            Integer from = randomIntBetween(0, nodes - 1);
+            Integer to = randomIntBetween(0, nodes - 1);
+
+            List<Integer> path = order.addEdge(graph, from, to);
+            if (from.equals(to)) {
+                assertThat(path).containsExactly(from);
+                continue;
+            }
+
+            MutableGraph<Integer> copy = Graphs.copyOf(graph);
+            copy.putEdge(from, to);
+            assertThat(!path.isEmpty()).isEqualTo(Graphs.hasCycle(copy));
+
+            if (path.isEmpty()) {
+                graph.putEdge(from, to);
+            } else {
+                assertThat(path.get(0)).isEqualTo(to);
+                assertThat(path.get(path.size() - 1)).isEqualTo(from);
+                for (int j = 1; j < path.size(); j++) {
+                    assertThat(graph.successors(path.get(j - 1)).contains(path.get(j))).isTrue();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCircularHierarchy() {
+        StaticDataset hierarchy = StaticDataset.create()
+                .addComponent("from", IDENTIFIER, String.class)
+                .addComponent("to", IDENTIFIER, String.class)
+                .addComponent("sign", IDENTIFIER, String.class)
+                .addPoints("a", "b", "+")
+                .addPoints("b", "c", "+")
+                .addPoints("c", "a", "-")
+                .build();
+
+        StaticDataset data = StaticDataset.create()
+                .addComponent("node", IDENTIFIER, String.class)
+                .addComponent("value", MEASURE, Long.class)
+                .addPoints("a", 1L)
+                .build();
+
+        HierarchyOperation result = new HierarchyOperation(data, hierarchy, data.getDataStructure().get("node"));
+        assertThatThrownBy(result::getData)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("introduced a loop ([a, b, c])");
+    }
+
+    @Test
+    public void testHierarchyCache() {
+        StaticDataset hierarchyData = StaticDataset.create()
+                .addComponent("from", IDENTIFIER, String.class)
+                .addComponent("to", IDENTIFIER, String.class)
+                .addComponent("sign", IDENTIFIER, String.class)
+                .addPoints("a", "b", "+")
+                .build();
+
+        int[] reads = new int[1];
+        String[] version = new String[]{"1"};
+        Dataset hierarchy = new Dataset() {
+            @Override
+            public Stream<DataPoint> getData() {
+                reads[0]++;
+                return hierarchyData.getData();
+            }
+
+            @Override
+            public Optional<Map<String, Integer>> getDistinctValuesCount() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<Long> getSize() {
+                return Optional.empty();
+            }
+
+            @Override
+            public DataStructure getDataStructure() {
+                return hierarchyData.getDataStructure();
+            }
+
+            @Override
+            public Optional<String> getVersion() {
+                return Optional.of(version[0]);
+            }
+        };
+
+        StaticDataset data = StaticDataset.create()
+                .addComponent("node", IDENTIFIER, String.class)
+                .addComponent("value", MEASURE, Long.class)
+                .addPoints("a", 1L)
+                .build();
+        Component node = data.getDataStructure().get("node");
+
+        assertThat(new HierarchyOperation(data, hierarchy, node).getData()).hasSize(2);
+        assertThat(new HierarchyOperation(data, hierarchy, node).getData()).hasSize(2);
+        assertThat(reads[0]).isEqualTo(1);
+
+        HierarchyGraphCache.invalidate(hierarchy);
+        assertThat(new HierarchyOperation(data, hierarchy, node).getData()).hasSize(2);
+        assertThat(reads[0]).isEqualTo(2);
+
+        // A new version is compiled again.
+        version[0] = "2";
+        assertThat(new HierarchyOperation(data, hierarchy, node).getData()).hasSize(2);
+        assertThat(new HierarchyOperation(data, hierarchy, node).getData()).hasSize(2);
+        assertThat(reads[0]).isEqualTo(3);
+    }
+
     @Test
     public void testCheckNoPath() {
 
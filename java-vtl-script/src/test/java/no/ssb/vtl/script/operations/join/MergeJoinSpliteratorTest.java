@@ -0,0 +1,137 @@
+package no.ssb.vtl.script.operations.join;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableList;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.script.operations.MemoryTracker;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MergeJoinSpliteratorTest {
+
+    private static final UnaryOperator<DataPoint> KEY = point -> DataPoint.create(point.get(0));
+    private static final Comparator<DataPoint> PREDICATE = Comparator.comparing(
+            point -> (String) point.get(0).get()
+    );
+
+    private List<List<DataPoint>> inputs;
+    private MergeJoinMerger merger;
+
+    @Before
+    public void setUp() throws Exception {
+        inputs = ImmutableList.of(
+                ImmutableList.of(
+                        DataPoint.create("a", "x1"),
+                        DataPoint.create("b", "x2"),
+                        DataPoint.create("b", "x3"),
+                        DataPoint.create("d", "x4")
+                ),
+                ImmutableList.of(
+                        DataPoint.create("a", "y1"),
+                        DataPoint.create("b", "y2"),
+                        DataPoint.create("c", "y3"),
+                        DataPoint.create("d", "y4"),
+                        DataPoint.create("d", "y5")
+                ),
+                ImmutableList.of(
+                        DataPoint.create("b", "z1"),
+                        DataPoint.create("b", "z2"),
+                        DataPoint.create("c", "z3"),
+                        DataPoint.create("d", "z4")
+                )
+        );
+
+        merger = new MergeJoinMerger(4,
+                new int[][]{{0, 1}, {0, 1}, {0, 1}},
+                new int[][]{{0, 1}, {0, 2}, {0, 3}}
+        );
+    }
+
+    private MergeJoinSpliterator join(boolean outer) {
+        return new MergeJoinSpliterator(
+                inputs.stream().map(List::spliterator).collect(Collectors.toList()),
+                ImmutableList.of(KEY, KEY, KEY),
+                PREDICATE,
+                merger,
+                outer,
+                MemoryTracker.untracked()
+        );
+    }
+
+    private static List<DataPoint> collect(Spliterator<DataPoint> spliterator) {
+        // Copy since the merger may recycle its rows.
+        return StreamSupport.stream(spliterator, false)
+                .map(DataPoint::create)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testInner() {
+        assertThat(collect(join(false))).containsExactly(
+                DataPoint.create("b", "x2", "y2", "z1"),
+                DataPoint.create("b", "x2", "y2", "z2"),
+                DataPoint.create("b", "x3", "y2", "z1"),
+                DataPoint.create("b", "x3", "y2", "z2"),
+                DataPoint.create("d", "x4", "y4", "z4"),
+                DataPoint.create("d", "x4", "y5", "z4")
+        );
+    }
+
+    @Test
+    public void testOuter() {
+        assertThat(collect(join(true))).containsExactly(
+                DataPoint.create("a", "x1", "y1", VTLObject.NULL),
+                DataPoint.create("b", "x2", "y2", "z1"),
+                DataPoint.create("b", "x2", "y2", "z2"),
+                DataPoint.create("b", "x3", "y2", "z1"),
+                DataPoint.create("b", "x3", "y2", "z2"),
+                DataPoint.create("c", VTLObject.NULL, "y3", "z3"),
+                DataPoint.create("d", "x4", "y4", "z4"),
+                DataPoint.create("d", "x4", "y5", "z4")
+        );
+    }
+
+    @Test
+    public void testEmptyInput() {
+        inputs = ImmutableList.of(inputs.get(0), ImmutableList.of(), inputs.get(2));
+
+        assertThat(collect(join(false))).isEmpty();
+        assertThat(collect(join(true))).hasSize(7);
+    }
+
+    @Test
+    public void testCharacteristics() {
+        MergeJoinSpliterator spliterator = join(false);
+        assertThat(spliterator.characteristics() & Spliterator.ORDERED).isEqualTo(Spliterator.ORDERED);
+        assertThat(spliterator.trySplit()).isNull();
+    }
+}
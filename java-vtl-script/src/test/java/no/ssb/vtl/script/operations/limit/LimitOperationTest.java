@@ -0,0 +1,162 @@
+package no.ssb.vtl.script.operations.limit;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import no.ssb.vtl.model.Component;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.Filtering;
+import no.ssb.vtl.model.Ordering;
+import no.ssb.vtl.model.StaticDataset;
+import no.ssb.vtl.model.VtlFiltering;
+import no.ssb.vtl.model.VtlOrdering;
+import no.ssb.vtl.script.operations.drop.KeepOperation;
+import no.ssb.vtl.script.operations.rename.RenameOperation;
+import no.ssb.vtl.script.support.DatasetCloseWatcher;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LimitOperationTest {
+
+    private DatasetCloseWatcher dataset;
+
+    @Before
+    public void setUp() {
+        StaticDataset.ValueBuilder builder = StaticDataset.create(DataStructure.of(
+                "id", Component.Role.IDENTIFIER, Long.class,
+                "m", Component.Role.MEASURE, Long.class
+        ));
+        Random random = new Random(42);
+        for (long i = 0; i < 1000; i++) {
+            builder.addPoints(i, (long) random.nextInt(50));
+        }
+        dataset = DatasetCloseWatcher.wrap(builder.build());
+    }
+
+    @Test
+    public void testLimit() {
+        LimitOperation limit = new LimitOperation(dataset, 3);
+        try (Stream<DataPoint> data = limit.getData()) {
+            assertThat(data.map(dataPoint -> dataPoint.get(0).get())).containsExactly(0L, 1L, 2L);
+        } finally {
+            assertThat(dataset.allStreamWereClosed()).isTrue();
+        }
+        assertThat(limit.getSize()).contains(3L);
+    }
+
+    @Test
+    public void testTopN() {
+        VtlOrdering ordering = VtlOrdering.using(dataset).desc("m").build();
+        LimitOperation limit = new LimitOperation(dataset, ordering, 10);
+
+        List<DataPoint> expected;
+        try (Stream<DataPoint> data = dataset.getData()) {
+            expected = data.sorted(ordering).limit(10).collect(Collectors.toList());
+        }
+        try (Stream<DataPoint> data = limit.getData()) {
+            // The order of equal rows is kept.
+            assertThat(data).containsExactlyElementsOf(expected);
+        } finally {
+            assertThat(dataset.allStreamWereClosed()).isTrue();
+        }
+
+        assertThat(new LimitOperation(dataset, ordering, 0).getData()).isEmpty();
+        assertThat(new LimitOperation(dataset, ordering, 2000).getData()).hasSize(1000);
+    }
+
+    @Test
+    public void testFilterIsAppliedAfterLimit() {
+        LimitOperation limit = new LimitOperation(dataset, 10);
+        VtlFiltering filtering = VtlFiltering.using(dataset).with(VtlFiltering.lt("m", 25L));
+        long expected;
+        try (Stream<DataPoint> data = dataset.getData()) {
+            expected = data.limit(10).filter(filtering).count();
+        }
+        try (Stream<DataPoint> data = limit.getData(filtering).get()) {
+            assertThat(data).hasSize((int) expected);
+        }
+    }
+
+    @Test
+    public void testLimitStopsReadingAndIsPassedToConnector() {
+        AtomicLong read = new AtomicLong();
+        AtomicLong hint = new AtomicLong(-1);
+        Dataset connector = new Dataset() {
+            @Override
+            public Stream<DataPoint> getData() {
+                return dataset.getData().peek(dataPoint -> read.incrementAndGet());
+            }
+
+            @Override
+            public Optional<Stream<DataPoint>> getData(Ordering orders, Filtering filtering,
+                                                       Set<String> components, long limit) {
+                hint.set(limit);
+                return Dataset.super.getData(orders, filtering, components, limit);
+            }
+
+            @Override
+            public Optional<Map<String, Integer>> getDistinctValuesCount() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<Long> getSize() {
+                return Optional.empty();
+            }
+
+            @Override
+            public DataStructure getDataStructure() {
+                return dataset.getDataStructure();
+            }
+        };
+
+        try (Stream<DataPoint> data = new LimitOperation(connector, 5).getData()) {
+            assertThat(data).hasSize(5);
+        }
+        assertThat(hint.get()).isEqualTo(5);
+        assertThat(read.get()).isEqualTo(5);
+
+        // The rename and keep/drop operations keep one row per row and pass the limit on.
+        hint.set(-1);
+        read.set(0);
+        Dataset renamed = new RenameOperation(connector, ImmutableMap.of("m", "renamed"));
+        Dataset kept = new KeepOperation(renamed, ImmutableSet.of(renamed.getDataStructure().get("id")));
+        try (Stream<DataPoint> data = new LimitOperation(kept, 5).getData()) {
+            assertThat(data).hasSize(5);
+        }
+        assertThat(hint.get()).isEqualTo(5);
+        assertThat(read.get()).isEqualTo(5);
+    }
+}
@@ -169,6 +169,30 @@ public class RenameOperationTest {
         );
     }
 
+    @Test
+    public void testRequiredFilteringOnChildRows() {
+        Dataset dataset = StaticDataset.create()
+                .addComponent("Identifier1", Role.IDENTIFIER, String.class)
+                .addComponent("Measure1", Role.MEASURE, Long.class)
+                .addPoints("a", 1L)
+                .build();
+
+        RenameOperation renameOperation = new RenameOperation(dataset, ImmutableMap.of(
+                "Measure1", "RenamedMeasure1"
+        ));
+
+        VtlFiltering filter = VtlFiltering.using(renameOperation).or(
+                VtlFiltering.eq("RenamedMeasure1", 1L),
+                VtlFiltering.eq("RenamedMeasure1", 3L)
+        ).build();
+
+        // The filter sent to the child is tested on the rows of the child.
+        Filtering required = (Filtering) renameOperation.computeRequiredFiltering(filter);
+        assertThat(required.test(DataPoint.create("a", 1L))).isTrue();
+        assertThat(required.test(DataPoint.create("a", 2L))).isFalse();
+        assertThat(required.test(DataPoint.create("a", 3L))).isTrue();
+    }
+
     @Test
     public void testToString() {
         Dataset dataset = StaticDataset.create()
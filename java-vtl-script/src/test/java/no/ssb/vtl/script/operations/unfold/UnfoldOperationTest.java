@@ -26,8 +26,12 @@ import no.ssb.vtl.model.Component;
 import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.Filtering;
+import no.ssb.vtl.model.Ordering;
 import no.ssb.vtl.model.StaticDataset;
 import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.model.VtlOrdering;
+import no.ssb.vtl.script.VtlConfiguration;
 import no.ssb.vtl.script.support.DatasetCloseWatcher;
 import org.assertj.core.api.AutoCloseableSoftAssertions;
 import org.junit.Test;
@@ -35,7 +39,9 @@ import org.mockito.Mockito;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static no.ssb.vtl.model.Component.Role.ATTRIBUTE;
@@ -173,4 +179,64 @@ public class UnfoldOperationTest {
             softly.assertThat(dataset.allStreamWereClosed()).isTrue();
         }
     }
+
+    @Test
+    public void testUnfoldUnsorted() {
+
+        DatasetCloseWatcher dataset = DatasetCloseWatcher.wrap(StaticDataset.create()
+                .addComponent("id1", IDENTIFIER, String.class)
+                .addComponent("id2", IDENTIFIER, String.class)
+                .addComponent("measure1", MEASURE, String.class)
+
+                .addPoints("id1-2", "id2-2", "measure1-4")
+                .addPoints("id1-1", "id2-1", "measure1-1")
+                .addPoints("id1-3", "id2-1", "measure1-5")
+                .addPoints("id1-2", "id2-1", "measure1-3")
+                .addPoints("id1-1", "id2-2", "measure1-2")
+                .addPoints("id1-3", "id2-3", "measure1-6")
+
+                .build());
+
+        try (AutoCloseableSoftAssertions softly = new AutoCloseableSoftAssertions()) {
+            DataStructure structure = dataset.getDataStructure();
+            Set<String> elements = Sets.newLinkedHashSet(Arrays.asList("id2-1", "id2-2"));
+            UnfoldOperation clause = new UnfoldOperation(dataset, structure.get("id2"), structure.get("measure1"), elements);
+
+            // Streamed sorted on the identifiers by default.
+            try (Stream<DataPoint> stream = clause.getData()) {
+                softly.assertThat(stream).extracting(UnfoldOperationTest::values).containsExactly(
+                        Arrays.asList("id1-1", "measure1-1", "measure1-2"),
+                        Arrays.asList("id1-2", "measure1-3", "measure1-4"),
+                        Arrays.asList("id1-3", "measure1-5", null)
+                );
+            }
+
+            // Grouped in the order the identifiers are first seen.
+            VtlConfiguration.getConfig().enableHashUnfold();
+            try (Stream<DataPoint> stream = clause.getData()) {
+                softly.assertThat(stream).extracting(UnfoldOperationTest::values).containsExactly(
+                        Arrays.asList("id1-2", "measure1-3", "measure1-4"),
+                        Arrays.asList("id1-1", "measure1-1", "measure1-2"),
+                        Arrays.asList("id1-3", "measure1-5", null)
+                );
+            } finally {
+                VtlConfiguration.getConfig().disableHashUnfold();
+            }
+
+            Ordering ordering = VtlOrdering.using(clause).desc("id1").build();
+            try (Stream<DataPoint> stream = clause.computeData(ordering, Filtering.ALL, structure.keySet())) {
+                softly.assertThat(stream).extracting(UnfoldOperationTest::values).containsExactly(
+                        Arrays.asList("id1-3", "measure1-5", null),
+                        Arrays.asList("id1-2", "measure1-3", "measure1-4"),
+                        Arrays.asList("id1-1", "measure1-1", "measure1-2")
+                );
+            }
+
+            softly.assertThat(dataset.allStreamWereClosed()).isTrue();
+        }
+    }
+
+    private static List<Object> values(DataPoint dataPoint) {
+        return dataPoint.stream().map(VTLObject::get).collect(Collectors.toList());
+    }
 }
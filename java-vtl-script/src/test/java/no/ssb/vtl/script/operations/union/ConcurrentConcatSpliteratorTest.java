@@ -0,0 +1,61 @@
+package no.ssb.vtl.script.operations.union;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Uninterruptibles;
+import no.ssb.vtl.model.DataPoint;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConcurrentConcatSpliteratorTest {
+
+    @Test(timeout = 30000)
+    public void testCloseDoesNotWaitForeverForUninterruptibleChildren() {
+        CountDownLatch release = new CountDownLatch(1);
+        Stream<DataPoint> fast = Stream.of(DataPoint.create("fast"));
+        Stream<DataPoint> blocking = Stream.of("blocking").map(value -> {
+            // Like blocking I/O, ignores the interruption.
+            Uninterruptibles.awaitUninterruptibly(release);
+            return DataPoint.create(value);
+        });
+
+        ConcurrentConcatSpliterator spliterator = new ConcurrentConcatSpliterator(
+                ImmutableList.of(fast, blocking), 16);
+        try {
+            assertThat(spliterator.tryAdvance(dataPoint -> {
+                assertThat(dataPoint.get(0).get()).isEqualTo("fast");
+            })).isTrue();
+
+            long start = System.nanoTime();
+            spliterator.close();
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+                    .isLessThan(10000);
+        } finally {
+            release.countDown();
+        }
+    }
+}
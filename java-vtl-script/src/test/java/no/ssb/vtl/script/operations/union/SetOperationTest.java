@@ -0,0 +1,178 @@
+package no.ssb.vtl.script.operations.union;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.Component.Role;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.StaticDataset;
+import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.model.VtlOrdering;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SetOperationTest {
+
+    private Dataset left;
+    private Dataset right;
+
+    @Before
+    public void setUp() {
+        left = StaticDataset.create()
+                .addComponent("id1", Role.IDENTIFIER, String.class)
+                .addComponent("id2", Role.IDENTIFIER, Long.class)
+                .addComponent("m1", Role.MEASURE, Long.class)
+                .addPoints("a", 1L, 11L)
+                .addPoints("b", 1L, 21L)
+                .addPoints("a", 2L, 12L)
+                .addPoints("b", 2L, 22L)
+                .addPoints("a", 3L, 13L)
+                .build();
+
+        // Different column order and an attribute.
+        right = StaticDataset.create()
+                .addComponent("m1", Role.MEASURE, Long.class)
+                .addComponent("id2", Role.IDENTIFIER, Long.class)
+                .addComponent("at1", Role.ATTRIBUTE, String.class)
+                .addComponent("id1", Role.IDENTIFIER, String.class)
+                .addPoints(-13L, 3L, "r", "a")
+                .addPoints(-24L, 4L, "r", "b")
+                .addPoints(-22L, 2L, "r", "b")
+                .addPoints(-14L, 4L, "r", "a")
+                .build();
+    }
+
+    @Test
+    public void testIntersect() {
+        SetOperation intersect = new SetOperation(SetOperation.Type.INTERSECT, left, right);
+        assertThat(intersect.getDataStructure()).isEqualTo(left.getDataStructure());
+
+        assertThat(sorted(intersect)).containsExactly(
+                "b", 2L, 22L,
+                "a", 3L, 13L
+        );
+        assertThat(unsorted(intersect)).containsExactlyInAnyOrder(
+                "b", 2L, 22L,
+                "a", 3L, 13L
+        );
+    }
+
+    @Test
+    public void testSetdiff() {
+        SetOperation setdiff = new SetOperation(SetOperation.Type.SETDIFF, left, right);
+        assertThat(setdiff.getDataStructure()).isEqualTo(left.getDataStructure());
+
+        assertThat(sorted(setdiff)).containsExactly(
+                "a", 1L, 11L,
+                "b", 1L, 21L,
+                "a", 2L, 12L
+        );
+        assertThat(unsorted(setdiff)).containsExactly(
+                "a", 1L, 11L,
+                "b", 1L, 21L,
+                "a", 2L, 12L
+        );
+    }
+
+    @Test
+    public void testSymdiff() {
+        SetOperation symdiff = new SetOperation(SetOperation.Type.SYMDIFF, left, right);
+        assertThat(symdiff.getDataStructure()).containsOnlyKeys("id1", "id2", "m1", "at1");
+
+        assertThat(sorted(symdiff)).containsExactly(
+                "a", 1L, 11L, null,
+                "b", 1L, 21L, null,
+                "a", 2L, 12L, null,
+                "a", 4L, -14L, "r",
+                "b", 4L, -24L, "r"
+        );
+        // Unmatched right data points come last.
+        assertThat(unsorted(symdiff)).containsExactly(
+                "a", 1L, 11L, null,
+                "b", 1L, 21L, null,
+                "a", 2L, 12L, null,
+                "b", 4L, -24L, "r",
+                "a", 4L, -14L, "r"
+        );
+    }
+
+    @Test
+    public void testAdvertisesOrdering() {
+        SetOperation intersect = new SetOperation(SetOperation.Type.INTERSECT, left, right);
+        VtlOrdering requested = VtlOrdering.using(intersect).desc("id1").build();
+
+        assertThat(intersect.computeRequiredOrdering(requested).columns())
+                .containsExactly("id1", "id2");
+        try (Stream<DataPoint> data = intersect.getData(requested).get()) {
+            assertThat(data.map(dataPoint -> dataPoint.get(0).get()).collect(Collectors.toList()))
+                    .containsExactly("b", "a");
+        }
+
+        // Measures cannot be merged on.
+        VtlOrdering byMeasure = VtlOrdering.using(intersect).asc("id2").asc("m1").build();
+        assertThat(intersect.computeRequiredOrdering(byMeasure).columns())
+                .containsExactly("id2", "id1");
+    }
+
+    @Test
+    public void testSize() {
+        Dataset empty = StaticDataset.create(right.getDataStructure()).build();
+        assertThat(new SetOperation(SetOperation.Type.INTERSECT, left, empty).getSize()).contains(0L);
+        assertThat(new SetOperation(SetOperation.Type.SETDIFF, left, empty).getSize()).contains(5L);
+        assertThat(new SetOperation(SetOperation.Type.SYMDIFF, empty, right).getSize()).contains(4L);
+        assertThat(new SetOperation(SetOperation.Type.SYMDIFF, left, right).getSize()).isEqualTo(Optional.empty());
+    }
+
+    @Test
+    public void testIncompatibleStructures() {
+        Dataset other = StaticDataset.create()
+                .addComponent("id1", Role.IDENTIFIER, String.class)
+                .addComponent("m1", Role.MEASURE, Long.class)
+                .build();
+        assertThatThrownBy(() -> new SetOperation(SetOperation.Type.INTERSECT, left, other))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static List<Object> sorted(Dataset dataset) {
+        VtlOrdering ordering = VtlOrdering.using(dataset).asc("id2", "id1").build();
+        try (Stream<DataPoint> data = dataset.getData(ordering).get()) {
+            return values(data);
+        }
+    }
+
+    private static List<Object> unsorted(Dataset dataset) {
+        try (Stream<DataPoint> data = dataset.getData()) {
+            return values(data);
+        }
+    }
+
+    private static List<Object> values(Stream<DataPoint> data) {
+        return data.flatMap(dataPoint -> dataPoint.stream().map(VTLObject::get)).collect(Collectors.toList());
+    }
+}
@@ -34,9 +34,11 @@ import no.ssb.vtl.model.Ordering;
 import no.ssb.vtl.model.StaticDataset;
 import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.model.VtlOrdering;
+import no.ssb.vtl.script.VtlConfiguration;
 import no.ssb.vtl.script.error.VTLRuntimeException;
 import no.ssb.vtl.test.RandomizedDataset;
 import org.assertj.core.api.SoftAssertions;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -54,6 +56,7 @@ import static no.ssb.vtl.model.Component.Role;
 import static no.ssb.vtl.model.DataStructure.Entry;
 import static no.ssb.vtl.model.DataStructure.builder;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.Assertions.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -69,6 +72,12 @@ public class UnionOperationTest extends RandomizedTest {
 
 
 
+    @After
+    public void tearDown() {
+        VtlConfiguration.getConfig().disableUnsortedUnion();
+        VtlConfiguration.getConfig().disableConcurrentUnion();
+    }
+
     @Before
     public void setUp() {
         dataStructure1 = DataStructure.of(
@@ -509,6 +518,70 @@ public class UnionOperationTest extends RandomizedTest {
                 stream.map(dataPoint -> "[" + dataPoint.toString() + "]").collect(Collectors.joining(", ")));
     }
 
+    private List<Dataset> partitions(int count, int rows) {
+        List<Dataset> partitions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            StaticDataset.ValueBuilder partition = new StaticDataset.ValueBuilder(dataStructure1);
+            // Not sorted.
+            for (int j = rows - 1; j >= 0; j--) {
+                partition.addPoints(String.valueOf(2000 + i), "GEO" + j, (long) j);
+            }
+            partitions.add(partition.build());
+        }
+        return partitions;
+    }
+
+    @Test
+    public void testUnsortedUnion() {
+        VtlConfiguration.getConfig().enableUnsortedUnion();
+
+        UnionOperation union = new UnionOperation(partitions(10, 10));
+        List<DataPoint> result = union.getData().collect(Collectors.toList());
+
+        assertThat(result).hasSize(100);
+        assertThat(result.subList(0, 3)).containsExactly(
+                dataPoint("2000", "GEO9", 9L),
+                dataPoint("2000", "GEO8", 8L),
+                dataPoint("2000", "GEO7", 7L)
+        );
+    }
+
+    @Test
+    public void testUnsortedUnionWithDuplicate() {
+        VtlConfiguration.getConfig().enableUnsortedUnion();
+
+        List<Dataset> partitions = partitions(3, 10);
+        partitions.add(partitions.get(1));
+        UnionOperation union = new UnionOperation(partitions);
+
+        assertThatThrownBy(() -> union.getData().count())
+                .isInstanceOf(VTLRuntimeException.class)
+                .hasMessageContaining("duplicates");
+    }
+
+    @Test
+    public void testConcurrentUnion() {
+        VtlConfiguration.getConfig().enableUnsortedUnion();
+        VtlConfiguration.getConfig().enableConcurrentUnion();
+
+        UnionOperation union = new UnionOperation(partitions(10, 500));
+        try (Stream<DataPoint> data = union.getData()) {
+            List<DataPoint> result = data.collect(Collectors.toList());
+            assertThat(result).hasSize(5000);
+            assertThat(result).contains(
+                    dataPoint("2000", "GEO0", 0L),
+                    dataPoint("2009", "GEO499", 499L)
+            );
+        }
+
+        List<Dataset> partitions = partitions(3, 500);
+        partitions.add(partitions.get(2));
+        UnionOperation withDuplicates = new UnionOperation(partitions);
+        try (Stream<DataPoint> data = withDuplicates.getData()) {
+            assertThatThrownBy(data::count).isInstanceOf(VTLRuntimeException.class);
+        }
+    }
+
     private DataPoint dataPoint(Object... objects) {
         List<VTLObject> vtlObjects = Stream.of(objects).map(VTLObject::of).collect(Collectors.toList());
         return DataPoint.create(vtlObjects);
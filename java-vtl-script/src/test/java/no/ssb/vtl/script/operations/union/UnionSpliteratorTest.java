@@ -0,0 +1,141 @@
+package no.ssb.vtl.script.operations.union;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.Component.Role;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Ordering;
+import no.ssb.vtl.model.VtlOrdering;
+import no.ssb.vtl.script.VtlConfiguration;
+import no.ssb.vtl.script.error.VTLRuntimeException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class UnionSpliteratorTest {
+
+    private final DataStructure structure = DataStructure.of(
+            "id", Role.IDENTIFIER, String.class,
+            "m", Role.MEASURE, Long.class
+    );
+
+    private final DataStructure reversed = DataStructure.of(
+            "m", Role.MEASURE, Long.class,
+            "id", Role.IDENTIFIER, String.class
+    );
+
+    private final Ordering ordering = VtlOrdering.using(structure).asc("id").build();
+
+    @After
+    public void tearDown() {
+        VtlConfiguration.getConfig().disableRowRecycling();
+    }
+
+    private UnionSpliterator union(List<List<DataPoint>> children, List<DataStructure> structures) {
+        return new UnionSpliterator(
+                ordering,
+                structure,
+                children.stream().map(List::spliterator).collect(Collectors.toList()),
+                structures
+        );
+    }
+
+    private static List<DataPoint> collect(Spliterator<DataPoint> spliterator) {
+        // Copy since the rows may be recycled.
+        return StreamSupport.stream(spliterator, false)
+                .map(DataPoint::create)
+                .collect(Collectors.toList());
+    }
+
+    private void testMerge() {
+        // Five partitions, the last one with another column order.
+        int k = 5;
+        List<List<DataPoint>> children = new ArrayList<>();
+        List<DataStructure> structures = new ArrayList<>();
+        for (int i = 0; i < k; i++) {
+            children.add(new ArrayList<>());
+            structures.add(i == k - 1 ? reversed : structure);
+        }
+        List<DataPoint> expected = new ArrayList<>();
+        for (long i = 0; i < 50; i++) {
+            String id = String.format("%02d", i);
+            int child = (int) (i % k);
+            children.get(child).add(child == k - 1 ? DataPoint.create(i, id) : DataPoint.create(id, i));
+            expected.add(DataPoint.create(id, i));
+        }
+
+        assertThat(collect(union(children, structures))).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    public void testMergeSorted() {
+        testMerge();
+    }
+
+    @Test
+    public void testMergeSortedWithRecycling() {
+        VtlConfiguration.getConfig().enableRowRecycling();
+        testMerge();
+    }
+
+    @Test
+    public void testEmptyChildren() {
+        List<List<DataPoint>> children = Arrays.asList(
+                Arrays.asList(),
+                Arrays.asList(DataPoint.create("a", 1L)),
+                Arrays.asList()
+        );
+        assertThat(collect(union(children, Arrays.asList(structure, structure, structure))))
+                .containsExactly(DataPoint.create("a", 1L));
+    }
+
+    @Test
+    public void testDuplicateAcrossChildren() {
+        List<List<DataPoint>> children = Arrays.asList(
+                Arrays.asList(DataPoint.create("a", 1L), DataPoint.create("c", 3L)),
+                Arrays.asList(DataPoint.create(2L, "b"), DataPoint.create(3L, "c"))
+        );
+        assertThatThrownBy(() -> collect(union(children, Arrays.asList(structure, reversed))))
+                .isInstanceOf(VTLRuntimeException.class)
+                .hasMessageContaining("duplicates");
+    }
+
+    @Test
+    public void testDuplicateInChild() {
+        List<List<DataPoint>> children = Arrays.asList(
+                Arrays.asList(DataPoint.create("a", 1L), DataPoint.create("a", 2L)),
+                Arrays.asList(DataPoint.create("b", 3L))
+        );
+        assertThatThrownBy(() -> collect(union(children, Arrays.asList(structure, structure))))
+                .isInstanceOf(VTLRuntimeException.class)
+                .hasMessageContaining("duplicates");
+    }
+}
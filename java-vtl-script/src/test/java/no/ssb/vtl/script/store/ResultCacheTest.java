@@ -0,0 +1,227 @@
+package no.ssb.vtl.script.store;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.connectors.Connector;
+import no.ssb.vtl.model.Component.Role;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.StaticDataset;
+import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.script.VTLScriptEngine;
+import no.ssb.vtl.script.operations.DatasetOperationWrapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ResultCacheTest {
+
+    private static final String SCRIPT = "" +
+            "a := get(\"a\")\n" +
+            "b := [a]{ filter value > 10 }";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final VersionedDataset source = new VersionedDataset();
+    private final Connector connector = mock(Connector.class);
+
+    @Test
+    public void testUnchangedStatementsAreReused() throws Exception {
+        ResultStore store = new InMemoryResultStore();
+
+        assertThat(run(store)).containsExactly("2", 20L, "3", 30L);
+        assertThat(source.reads).hasValue(1);
+
+        assertThat(run(store)).containsExactly("2", 20L, "3", 30L);
+        assertThat(source.reads).hasValue(1);
+    }
+
+    @Test
+    public void testChangedInputsAreRecomputed() throws Exception {
+        ResultStore store = new InMemoryResultStore();
+
+        run(store);
+        source.version = "2";
+        run(store);
+
+        assertThat(source.reads).hasValue(2);
+    }
+
+    @Test
+    public void testChangedInputsReplaceTheResult() throws Exception {
+        InMemoryResultStore store = new InMemoryResultStore();
+
+        run(store);
+        assertThat(store.size()).isEqualTo(1);
+
+        source.version = "2";
+        run(store);
+        assertThat(store.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testInMemoryStoreIsBounded() throws Exception {
+        InMemoryResultStore store = new InMemoryResultStore(0);
+
+        assertThat(run(store)).containsExactly("2", 20L, "3", 30L);
+        assertThat(run(store)).containsExactly("2", 20L, "3", 30L);
+
+        assertThat(store.size()).isEqualTo(0);
+        assertThat(source.reads).hasValue(2);
+    }
+
+    @Test
+    public void testOutputsAreReused() throws Exception {
+        ResultStore store = new InMemoryResultStore();
+
+        assertThat(run(store, Collections.singleton("b"))).containsExactly("2", 20L, "3", 30L);
+        assertThat(run(store, Collections.singleton("b"))).containsExactly("2", 20L, "3", 30L);
+        assertThat(source.reads).hasValue(1);
+
+        // The deferred statements have their fingerprint as version before they are created.
+        Dataset deferred = new DatasetOperationWrapper(() -> {
+            throw new AssertionError("the dataset was created");
+        }, "fingerprint");
+        assertThat(deferred.getVersion()).contains("fingerprint");
+    }
+
+    @Test
+    public void testUnversionedInputsAreRecomputed() throws Exception {
+        ResultStore store = new InMemoryResultStore();
+
+        source.version = null;
+        assertThat(run(store)).containsExactly("2", 20L, "3", 30L);
+        run(store);
+
+        assertThat(source.reads).hasValue(2);
+    }
+
+    @Test
+    public void testFileStoreSurvivesInstances() throws Exception {
+        assertThat(run(new FileResultStore(folder.getRoot().toPath()))).containsExactly("2", 20L, "3", 30L);
+        assertThat(run(new FileResultStore(folder.getRoot().toPath()))).containsExactly("2", 20L, "3", 30L);
+        assertThat(source.reads).hasValue(1);
+    }
+
+    @Test
+    public void testFileStoreReplacesTheResult() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        run(new FileResultStore(directory));
+        assertThat(results(directory)).hasSize(1);
+
+        source.version = "2";
+        assertThat(run(new FileResultStore(directory))).containsExactly("2", 20L, "3", 30L);
+        assertThat(results(directory)).hasSize(1);
+        assertThat(source.reads).hasValue(2);
+    }
+
+    private static List<Path> results(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".vtl")).collect(Collectors.toList());
+        }
+    }
+
+    private List<Object> run(ResultStore store) throws Exception {
+        return run(store, null);
+    }
+
+    private List<Object> run(ResultStore store, Set<String> outputs) throws Exception {
+        when(connector.canHandle(anyString())).thenReturn(true);
+        when(connector.getDataset("a")).thenReturn(source);
+
+        VTLScriptEngine engine = new VTLScriptEngine(connector);
+        engine.setResultStore(store);
+        if (outputs == null) {
+            engine.eval(SCRIPT);
+        } else {
+            engine.eval(SCRIPT, outputs);
+        }
+
+        Bindings bindings = engine.getBindings(ScriptContext.ENGINE_SCOPE);
+        try (Stream<DataPoint> data = ((Dataset) bindings.get("b")).getData()) {
+            return data.flatMap(dataPoint -> dataPoint.stream().map(VTLObject::get)).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Dataset with a version that counts how many times its data is read.
+     */
+    private static final class VersionedDataset implements Dataset {
+
+        private final Dataset delegate = StaticDataset.create()
+                .addComponent("id", Role.IDENTIFIER, String.class)
+                .addComponent("value", Role.MEASURE, Long.class)
+                .addPoints("1", 10L)
+                .addPoints("2", 20L)
+                .addPoints("3", 30L)
+                .build();
+
+        private final AtomicInteger reads = new AtomicInteger();
+        private String version = "1";
+
+        @Override
+        public Stream<DataPoint> getData() {
+            reads.incrementAndGet();
+            return delegate.getData();
+        }
+
+        @Override
+        public Optional<Map<String, Integer>> getDistinctValuesCount() {
+            return Optional.empty();
+        }
+
+        @Override
+        public Optional<Long> getSize() {
+            return delegate.getSize();
+        }
+
+        @Override
+        public DataStructure getDataStructure() {
+            return delegate.getDataStructure();
+        }
+
+        @Override
+        public Optional<String> getVersion() {
+            return Optional.ofNullable(version);
+        }
+    }
+}
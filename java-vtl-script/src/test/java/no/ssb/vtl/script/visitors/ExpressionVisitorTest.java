@@ -28,11 +28,15 @@ import no.ssb.vtl.model.VTLDate;
 import no.ssb.vtl.model.VTLExpression;
 import no.ssb.vtl.model.VTLFloat;
 import no.ssb.vtl.model.VTLInteger;
+import no.ssb.vtl.model.VTLNumber;
 import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.model.VTLString;
 import no.ssb.vtl.parser.VTLLexer;
 import no.ssb.vtl.parser.VTLParser;
 import no.ssb.vtl.script.error.ContextualRuntimeException;
+import no.ssb.vtl.script.expressions.AbstractBinaryExpression;
+import no.ssb.vtl.script.expressions.LiteralExpression;
+import no.ssb.vtl.script.expressions.VariableExpression;
 import org.antlr.v4.runtime.BaseErrorListener;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
@@ -348,4 +352,33 @@ public class ExpressionVisitorTest {
                 .hasMessageContaining("value cannot be another if-then-else expression")
                 .isExactlyInstanceOf(RuntimeException.class);
     }
+
+    @Test
+    public void testConstantFolding() throws Exception {
+        bindings.put("a", VTLNumber.of(2L));
+        bindings.put("b", VTLBoolean.of(true));
+
+        VTLExpression result = expressionVisitor.visit(parse("a * (1 + 0.25)").expression());
+        softly.assertThat(((AbstractBinaryExpression) result).getRightOperand()).isInstanceOf(LiteralExpression.class);
+        softly.assertThat(result.resolve(bindings).get()).isEqualTo(2.5);
+
+        result = expressionVisitor.visit(parse("round(3.14159, 2)").expression());
+        softly.assertThat(result).isInstanceOf(LiteralExpression.class);
+        softly.assertThat(result.getVTLType()).isEqualTo(VTLFloat.class);
+        softly.assertThat(result.resolve(bindings).get()).isEqualTo(3.14);
+
+        result = expressionVisitor.visit(parse("nvl(null, a)").expression());
+        softly.assertThat(result).isInstanceOf(VariableExpression.class);
+
+        result = expressionVisitor.visit(parse("if true then a else 3").expression());
+        softly.assertThat(result).isInstanceOf(VariableExpression.class);
+
+        result = expressionVisitor.visit(parse("b and (1 = 1)").expression());
+        softly.assertThat(result).isInstanceOf(VariableExpression.class);
+
+        result = expressionVisitor.visit(parse("1 + null").expression());
+        softly.assertThat(result).isInstanceOf(LiteralExpression.class);
+        softly.assertThat(result.getVTLType()).isEqualTo(VTLInteger.class);
+        softly.assertThat(result.resolve(bindings).get()).isNull();
+    }
 }